@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 
 import org.epics.pvaccess.PVAException;
 import org.epics.pvaccess.server.rpc.RPCServer;
@@ -32,6 +33,9 @@ import org.epics.pvioc.install.InstallFactory;
  *             list is a list of xml files containing structure definitions. Each is parsed and put into the master database
  *     -records list
  *             list is a list of xml files containing records definitions. Each is parsed and started and put into the master database 
+ *     -parallelRecords list
+ *             list is a list of independent xml files containing records definitions.
+ *             They are parsed at the same time and then all the records are started and put into the master database
  *     -dumpStructures
  *             Dump all structures in the master database
  *     -dumpRecords
@@ -52,6 +56,7 @@ public class JavaIOC {
     private enum State {
         structure,
         record,
+        parallelRecord,
         server,
         rpcService,
         pvRecord
@@ -74,9 +79,11 @@ public class JavaIOC {
         State state = null;
         String rpcServiceFile = null;
         String pvRecordFile = null;
+        ArrayList<String> parallelRecordFiles = new ArrayList<String>();
         while(nextArg<args.length) {
             String arg = args[nextArg++];
             if(arg.charAt(0) == '-') {
+                parseRecords(parallelRecordFiles,iocRequester);
                 if(arg.length()>1) {
                     arg = arg.substring(1);
                 } else {
@@ -94,6 +101,8 @@ public class JavaIOC {
                     state = State.structure;
                 } else if(arg.equals("records")){
                     state = State.record;
+                } else if(arg.equals("parallelRecords")){
+                    state = State.parallelRecord;
                 } else if(arg.equals("rpcService")){
                     state = State.rpcService;
                 } else if(arg.equals("pvRecord")){
@@ -111,6 +120,8 @@ public class JavaIOC {
                 parseStructures(arg,iocRequester);
             } else if(state==State.record){
                 parseRecords(arg,iocRequester);
+            } else if(state==State.parallelRecord){
+                parallelRecordFiles.add(arg);
             } else if(state==State.server) {
                 startServer(arg);
             } else if(state==State.rpcService) {
@@ -133,12 +144,14 @@ public class JavaIOC {
                 }
             }
         }
+        parseRecords(parallelRecordFiles,iocRequester);
     }
     
     static void usage() {
         System.out.println("Usage:"
                 + " -structures fileList"
                 + " -records fileList"
+                + " -parallelRecords fileList"
                 + " -dumpStructures"
                 + " -dumpRecords"
                 + " -server file"
@@ -377,6 +390,24 @@ public class JavaIOC {
     	System.out.printf("\ninstalled records %s time %f seconds\n",fileName,diff);
     }
      
+    static void parseRecords(ArrayList<String> fileNames,Requester iocRequester) {
+        if(fileNames.isEmpty()) return;
+        String[] files = fileNames.toArray(new String[fileNames.size()]);
+        fileNames.clear();
+        long startTime = 0;
+        long endTime = 0;
+        startTime = System.nanoTime();
+        try {
+            install.installRecords(files,iocRequester);
+        }  catch (IllegalStateException e) {
+            System.out.printf("parseRecords: %s%n",e.getMessage());
+            e.printStackTrace();
+        }
+        endTime = System.nanoTime();
+        double diff = (double)(endTime - startTime)/1e9;
+        System.out.printf("\ninstalled records %d files time %f seconds\n",files.length,diff);
+    }
+     
     private static class Listener implements Requester {
         /* (non-Javadoc)
          * @see org.epics.pvioc.util.Requester#getRequesterName()
@@ -43,6 +43,7 @@ import gov.aps.jca.dbr.Status;
 import gov.aps.jca.dbr.TIME;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Pattern;
@@ -56,8 +57,6 @@ import org.epics.pvdata.misc.RunnableReady;
 import org.epics.pvdata.misc.ThreadCreate;
 import org.epics.pvdata.misc.ThreadCreateFactory;
 import org.epics.pvdata.misc.ThreadReady;
-import org.epics.pvdata.monitor.MonitorElement;
-import org.epics.pvdata.monitor.MonitorQueueFactory;
 import org.epics.pvdata.property.AlarmSeverity;
 import org.epics.pvdata.property.PVTimeStamp;
 import org.epics.pvdata.property.PVTimeStampFactory;
@@ -87,9 +86,9 @@ import org.epics.pvioc.database.PVDatabase;
 import org.epics.pvioc.database.PVDatabaseFactory;
 import org.epics.pvioc.database.PVRecord;
 import org.epics.pvioc.database.PVRecordClient;
-import org.epics.pvioc.pvAccess.PVCopyMonitor;
-import org.epics.pvioc.pvAccess.PVCopyMonitorFactory;
-import org.epics.pvioc.pvAccess.PVCopyMonitorRequester;
+import org.epics.pvioc.pvAccess.MonitorDispatcher;
+import org.epics.pvioc.pvAccess.PVCopyMultiplexer;
+import org.epics.pvioc.pvAccess.PVCopyMultiplexerFactory;
 import org.epics.pvioc.support.ProcessToken;
 import org.epics.pvioc.support.RecordProcess;
 import org.epics.pvioc.support.RecordProcessRequester;
@@ -105,6 +104,17 @@ public class ServerFactory {
         new ThreadInstance();
     }
     
+    /**
+     * Attach a process variable without a server context. Only used for testing.
+     * @param aliasName The record name followed by the optional request.
+     * @param eventCallback The event callback, can be null.
+     * @return The process variable.
+     * @throws CAStatusException If the record does not exist or the request is illegal.
+     */
+    static ProcessVariable attach(String aliasName,ProcessVariableEventCallback eventCallback) throws CAStatusException {
+        return new CAServerImpl().processVariableAttach(aliasName, eventCallback, null);
+    }
+    
     private static final Convert convert = ConvertFactory.getConvert();
     private static final PVDatabase masterPVDatabase = PVDatabaseFactory.getMaster();
     private static final ThreadCreate threadCreate = ThreadCreateFactory.getThreadCreate();
@@ -223,13 +233,69 @@ public class ServerFactory {
     /**
      * Channel process variable implementation. 
      */
-    private static class ChannelProcessVariable extends ProcessVariable implements RecordProcessRequester,PVCopyMonitorRequester,PVRecordClient
+    /**
+     * A read or write of a channel that processes the record.
+     * If the CA server gave a callback it is called when processing completes.
+     * Otherwise the caller waits.
+     */
+    private static class ProcessRequest {
+        private final DBR dbr;
+        private final boolean isPut;
+        private final ProcessVariableReadCallback readCallback;
+        private final ProcessVariableWriteCallback writeCallback;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition waitDone = lock.newCondition();
+        private CAStatus status = null;
+
+        private ProcessRequest(DBR dbr,boolean isPut,
+            ProcessVariableReadCallback readCallback,ProcessVariableWriteCallback writeCallback)
+        {
+            this.dbr = dbr;
+            this.isPut = isPut;
+            this.readCallback = readCallback;
+            this.writeCallback = writeCallback;
+        }
+        
+        private boolean isAsynchronous() {
+            return (readCallback!=null || writeCallback!=null);
+        }
+        
+        private CAStatus waitDone() {
+            lock.lock();
+            try {
+                while(status==null) {
+                    try {
+                        waitDone.await();
+                    } catch(InterruptedException e) {}
+                }
+                return status;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        // Only the first call completes the request.
+        private void complete(CAStatus status) {
+            lock.lock();
+            try {
+                if(this.status!=null) return;
+                this.status = status;
+                waitDone.signal();
+            } finally {
+                lock.unlock();
+            }
+            if(readCallback!=null) {
+                readCallback.processVariableReadCompleted(status);
+            } else if(writeCallback!=null) {
+                writeCallback.processVariableWriteCompleted(status);
+            }
+        }
+    }
+
+    private static class ChannelProcessVariable extends ProcessVariable implements RecordProcessRequester,PVCopyMultiplexer.Subscriber,PVRecordClient
     {
         private static final String[] YES_NO_LABELS = new String[] { "false", "true" };
-        private boolean isDestroyed = false;
-        private ReentrantLock lock = new ReentrantLock();
-        private Condition waitDone = lock.newCondition();
-        private boolean done = false;
+        private volatile boolean isDestroyed = false;
 
         private DBRType dbrType;
         private Type type;
@@ -242,24 +308,40 @@ public class ServerFactory {
         private PVStringArray valueChoicesPV = null;
         private int valueIndex = -1;
 
+        private PVStructure pvRequest = null;
         private PVCopy pvCopy = null;
         private PVStructure pvCopyStructure = null;
         private BitSet copyBitSet = null;
         
         private PVRecord pvRecord = null;
         private RecordProcess recordProcess = null;
-        private DBR dbr = null;
         private boolean process = false;
         private boolean canProcess = false;
-        private boolean processActive = false;
-        private boolean getProcessActive = false;
-        private boolean putProcessActive = false;
         private ProcessToken processToken = null;
+        // read and write requests that process the record. Only one is active at a time.
+        private ProcessRequest activeRequest = null;
+        private final ArrayDeque<ProcessRequest> processRequestQueue = new ArrayDeque<ProcessRequest>();
+        private boolean startingProcess = false;
+        private boolean startProcessAgain = false;
         
-        private PVCopyMonitor pvCopyMonitor = null;
-        private PVStructure monitorPVStructure = null;
-        private BitSet monitorChangeBitSet = null;
-        private BitSet monitorOverrunBitSet = null;
+        private PVCopyMultiplexer multiplexer = null;
+        // latest snapshot not yet posted. Only used if MonitorDispatcher is enabled
+        private PVCopyMultiplexer.Snapshot pendingSnapshot = null;
+        private final MonitorDispatcher.Task eventTask = new MonitorDispatcher.Task(this) {
+            protected void dispatch() {
+                PVCopyMultiplexer.Snapshot snapshot = null;
+                synchronized(ChannelProcessVariable.this) {
+                    snapshot = pendingSnapshot;
+                    pendingSnapshot = null;
+                }
+                if(snapshot==null) return;
+                try {
+                    postEvent(snapshot);
+                } finally {
+                    snapshot.release();
+                }
+            }
+        };
 
         private int elementCount = 1;
 
@@ -293,7 +375,7 @@ public class ServerFactory {
                 request = "field(" + options + ")";
             }
             CreateRequest createRequest = CreateRequest.create();
-            PVStructure pvRequest = createRequest.createRequest(request);
+            pvRequest = createRequest.createRequest(request);
             if(pvRequest==null) {
             	message(createRequest.getMessage(), MessageType.error);
             }
@@ -337,14 +419,35 @@ public class ServerFactory {
          */
         @Override
         public void destroy() {
-        	if(isDestroyed) return;
-        	isDestroyed = true;
+            ProcessRequest[] requests = null;
+            ProcessRequest request = null;
+            synchronized(this) {
+                if(isDestroyed) return;
+                isDestroyed = true;
+                requests = processRequestQueue.toArray(new ProcessRequest[processRequestQueue.size()]);
+                processRequestQueue.clear();
+                request = activeRequest;
+            }
             super.destroy();
-            if(canProcess) {
-            	recordProcess.releaseProcessToken(processToken);
-            	processToken = null;
+            for(ProcessRequest queued : requests) queued.complete(CAStatus.CHANDESTROY);
+            if(request!=null) {
+                // the record may still be processing for it.
+                // The process token is released when that processing completes.
+                request.complete(CAStatus.CHANDESTROY);
+            } else {
+                releaseProcessToken();
             }
         }
+        
+        private void releaseProcessToken() {
+            if(!canProcess) return;
+            ProcessToken processToken = null;
+            synchronized(this) {
+                processToken = this.processToken;
+                this.processToken = null;
+            }
+            if(processToken!=null) recordProcess.releaseProcessToken(processToken);
+        }
         /* (non-Javadoc)
          * @see org.epics.pvdata.pv.PVRecordClient#detach(org.epics.pvdata.pv.PVRecord)
          */
@@ -391,37 +494,8 @@ public class ServerFactory {
          */
         public CAStatus read(DBR dbr, ProcessVariableReadCallback asyncReadCallback) throws CAException {
         	if(isDestroyed) return CAStatus.CHANDESTROY;
-            this.dbr = dbr;
         	if(process) {
-                boolean ok = true;
-                synchronized(this) {
-                    if(processActive) {
-                        ok = false;
-                    } else {
-                        processActive = true;
-                        getProcessActive = true;
-                    }
-                }
-                if(!ok) {
-                    message("process already active",MessageType.warning);
-                    return CAStatus.DBLCLFAIL;
-                }
-                done = false;
-                recordProcess.queueProcessRequest(processToken);
-                lock.lock();
-                try {
-                    while(!done) {
-                        try {
-                            waitDone.await();
-                        } catch(InterruptedException e) {}
-                    }
-                } finally {
-                    lock.unlock();
-                }
-                synchronized(this) {
-                    processActive = false;
-                }
-                return CAStatus.NORMAL;
+        	    return queueProcessRequest(new ProcessRequest(dbr,false,asyncReadCallback,null));
             }
             pvCopy.initCopy(pvCopyStructure, copyBitSet);
             getData(dbr);
@@ -432,36 +506,9 @@ public class ServerFactory {
          */
         public CAStatus write(DBR dbr, ProcessVariableWriteCallback asyncWriteCallback) throws CAException {
         	if(isDestroyed) return CAStatus.CHANDESTROY;
-        	this.dbr = dbr;
             if(process) {
-                boolean ok = true;
-                synchronized(this) {
-                    if(processActive) {
-                        ok = false;
-                    } else {
-                        processActive = true;
-                        putProcessActive = true;
-                    }
-                }
-                if(!ok) {
-                    message("process already active",MessageType.warning);
-                    return CAStatus.DBLCLFAIL;
-                }
-                done = false;
-                recordProcess.queueProcessRequest(processToken);
-                lock.lock();
-                try {
-                    while(!done) {
-                        try {
-                            waitDone.await();
-                        } catch(InterruptedException e) {}
-                    }
-                } finally {
-                    lock.unlock();
-                }
-                synchronized(this) {
-                    processActive = false;
-                }
+                // the value is put into the record by becomeProcessor
+                return queueProcessRequest(new ProcessRequest(dbr,true,null,asyncWriteCallback));
             }
             copyBitSet.clear();
             putValueField(dbr);
@@ -473,29 +520,98 @@ public class ServerFactory {
             }
             return CAStatus.NORMAL;
         }
+        
+        // Returns null, which means asynchronous completion, if the request has a callback.
+        // Otherwise waits until the record has been processed.
+        private CAStatus queueProcessRequest(ProcessRequest request) {
+            boolean start = false;
+            synchronized(this) {
+                if(isDestroyed) return CAStatus.CHANDESTROY;
+                if(activeRequest==null) {
+                    activeRequest = request;
+                    start = true;
+                } else {
+                    processRequestQueue.add(request);
+                }
+            }
+            if(start) startProcess();
+            if(request.isAsynchronous()) return null;
+            return request.waitDone();
+        }
+        
+        // The record may be processed and the request completed before queueProcessRequest returns.
+        // The next request is then started by the caller of startProcess instead of recursively.
+        // After destroy the active request, which destroy already completed, is dropped instead of started.
+        private void startProcess() {
+            synchronized(this) {
+                if(startingProcess) {
+                    startProcessAgain = true;
+                    return;
+                }
+                startingProcess = true;
+            }
+            while(true) {
+                boolean destroyed = false;
+                synchronized(this) {
+                    destroyed = isDestroyed;
+                    if(destroyed) {
+                        activeRequest = null;
+                        startingProcess = false;
+                        startProcessAgain = false;
+                    }
+                }
+                if(destroyed) {
+                    releaseProcessToken();
+                    return;
+                }
+                recordProcess.queueProcessRequest(processToken);
+                synchronized(this) {
+                    if(!startProcessAgain) {
+                        startingProcess = false;
+                        return;
+                    }
+                    startProcessAgain = false;
+                }
+            }
+        }
+        
+        private void completeProcessRequest(CAStatus status) {
+            ProcessRequest request = null;
+            ProcessRequest next = null;
+            boolean destroyed = false;
+            synchronized(this) {
+                request = activeRequest;
+                next = processRequestQueue.poll();
+                activeRequest = next;
+                destroyed = isDestroyed;
+            }
+            // does nothing if destroy already completed the request
+            if(request!=null) request.complete(status);
+            if(next!=null) {
+                startProcess();
+            } else if(destroyed) {
+                releaseProcessToken();
+            }
+        }
 
         /* (non-Javadoc)
          * @see org.epics.pvioc.support.RecordProcessRequester#recordProcessComplete()
          */
         @Override
         public void recordProcessComplete() {
-            if(getProcessActive) {
-            	pvCopy.initCopy(pvCopyStructure, copyBitSet);
-                getData(dbr);
-                dbr = null;
-                getProcessActive = false;
-                recordProcess.setInactive(processToken);
-            } else if(putProcessActive) {
-                dbr = null;
-                putProcessActive = false;
+            ProcessRequest request = null;
+            synchronized(this) {
+                request = activeRequest;
             }
-            lock.lock();
-            try {
-                done = true;
-                waitDone.signal();
-            } finally {
-                lock.unlock();
+            if(request==null) return;
+            if(!request.isPut) {
+                if(!isDestroyed) {
+                    pvCopy.initCopy(pvCopyStructure, copyBitSet);
+                    getData(request.dbr);
+                }
+                recordProcess.setInactive(processToken);
             }
+            completeProcessRequest(CAStatus.NORMAL);
         }
 
         /* (non-Javadoc)
@@ -513,12 +629,20 @@ public class ServerFactory {
         @Override
         public void becomeProcessor()
         {
-        	if(getProcessActive) {
+            ProcessRequest request = null;
+            synchronized(this) {
+                request = activeRequest;
+            }
+            if(request==null) return;
+        	if(!request.isPut) {
         		recordProcess.process(processToken, true);
-        	} else if(putProcessActive) {
+        	} else if(isDestroyed) {
+        	    // the client was told the channel was destroyed so only complete the process request
+        	    recordProcess.process(processToken, false);
+        	} else {
         		pvRecord.lock();
         		try {
-        			putValueField(dbr);
+        			putValueField(request.dbr);
         			copyBitSet.clear();
         			pvCopy.updateMaster(pvCopyStructure, copyBitSet);
         		} finally {
@@ -533,7 +657,7 @@ public class ServerFactory {
 		@Override
 		public void canNotProcess(String reason) {
 			message("canNotProcess " + reason,MessageType.warning);
-			recordProcessComplete();
+			completeProcessRequest(CAStatus.DBLCLFAIL);
 		}
 		/* (non-Javadoc)
 		 * @see org.epics.pvioc.support.RecordProcessRequester#lostRightToProcess()
@@ -548,18 +672,13 @@ public class ServerFactory {
         @Override
         public void interestDelete() {
             super.interestDelete();
-            PVCopyMonitor pvCopyMonitor = null;
+            PVCopyMultiplexer multiplexer = null;
             synchronized(this) {
-            	if(this.pvCopyMonitor==null) return;
-            	pvCopyMonitor = this.pvCopyMonitor;
-            }
-            pvCopyMonitor.stopMonitoring();
-            synchronized(this) {
-                pvCopyMonitor = null;
-                monitorPVStructure = null;
-                monitorChangeBitSet = null;
-                monitorOverrunBitSet = null;
+            	if(this.multiplexer==null) return;
+            	multiplexer = this.multiplexer;
+            	this.multiplexer = null;
             }
+            multiplexer.removeSubscriber(this);
         }
         /* (non-Javadoc)
          * @see gov.aps.jca.cas.ProcessVariable#interestRegister()
@@ -567,36 +686,48 @@ public class ServerFactory {
         @Override
         public void interestRegister() {
         	if(isDestroyed) return;
-        	
+        	PVCopyMultiplexer multiplexer = null;
             synchronized(this) {
-                if(this.pvCopyMonitor!=null) {
+                if(this.multiplexer!=null) {
                     throw new IllegalStateException("interestRegister but already monitoring");
                 }
-                this.pvCopyMonitor = PVCopyMonitorFactory.create(this, pvRecord, pvCopy);
+                // all channels with the same options share one listener and one copy of the data
+                multiplexer = PVCopyMultiplexerFactory.create(pvRecord, pvRequest, "");
+                if(multiplexer==null) {
+                    message("interestRegister could not create multiplexer", MessageType.error);
+                    return;
+                }
+                this.multiplexer = multiplexer;
             }
-            monitorPVStructure = pvCopy.createPVStructure();
-            monitorChangeBitSet = new BitSet(monitorPVStructure.getNumberFields());
-            monitorOverrunBitSet = new BitSet(monitorPVStructure.getNumberFields());
             super.interestRegister();
-            MonitorElement monitorElement = MonitorQueueFactory.createMonitorElement(pvCopyStructure);
-            pvCopyMonitor.setMonitorElement(monitorElement);
-            pvCopyMonitor.startMonitoring();
+            multiplexer.addSubscriber(this);
         }
 
         /* (non-Javadoc)
-         * @see org.epics.pvdata.pvCopy.PVCopyMonitorRequester#dataChanged()
+         * @see org.epics.pvioc.pvAccess.PVCopyMultiplexer.Subscriber#dataChanged(org.epics.pvioc.pvAccess.PVCopyMultiplexer.Snapshot)
          */
         @Override
-        public void dataChanged() {
+        public void dataChanged(PVCopyMultiplexer.Snapshot snapshot) {
+            if(!MonitorDispatcher.isEnabled()) {
+                postEvent(snapshot);
+                return;
+            }
+            // only the latest snapshot is posted
+            snapshot.acquire();
+            synchronized(this) {
+                if(pendingSnapshot!=null) pendingSnapshot.release();
+                pendingSnapshot = snapshot;
+            }
+            eventTask.schedule();
+        }
+        
+        private void postEvent(PVCopyMultiplexer.Snapshot snapshot) {
             DBR dbr = AbstractCASResponseHandler.createDBRforReading(this);
-            pvCopy.initCopy(monitorPVStructure,monitorChangeBitSet);
-            getData(dbr,monitorPVStructure);
+            getData(dbr,snapshot.getPVStructure());
             eventCallback.postEvent(Monitor.VALUE|Monitor.LOG, dbr);
-            monitorChangeBitSet.clear();
-            monitorOverrunBitSet.clear();
         }
         /* (non-Javadoc)
-         * @see org.epics.pvdata.pvCopy.PVCopyMonitorRequester#unlisten()
+         * @see org.epics.pvioc.pvAccess.PVCopyMultiplexer.Subscriber#unlisten()
          */
         @Override
         public void unlisten() {
@@ -5,6 +5,8 @@
  */
 package org.epics.pvioc.database;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.epics.pvdata.factory.ConvertFactory;
@@ -38,8 +40,11 @@ public class BasePVRecord implements PVRecord {
     private LinkedList<PVListener> pvAllListenerList = listenerListCreate.create();
     private LinkedList<PVRecordClient> clientList = clientListCreate.create();
     private ReentrantLock lock = new ReentrantLock();
-    private static volatile int numberRecords = 0;
-    private int id = numberRecords++;
+    // incremented when the lock is acquired and when it is released. It is odd while the record is locked.
+    private final AtomicLong version = new AtomicLong(2);
+    private static final AtomicInteger numberRecords = new AtomicInteger(0);
+    // determines the order in which records are locked
+    final int id = numberRecords.getAndIncrement();
     private volatile int depthGroupPut = 0;
     
     /**
@@ -154,31 +159,59 @@ public class BasePVRecord implements PVRecord {
      */
     public void lock() {
         lock.lock();
+        if(lock.getHoldCount()==1) version.incrementAndGet();
     }
     /* (non-Javadoc)
      * @see org.epics.pvdata.pv.PVRecord#lockOtherRecord(org.epics.pvdata.pv.PVRecord)
      */
     public void lockOtherRecord(PVRecord otherRecord) {
-        BasePVRecord impl = (BasePVRecord)otherRecord;
-        int otherId = impl.id;
-        if(id<=otherId) {
+        if(id<=otherRecord.getLockOrder()) {
             otherRecord.lock();
             return;
         }
+        // Locking out of order can not deadlock if it does not wait.
+        // This record is only unlocked if the other record is locked by another thread.
+        if(otherRecord.tryLock()) return;
         int count = lock.getHoldCount();
-        for(int i=0; i<count; i++) lock.unlock();
+        for(int i=0; i<count; i++) unlock();
         otherRecord.lock();
-        for(int i=0; i<count; i++) lock.lock();
+        for(int i=0; i<count; i++) lock();
+    }
+    /* (non-Javadoc)
+     * @see org.epics.pvioc.database.PVRecord#getLockOrder()
+     */
+    @Override
+    public int getLockOrder() {
+        return id;
     }
     /* (non-Javadoc)
      * @see org.epics.pvdata.pv.PVRecord#unlock()
      */
     public void unlock() {
+        if(lock.getHoldCount()==1) version.incrementAndGet();
         lock.unlock();
     }
     @Override
     public boolean tryLock() {
-        return lock.tryLock();
+        if(!lock.tryLock()) return false;
+        if(lock.getHoldCount()==1) version.incrementAndGet();
+        return true;
+    }
+    /* (non-Javadoc)
+     * @see org.epics.pvioc.database.PVRecord#tryOptimisticRead()
+     */
+    @Override
+    public long tryOptimisticRead() {
+        long stamp = version.get();
+        return ((stamp&1)==0) ? stamp : 0;
+    }
+    /* (non-Javadoc)
+     * @see org.epics.pvioc.database.PVRecord#validate(long)
+     */
+    @Override
+    public boolean validate(long stamp) {
+        // compareAndSet, unlike get, keeps the preceding reads of the data from moving after it
+        return stamp!=0 && version.compareAndSet(stamp, stamp);
     }
     /* (non-Javadoc)
      * @see org.epics.pvdata.pv.PVRecord#beginGroupPut()
@@ -5,9 +5,6 @@
  */
 package org.epics.pvioc.database;
 
-import org.epics.pvdata.misc.LinkedList;
-import org.epics.pvdata.misc.LinkedListCreate;
-import org.epics.pvdata.misc.LinkedListNode;
 import org.epics.pvdata.pv.MessageType;
 import org.epics.pvdata.pv.PVField;
 import org.epics.pvdata.pv.PVStructure;
@@ -20,13 +17,18 @@ import org.epics.pvioc.support.Support;
  *
  */
 public class BasePVRecordField implements PVRecordField, PostHandler{
-	private static LinkedListCreate<PVListener> linkedListCreate = new LinkedListCreate<PVListener>();
+	private static final PVListener[] noListeners = new PVListener[0];
 	private Support support = null;
 	private PVField pvField = null;
 	private BasePVRecord pvRecord = null;
 	private PVRecordStructure parent = null;
 	private boolean isStructure = false;
-	private LinkedList<PVListener> pvListenerList = linkedListCreate.create();
+	// replaced, never modified, when a listener is added or removed
+	private volatile PVListener[] pvListeners = noListeners;
+	// number of listeners on this field and all fields below it
+	private volatile int numberSubtreeListeners = 0;
+	// number of listeners on the fields above this field
+	private volatile int numberAncestorListeners = 0;
 	private String fullName = null;
 	private String fullFieldName = null;
 
@@ -122,9 +124,17 @@ public class BasePVRecordField implements PVRecordField, PostHandler{
 	@Override
 	public boolean addListener(PVListener pvListener) {
 		if(!pvRecord.isRegisteredListener(pvListener)) return false;
-		if(pvListenerList.contains(pvListener)) return false;
-		LinkedListNode<PVListener> listNode = linkedListCreate.createNode(pvListener);
-		pvListenerList.addTail(listNode);
+		synchronized(pvRecord) {
+			PVListener[] pvListeners = this.pvListeners;
+			for(PVListener listener : pvListeners) {
+				if(listener==pvListener) return false;
+			}
+			PVListener[] newListeners = new PVListener[pvListeners.length+1];
+			System.arraycopy(pvListeners, 0, newListeners, 0, pvListeners.length);
+			newListeners[pvListeners.length] = pvListener;
+			this.pvListeners = newListeners;
+			updateListenerCounts(1);
+		}
 		return true;
 	}
 	/* (non-Javadoc)
@@ -132,7 +142,19 @@ public class BasePVRecordField implements PVRecordField, PostHandler{
 	 */
      @Override
      public void removeListener(PVListener pvListener) {
-         pvListenerList.remove(pvListener);
+         synchronized(pvRecord) {
+             PVListener[] pvListeners = this.pvListeners;
+             int length = pvListeners.length;
+             for(int i=0; i<length; i++) {
+                 if(pvListeners[i]!=pvListener) continue;
+                 PVListener[] newListeners = (length==1) ? noListeners : new PVListener[length-1];
+                 System.arraycopy(pvListeners, 0, newListeners, 0, i);
+                 System.arraycopy(pvListeners, i+1, newListeners, i, length-i-1);
+                 this.pvListeners = newListeners;
+                 updateListenerCounts(-1);
+                 break;
+             }
+         }
          if(isStructure) {
         	 PVRecordStructure recordStructure = (PVRecordStructure)this;
         	 PVRecordField[] pvRecordFields = recordStructure.getPVRecordFields();
@@ -142,26 +164,48 @@ public class BasePVRecordField implements PVRecordField, PostHandler{
          }
      }
      
+     /*
+      * A listener was added (delta=1) or removed (delta=-1) to this field.
+      * Update the summaries of this field, the fields above it, and the fields below it.
+      * Caller must synchronize on pvRecord.
+      */
+     private void updateListenerCounts(int delta) {
+         BasePVRecordField pvf = this;
+         while(pvf!=null) {
+             pvf.numberSubtreeListeners += delta;
+             pvf = (BasePVRecordField)pvf.parent;
+         }
+         if(isStructure) updateAncestorCounts(delta);
+     }
+     
+     private void updateAncestorCounts(int delta) {
+         PVRecordField[] pvRecordFields = ((PVRecordStructure)this).getPVRecordFields();
+         for(PVRecordField pvRecordField : pvRecordFields) {
+             BasePVRecordField pvf = (BasePVRecordField)pvRecordField;
+             pvf.numberAncestorListeners += delta;
+             if(pvf.isStructure) pvf.updateAncestorCounts(delta);
+         }
+     }
+     
      /* (non-Javadoc)
       * @see org.epics.pvdata.pv.PVField#postPut()
       */
      @Override
      public void postPut() {
-    	 if(parent!=null) {
+         // most fields are not monitored
+    	 if(numberAncestorListeners>0) {
     		 BasePVRecordField pvf = (BasePVRecordField)parent;
     		 pvf.postParent(this);
     	 }
-    	 postSubField();
+    	 if(numberSubtreeListeners>0) postSubField();
      }
       
      private void postParent(PVRecordField subField) {
-    	 LinkedListNode<PVListener> listNode = pvListenerList.getHead();
-    	 while(listNode!=null) {
-    		 PVListener pvListener = listNode.getObject();
-             pvListener.dataPut((PVRecordStructure)this,subField);
-             listNode = pvListenerList.getNext(listNode);
+    	 PVListener[] pvListeners = this.pvListeners;
+    	 for(int i=0; i<pvListeners.length; i++) {
+             pvListeners[i].dataPut((PVRecordStructure)this,subField);
          }
-    	 if(parent!=null) {
+    	 if(numberAncestorListeners>0) {
     		 BasePVRecordField pv = (BasePVRecordField)parent;
     		 pv.postParent(subField);
     	 }
@@ -174,17 +218,15 @@ public class BasePVRecordField implements PVRecordField, PostHandler{
              PVRecordField[] pvRecordFields = recordStructure.getPVRecordFields();
              for(int i=0; i<pvRecordFields.length; i++) {
                  BasePVRecordField pv = (BasePVRecordField)pvRecordFields[i];
-                 pv.postSubField();
+                 if(pv.numberSubtreeListeners>0) pv.postSubField();
              }
          }
      }
      
      private void callListener() {
-    	 LinkedListNode<PVListener> listNode = pvListenerList.getHead();
-    	 while(listNode!=null) {
-    		 PVListener pvListener = listNode.getObject();
-             pvListener.dataPut(this);
-             listNode = pvListenerList.getNext(listNode);
+    	 PVListener[] pvListeners = this.pvListeners;
+    	 for(int i=0; i<pvListeners.length; i++) {
+             pvListeners[i].dataPut(this);
          }
      }
      
@@ -0,0 +1,60 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.database;
+
+/**
+ * Factory that copies data out of a record with PVRecord.tryOptimisticRead and PVRecord.validate.
+ * The copy is a Runnable that must be able to run again after a partial copy of inconsistent data.
+ * It may throw a RuntimeException if the record is modified while it runs.
+ * @author mrk
+ *
+ */
+public class OptimisticReadFactory {
+    /**
+     * The number of times a copy is tried before giving up.
+     */
+    public static final int maxOptimisticReads = 3;
+    /**
+     * Run copy without locking pvRecord.
+     * @param pvRecord The record.
+     * @param copy The copy.
+     * @return The stamp for which the copy is valid or 0 if pvRecord was locked,
+     * or was locked during each of maxOptimisticReads copies.
+     * If 0 is returned the data copied must not be used.
+     */
+    public static long tryRead(PVRecord pvRecord,Runnable copy) {
+        for(int i=0; i<maxOptimisticReads; i++) {
+            long stamp = pvRecord.tryOptimisticRead();
+            if(stamp==0) return 0;
+            try {
+                copy.run();
+            } catch (RuntimeException e) {
+                // the record was modified during the copy
+                continue;
+            }
+            if(pvRecord.validate(stamp)) return stamp;
+        }
+        return 0;
+    }
+    /**
+     * Run copy without locking pvRecord if possible and otherwise with pvRecord locked.
+     * The caller must not hold the record lock.
+     * @param pvRecord The record.
+     * @param copy The copy.
+     * @return The stamp for which the copy is valid or 0 if copy was run with pvRecord locked.
+     */
+    public static long read(PVRecord pvRecord,Runnable copy) {
+        long stamp = tryRead(pvRecord,copy);
+        if(stamp!=0) return stamp;
+        pvRecord.lock();
+        try {
+            copy.run();
+        } finally {
+            pvRecord.unlock();
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.database;
+
+import org.epics.pvdata.misc.BitSet;
+import org.epics.pvdata.pv.PVField;
+
+/**
+ * Keeps track of the fields of a record that have been put since the last call to clear.
+ * It is a PVListener of the fields given to addField, so it only sees puts that call postPut.
+ * Code that skips a copy because a field did not change therefore behaves differently from code that always compares:
+ * a writer that modifies the data of an array in place, e.g. via the ArrayData returned by get,
+ * and does not call postPut is not seen, and its change is not copied until the next postPut of the field.
+ * Until the first call to clear, and after the record stops listeners, every field is reported as changed.
+ * All methods must be called with the record locked.
+ * @author mrk
+ *
+ */
+public interface PVChangeTracker {
+    /**
+     * Track puts to a field and to all its subfields.
+     * @param pvRecordField The field.
+     * @return (false,true) if the field (was not, was) added.
+     */
+    boolean addField(PVRecordField pvRecordField);
+    /**
+     * Has the field or any of its subfields been put since the last call to clear?
+     * @param pvField A field that was given to addField or a subfield of one.
+     * @return (false,true) if the field (has not, may have) changed.
+     */
+    boolean isChanged(PVField pvField);
+    /**
+     * Get the subfields of a field that have been put since the last call to clear.
+     * For each changed subfield the bit (subfield.getFieldOffset() - pvField.getFieldOffset()) is set in bitSet.
+     * Bits already set in bitSet are not cleared.
+     * @param pvField A field that was given to addField or a subfield of one.
+     * @param bitSet The bitSet.
+     * @return (false,true) if the changes (are not, are) known. If false the caller must assume that everything changed.
+     */
+    boolean getChanged(PVField pvField,BitSet bitSet);
+    /**
+     * Forget all changes.
+     */
+    void clear();
+    /**
+     * Stop tracking. After this call every field is reported as changed.
+     */
+    void destroy();
+}
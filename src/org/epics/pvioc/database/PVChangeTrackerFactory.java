@@ -0,0 +1,130 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.database;
+
+import java.util.ArrayList;
+
+import org.epics.pvdata.misc.BitSet;
+import org.epics.pvdata.pv.PVField;
+
+/**
+ * Factory that creates a PVChangeTracker.
+ * @author mrk
+ *
+ */
+public class PVChangeTrackerFactory {
+    /**
+     * Create a tracker for a record.
+     * Must be called with the record locked.
+     * @param pvRecord The record.
+     * @return The tracker.
+     */
+    public static PVChangeTracker create(PVRecord pvRecord) {
+        return new PVChangeTrackerImpl(pvRecord);
+    }
+
+    private static class PVChangeTrackerImpl implements PVChangeTracker,PVListener {
+        private final PVRecord pvRecord;
+        private final ArrayList<PVRecordField> pvRecordFieldList = new ArrayList<PVRecordField>();
+        // the offsets, relative to the record, of the fields that were put
+        private final BitSet changedBitSet;
+        private boolean isTracking = true;
+        private boolean allChanged = true;
+
+        private PVChangeTrackerImpl(PVRecord pvRecord) {
+            this.pvRecord = pvRecord;
+            changedBitSet = new BitSet(pvRecord.getPVRecordStructure().getPVStructure().getNumberFields());
+            pvRecord.registerListener(this);
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.database.PVChangeTracker#addField(org.epics.pvioc.database.PVRecordField)
+         */
+        @Override
+        public boolean addField(PVRecordField pvRecordField) {
+            if(!isTracking) return false;
+            if(!pvRecordField.addListener(this)) return false;
+            pvRecordFieldList.add(pvRecordField);
+            return true;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.database.PVChangeTracker#isChanged(org.epics.pvdata.pv.PVField)
+         */
+        @Override
+        public boolean isChanged(PVField pvField) {
+            if(allChanged || !isTracking) return true;
+            int offset = pvField.getFieldOffset();
+            int nextSet = changedBitSet.nextSetBit(offset);
+            return (nextSet>=0 && nextSet<pvField.getNextFieldOffset());
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.database.PVChangeTracker#getChanged(org.epics.pvdata.pv.PVField, org.epics.pvdata.misc.BitSet)
+         */
+        @Override
+        public boolean getChanged(PVField pvField,BitSet bitSet) {
+            if(allChanged || !isTracking) return false;
+            int offset = pvField.getFieldOffset();
+            int nextOffset = pvField.getNextFieldOffset();
+            int nextSet = changedBitSet.nextSetBit(offset);
+            while(nextSet>=0 && nextSet<nextOffset) {
+                bitSet.set(nextSet - offset);
+                nextSet = changedBitSet.nextSetBit(nextSet+1);
+            }
+            return true;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.database.PVChangeTracker#clear()
+         */
+        @Override
+        public void clear() {
+            changedBitSet.clear();
+            allChanged = false;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.database.PVChangeTracker#destroy()
+         */
+        @Override
+        public void destroy() {
+            if(!isTracking) return;
+            pvRecord.unregisterListener(this);
+            unlisten(pvRecord);
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.database.PVListener#dataPut(org.epics.pvioc.database.PVRecordField)
+         */
+        @Override
+        public void dataPut(PVRecordField pvRecordField) {
+            changedBitSet.set(pvRecordField.getPVField().getFieldOffset());
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.database.PVListener#dataPut(org.epics.pvioc.database.PVRecordStructure, org.epics.pvioc.database.PVRecordField)
+         */
+        @Override
+        public void dataPut(PVRecordStructure requested,PVRecordField pvRecordField) {
+            changedBitSet.set(pvRecordField.getPVField().getFieldOffset());
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.database.PVListener#beginGroupPut(org.epics.pvioc.database.PVRecord)
+         */
+        @Override
+        public void beginGroupPut(PVRecord pvRecord) {}
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.database.PVListener#endGroupPut(org.epics.pvioc.database.PVRecord)
+         */
+        @Override
+        public void endGroupPut(PVRecord pvRecord) {}
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.database.PVListener#unlisten(org.epics.pvioc.database.PVRecord)
+         */
+        @Override
+        public void unlisten(PVRecord pvRecord) {
+            isTracking = false;
+            for(PVRecordField pvRecordField : pvRecordFieldList) {
+                pvRecordField.removeListener(this);
+            }
+            pvRecordFieldList.clear();
+        }
+    }
+}
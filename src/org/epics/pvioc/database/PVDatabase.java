@@ -65,6 +65,17 @@ public interface PVDatabase extends Requester{
      * @return The array of record instances.
      */
     PVRecord[] getRecords();
+    /**
+     * Get, in sorted order, the names of the records of this database that match a pattern.
+     * Only the names that follow the cursor are examined, so a large database can be
+     * browsed a page at a time by passing the last name of the previous page as the cursor.
+     * @param pattern The pattern. null matches all names.
+     * @param match How the pattern is matched.
+     * @param cursor Only names that sort after the cursor are returned. null means start with the first name.
+     * @param limit The maximum number of names. A value &lt;= 0 means no limit.
+     * @return The names. If the pattern is not a valid regular expression the array is empty.
+     */
+    String[] findRecordNames(String pattern,RecordNameMatch match,String cursor,int limit);
     /**
      * find a structure.
      * @param structureName The structure name.
@@ -12,6 +12,9 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -226,7 +229,14 @@ public class PVDatabaseFactory {
         private String name;
         private TreeMap<String,PVStructure> structureMap = new TreeMap<String,PVStructure>();
         private boolean isMaster = false;
+        // recordMap keeps the insertion order and is only accessed with rwLock held.
+        // recordIndex has the same content and is used by findRecord without locking.
+        // recordNameIndex has the sorted names and is used by findRecordNames without locking.
+        // recordArray is the insertion ordered content and is null after a change until it is needed.
         private LinkedHashMap<String,PVRecord> recordMap = new LinkedHashMap<String,PVRecord>();
+        private ConcurrentHashMap<String,PVRecord> recordIndex = new ConcurrentHashMap<String,PVRecord>();
+        private ConcurrentSkipListSet<String> recordNameIndex = new ConcurrentSkipListSet<String>();
+        private volatile PVRecord[] recordArray = null;
         private ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
         private LinkedList<Requester> messageRequesterList = linkedListCreate.create();
         private LinkedListArray<Requester> messageRequesterArray = linkedListCreate.createArray();
@@ -267,6 +277,9 @@ public class PVDatabaseFactory {
                     return false;
                 }
                 recordMap.put(key,record);
+                recordIndex.put(key,record);
+                recordNameIndex.add(key);
+                recordArray = null;
             } finally {
                 rwLock.writeLock().unlock();
             }
@@ -295,15 +308,9 @@ public class PVDatabaseFactory {
          * @see org.epics.pvdata.pv.PVDatabase#findRecord(java.lang.String)
          */
         public PVRecord findRecord(String recordName) {
-            rwLock.readLock().lock();
-            try {
-                PVRecord record = null;
-                record = recordMap.get(recordName);
-                if(record==null && this!=master) record = master.findRecord(recordName);
-                return record;
-            } finally {
-                rwLock.readLock().unlock();
-            }
+            PVRecord record = recordIndex.get(recordName);
+            if(record==null && this!=master) record = master.findRecord(recordName);
+            return record;
         }
         /* (non-Javadoc)
          * @see org.epics.pvdata.pv.PVDatabase#findStructure(java.lang.String)
@@ -337,32 +344,75 @@ public class PVDatabaseFactory {
          * @see org.epics.pvdata.pv.PVDatabase#getRecordNames()
          */
         public String[] getRecordNames() {
-            rwLock.readLock().lock();
-            try {
-                String[] array = new String[recordMap.size()];
-                int index = 0;
-                Set<String> keys = recordMap.keySet();
-                for(String key: keys) {
-                    array[index++] = key;
-                }
-                return array;
-            } finally {
-                rwLock.readLock().unlock();
+            PVRecord[] records = getRecordArray();
+            String[] array = new String[records.length];
+            for(int i=0; i<records.length; i++) {
+                array[i] = records[i].getRecordName();
             }
+            return array;
         }
         /* (non-Javadoc)
          * @see org.epics.pvdata.pv.PVDatabase#getRecords()
          */
         public PVRecord[] getRecords() {
+            return getRecordArray().clone();
+        }
+        // The returned array must not be modified.
+        private PVRecord[] getRecordArray() {
+            PVRecord[] array = recordArray;
+            if(array!=null) return array;
             rwLock.readLock().lock();
             try {
-                PVRecord[] array = new PVRecord[recordMap.size()];
+                array = new PVRecord[recordMap.size()];
                 recordMap.values().toArray(array);
+                // a writer sets recordArray null only while holding the write lock
+                recordArray = array;
                 return array;
             } finally {
                 rwLock.readLock().unlock();
             }
         }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.database.PVDatabase#findRecordNames(java.lang.String, org.epics.pvioc.database.RecordNameMatch, java.lang.String, int)
+         */
+        @Override
+        public String[] findRecordNames(String pattern,RecordNameMatch match,String cursor,int limit) {
+            // all names that can match start with prefix and are adjacent in recordNameIndex
+            String prefix = "";
+            Pattern regex = null;
+            if(pattern!=null) {
+                switch(match) {
+                case prefix:
+                    prefix = pattern;
+                    break;
+                case glob:
+                    prefix = globPrefix(pattern);
+                    regex = Pattern.compile(globToRegularExpression(pattern));
+                    break;
+                case regex:
+                    try {
+                        regex = Pattern.compile(pattern);
+                    } catch (PatternSyntaxException e) {
+                        return new String[0];
+                    }
+                    break;
+                }
+            }
+            NavigableSet<String> names = recordNameIndex;
+            if(cursor!=null && cursor.compareTo(prefix)>=0) {
+                names = names.tailSet(cursor, false);
+            } else if(prefix.length()>0) {
+                names = names.tailSet(prefix, true);
+            }
+            ArrayList<String> list = new ArrayList<String>();
+            for(String name : names) {
+                if(!name.startsWith(prefix)) break;
+                if(regex!=null && !regex.matcher(name).matches()) continue;
+                list.add(name);
+                if(limit>0 && list.size()>=limit) break;
+            }
+            return list.toArray(new String[list.size()]);
+        }
         /* (non-Javadoc)
          * @see org.epics.pvdata.pv.PVDatabase#getStructureNames()
          */
@@ -403,6 +453,9 @@ public class PVDatabaseFactory {
                 master.merge(structureMap,recordMap);
                 structureMap.clear();
                 recordMap.clear();
+                recordIndex.clear();
+                recordNameIndex.clear();
+                recordArray = null;
                 if(name.equals("beingInstalled")) PVDatabaseFactory.beingInstalled = null;
             } finally {
                 rwLock.writeLock().unlock();
@@ -419,12 +472,39 @@ public class PVDatabaseFactory {
             try {
                 structureMap.clear();
                 recordMap.clear();
+                recordIndex.clear();
+                recordNameIndex.clear();
+                recordArray = null;
                 if(name.equals("beingInstalled")) PVDatabaseFactory.beingInstalled = null;
             } finally {
                 rwLock.writeLock().unlock();
             }
             
         }
+        private static String globPrefix(String glob) {
+            for(int i=0; i<glob.length(); i++) {
+                char ch = glob.charAt(i);
+                if(ch=='*' || ch=='?') return glob.substring(0, i);
+            }
+            return glob;
+        }
+        
+        private static String globToRegularExpression(String glob) {
+            StringBuilder builder = new StringBuilder();
+            for(int i=0; i<glob.length(); i++) {
+                char ch = glob.charAt(i);
+                if(ch=='*') {
+                    builder.append(".*");
+                } else if(ch=='?') {
+                    builder.append('.');
+                } else {
+                    // a backslash before a character that is not a letter or digit always means the character
+                    if(!Character.isLetterOrDigit(ch)) builder.append('\\');
+                    builder.append(ch);
+                }
+            }
+            return builder.toString();
+        }
         // merge allows master to be locked once
         private void merge(
                 TreeMap<String,PVStructure> structure,
@@ -443,7 +523,10 @@ public class PVDatabaseFactory {
                     PVRecord pvRecord = from.get(key);
                     pvRecord.addRequester(this);
                     recordMap.put(key,pvRecord);
+                    recordIndex.put(key,pvRecord);
+                    recordNameIndex.add(key);
                 }
+                recordArray = null;
             } finally {
                 rwLock.writeLock().unlock();
             }
@@ -460,23 +543,16 @@ public class PVDatabaseFactory {
             } catch (PatternSyntaxException e) {
                 return new String[0];
             }
-            rwLock.readLock().lock();
-            try {
-                Set<Map.Entry<String,PVRecord>> recordSet = recordMap.entrySet();
-                Iterator<Map.Entry<String,PVRecord>> iter = recordSet.iterator();
-                while(iter.hasNext()) {
-                    Map.Entry<String,PVRecord> entry = iter.next();
-                    String name = entry.getKey();
-                    if(pattern.matcher(name).matches()) {
-                        list.add(name);
-                    }
+            PVRecord[] records = getRecordArray();
+            for(PVRecord record : records) {
+                String name = record.getRecordName();
+                if(pattern.matcher(name).matches()) {
+                    list.add(name);
                 }
-                String[] result = new String[list.size()];
-                for(int i=0; i< list.size(); i++) result[i] = list.get(i);
-                return result;
-            } finally {
-                rwLock.readLock().unlock();
             }
+            String[] result = new String[list.size()];
+            for(int i=0; i< list.size(); i++) result[i] = list.get(i);
+            return result;
         }
         /* (non-Javadoc)
          * @see org.epics.pvdata.pv.PVDatabase#recordToString(java.lang.String)
@@ -490,21 +566,14 @@ public class PVDatabaseFactory {
             } catch (PatternSyntaxException e) {
                 return "PatternSyntaxException: " + e;
             }
-            rwLock.readLock().lock();
-            try {
-                Set<Map.Entry<String,PVRecord>> recordSet = recordMap.entrySet();
-                Iterator<Map.Entry<String,PVRecord>> iter = recordSet.iterator();
-                while(iter.hasNext()) {
-                    Map.Entry<String,PVRecord> entry = iter.next();
-                    String name = entry.getKey();
-                    if(pattern.matcher(name).matches()) {
-                        result.append(String.format("%nrecord %s%s",name,entry.getValue().toString()));
-                    }
+            PVRecord[] records = getRecordArray();
+            for(PVRecord record : records) {
+                String name = record.getRecordName();
+                if(pattern.matcher(name).matches()) {
+                    result.append(String.format("%nrecord %s%s",name,record.toString()));
                 }
-                return result.toString();
-            } finally {
-                rwLock.readLock().unlock();
             }
+            return result.toString();
         }
         /* (non-Javadoc)
          * @see org.epics.pvdata.pv.PVDatabase#removeRecord(org.epics.pvdata.pv.PVRecord)
@@ -516,8 +585,11 @@ public class PVDatabaseFactory {
             rwLock.writeLock().lock();
             try {
                 String key = record.getRecordName();
-                if(recordMap.remove(key)!=null) return true;
-                return false;
+                if(recordMap.remove(key)==null) return false;
+                recordIndex.remove(key);
+                recordNameIndex.remove(key);
+                recordArray = null;
+                return true;
             } finally {
                 rwLock.writeLock().unlock();
             }
@@ -541,13 +613,16 @@ public class PVDatabaseFactory {
         @Override
         public boolean cleanMaster() {
             if(isMaster) {
-                for (PVRecord record : recordMap.values()) {
+                for (PVRecord record : getRecordArray()) {
                     record.removeRequester(this);
                 }
             }
             rwLock.writeLock().lock();
             try {
                 recordMap.clear();
+                recordIndex.clear();
+                recordNameIndex.clear();
+                recordArray = null;
                 structureMap.clear();
                 addBasicStructures();
                 return true;
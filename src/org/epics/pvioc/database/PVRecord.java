@@ -81,11 +81,49 @@ public interface PVRecord {
     boolean tryLock();
     /**
      * While holding lock on this record lock another record.
-     * If the other record is already locked than this record may be unlocked.
+     * If the other record is already locked by another thread and must be locked before this record
+     * than this record may be unlocked.
+     * The other record is never unlocked and this record is never released if the caller already holds the other record,
+     * e.g. because both are in a PVRecordLockSet or RecordProcess.addLinkedRecord was called.
      * The caller must call the unlock method of the other record when done with it.
      * @param otherRecord the other record.
      */
     void lockOtherRecord(PVRecord otherRecord);
+    /**
+     * Get the position of the record in the global lock order.
+     * Records that are locked together must be locked in increasing order, which is what
+     * lockOtherRecord and PVRecordLockSet do.
+     * @return The order, which is unique and never changes.
+     */
+    int getLockOrder();
+    /**
+     * Start an optimistic read of the record without locking it.
+     * The caller copies the data it needs and then calls validate.
+     * The copy must not be used unless validate returns true.
+     * Since the record can change during the copy the caller must be prepared for
+     * inconsistent data and for RuntimeExceptions while copying.
+     * <p>
+     * The memory ordering is that of a seqlock:
+     * <ul>
+     * <li>The data of a record is only modified while the record is locked.
+     * The first lock and the last unlock of a thread each increment a version,
+     * so the version is odd while the record is locked.</li>
+     * <li>tryOptimisticRead is a volatile read of the version.
+     * Reads of the data that follow it see at least every write made before the version was read.</li>
+     * <li>validate is a volatile read-modify-write of the version, which is a full fence.
+     * The reads of the data that come before it can not be reordered after it,
+     * so if the version is unchanged no writer modified the data while it was read.</li>
+     * </ul>
+     * @return A stamp for validate or 0 if the record is locked.
+     */
+    long tryOptimisticRead();
+    /**
+     * Check that the record has not been locked since tryOptimisticRead returned stamp.
+     * This orders the reads made since tryOptimisticRead before the check of the version.
+     * @param stamp The value returned by tryOptimisticRead.
+     * @return (false,true) if the data read since tryOptimisticRead (may not be, is) consistent.
+     */
+    boolean validate(long stamp);
     /**
      * Begin a group of related puts.
      */
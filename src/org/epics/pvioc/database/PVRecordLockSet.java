@@ -0,0 +1,66 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.database;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A group of records that are locked and unlocked together.
+ * The records are always locked in the order of PVRecord.getLockOrder, the order used by PVRecord.lockOtherRecord,
+ * so any number of threads can lock overlapping sets without deadlock and
+ * no record is ever unlocked while the set is being locked.
+ * The caller must not hold the lock of any record in the set, or of a record that is ordered after any of them,
+ * when lock is called.
+ * RecordProcess locks a set of the record and its linked records when it processes the record.
+ * @author mrk
+ *
+ */
+public class PVRecordLockSet {
+    private final PVRecord[] pvRecords;
+
+    /**
+     * Create a lock set.
+     * @param pvRecords The records. Duplicates are allowed.
+     */
+    public PVRecordLockSet(PVRecord[] pvRecords) {
+        PVRecord[] sorted = pvRecords.clone();
+        Arrays.sort(sorted, lockOrder);
+        int length = 0;
+        for(int i=0; i<sorted.length; i++) {
+            if(length>0 && sorted[length-1]==sorted[i]) continue;
+            sorted[length++] = sorted[i];
+        }
+        this.pvRecords = Arrays.copyOf(sorted, length);
+    }
+    /**
+     * Get the records in the order they are locked.
+     * @return The records. The caller must not modify the array.
+     */
+    public PVRecord[] getPVRecords() {
+        return pvRecords;
+    }
+    /**
+     * Lock every record of the set.
+     */
+    public void lock() {
+        for(PVRecord pvRecord : pvRecords) pvRecord.lock();
+    }
+    /**
+     * Unlock every record of the set.
+     */
+    public void unlock() {
+        for(int i=pvRecords.length-1; i>=0; i--) pvRecords[i].unlock();
+    }
+
+    private static final Comparator<PVRecord> lockOrder = new Comparator<PVRecord>() {
+        public int compare(PVRecord left, PVRecord right) {
+            int leftOrder = left.getLockOrder();
+            int rightOrder = right.getLockOrder();
+            return (leftOrder<rightOrder) ? -1 : ((leftOrder==rightOrder) ? 0 : 1);
+        }
+    };
+}
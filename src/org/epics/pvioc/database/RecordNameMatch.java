@@ -0,0 +1,26 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.database;
+
+/**
+ * How the pattern given to PVDatabase.findRecordNames is matched against record names.
+ * @author mrk
+ *
+ */
+public enum RecordNameMatch {
+    /**
+     * The name starts with the pattern.
+     */
+    prefix,
+    /**
+     * The pattern is a glob. A '*' matches any sequence of characters and a '?' matches a single character.
+     */
+    glob,
+    /**
+     * The pattern is a java.util.regex regular expression that must match the complete name.
+     */
+    regex
+}
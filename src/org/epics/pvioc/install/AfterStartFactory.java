@@ -153,9 +153,16 @@ public class AfterStartFactory {
         public void requestCallback(AfterStartNode node,boolean afterMerge, ThreadPriority priority) {
             LinkedList<ASRNode>[] lists = (afterMerge ? afterMergeLists : beforeMergeLists);
             int index = priority.ordinal();
-            if(lists[index]==null) lists[index] = asrListCreate.create();
+            LinkedList<ASRNode> list = null;
+            // supports of different records can be started by different threads
+            synchronized(lists) {
+                if(lists[index]==null) lists[index] = asrListCreate.create();
+                list = lists[index];
+            }
             ASRNode nodeImpl = (ASRNode)node;
-            lists[index].addTail(nodeImpl.listNode);
+            synchronized(list) {
+                list.addTail(nodeImpl.listNode);
+            }
         }
         /* (non-Javadoc)
          * @see org.epics.pvioc.install.AfterStart#done(org.epics.pvioc.install.AfterStartNode)
@@ -12,6 +12,8 @@ import org.epics.pvioc.database.PVRecord;
 
 /**
  * Install structures and records into the master database.
+ * If the property or environment variable IOCDatabaseImageDir is defined, each xml file is
+ * loaded from a binary image kept in that directory. See PVDatabaseImageFactory.
  * @author mrk
  *
  */
@@ -56,6 +58,19 @@ public interface Install {
      * @return (false,true) if the new records (were not, were) merged into master.
      */
     boolean installRecords(String xmlFile,Requester requester);
+    /**
+     * Install records from several files into the master PVDatabase.
+     * The files are parsed at the same time, each into its own database.
+     * The number of threads is given by the property or environment variable IOCInstallThreads.
+     * The default is the number of processors.
+     * If no parse errors occur the records of all files are put into a PVDatabase named beingInstalled
+     * and then installed just like installRecords(xmlFile,requester).
+     * Since the files are parsed independently a file must not refer to a record defined in another file of the list.
+     * @param xmlFiles The xml files defining records.
+     * @param requester The requester.
+     * @return (false,true) if the new records (were not, were) merged into master.
+     */
+    boolean installRecords(String[] xmlFiles,Requester requester);
     /**
      * Install records into the master PVDatabase.
      * The new records are merged into master if
@@ -5,8 +5,15 @@
  */
 package org.epics.pvioc.install;
 
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.epics.pvdata.misc.RunnableReady;
+import org.epics.pvdata.misc.ThreadCreate;
+import org.epics.pvdata.misc.ThreadCreateFactory;
+import org.epics.pvdata.misc.ThreadPriority;
+import org.epics.pvdata.misc.ThreadReady;
 import org.epics.pvdata.pv.MessageType;
 import org.epics.pvdata.pv.PVStructure;
 import org.epics.pvdata.pv.Requester;
@@ -15,6 +22,7 @@ import org.epics.pvioc.database.PVDatabaseFactory;
 import org.epics.pvioc.database.PVRecord;
 import org.epics.pvioc.database.PVReplaceFactory;
 import org.epics.pvioc.pvAccess.ChannelServerFactory;
+import org.epics.pvioc.xml.PVDatabaseImageFactory;
 import org.epics.pvioc.xml.XMLToPVDatabaseFactory;
 
 /**
@@ -38,6 +46,14 @@ public class InstallFactory {
         private static Requester realRequester = null;
         private static MessageType maxError;
         private static AtomicBoolean isInUse = new AtomicBoolean(false);
+        private static final ThreadCreate threadCreate = ThreadCreateFactory.getThreadCreate();
+        // maximum number of threads that parse files for installRecords(String[],Requester)
+        private static int maxParseThreads = Runtime.getRuntime().availableProcessors();
+        static {
+            String envValue = System.getProperty("IOCInstallThreads", System.getenv("IOCInstallThreads"));
+            if(envValue!=null) maxParseThreads = Integer.parseInt(envValue);
+            if(maxParseThreads<1) maxParseThreads = 1;
+        }
         private static synchronized InstallImpl getInstall() {
         	 if (singleImplementation==null) {
                  singleImplementation = new InstallImpl();
@@ -52,7 +68,7 @@ public class InstallFactory {
             return "InstallImpl";
         }
         @Override
-        public void message(String message, MessageType messageType) {
+        public synchronized void message(String message, MessageType messageType) {
             if(messageType.compareTo(maxError)>0) maxError = messageType;
             if(realRequester!=null) realRequester.message(message, messageType);
             
@@ -96,6 +112,27 @@ public class InstallFactory {
                 isInUse.set(false);
             }
         }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.install.Install#installRecords(java.lang.String[], org.epics.pvdata.pv.Requester)
+         */
+        @Override
+        public boolean installRecords(String[] xmlFiles, Requester requester) {
+            boolean gotIt = isInUse.compareAndSet(false,true);
+            if(!gotIt) {
+                requester.message("InstallFactory is already active",
+                        MessageType.fatalError);
+                return false;
+            }
+            try {
+                realRequester = requester;
+                maxError = MessageType.info;
+                return records(xmlFiles);
+            }
+            finally {
+                realRequester = null;
+                isInUse.set(false);
+            }
+        }
         /* (non-Javadoc)
          * @see org.epics.pvioc.install.Install#installRecortd(org.epics.pvdata.pv.PVRecord, org.epics.pvdata.pv.Requester)
          */
@@ -204,9 +241,19 @@ public class InstallFactory {
 
        
 
+        // uses a binary image of the file if IOCDatabaseImageDir is defined
+        private void convert(PVDatabase pvDatabase,String file,boolean reportSubstitutionFailure) {
+            String imageFile = PVDatabaseImageFactory.getImageFile(file);
+            if(imageFile==null) {
+                XMLToPVDatabaseFactory.convert(pvDatabase,file,this,reportSubstitutionFailure,null,null,null);
+                return;
+            }
+            PVDatabaseImageFactory.convert(pvDatabase,file,imageFile,this,reportSubstitutionFailure);
+        }
+
         private boolean structures(String file) {
             PVDatabase pvDatabaseAdd = PVDatabaseFactory.create("beingInstalled");
-            XMLToPVDatabaseFactory.convert(pvDatabaseAdd,file,this,false,null,null,null);
+            convert(pvDatabaseAdd,file,false);
             if(maxError!=MessageType.info) {
                 message("installStructures failed because of xml errors.",
                         MessageType.fatalError);
@@ -235,7 +282,7 @@ public class InstallFactory {
 
         private boolean records(String file) {
             PVDatabase pvDatabaseAdd = PVDatabaseFactory.create("beingInstalled");
-            XMLToPVDatabaseFactory.convert(pvDatabaseAdd,file,this);
+            convert(pvDatabaseAdd,file,true);
             if(maxError!=MessageType.info) {
                 pvDatabaseAdd.abandon();
                 return false;
@@ -245,6 +292,77 @@ public class InstallFactory {
             return result;
         }
         
+        private boolean records(String[] files) {
+            PVDatabase[] pvDatabases = parse(files);
+            if(maxError!=MessageType.info) {
+                for(PVDatabase pvDatabase : pvDatabases) pvDatabase.abandon();
+                return false;
+            }
+            // the records of all files are installed together
+            PVDatabase pvDatabaseAdd = PVDatabaseFactory.create("beingInstalled");
+            boolean result = true;
+            for(int i=0; i<files.length; i++) {
+                PVDatabase pvDatabase = pvDatabases[i];
+                if(pvDatabase.getStructures().length!=0) {
+                    message(files[i] + " contains structure definitions",MessageType.fatalError);
+                    result = false;
+                }
+                PVRecord[] pvRecords = pvDatabase.getRecords();
+                for(PVRecord pvRecord : pvRecords) {
+                    if(!pvDatabaseAdd.addRecord(pvRecord)) {
+                        message("record " + pvRecord.getRecordName() + " is defined in more than one file",
+                                MessageType.fatalError);
+                        result = false;
+                    }
+                }
+                pvDatabase.abandon();
+            }
+            if(result) result = records(pvDatabaseAdd);
+            if(!result) pvDatabaseAdd.abandon();
+            return result;
+        }
+        
+        // Each file is parsed into its own database. The files are parsed by up to maxParseThreads threads.
+        private PVDatabase[] parse(final String[] files) {
+            final PVDatabase[] pvDatabases = new PVDatabase[files.length];
+            for(int i=0; i<files.length; i++) pvDatabases[i] = PVDatabaseFactory.create("beingParsed");
+            int numberThreads = Math.min(maxParseThreads, files.length);
+            if(numberThreads<1) return pvDatabases;
+            final AtomicInteger nextFile = new AtomicInteger(0);
+            final CountDownLatch done = new CountDownLatch(numberThreads);
+            final Runnable parser = new Runnable() {
+                public void run() {
+                    try {
+                        int index = 0;
+                        while((index = nextFile.getAndIncrement())<files.length) {
+                            convert(pvDatabases[index],files[index],true);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            };
+            RunnableReady parserThread = new RunnableReady() {
+                public void run(ThreadReady threadReady) {
+                    threadReady.ready();
+                    parser.run();
+                }
+            };
+            int priority = ThreadPriority.low.getJavaPriority();
+            for(int i=1; i<numberThreads; i++) {
+                threadCreate.create("installParser[" + String.valueOf(i) + "]", priority, parserThread);
+            }
+            // the caller is also a parser
+            parser.run();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                message("interrupted while waiting for parser threads",MessageType.fatalError);
+            }
+            return pvDatabases;
+        }
+        
         private boolean records(PVDatabase pvDatabaseAdd) {
             PVStructure[] pvStructures = pvDatabaseAdd.getStructures();
             if(pvStructures.length!=0) return false;
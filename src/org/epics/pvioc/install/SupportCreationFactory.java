@@ -8,7 +8,23 @@ package org.epics.pvioc.install;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.epics.pvdata.misc.RunnableReady;
+import org.epics.pvdata.misc.ThreadCreate;
+import org.epics.pvdata.misc.ThreadCreateFactory;
+import org.epics.pvdata.misc.ThreadPriority;
+import org.epics.pvdata.misc.ThreadReady;
 import org.epics.pvdata.pv.MessageType;
 import org.epics.pvdata.pv.PVAuxInfo;
 import org.epics.pvdata.pv.PVField;
@@ -27,6 +43,8 @@ import org.epics.pvioc.support.RecordProcess;
 import org.epics.pvioc.support.RecordProcessFactory;
 import org.epics.pvioc.support.Support;
 import org.epics.pvioc.support.SupportState;
+import org.epics.pvioc.support.dbLink.LinkFactory;
+import org.epics.pvioc.support.dbLink.LinkGraphFactory;
 
 
 /**
@@ -47,10 +65,25 @@ public class SupportCreationFactory {
     
     private static final PVDatabase masterDatabase = PVDatabaseFactory.getMaster();
     private static final String supportFactory = "supportFactory";
+    private static final ThreadCreate threadCreate = ThreadCreateFactory.getThreadCreate();
+    // The create methods that have already been found. The key is the factory name followed by the argument class name.
+    private static final ConcurrentHashMap<String,Method> createMethodMap = new ConcurrentHashMap<String,Method>();
+    // maximum number of threads that create, initialize, and start support
+    private static int maxSupportThreads = Runtime.getRuntime().availableProcessors();
+    static {
+        String envValue = System.getProperty("IOCInstallThreads", System.getenv("IOCInstallThreads"));
+        if(envValue!=null) maxSupportThreads = Integer.parseInt(envValue);
+        if(maxSupportThreads<1) maxSupportThreads = 1;
+    }
+    
+    private interface Task {
+        boolean run(int index);
+    }
     
     static private class SupportCreationImpl implements SupportCreation{
         private Requester requester;
         private PVRecord[] pvRecords;
+        private PVRecord[][] recordGroups = null;
         
         private SupportCreationImpl(PVDatabase pvDatabase,Requester requester) {
             this.requester = requester;
@@ -60,57 +93,192 @@ public class SupportCreationFactory {
          * @see org.epics.pvioc.process.SupportCreation#createSupport()
          */
         public boolean createSupport() {
-            boolean result = true;
-            for(PVRecord pvRecord : pvRecords) {
-                result = SupportCreationFactory.createSupportPvt(requester,pvRecord.getPVRecordStructure());
-                if(!result) return result;
-                RecordProcessFactory.createRecordProcess(pvRecord);
-            }
-            for(PVRecord pvRecord : pvRecords) {
-                if(!createStructureSupport(pvRecord.getPVRecordStructure())) result = false;
-            }
-            return result;
+            boolean result = runParallel(pvRecords.length,new Task() {
+                public boolean run(int index) {
+                    PVRecord pvRecord = pvRecords[index];
+                    if(!SupportCreationFactory.createSupportPvt(requester,pvRecord.getPVRecordStructure())) return false;
+                    RecordProcessFactory.createRecordProcess(pvRecord);
+                    return true;
+                }
+            },true);
+            if(!result) return result;
+            return runParallel(pvRecords.length,new Task() {
+                public boolean run(int index) {
+                    return createStructureSupport(pvRecords[index].getPVRecordStructure());
+                }
+            },false);
         }
 
         /* (non-Javadoc)
          * @see org.epics.pvioc.process.SupportCreation#initializeSupport()
          */
         public boolean initializeSupport() {
-            boolean result = true;
-            for(int i=0; i<pvRecords.length; i++) {
-                PVRecord pvRecord = pvRecords[i];
-                RecordProcess process = pvRecord.getRecordProcess();
-                process.initialize();
-                SupportState supportState = process.getSupportState();
-                if(supportState!=SupportState.readyForStart) {
-                    printError(requester,pvRecord.getPVRecordStructure(),
-                        " state " + supportState.toString()
-                        + " but should be readyForStart");
-                    result = false;
+            final PVRecord[][] groups = getRecordGroups();
+            return runParallel(groups.length,new Task() {
+                public boolean run(int index) {
+                    boolean result = true;
+                    for(PVRecord pvRecord : groups[index]) {
+                        RecordProcess process = pvRecord.getRecordProcess();
+                        process.initialize();
+                        SupportState supportState = process.getSupportState();
+                        if(supportState!=SupportState.readyForStart) {
+                            printError(requester,pvRecord.getPVRecordStructure(),
+                                " state " + supportState.toString()
+                                + " but should be readyForStart");
+                            result = false;
+                        }
+                    }
+                    return result;
                 }
-            }
-            return result;
+            },false);
         }
         
         /* (non-Javadoc)
          * @see org.epics.pvioc.process.SupportCreation#startSupport()
          */
-        public boolean startSupport(AfterStart afterStart) {
-            boolean result = true;
+        public boolean startSupport(final AfterStart afterStart) {
+            final PVRecord[][] groups = getRecordGroups();
+            boolean result = runParallel(groups.length,new Task() {
+                public boolean run(int index) {
+                    boolean result = true;
+                    for(PVRecord pvRecord : groups[index]) {
+                        RecordProcess process = pvRecord.getRecordProcess();
+                        process.start(afterStart);
+                        SupportState supportState = process.getSupportState();
+                        if(supportState!=SupportState.ready) {
+                            printError(requester,pvRecord.getPVRecordStructure(),
+                                " state " + supportState.toString()
+                                + " but should be ready");
+                            result = false;
+                        }
+                    }
+                    return result;
+                }
+            },false);
+            if(!result) return result;
+            LinkGraphFactory.schedule(pvRecords, requester);
+            return result;
+        }
+        
+        // Calls task.run for each index from 0 to number-1 using up to maxSupportThreads threads.
+        // The caller is one of the threads. If stopOnFailure is true no new index is started after a task fails.
+        private boolean runParallel(final int number,final Task task,final boolean stopOnFailure) {
+            int numberThreads = Math.min(maxSupportThreads, number);
+            if(numberThreads<1) return true;
+            final AtomicInteger nextIndex = new AtomicInteger(0);
+            final AtomicBoolean result = new AtomicBoolean(true);
+            final AtomicReference<RuntimeException> exception = new AtomicReference<RuntimeException>();
+            final CountDownLatch done = new CountDownLatch(numberThreads);
+            final Runnable runnable = new Runnable() {
+                public void run() {
+                    try {
+                        int index = 0;
+                        while((index = nextIndex.getAndIncrement())<number) {
+                            if(exception.get()!=null) break;
+                            if(stopOnFailure && !result.get()) break;
+                            if(!task.run(index)) result.set(false);
+                        }
+                    } catch (RuntimeException e) {
+                        exception.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            };
+            RunnableReady runnableReady = new RunnableReady() {
+                public void run(ThreadReady threadReady) {
+                    threadReady.ready();
+                    runnable.run();
+                }
+            };
+            int priority = ThreadPriority.low.getJavaPriority();
+            for(int i=1; i<numberThreads; i++) {
+                threadCreate.create("supportCreation[" + String.valueOf(i) + "]", priority, runnableReady);
+            }
+            runnable.run();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                requester.message("interrupted while waiting for support threads",MessageType.fatalError);
+                return false;
+            }
+            // report a failure of another thread just like a failure of the caller
+            if(exception.get()!=null) throw exception.get();
+            return result.get();
+        }
+        
+        // Records that refer to each other via database links are put into the same group.
+        // Each group is initialized and started by a single thread in database order,
+        // so the records of a link chain see each other in the same state as when all records were handled by one thread.
+        private PVRecord[][] getRecordGroups() {
+            if(recordGroups!=null) return recordGroups;
+            Map<String,Integer> indexMap = new HashMap<String,Integer>();
+            for(int i=0; i<pvRecords.length; i++) indexMap.put(pvRecords[i].getRecordName(), i);
+            int[] parent = new int[pvRecords.length];
+            for(int i=0; i<parent.length; i++) parent[i] = i;
+            ArrayList<String> linkNames = new ArrayList<String>();
             for(int i=0; i<pvRecords.length; i++) {
-                PVRecord pvRecord = pvRecords[i];
-                RecordProcess process = pvRecord.getRecordProcess();
-                process.start(afterStart);
-                SupportState supportState = process.getSupportState();
-                if(supportState!=SupportState.ready) {
-                    printError(requester,pvRecord.getPVRecordStructure(),
-                        " state " + supportState.toString()
-                        + " but should be ready");
-                    result = false;
+                linkNames.clear();
+                getLinkRecordNames(pvRecords[i].getPVRecordStructure(),linkNames);
+                for(String name : linkNames) {
+                    // records that are not found are already in master and started
+                    Integer other = indexMap.get(name);
+                    if(other==null) continue;
+                    int root = findRoot(parent,i);
+                    int otherRoot = findRoot(parent,other);
+                    if(root<otherRoot) {
+                        parent[otherRoot] = root;
+                    } else {
+                        parent[root] = otherRoot;
+                    }
+                }
+            }
+            Map<Integer,ArrayList<PVRecord>> groupMap = new LinkedHashMap<Integer,ArrayList<PVRecord>>();
+            for(int i=0; i<pvRecords.length; i++) {
+                Integer root = findRoot(parent,i);
+                ArrayList<PVRecord> group = groupMap.get(root);
+                if(group==null) {
+                    group = new ArrayList<PVRecord>();
+                    groupMap.put(root, group);
+                }
+                group.add(pvRecords[i]);
+            }
+            PVRecord[][] groups = new PVRecord[groupMap.size()][];
+            int index = 0;
+            for(ArrayList<PVRecord> group : groupMap.values()) {
+                groups[index++] = group.toArray(new PVRecord[group.size()]);
+            }
+            // the largest groups are started first so that a long link chain is not the last thing left
+            Arrays.sort(groups, new Comparator<PVRecord[]>() {
+                public int compare(PVRecord[] a, PVRecord[] b) {
+                    return b.length - a.length;
+                }
+            });
+            recordGroups = groups;
+            return recordGroups;
+        }
+        
+        private static int findRoot(int[] parent,int index) {
+            while(parent[index]!=index) {
+                parent[index] = parent[parent[index]];
+                index = parent[index];
+            }
+            return index;
+        }
+        
+        private static void getLinkRecordNames(PVRecordStructure pvRecordStructure,ArrayList<String> names) {
+            PVRecordField[] pvRecordFields = pvRecordStructure.getPVRecordFields();
+            for(int i=0; i<pvRecordFields.length; i++) {
+                PVRecordField pvRecordField = pvRecordFields[i];
+                Type type = pvRecordField.getPVField().getField().getType();
+                if(type==Type.structure) {
+                    getLinkRecordNames((PVRecordStructure)pvRecordField,names);
+                } else {
+                    String name = LinkFactory.getLinkRecordName(pvRecordField);
+                    if(name!=null) names.add(name);
                 }
             }
-            return result;
-            
         }
        
    
@@ -179,18 +347,7 @@ System.out.println(pvRecordField.getPVField());
             printError(requester,pvRecordField,"support " + supportName + " does not define a factory name");
             return false;
         }
-        Class<?> supportClass;
         Support support = null;
-        Method method = null;
-        try {
-            supportClass = Class.forName(factoryName);
-        }catch (ClassNotFoundException e) {
-            printError(requester,pvRecordField,
-                    "support " + supportName 
-                    + " factory " + e.getLocalizedMessage()
-                    + " class not found");
-            return false;
-        }
         String data = null;
         Type type = pvRecordField.getPVField().getField().getType();
         if(type==Type.structure) {
@@ -199,30 +356,45 @@ System.out.println(pvRecordField.getPVField());
         	data = "PVRecordField";
         }
         data  = "org.epics.pvioc.database." + data;
-        try {
-            method = supportClass.getDeclaredMethod("create",
-                    Class.forName(data));    
-        } catch (NoSuchMethodException e) {
-            printError(requester,pvRecordField,
-                    "support "
-                    + supportName
-                    + " no factory method "
-                    + e.getLocalizedMessage());
-            return false;
-        } catch (ClassNotFoundException e) {
-            printError(requester,pvRecordField,
-                    "support "
-                    + factoryName
-                    + " arg class "
-                    + e.getLocalizedMessage());
-            return false;
-        }
-        if(!Modifier.isStatic(method.getModifiers())) {
-            printError(requester,pvRecordField,
-                    "support "
-                    + factoryName
-                    + " create is not a static method ");
-            return false;
+        String methodKey = factoryName + " " + data;
+        Method method = createMethodMap.get(methodKey);
+        if(method==null) {
+            Class<?> supportClass;
+            try {
+                supportClass = Class.forName(factoryName);
+            }catch (ClassNotFoundException e) {
+                printError(requester,pvRecordField,
+                        "support " + supportName 
+                        + " factory " + e.getLocalizedMessage()
+                        + " class not found");
+                return false;
+            }
+            try {
+                method = supportClass.getDeclaredMethod("create",
+                        Class.forName(data));    
+            } catch (NoSuchMethodException e) {
+                printError(requester,pvRecordField,
+                        "support "
+                        + supportName
+                        + " no factory method "
+                        + e.getLocalizedMessage());
+                return false;
+            } catch (ClassNotFoundException e) {
+                printError(requester,pvRecordField,
+                        "support "
+                        + factoryName
+                        + " arg class "
+                        + e.getLocalizedMessage());
+                return false;
+            }
+            if(!Modifier.isStatic(method.getModifiers())) {
+                printError(requester,pvRecordField,
+                        "support "
+                        + factoryName
+                        + " create is not a static method ");
+                return false;
+            }
+            createMethodMap.putIfAbsent(methodKey, method);
         }
         try {
             support = (Support)method.invoke(null,pvRecordField);
@@ -7,7 +7,6 @@
 package org.epics.pvioc.monitor;
 
 import org.epics.pvdata.copy.PVCopy;
-import org.epics.pvdata.copy.PVCopyFactory;
 import org.epics.pvdata.factory.StatusFactory;
 import org.epics.pvdata.misc.BitSet;
 import org.epics.pvdata.misc.BitSetUtil;
@@ -36,9 +35,9 @@ import org.epics.pvdata.pv.StatusCreate;
 import org.epics.pvdata.pv.Type;
 import org.epics.pvioc.database.PVRecord;
 import org.epics.pvioc.database.PVRecordField;
-import org.epics.pvioc.pvAccess.PVCopyMonitor;
-import org.epics.pvioc.pvAccess.PVCopyMonitorFactory;
-import org.epics.pvioc.pvAccess.PVCopyMonitorRequester;
+import org.epics.pvioc.pvAccess.MonitorDispatcher;
+import org.epics.pvioc.pvAccess.PVCopyMultiplexer;
+import org.epics.pvioc.pvAccess.PVCopyMultiplexerFactory;
 
 
 /**
@@ -109,24 +108,33 @@ public class MonitorFactory {
 	
 	
 	
-	private static class MonitorImpl implements Monitor,PVCopyMonitorRequester {
+	private static class MonitorImpl implements Monitor,PVCopyMultiplexer.Subscriber {
 		private final PVRecord pvRecord;
 		private final MonitorRequester monitorRequester;
 		
 		private boolean isPeriodic = false;
 		private double periodicRate = 1.0;
+		private PVCopyMultiplexer multiplexer = null;
 		private PVCopy pvCopy = null;
 		private ElementQueue queueImpl = null;
-		private PVCopyMonitor pvCopyMonitor;
 		private final LinkedList<MonitorFieldNode> monitorFieldList = MonitorFieldNodeListCreate.create();
 		
         private boolean firstMonitor = false;
         private BitSet notMonitoredBitSet = null;
         private boolean isDestroyed = false;
+        private final MonitorDispatcher.Task eventTask;
         
 		private MonitorImpl(PVRecord pvRecord,MonitorRequester monitorRequester) {
 			this.pvRecord = pvRecord;
 			this.monitorRequester = monitorRequester;
+			eventTask = new MonitorDispatcher.Task(monitorRequester) {
+			    protected void dispatch() {
+			        synchronized(queueImpl) {
+			            if(isDestroyed) return;
+			        }
+			        MonitorImpl.this.monitorRequester.monitorEvent(MonitorImpl.this);
+			    }
+			};
 		}
 		
 		/* (non-Javadoc)
@@ -157,15 +165,18 @@ public class MonitorFactory {
 		    synchronized(queueImpl) {
 		        if(isDestroyed) return wasDestroyedStatus;
 		        firstMonitor = true;
-		        return queueImpl.start();
+		        queueImpl.start();
 		    }
+		    // gives this the latest snapshot. must not hold queueImpl because dataChanged is called with the record locked.
+		    multiplexer.addSubscriber(this);
+		    return okStatus;
 		}
 		/* (non-Javadoc)
 		 * @see org.epics.pvdata.monitor.Monitor#stop()
 		 */
 		@Override
 		public Status stop() {
-		    pvCopyMonitor.stopMonitoring();
+		    multiplexer.removeSubscriber(this);
 		    synchronized(queueImpl) {
 		        if(!isDestroyed) queueImpl.stop();
 		        return okStatus;
@@ -176,25 +187,27 @@ public class MonitorFactory {
 		 */
 		@Override
 		public void destroy() {
+		    multiplexer.removeSubscriber(this);
 		    synchronized(queueImpl) {
 		        if(isDestroyed) return;
 		        isDestroyed = true;
+		        queueImpl.stop();
 		    }
-		    unlisten();
-			stop();
+		    monitorRequester.unlisten(this);
 		}
 		/* (non-Javadoc)
-		 * @see org.epics.pvdata.pvCopy.PVCopyMonitorRequester#dataChanged()
+		 * @see org.epics.pvioc.pvAccess.PVCopyMultiplexer.Subscriber#dataChanged(org.epics.pvioc.pvAccess.PVCopyMultiplexer.Snapshot)
 		 */
 		@Override
-		public void dataChanged() {
+		public void dataChanged(PVCopyMultiplexer.Snapshot snapshot) {
 		    boolean notifyClient = false;
 		    synchronized(queueImpl) {
 		        if(isDestroyed) return;
+		        queueImpl.merge(snapshot);
 		        if(firstMonitor) {
-		            queueImpl.dataChanged();
+		            queueImpl.getChangedBitSet().set(0);
 		            firstMonitor = false;
-		            notifyClient = true;
+		            notifyClient = queueImpl.dataChanged();
 		        } else {
 		            boolean gotMonitor = false;
 		            if(!gotMonitor) {
@@ -229,17 +242,30 @@ public class MonitorFactory {
 		            }
 		        }
 		    }
-		    if(notifyClient) monitorRequester.monitorEvent(this);
-		}	
-        /* (non-Javadoc)
-		 * @see org.epics.pvdata.pvCopy.PVCopyMonitorRequester#unlisten()
+		    if(!notifyClient) return;
+		    if(MonitorDispatcher.isEnabled()) {
+		        // the record is locked. A slow client must not delay the record.
+		        eventTask.schedule();
+		    } else {
+		        monitorRequester.monitorEvent(this);
+		    }
+		}
+		/* (non-Javadoc)
+		 * @see org.epics.pvioc.pvAccess.PVCopyMultiplexer.Subscriber#unlisten()
 		 */
 		@Override
 		public void unlisten() {
 			monitorRequester.unlisten(this);
 		}
-
-
+		
+		private void monitorPending() {
+		    boolean notifyClient = false;
+		    synchronized(queueImpl) {
+		        if(isDestroyed) return;
+		        notifyClient = queueImpl.dataChanged();
+		    }
+		    if(notifyClient) monitorRequester.monitorEvent(this);
+		}
 		private boolean init(PVStructure pvRequest) {
 		    PVField pvField = null;
 		    PVStructure pvOptions = null;
@@ -274,28 +300,25 @@ public class MonitorFactory {
 				isPeriodic = true;
 			}
 			pvField = pvRequest.getSubField("field");
-			if(pvField==null) {
-				pvCopy = PVCopyFactory.create(pvRecord.getPVRecordStructure().getPVStructure(), pvRequest, "");
-				if(pvCopy==null) {
-					monitorRequester.message("illegal pvRequest", MessageType.error);
-					return false;
-				}
-			} else {
+			String structureName = "";
+			if(pvField!=null) {
 				if(!(pvField instanceof PVStructure)) {
 					monitorRequester.message("illegal pvRequest.field", MessageType.error);
 					return false;
 				}
-				pvCopy = PVCopyFactory.create(pvRecord.getPVRecordStructure().getPVStructure(), pvRequest, "field");
-				if(pvCopy==null) {
-					monitorRequester.message("illegal pvRequest", MessageType.error);
-					return false;
-				}
+				structureName = "field";
+			}
+			// monitors with the same request share the listener and the copy of the data
+			multiplexer = PVCopyMultiplexerFactory.create(pvRecord, pvRequest, structureName);
+			if(multiplexer==null) {
+				monitorRequester.message("illegal pvRequest", MessageType.error);
+				return false;
 			}
-			pvCopyMonitor = PVCopyMonitorFactory.create(this, pvRecord, pvCopy);
+			pvCopy = multiplexer.getPVCopy();
+			PVStructure pvStructure = pvCopy.createPVStructure();
 			if(queueSize<2) queueSize = 2;
             queueImpl = new ElementQueue();
-			queueImpl.init(this,queueSize);
-			PVStructure pvStructure = pvCopy.createPVStructure();
+			queueImpl.init(this,queueSize,pvStructure.getNumberFields());
 			notMonitoredBitSet = new BitSet(pvStructure.getNumberFields());
 			notMonitoredBitSet.clear();
 			notMonitoredBitSet.set(0);
@@ -396,80 +419,154 @@ public class MonitorFactory {
 		}
 		
 		
+		/*
+		 * A queue element is a view of a snapshot shared with all monitors that have the same pvRequest.
+		 * It only has its own bitSets.
+		 */
+		private static class SnapshotElement implements MonitorElement {
+		    private PVCopyMultiplexer.Snapshot snapshot = null;
+		    private final BitSet changedBitSet;
+		    private final BitSet overrunBitSet;
+		    
+		    private SnapshotElement(int numberFields) {
+		        changedBitSet = new BitSet(numberFields);
+		        overrunBitSet = new BitSet(numberFields);
+		    }
+		    /* (non-Javadoc)
+		     * @see org.epics.pvdata.monitor.MonitorElement#getPVStructure()
+		     */
+		    public PVStructure getPVStructure() {
+		        return snapshot.getPVStructure();
+		    }
+		    /* (non-Javadoc)
+		     * @see org.epics.pvdata.monitor.MonitorElement#getChangedBitSet()
+		     */
+		    public BitSet getChangedBitSet() {
+		        return changedBitSet;
+		    }
+		    /* (non-Javadoc)
+		     * @see org.epics.pvdata.monitor.MonitorElement#getOverrunBitSet()
+		     */
+		    public BitSet getOverrunBitSet() {
+		        return overrunBitSet;
+		    }
+		    
+		    private void setSnapshot(PVCopyMultiplexer.Snapshot snapshot) {
+		        if(this.snapshot!=null) this.snapshot.release();
+		        this.snapshot = snapshot;
+		        if(snapshot!=null) snapshot.acquire();
+		    }
+		}
+		
 		private static class ElementQueue implements Timer.TimerCallback {
 		    private MonitorImpl monitorLocal = null;
 		    private MonitorQueue monitorQueue = null;
-		    private MonitorElement activeElement = null;
+		    private SnapshotElement[] elements = null;
+		    // changes not yet given to the client
+		    private BitSet changedBitSet = null;
+		    private BitSet overrunBitSet = null;
+		    private PVCopyMultiplexer.Snapshot latest = null;
+		    private boolean monitorPending = false;
 		    private boolean queueIsFull = false;
 		    private boolean isPeriodic = false;
 		    private boolean timerExpired = true;
 		    private Timer.TimerNode timerNode = TimerFactory.createNode(this);
 
 		   
-		    public void init(MonitorImpl monitorImpl,int queueSize) {
+		    public void init(MonitorImpl monitorImpl,int queueSize,int numberFields) {
 		        monitorLocal = monitorImpl;
-		        MonitorElement[] elements = new MonitorElement[queueSize];
+		        elements = new SnapshotElement[queueSize];
 		        for(int i=0; i<elements.length;i++) {   
-		            elements[i] = MonitorQueueFactory.createMonitorElement(monitorImpl.pvCopy.createPVStructure());
+		            elements[i] = new SnapshotElement(numberFields);
 		        }
 		        monitorQueue = MonitorQueueFactory.create(elements);
+		        changedBitSet = new BitSet(numberFields);
+		        overrunBitSet = new BitSet(numberFields);
 		        isPeriodic = monitorLocal.isPeriodic;
 		    }
 		    
 		    public Status start() {
 		        monitorQueue.clear();
+		        for(SnapshotElement element : elements) element.setSnapshot(null);
 		        queueIsFull = false;
-		        activeElement = monitorQueue.getFree();
-		        activeElement.getChangedBitSet().clear();
-		        activeElement.getOverrunBitSet().clear();
-		        monitorLocal.pvCopyMonitor.setMonitorElement(activeElement);
-		        monitorLocal.pvCopyMonitor.startMonitoring();
+		        monitorPending = false;
+		        changedBitSet.clear();
+		        overrunBitSet.clear();
 		        if(isPeriodic) timer.schedulePeriodic(timerNode, monitorLocal.periodicRate, monitorLocal.periodicRate);
 		        return okStatus;
 		    }
 		   
-		    public void stop() {}
+		    public void stop() {
+		        if(isPeriodic) timerNode.cancel();
+		        if(latest!=null) latest.release();
+		        latest = null;
+		    }
+		    
+		    /**
+		     * Add the changes in a new snapshot to the changes not yet given to the client.
+		     * @param snapshot The snapshot.
+		     */
+		    public void merge(PVCopyMultiplexer.Snapshot snapshot) {
+		        BitSet changed = snapshot.getChangedBitSet();
+		        int nextBit = changed.nextSetBit(0);
+		        while(nextBit>=0) {
+		            if(changedBitSet.get(nextBit)) overrunBitSet.set(nextBit);
+		            nextBit = changed.nextSetBit(nextBit+1);
+		        }
+		        changedBitSet.or(changed);
+		        overrunBitSet.or(snapshot.getOverrunBitSet());
+		        snapshot.acquire();
+		        if(latest!=null) latest.release();
+		        latest = snapshot;
+		    }
 		    /* (non-Javadoc)
 		     * @see org.epics.pvioc.monitor.MonitorFactory.ElementQueue#dataChanged()
 		     */
-		    public synchronized boolean dataChanged() {
+		    public boolean dataChanged() {
+		        monitorPending = true;
+		        if(latest==null) return false;
 		        if(isPeriodic) {
 		            if(!timerExpired) return false;
 		            timerExpired = false;
 		        }
 		        if(queueIsFull) return false;
-		        PVStructure pvStructure = activeElement.getPVStructure();
-                BitSet changedBitSet = activeElement.getChangedBitSet();
-                BitSet overrunBitSet = activeElement.getOverrunBitSet();
-                monitorLocal.pvCopy.updateCopyFromBitSet(pvStructure, changedBitSet);
-                bitSetUtil.compress(changedBitSet, pvStructure);
-                bitSetUtil.compress(overrunBitSet, pvStructure);
-                monitorQueue.setUsed(activeElement);
-                activeElement = monitorQueue.getFree();
-                if(activeElement==null) {
-                    throw new IllegalStateException("MultipleElementQueue::dataChanged() logic error");
-                }
+		        SnapshotElement element = (SnapshotElement)monitorQueue.getFree();
+		        if(element==null) {
+		            throw new IllegalStateException("MultipleElementQueue::dataChanged() logic error");
+		        }
+		        element.setSnapshot(latest);
+		        PVStructure pvStructure = element.getPVStructure();
+		        BitSet changed = element.getChangedBitSet();
+		        BitSet overrun = element.getOverrunBitSet();
+		        changed.clear();
+		        changed.or(changedBitSet);
+		        overrun.clear();
+		        overrun.or(overrunBitSet);
+		        bitSetUtil.compress(changed, pvStructure);
+		        bitSetUtil.compress(overrun, pvStructure);
+		        changedBitSet.clear();
+		        overrunBitSet.clear();
+		        monitorQueue.setUsed(element);
 		        if(monitorQueue.getNumberFree()==0) queueIsFull = true;
-		        activeElement.getChangedBitSet().clear();
-		        activeElement.getOverrunBitSet().clear();
-		        monitorLocal.pvCopyMonitor.setMonitorElement(activeElement);
-                return true;
+		        monitorPending = false;
+		        return true;
 		    }
 		   
             
-            public synchronized BitSet getChangedBitSet() {
-                return activeElement.getChangedBitSet();
+            public BitSet getChangedBitSet() {
+                return changedBitSet;
             }
 		    
-		    public synchronized MonitorElement poll() {
+		    public MonitorElement poll() {
 		        return monitorQueue.getUsed();
 		    }
 		    
-		    public synchronized void release(MonitorElement currentElement) {
+		    public void release(MonitorElement currentElement) {
+		        ((SnapshotElement)currentElement).setSnapshot(null);
 		        monitorQueue.releaseUsed(currentElement);
 		        if(!queueIsFull) return;
 		        queueIsFull = false;
-		        if(!activeElement.getChangedBitSet().isEmpty()) {
+		        if(monitorPending) {
 		            dataChanged();
 		        }
 		    }
@@ -478,8 +575,10 @@ public class MonitorFactory {
 		     * @see org.epics.pvdata.misc.Timer.TimerCallback#callback()
 		     */
 		    public void callback() {
-		        timerExpired = true;
-		        monitorLocal.dataChanged();
+		        synchronized(this) {
+		            timerExpired = true;
+		        }
+		        if(monitorPending) monitorLocal.monitorPending();
 		    }
 		    /* (non-Javadoc)
 		     * @see org.epics.pvdata.misc.Timer.TimerCallback#timerStopped()
@@ -9,6 +9,7 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.epics.pvaccess.client.AccessRights;
 import org.epics.pvaccess.client.Channel;
@@ -58,6 +59,7 @@ import org.epics.pvdata.pv.Status;
 import org.epics.pvdata.pv.Status.StatusType;
 import org.epics.pvdata.pv.StatusCreate;
 import org.epics.pvdata.pv.Type;
+import org.epics.pvioc.database.OptimisticReadFactory;
 import org.epics.pvioc.database.PVDatabase;
 import org.epics.pvioc.database.PVDatabaseFactory;
 import org.epics.pvioc.database.PVRecord;
@@ -89,7 +91,7 @@ public class ChannelServerFactory  {
     private static final StatusCreate statusCreate = StatusFactory.getStatusCreate();
     private static final Status okStatus = statusCreate.getStatusOK();
     private static final Status notFoundStatus = statusCreate.createStatus(StatusType.ERROR, "channel not found", null);
-    private static final Status strideNotSupportedStatus = statusCreate.createStatus(StatusType.WARNING, "stride not supported", null);
+    private static final Status invalidStrideStatus = statusCreate.createStatus(StatusType.ERROR, "stride must be > 0", null);
     //private static final Status capacityImmutableStatus = statusCreate.createStatus(StatusType.ERROR, "capacity is immutable", null);
     private static final Status subFieldDoesNotExistStatus = statusCreate.createStatus(StatusType.ERROR, "subField does not exist", null);
     private static final Status cannotProcessErrorStatus = statusCreate.createStatus(StatusType.ERROR, "can not process", null);
@@ -723,6 +725,13 @@ public class ChannelServerFactory  {
             private boolean firstTime = true;
             private Status status = null;
             private boolean lastRequest = false;
+            // guards pvStructure and bitSet. The record is not locked while the server reads them.
+            private final ReentrantLock lock = new ReentrantLock();
+            private final Runnable getDataRunnable = new Runnable() {
+                public void run() {
+                    getData();
+                }
+            };
             
             /* (non-Javadoc)
              * @see org.epics.pvaccess.client.ChannelRequest#getChannel()
@@ -763,16 +772,23 @@ public class ChannelServerFactory  {
                     channelGetRequester.getDone(requestDestroyedStatus,this,null,null);
                     return;
                 }
-                bitSet.clear();
                 if(processToken!=null) {
+                    lock.lock();
+                    try {
+                        bitSet.clear();
+                    } finally {
+                        lock.unlock();
+                    }
                 	recordProcess.queueProcessRequest(processToken);
                     return;
                 }
-                pvRecord.lock();
+                lock.lock();
                 try {
-                    getData();
+                    bitSet.clear();
+                    // a failed attempt can only add bits, so the bits of the final copy are all set
+                    OptimisticReadFactory.read(pvRecord,getDataRunnable);
                 } finally {
-                    pvRecord.unlock();
+                    lock.unlock();
                 }
                 channelGetRequester.getDone(okStatus,this,pvStructure,bitSet);
             }
@@ -806,7 +822,13 @@ public class ChannelServerFactory  {
              */
             @Override
             public void recordProcessResult(RequestResult requestResult) {
-                getData();
+                // called with the record locked
+                lock.lock();
+                try {
+                    getData();
+                } finally {
+                    lock.unlock();
+                }
                 if(requestResult!=RequestResult.success) {
 	                status = statusCreate.createStatus(StatusType.ERROR, "requestResult " + requestResult.toString(), null);
 	                return;
@@ -846,11 +868,11 @@ public class ChannelServerFactory  {
             }
 			@Override
 			public void lock() {
-				pvRecord.lock();
+				lock.lock();
 			}
 			@Override
 			public void unlock() {
-				pvRecord.unlock();
+				lock.unlock();
 			}
         }
         
@@ -1284,6 +1306,26 @@ public class ChannelServerFactory  {
             private PVScalarArray pvCopy;
             private PVRecord pvRecord;
             private final AtomicBoolean isDestroyed = new AtomicBoolean(false);
+            // guards pvCopy. The record is not locked while the server reads it.
+            private final ReentrantLock lock = new ReentrantLock();
+            // the data given by the last getArray of the complete array
+            private SharedArray sharedArray = null;
+            // arguments of getArrayRunnable
+            private int getOffset = 0;
+            private int getCount = 0;
+            private int getStride = 1;
+            private final Runnable getArrayRunnable = new Runnable() {
+                public void run() {
+                    if(getStride!=1) {
+                        StridedArrayCopy.get(pvArray, getOffset, getCount, getStride, pvCopy);
+                        return;
+                    }
+                    int count = getCount;
+                    if(count<=0) count = pvArray.getLength() - getOffset;
+                    int len = convert.copyScalarArray(pvArray, getOffset, pvCopy, 0, count);
+                    if(len>0) pvCopy.setLength(len);
+                }
+            };
             
             
             /* (non-Javadoc)
@@ -1312,6 +1354,13 @@ public class ChannelServerFactory  {
             @Override
             public void destroy() {
                 if(!isDestroyed.compareAndSet(false, true)) return;
+                lock.lock();
+                try {
+                    if(sharedArray!=null) sharedArray.release();
+                    sharedArray = null;
+                } finally {
+                    lock.unlock();
+                }
             }
 
             /* (non-Javadoc)
@@ -1322,17 +1371,29 @@ public class ChannelServerFactory  {
                 	channelArrayRequester.getArrayDone(requestDestroyedStatus,this,null);
                 	return;
                 }
-                if(count<=0) count = pvArray.getLength() - offset;
-                pvRecord.lock();
+                if(stride<=0) {
+                    channelArrayRequester.getArrayDone(invalidStrideStatus,this,null);
+                    return;
+                }
+                PVScalarArray pvData = pvCopy;
+                lock.lock();
                 try {
-                    int len = convert.copyScalarArray(pvArray, offset, pvCopy, 0, count);
-                    if(len>0) pvCopy.setLength(len);
+                    if(offset==0 && count<=0 && stride==1) {
+                        // the complete array is shared with every other reader of the field
+                        SharedArray previous = sharedArray;
+                        sharedArray = SharedArrayFactory.acquire(pvRecord, pvArray);
+                        if(previous!=null) previous.release();
+                        pvData = sharedArray.getPVScalarArray();
+                    } else {
+                        getOffset = offset;
+                        getCount = count;
+                        getStride = stride;
+                        OptimisticReadFactory.read(pvRecord,getArrayRunnable);
+                    }
                 } finally  {
-                    pvRecord.unlock();
+                    lock.unlock();
                 }
-                Status status = okStatus;
-                if(stride!=1) status = strideNotSupportedStatus;
-                channelArrayRequester.getArrayDone(status,this,pvCopy);
+                channelArrayRequester.getArrayDone(okStatus,this,pvData);
             }
            
             /* (non-Javadoc)
@@ -1343,16 +1404,22 @@ public class ChannelServerFactory  {
                 	channelArrayRequester.putArrayDone(requestDestroyedStatus,this);
                 	return;
                 }
-                if(count<=0) count = pvArray.getLength() - offset;
+                if(stride<=0) {
+                    channelArrayRequester.putArrayDone(invalidStrideStatus,this);
+                    return;
+                }
                 pvRecord.lock();
                 try {
-                    convert.copyScalarArray((PVScalarArray)putArray, 0, pvArray, offset, count);
+                    if(stride!=1) {
+                        StridedArrayCopy.put((PVScalarArray)putArray, count, pvArray, offset, stride);
+                    } else {
+                        if(count<=0) count = pvArray.getLength() - offset;
+                        convert.copyScalarArray((PVScalarArray)putArray, 0, pvArray, offset, count);
+                    }
                 } finally  {
                     pvRecord.unlock();
                 }
-                Status status = okStatus;
-                if(stride!=1) status = strideNotSupportedStatus;
-                channelArrayRequester.putArrayDone(status,this);
+                channelArrayRequester.putArrayDone(okStatus,this);
             }
 			
 			/* (non-Javadoc)
@@ -1390,11 +1457,11 @@ public class ChannelServerFactory  {
 			
 			@Override
 			public void lock() {
-				pvRecord.lock();
+				lock.lock();
 			}
 			@Override
 			public void unlock() {
-				pvRecord.unlock();
+				lock.unlock();
 			}
         }
         
@@ -1454,20 +1521,26 @@ public class ChannelServerFactory  {
                 	channelArrayRequester.getArrayDone(requestDestroyedStatus,this,null);
                 	return;
                 }
+                if(stride<=0) {
+                    channelArrayRequester.getArrayDone(invalidStrideStatus,this,null);
+                    return;
+                }
                 pvRecord.lock();
                 try {
-                    if(count==0) count = pvArray.getLength() - offset;
-                    if(count>0) {
-                        int len = convert.copyStructureArray(pvArray,offset, pvCopy,0,count);
-                        if(len>0) pvCopy.setLength(len);
+                    if(stride!=1) {
+                        StridedArrayCopy.get(pvArray, offset, count, stride, pvCopy);
+                    } else {
+                        if(count==0) count = pvArray.getLength() - offset;
+                        if(count>0) {
+                            int len = convert.copyStructureArray(pvArray,offset, pvCopy,0,count);
+                            if(len>0) pvCopy.setLength(len);
+                        }
                     }
 
                 } finally  {
                     pvRecord.unlock();
                 }
-                Status status = okStatus;
-                if(stride!=1) status = strideNotSupportedStatus;
-                channelArrayRequester.getArrayDone(status,this,pvCopy);
+                channelArrayRequester.getArrayDone(okStatus,this,pvCopy);
             }
             
             /* (non-Javadoc)
@@ -1478,15 +1551,21 @@ public class ChannelServerFactory  {
                 	channelArrayRequester.putArrayDone(requestDestroyedStatus,this);
                 	return;
                 }
+                if(stride<=0) {
+                    channelArrayRequester.putArrayDone(invalidStrideStatus,this);
+                    return;
+                }
                 pvRecord.lock();
                 try {
-                	convert.copyStructureArray((PVStructureArray)pvCopy,0 ,pvArray,offset,count);
+                    if(stride!=1) {
+                        StridedArrayCopy.put((PVStructureArray)pvCopy, count, pvArray, offset, stride);
+                    } else {
+                        convert.copyStructureArray((PVStructureArray)pvCopy,0 ,pvArray,offset,count);
+                    }
                 } finally  {
                     pvRecord.unlock();
                 }
-                Status status = okStatus;
-                if(stride!=1) status = strideNotSupportedStatus;
-                channelArrayRequester.putArrayDone(status,this);
+                channelArrayRequester.putArrayDone(okStatus,this);
             }
 			
             /* (non-Javadoc)
@@ -1594,19 +1673,25 @@ public class ChannelServerFactory  {
                     channelArrayRequester.getArrayDone(requestDestroyedStatus,this,null);
                     return;
                 }
+                if(stride<=0) {
+                    channelArrayRequester.getArrayDone(invalidStrideStatus,this,null);
+                    return;
+                }
                 pvRecord.lock();
                 try {
-                    if(count==0) count = pvArray.getLength() - offset;
-                    if(count>0) {
-                        int len = convert.copyUnionArray(pvArray,offset, pvCopy,0,count);
-                        if(len>0) pvCopy.setLength(len);
+                    if(stride!=1) {
+                        StridedArrayCopy.get(pvArray, offset, count, stride, pvCopy);
+                    } else {
+                        if(count==0) count = pvArray.getLength() - offset;
+                        if(count>0) {
+                            int len = convert.copyUnionArray(pvArray,offset, pvCopy,0,count);
+                            if(len>0) pvCopy.setLength(len);
+                        }
                     }
                 } finally  {
                     pvRecord.unlock();
                 }
-                Status status = okStatus;
-                if(stride!=1) status = strideNotSupportedStatus;
-                channelArrayRequester.getArrayDone(status,this,pvCopy);
+                channelArrayRequester.getArrayDone(okStatus,this,pvCopy);
             }
             
             /* (non-Javadoc)
@@ -1617,15 +1702,21 @@ public class ChannelServerFactory  {
                     channelArrayRequester.putArrayDone(requestDestroyedStatus,this);
                     return;
                 }
+                if(stride<=0) {
+                    channelArrayRequester.putArrayDone(invalidStrideStatus,this);
+                    return;
+                }
                 pvRecord.lock();
                 try {
-                    convert.copyUnionArray((PVUnionArray)pvCopy,0, pvArray,offset,count);
+                    if(stride!=1) {
+                        StridedArrayCopy.put((PVUnionArray)pvCopy, count, pvArray, offset, stride);
+                    } else {
+                        convert.copyUnionArray((PVUnionArray)pvCopy,0, pvArray,offset,count);
+                    }
                 } finally  {
                     pvRecord.unlock();
                 }
-                Status status = okStatus;
-                if(stride!=1) status = strideNotSupportedStatus;
-                channelArrayRequester.putArrayDone(status,this);
+                channelArrayRequester.putArrayDone(okStatus,this);
             }
             
             /* (non-Javadoc)
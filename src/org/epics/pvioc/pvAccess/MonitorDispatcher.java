@@ -0,0 +1,168 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.pvAccess;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.epics.pvdata.misc.RunnableReady;
+import org.epics.pvdata.misc.ThreadCreate;
+import org.epics.pvdata.misc.ThreadCreateFactory;
+import org.epics.pvdata.misc.ThreadPriority;
+import org.epics.pvdata.misc.ThreadReady;
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.Requester;
+
+/**
+ * Pool of threads that copy monitored data and notify monitor requesters.
+ * If IOCMonitorDispatchThreads is greater than 0 the thread that puts data into a record
+ * only marks the changed fields and schedules a Task.
+ * The copy and the notification of the clients are done by the pool so that a slow client
+ * does not increase the time the record is locked.
+ * The default, 0, notifies the clients while the record is locked.
+ * @author mrk
+ *
+ */
+public class MonitorDispatcher {
+    /**
+     * Are notifications done by the dispatcher?
+     * @return (false,true) if notifications are (synchronous, done by the dispatcher).
+     */
+    public static boolean isEnabled() {
+        return numberThreads>0;
+    }
+
+    /**
+     * A task that is queued at most once until it runs.
+     * Requests made while it is queued are coalesced into a single call to dispatch.
+     * A request made while dispatch is running queues it again after dispatch returns,
+     * so a task never runs concurrently with itself and a slow task only holds one thread.
+     */
+    public static abstract class Task {
+        private final Requester requester;
+        private final Pool pool;
+        // guarded by pool.lock
+        private boolean isQueued = false;
+        private boolean isRunning = false;
+        private boolean runAgain = false;
+
+        /**
+         * Constructor.
+         * @param requester The requester that is given any exception thrown by dispatch.
+         */
+        protected Task(Requester requester) {
+            this(requester,null);
+        }
+
+        Task(Requester requester,Pool pool) {
+            this.requester = requester;
+            this.pool = pool;
+        }
+        /**
+         * Schedule the task unless it is already scheduled.
+         */
+        public void schedule() {
+            ((pool!=null) ? pool : getPool()).schedule(this);
+        }
+        /**
+         * Called by a dispatcher thread.
+         */
+        protected abstract void dispatch();
+    }
+
+    /**
+     * The threads and the queue of scheduled tasks.
+     */
+    static class Pool implements RunnableReady {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition waitForWork = lock.newCondition();
+        private final ArrayDeque<Task> queue = new ArrayDeque<Task>();
+
+        /**
+         * Constructor. The threads are created immediately.
+         * @param name The thread name prefix.
+         * @param numberThreads The number of threads.
+         */
+        Pool(String name,int numberThreads) {
+            for(int i=0; i<numberThreads; i++) {
+                threadCreate.create(name + "[" + String.valueOf(i) + "]", ThreadPriority.high.getJavaPriority(), this);
+            }
+        }
+
+        private void schedule(Task task) {
+            lock.lock();
+            try {
+                if(task.isQueued || task.runAgain) return;
+                if(task.isRunning) {
+                    task.runAgain = true;
+                    return;
+                }
+                task.isQueued = true;
+                queue.add(task);
+                waitForWork.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.misc.RunnableReady#run(org.epics.pvdata.misc.ThreadReady)
+         */
+        public void run(ThreadReady threadReady) {
+            threadReady.ready();
+            try {
+                while(true) {
+                    Task task = null;
+                    lock.lock();
+                    try {
+                        while(queue.isEmpty()) waitForWork.await();
+                        task = queue.poll();
+                        task.isQueued = false;
+                        task.isRunning = true;
+                    } finally {
+                        lock.unlock();
+                    }
+                    try {
+                        task.dispatch();
+                    } catch (Throwable e) {
+                        task.requester.message("monitorDispatcher " + e.toString(), MessageType.error);
+                    }
+                    lock.lock();
+                    try {
+                        task.isRunning = false;
+                        if(task.runAgain) {
+                            // behind the tasks that are already waiting
+                            task.runAgain = false;
+                            task.isQueued = true;
+                            queue.add(task);
+                            waitForWork.signal();
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            } catch(InterruptedException e) {}
+        }
+    }
+
+    private static final ThreadCreate threadCreate = ThreadCreateFactory.getThreadCreate();
+    private static final int numberThreads;
+    private static Pool pool = null;
+
+    static {
+        int value = 0;
+        String envValue = System.getProperty("IOCMonitorDispatchThreads", System.getenv("IOCMonitorDispatchThreads"));
+        if(envValue!=null) value = Integer.parseInt(envValue);
+        numberThreads = value;
+    }
+
+    private static synchronized Pool getPool() {
+        if(pool==null) {
+            pool = new Pool("monitorDispatcher",(numberThreads>0) ? numberThreads : 1);
+        }
+        return pool;
+    }
+}
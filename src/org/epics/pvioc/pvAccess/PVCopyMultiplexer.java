@@ -0,0 +1,84 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.pvAccess;
+
+import org.epics.pvdata.copy.PVCopy;
+import org.epics.pvdata.misc.BitSet;
+import org.epics.pvdata.pv.PVStructure;
+
+/**
+ * A PVCopyMultiplexer is shared by all monitors of a record that have the same pvRequest.
+ * It has a single PVCopyMonitor that listens to the record and a single copy of the data.
+ * Each time the data changes, the changed fields are copied, while the record is locked,
+ * into a snapshot and the snapshot is given to every subscriber.
+ * A snapshot is never modified while it is referenced, so a subscriber can keep it,
+ * without copying it, by calling acquire and later release.
+ * @author mrk
+ *
+ */
+public interface PVCopyMultiplexer {
+    /**
+     * An immutable copy of the monitored data.
+     */
+    interface Snapshot {
+        /**
+         * Get the data. The caller must not modify it.
+         * @return The data.
+         */
+        PVStructure getPVStructure();
+        /**
+         * Get the fields that changed since the previous snapshot.
+         * @return The bitSet. The caller must not modify it.
+         */
+        BitSet getChangedBitSet();
+        /**
+         * Get the fields that changed more than once since the previous snapshot.
+         * @return The bitSet. The caller must not modify it.
+         */
+        BitSet getOverrunBitSet();
+        /**
+         * Keep the snapshot after Subscriber.dataChanged returns.
+         * Must only be called during Subscriber.dataChanged or while the caller already holds a reference.
+         */
+        void acquire();
+        /**
+         * Done with a snapshot that was acquired.
+         */
+        void release();
+    }
+    /**
+     * Interface implemented by each subscriber.
+     */
+    interface Subscriber {
+        /**
+         * A new snapshot is available.
+         * This is called with the record locked so it must not block.
+         * If MonitorDispatcher is enabled it is called by a dispatcher thread.
+         * When a subscriber is added it is first called with the latest snapshot.
+         * @param snapshot The snapshot. It is only valid during the call unless acquired.
+         */
+        void dataChanged(Snapshot snapshot);
+        /**
+         * The record is being removed. No more snapshots will be given.
+         */
+        void unlisten();
+    }
+    /**
+     * Get the PVCopy shared by all subscribers.
+     * @return The PVCopy.
+     */
+    PVCopy getPVCopy();
+    /**
+     * Add a subscriber. Monitoring starts when the first subscriber is added.
+     * @param subscriber The subscriber.
+     */
+    void addSubscriber(Subscriber subscriber);
+    /**
+     * Remove a subscriber. Monitoring stops when the last subscriber is removed.
+     * @param subscriber The subscriber.
+     */
+    void removeSubscriber(Subscriber subscriber);
+}
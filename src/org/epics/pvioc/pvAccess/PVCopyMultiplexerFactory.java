@@ -0,0 +1,300 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.pvAccess;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.epics.pvdata.copy.PVCopy;
+import org.epics.pvdata.copy.PVCopyFactory;
+import org.epics.pvdata.misc.BitSet;
+import org.epics.pvdata.monitor.MonitorElement;
+import org.epics.pvdata.monitor.MonitorQueueFactory;
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.PVField;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.Requester;
+import org.epics.pvioc.database.PVRecord;
+
+/**
+ * Factory that provides PVCopyMultiplexers.
+ * All callers that ask for the same record and an equivalent pvRequest get the same multiplexer
+ * from the time it is created until its last subscriber is removed.
+ * The record options of the pvRequest, e.g. queueSize and periodicRate, are not part of the comparison
+ * since they only affect the subscriber.
+ * @author mrk
+ *
+ */
+public class PVCopyMultiplexerFactory {
+    /**
+     * Get a multiplexer.
+     * @param pvRecord The record.
+     * @param pvRequest The request structure.
+     * @param structureName The name of the structure in pvRequest that selects the fields. An empty string means all of pvRequest.
+     * @return The multiplexer or null if a PVCopy could not be created for pvRequest.
+     */
+    public static PVCopyMultiplexer create(PVRecord pvRecord,PVStructure pvRequest,String structureName) {
+        String key = createKey(pvRequest,structureName);
+        // lookup and insert are done together so that concurrent callers can not create two multiplexers
+        synchronized(multiplexerMap) {
+            Map<String,MultiplexerImpl> map = multiplexerMap.get(pvRecord);
+            MultiplexerImpl multiplexer = (map==null) ? null : map.get(key);
+            if(multiplexer!=null) return multiplexer;
+            PVCopy pvCopy = PVCopyFactory.create(pvRecord.getPVRecordStructure().getPVStructure(), pvRequest, structureName);
+            if(pvCopy==null) return null;
+            multiplexer = new MultiplexerImpl(pvRecord,pvCopy,key);
+            register(multiplexer);
+            return multiplexer;
+        }
+    }
+
+    private static final Map<PVRecord,Map<String,MultiplexerImpl>> multiplexerMap = new IdentityHashMap<PVRecord,Map<String,MultiplexerImpl>>();
+
+    // must be called with multiplexerMap locked
+    private static void register(MultiplexerImpl multiplexer) {
+        Map<String,MultiplexerImpl> map = multiplexerMap.get(multiplexer.pvRecord);
+        if(map==null) {
+            map = new HashMap<String,MultiplexerImpl>();
+            multiplexerMap.put(multiplexer.pvRecord, map);
+        }
+        if(!map.containsKey(multiplexer.key)) map.put(multiplexer.key, multiplexer);
+    }
+
+    private static String createKey(PVStructure pvRequest,String structureName) {
+        if(structureName.length()>0) {
+            PVField pvField = pvRequest.getSubField(structureName);
+            return structureName + ":" + ((pvField==null) ? "" : pvField.toString());
+        }
+        StringBuilder builder = new StringBuilder();
+        PVField[] pvFields = pvRequest.getPVFields();
+        for(PVField pvField : pvFields) {
+            if(pvField.getFieldName().equals("record")) continue;
+            builder.append(pvField.toString());
+        }
+        return builder.toString();
+    }
+
+    private static class SnapshotImpl implements PVCopyMultiplexer.Snapshot {
+        private final AtomicInteger referenceCount = new AtomicInteger(0);
+        private final PVStructure pvStructure;
+        private final BitSet changedBitSet;
+        private final BitSet overrunBitSet;
+        // fields that changed in the master since this snapshot was last updated
+        private final BitSet staleBitSet;
+
+        private SnapshotImpl(PVStructure pvStructure) {
+            this.pvStructure = pvStructure;
+            int numberFields = pvStructure.getNumberFields();
+            changedBitSet = new BitSet(numberFields);
+            overrunBitSet = new BitSet(numberFields);
+            staleBitSet = new BitSet(numberFields);
+            staleBitSet.set(0);
+        }
+
+        public PVStructure getPVStructure() {
+            return pvStructure;
+        }
+        public BitSet getChangedBitSet() {
+            return changedBitSet;
+        }
+        public BitSet getOverrunBitSet() {
+            return overrunBitSet;
+        }
+        public void acquire() {
+            referenceCount.incrementAndGet();
+        }
+        public void release() {
+            referenceCount.decrementAndGet();
+        }
+        boolean isFree() {
+            return referenceCount.get()==0;
+        }
+    }
+
+    private static class MultiplexerImpl implements PVCopyMultiplexer,PVCopyMonitorRequester,Requester {
+        private final PVRecord pvRecord;
+        private final PVCopy pvCopy;
+        private final String key;
+        private final PVCopyMonitor pvCopyMonitor;
+        private final MonitorElement monitorElement;
+        private final BitSet updateBitSet;
+        private final ArrayList<SnapshotImpl> snapshotList = new ArrayList<SnapshotImpl>();
+        private final ArrayList<Subscriber> subscriberList = new ArrayList<Subscriber>();
+        private Subscriber[] subscribers = new Subscriber[0];
+        private SnapshotImpl current = null;
+        private final MonitorDispatcher.Task snapshotTask = new MonitorDispatcher.Task(this) {
+            protected void dispatch() {
+                pvRecord.lock();
+                try {
+                    updateSnapshot();
+                } finally {
+                    pvRecord.unlock();
+                }
+            }
+        };
+
+        private MultiplexerImpl(PVRecord pvRecord,PVCopy pvCopy,String key) {
+            this.pvRecord = pvRecord;
+            this.pvCopy = pvCopy;
+            this.key = key;
+            pvCopyMonitor = PVCopyMonitorFactory.create(this, pvRecord, pvCopy);
+            monitorElement = MonitorQueueFactory.createMonitorElement(pvCopy.createPVStructure());
+            updateBitSet = new BitSet(monitorElement.getPVStructure().getNumberFields());
+            pvCopyMonitor.setMonitorElement(monitorElement);
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.Requester#getRequesterName()
+         */
+        @Override
+        public String getRequesterName() {
+            return pvRecord.getRecordName();
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.Requester#message(java.lang.String, org.epics.pvdata.pv.MessageType)
+         */
+        @Override
+        public void message(String message, MessageType messageType) {
+            pvRecord.message(message, messageType);
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.pvAccess.PVCopyMultiplexer#getPVCopy()
+         */
+        @Override
+        public PVCopy getPVCopy() {
+            return pvCopy;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.pvAccess.PVCopyMultiplexer#addSubscriber(org.epics.pvioc.pvAccess.PVCopyMultiplexer.Subscriber)
+         */
+        @Override
+        public void addSubscriber(Subscriber subscriber) {
+            pvRecord.lock();
+            try {
+                SnapshotImpl snapshot = null;
+                boolean start = false;
+                synchronized(this) {
+                    if(subscriberList.contains(subscriber)) return;
+                    subscriberList.add(subscriber);
+                    subscribers = subscriberList.toArray(new Subscriber[subscriberList.size()]);
+                    if(subscriberList.size()==1) {
+                        start = true;
+                    } else {
+                        snapshot = current;
+                    }
+                }
+                if(start) {
+                    // only needed if the last subscriber was removed after create returned this multiplexer
+                    synchronized(multiplexerMap) {
+                        register(this);
+                    }
+                    // calls dataChanged which gives the first snapshot to subscriber
+                    pvCopyMonitor.startMonitoring();
+                } else if(snapshot!=null) {
+                    subscriber.dataChanged(snapshot);
+                }
+            } finally {
+                pvRecord.unlock();
+            }
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.pvAccess.PVCopyMultiplexer#removeSubscriber(org.epics.pvioc.pvAccess.PVCopyMultiplexer.Subscriber)
+         */
+        @Override
+        public void removeSubscriber(Subscriber subscriber) {
+            pvRecord.lock();
+            try {
+                synchronized(this) {
+                    if(!subscriberList.remove(subscriber)) return;
+                    subscribers = subscriberList.toArray(new Subscriber[subscriberList.size()]);
+                    if(!subscriberList.isEmpty()) return;
+                    if(current!=null) current.release();
+                    current = null;
+                }
+                synchronized(multiplexerMap) {
+                    Map<String,MultiplexerImpl> map = multiplexerMap.get(pvRecord);
+                    if(map!=null && map.get(key)==this) {
+                        map.remove(key);
+                        if(map.isEmpty()) multiplexerMap.remove(pvRecord);
+                    }
+                }
+                pvCopyMonitor.stopMonitoring();
+            } finally {
+                pvRecord.unlock();
+            }
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.pvAccess.PVCopyMonitorRequester#dataChanged()
+         */
+        @Override
+        public void dataChanged() {
+            if(MonitorDispatcher.isEnabled()) {
+                // the bitSets have been marked. The copy is done by the dispatcher.
+                snapshotTask.schedule();
+                return;
+            }
+            updateSnapshot();
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.pvAccess.PVCopyMonitorRequester#unlisten()
+         */
+        @Override
+        public void unlisten() {
+            Subscriber[] subscribers = null;
+            synchronized(this) {
+                subscribers = this.subscribers;
+            }
+            for(Subscriber subscriber : subscribers) {
+                subscriber.unlisten();
+            }
+        }
+
+        // must be called with the record locked
+        private void updateSnapshot() {
+            SnapshotImpl snapshot = null;
+            Subscriber[] subscribers = null;
+            synchronized(this) {
+                BitSet changedBitSet = monitorElement.getChangedBitSet();
+                BitSet overrunBitSet = monitorElement.getOverrunBitSet();
+                if(changedBitSet.isEmpty()) return;
+                snapshot = getFreeSnapshot();
+                updateBitSet.clear();
+                updateBitSet.or(snapshot.staleBitSet);
+                updateBitSet.or(changedBitSet);
+                pvCopy.updateCopyFromBitSet(snapshot.pvStructure, updateBitSet);
+                snapshot.staleBitSet.clear();
+                snapshot.changedBitSet.clear();
+                snapshot.changedBitSet.or(changedBitSet);
+                snapshot.overrunBitSet.clear();
+                snapshot.overrunBitSet.or(overrunBitSet);
+                for(SnapshotImpl other : snapshotList) {
+                    if(other!=snapshot) other.staleBitSet.or(changedBitSet);
+                }
+                changedBitSet.clear();
+                overrunBitSet.clear();
+                // the multiplexer keeps a reference to the latest snapshot
+                snapshot.acquire();
+                if(current!=null) current.release();
+                current = snapshot;
+                subscribers = this.subscribers;
+            }
+            for(Subscriber subscriber : subscribers) {
+                subscriber.dataChanged(snapshot);
+            }
+        }
+
+        private SnapshotImpl getFreeSnapshot() {
+            for(SnapshotImpl snapshot : snapshotList) {
+                if(snapshot.isFree()) return snapshot;
+            }
+            SnapshotImpl snapshot = new SnapshotImpl(pvCopy.createPVStructure());
+            snapshotList.add(snapshot);
+            return snapshot;
+        }
+    }
+}
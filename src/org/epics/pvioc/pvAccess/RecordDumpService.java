@@ -8,7 +8,13 @@ package org.epics.pvioc.pvAccess;
 import org.epics.pvaccess.server.rpc.RPCRequestException;
 import org.epics.pvaccess.server.rpc.RPCServer;
 import org.epics.pvaccess.server.rpc.RPCService;
+import org.epics.pvdata.factory.FieldFactory;
+import org.epics.pvdata.factory.PVDataFactory;
+import org.epics.pvdata.pv.Field;
+import org.epics.pvdata.pv.FieldCreate;
+import org.epics.pvdata.pv.PVDataCreate;
 import org.epics.pvdata.pv.PVField;
+import org.epics.pvdata.pv.PVString;
 import org.epics.pvdata.pv.PVStringArray;
 import org.epics.pvdata.pv.PVStructure;
 import org.epics.pvdata.pv.ScalarType;
@@ -17,11 +23,16 @@ import org.epics.pvdata.pv.StringArrayData;
 import org.epics.pvioc.database.PVDatabase;
 import org.epics.pvioc.database.PVDatabaseFactory;
 import org.epics.pvioc.database.PVRecord;
+import org.epics.pvioc.database.RecordNameMatch;
 
 /**
  * channelRPC support for returning the PVStructure for a PVRecord or a PVStructure from a database.
  * It accepts an NTNameValue structure and returns the PVStructure. The names supported are: "database", "record", and "structure".
  * Exactly one of "record" and "structure" must be specified.
+ * Instead the name "recordNames" can be given with a glob pattern, e.g. "ioc:*:temp".
+ * The result then has a string array "names" with the sorted record names that match, and a string "cursor".
+ * At most "limit" names, default 1000, are returned. If more are available cursor is the last name returned
+ * and is given as "cursor" in the next request to get the next page. Otherwise it is empty.
  * @author mrk
  *
  */
@@ -32,6 +43,10 @@ public class RecordDumpService {
         rpcServer.registerService(serviceName, service);
     }
     
+    private static final FieldCreate fieldCreate = FieldFactory.getFieldCreate();
+    private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
+    private static final int defaultLimit = 1000;
+    
     private static class RecordDump implements RPCService
     {
 		/* (non-Javadoc)
@@ -66,6 +81,9 @@ public class RecordDumpService {
             String databaseName = "master";
             String recordName = null;
             String structureName = null;
+            String recordNames = null;
+            String cursor = null;
+            int limit = defaultLimit;
             StringArrayData data = new StringArrayData();
             pvnames.get(0, length, data);
             String[] names = data.data;
@@ -78,6 +96,16 @@ public class RecordDumpService {
                    recordName = values[index];
                } else if(names[index].equals("structure")) {
                    structureName = values[index];
+               } else if(names[index].equals("recordNames")) {
+                   recordNames = values[index];
+               } else if(names[index].equals("cursor")) {
+                   if(values[index].length()>0) cursor = values[index];
+               } else if(names[index].equals("limit")) {
+                   try {
+                       limit = Integer.parseInt(values[index]);
+                   } catch (NumberFormatException e) {
+                       throw new RPCRequestException(Status.StatusType.ERROR,"limit " + values[index] + " is not an integer");
+                   }
                }
             }
             PVDatabase pvDatabase = null;
@@ -96,6 +124,9 @@ public class RecordDumpService {
                 }
                 return pvRecord.getPVRecordStructure().getPVStructure();
             }
+            if(recordNames!=null) {
+                return getRecordNames(pvDatabase,recordNames,cursor,limit);
+            }
             if(structureName!=null) {
                 PVStructure pvStructure = pvDatabase.findStructure(structureName);
                 if(pvStructure==null) {
@@ -105,5 +136,19 @@ public class RecordDumpService {
             }
             throw new RPCRequestException(Status.StatusType.ERROR,"neither record or satructure were specfied ");
 		}
+		
+		private PVStructure getRecordNames(PVDatabase pvDatabase,String pattern,String cursor,int limit) {
+		    String[] names = pvDatabase.findRecordNames(pattern, RecordNameMatch.glob, cursor, limit);
+		    String[] fieldNames = {"names","cursor"};
+		    Field[] fields = new Field[2];
+		    fields[0] = fieldCreate.createScalarArray(ScalarType.pvString);
+		    fields[1] = fieldCreate.createScalar(ScalarType.pvString);
+		    PVStructure pvResult = pvDataCreate.createPVStructure(fieldCreate.createStructure(fieldNames, fields));
+		    PVStringArray pvNames = (PVStringArray)pvResult.getScalarArrayField("names", ScalarType.pvString);
+		    pvNames.put(0, names.length, names, 0);
+		    PVString pvCursor = pvResult.getStringField("cursor");
+		    if(limit>0 && names.length==limit) pvCursor.put(names[names.length-1]);
+		    return pvResult;
+		}
     }
 }
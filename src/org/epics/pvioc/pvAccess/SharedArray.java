@@ -0,0 +1,35 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.pvAccess;
+
+import org.epics.pvdata.pv.PVScalarArray;
+
+/**
+ * An immutable copy of a scalar array field of a record that is shared by all readers of the field.
+ * The copy is made once for each change of the record and every reader that asks while the record
+ * has not changed gets the same copy.
+ * A copy is never modified while it is referenced. When the record changes a new copy is made and
+ * readers that still hold the old one keep seeing the old data.
+ * The array that holds the data is reused once every reader has released it.
+ * @author mrk
+ *
+ */
+public interface SharedArray {
+    /**
+     * Get the data. The caller must not modify it.
+     * @return The data.
+     */
+    PVScalarArray getPVScalarArray();
+    /**
+     * Keep another reference to the copy.
+     * Must only be called while the caller already holds a reference.
+     */
+    void acquire();
+    /**
+     * Done with a reference. After the last reference is released the data must not be used.
+     */
+    void release();
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.pvAccess;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.epics.pvdata.factory.ConvertFactory;
+import org.epics.pvdata.factory.PVDataFactory;
+import org.epics.pvdata.pv.Convert;
+import org.epics.pvdata.pv.PVDataCreate;
+import org.epics.pvdata.pv.PVScalarArray;
+import org.epics.pvioc.database.OptimisticReadFactory;
+import org.epics.pvioc.database.PVRecord;
+
+/**
+ * Factory that provides SharedArrays.
+ * All readers of the same field get the same SharedArray as long as the record does not change.
+ * @author mrk
+ *
+ */
+public class SharedArrayFactory {
+    /**
+     * Get a copy of a scalar array field of a record.
+     * The caller must not hold the record lock.
+     * @param pvRecord The record.
+     * @param pvArray The field of the record.
+     * @return The copy. The caller holds a reference and must call release when done.
+     */
+    public static SharedArray acquire(PVRecord pvRecord,PVScalarArray pvArray) {
+        FieldBuffers fieldBuffers = null;
+        synchronized(fieldMap) {
+            fieldBuffers = fieldMap.get(pvArray);
+            if(fieldBuffers==null) {
+                fieldBuffers = new FieldBuffers(pvRecord,pvArray);
+                fieldMap.put(pvArray, fieldBuffers);
+            }
+            fieldBuffers.numberReferences++;
+        }
+        return fieldBuffers.acquire();
+    }
+
+    private static final Convert convert = ConvertFactory.getConvert();
+    private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
+    // guards fieldMap and FieldBuffers.numberReferences
+    private static final Map<PVScalarArray,FieldBuffers> fieldMap = new IdentityHashMap<PVScalarArray,FieldBuffers>();
+
+    private static class SharedArrayImpl implements SharedArray {
+        private final AtomicInteger referenceCount = new AtomicInteger(0);
+        private final FieldBuffers fieldBuffers;
+        private final PVScalarArray pvScalarArray;
+        // the value of pvRecord.tryOptimisticRead when the copy was made or 0 if unknown
+        private long stamp = 0;
+
+        private SharedArrayImpl(FieldBuffers fieldBuffers,PVScalarArray pvScalarArray) {
+            this.fieldBuffers = fieldBuffers;
+            this.pvScalarArray = pvScalarArray;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.pvAccess.SharedArray#getPVScalarArray()
+         */
+        @Override
+        public PVScalarArray getPVScalarArray() {
+            return pvScalarArray;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.pvAccess.SharedArray#acquire()
+         */
+        @Override
+        public void acquire() {
+            synchronized(fieldMap) {
+                fieldBuffers.numberReferences++;
+            }
+            referenceCount.incrementAndGet();
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.pvAccess.SharedArray#release()
+         */
+        @Override
+        public void release() {
+            referenceCount.decrementAndGet();
+            synchronized(fieldMap) {
+                fieldBuffers.numberReferences--;
+                if(fieldBuffers.numberReferences>0) return;
+                if(fieldMap.get(fieldBuffers.pvArray)==fieldBuffers) fieldMap.remove(fieldBuffers.pvArray);
+            }
+        }
+        boolean isFree() {
+            return referenceCount.get()==0;
+        }
+    }
+
+    private static class FieldBuffers {
+        private final PVRecord pvRecord;
+        private final PVScalarArray pvArray;
+        // the buffer that copy writes to
+        private PVScalarArray copyTo = null;
+        private final Runnable copyRunnable = new Runnable() {
+            public void run() {
+                copyData(copyTo);
+            }
+        };
+        private final ArrayList<SharedArrayImpl> bufferList = new ArrayList<SharedArrayImpl>();
+        private SharedArrayImpl current = null;
+        private int numberReferences = 0;
+
+        private FieldBuffers(PVRecord pvRecord,PVScalarArray pvArray) {
+            this.pvRecord = pvRecord;
+            this.pvArray = pvArray;
+        }
+
+        private synchronized SharedArrayImpl acquire() {
+            long stamp = pvRecord.tryOptimisticRead();
+            if(current!=null && stamp!=0 && current.stamp==stamp) {
+                // the record has not been locked since the copy was made
+                current.referenceCount.incrementAndGet();
+                return current;
+            }
+            SharedArrayImpl sharedArray = getFreeBuffer();
+            sharedArray.stamp = copy(sharedArray.pvScalarArray);
+            sharedArray.referenceCount.incrementAndGet();
+            current = sharedArray;
+            return sharedArray;
+        }
+
+        private SharedArrayImpl getFreeBuffer() {
+            for(SharedArrayImpl sharedArray : bufferList) {
+                if(sharedArray.isFree()) return sharedArray;
+            }
+            SharedArrayImpl sharedArray = new SharedArrayImpl(this,
+                    pvDataCreate.createPVScalarArray(pvArray.getScalarArray().getElementType()));
+            bufferList.add(sharedArray);
+            return sharedArray;
+        }
+
+        // Returns the stamp for which the copy is valid or 0 if the record had to be locked.
+        private long copy(PVScalarArray to) {
+            copyTo = to;
+            try {
+                return OptimisticReadFactory.read(pvRecord, copyRunnable);
+            } finally {
+                copyTo = null;
+            }
+        }
+
+        private void copyData(PVScalarArray to) {
+            int length = pvArray.getLength();
+            if(length>0) convert.copyScalarArray(pvArray, 0, to, 0, length);
+            to.setLength(length);
+        }
+    }
+}
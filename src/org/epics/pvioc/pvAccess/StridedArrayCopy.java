@@ -0,0 +1,404 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.pvAccess;
+
+import org.epics.pvdata.factory.ConvertFactory;
+import org.epics.pvdata.pv.BooleanArrayData;
+import org.epics.pvdata.pv.ByteArrayData;
+import org.epics.pvdata.pv.Convert;
+import org.epics.pvdata.pv.DoubleArrayData;
+import org.epics.pvdata.pv.FloatArrayData;
+import org.epics.pvdata.pv.IntArrayData;
+import org.epics.pvdata.pv.LongArrayData;
+import org.epics.pvdata.pv.PVBooleanArray;
+import org.epics.pvdata.pv.PVByteArray;
+import org.epics.pvdata.pv.PVDoubleArray;
+import org.epics.pvdata.pv.PVFloatArray;
+import org.epics.pvdata.pv.PVIntArray;
+import org.epics.pvdata.pv.PVLongArray;
+import org.epics.pvdata.pv.PVScalarArray;
+import org.epics.pvdata.pv.PVShortArray;
+import org.epics.pvdata.pv.PVStringArray;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.PVStructureArray;
+import org.epics.pvdata.pv.PVUnion;
+import org.epics.pvdata.pv.PVUnionArray;
+import org.epics.pvdata.pv.ScalarType;
+import org.epics.pvdata.pv.ShortArrayData;
+import org.epics.pvdata.pv.StringArrayData;
+import org.epics.pvdata.pv.StructureArrayData;
+import org.epics.pvdata.pv.UnionArrayData;
+
+/**
+ * Copy every stride'th element of an array, as used by ChannelArray.
+ * The elements are copied directly between the arrays that hold the data.
+ * No array with the full length of the source is created.
+ * For get, element i of the result is element offset+i*stride of the source.
+ * For put, element i of the source is put into element offset+i*stride of the destination,
+ * which is made longer if necessary.
+ * @author mrk
+ *
+ */
+class StridedArrayCopy {
+    private static final Convert convert = ConvertFactory.getConvert();
+
+    /**
+     * The number of elements that a get returns.
+     * @param length The length of the source.
+     * @param offset The offset of the first element.
+     * @param count The requested number of elements. A value &lt;= 0 means as many as are available.
+     * @param stride The stride. Must be &gt; 0.
+     * @return The number of elements.
+     */
+    static int getCount(int length,int offset,int count,int stride) {
+        if(offset>=length) return 0;
+        int available = (length - offset + stride - 1)/stride;
+        if(count<=0 || count>available) return available;
+        return count;
+    }
+
+    /**
+     * Get every stride'th element of from into to.
+     * @param from The source.
+     * @param offset The offset of the first element of from.
+     * @param count The number of elements. A value &lt;= 0 means as many as are available.
+     * @param stride The stride. Must be &gt; 0.
+     * @param to The destination. Its length is set to the number of elements.
+     * @return The number of elements.
+     */
+    static int get(PVScalarArray from,int offset,int count,int stride,PVScalarArray to) {
+        int length = from.getLength();
+        count = getCount(length,offset,count,stride);
+        ScalarType scalarType = from.getScalarArray().getElementType();
+        if(count==0) {
+            to.setLength(0);
+            return 0;
+        }
+        if(scalarType!=to.getScalarArray().getElementType()) {
+            to.setLength(count);
+            for(int i=0; i<count; i++) convert.copyScalarArray(from, offset + i*stride, to, i, 1);
+            return count;
+        }
+        to.setCapacity(count);
+        to.setLength(count);
+        switch(scalarType) {
+        case pvBoolean: {
+            BooleanArrayData fromData = new BooleanArrayData();
+            BooleanArrayData toData = new BooleanArrayData();
+            ((PVBooleanArray)from).get(0, length, fromData);
+            ((PVBooleanArray)to).get(0, count, toData);
+            boolean[] src = fromData.data;
+            boolean[] dst = toData.data;
+            int s = fromData.offset + offset;
+            int d = toData.offset;
+            for(int i=0; i<count; i++, s+=stride) dst[d+i] = src[s];
+            break;
+        }
+        case pvByte: {
+            ByteArrayData fromData = new ByteArrayData();
+            ByteArrayData toData = new ByteArrayData();
+            ((PVByteArray)from).get(0, length, fromData);
+            ((PVByteArray)to).get(0, count, toData);
+            byte[] src = fromData.data;
+            byte[] dst = toData.data;
+            int s = fromData.offset + offset;
+            int d = toData.offset;
+            for(int i=0; i<count; i++, s+=stride) dst[d+i] = src[s];
+            break;
+        }
+        case pvShort: {
+            ShortArrayData fromData = new ShortArrayData();
+            ShortArrayData toData = new ShortArrayData();
+            ((PVShortArray)from).get(0, length, fromData);
+            ((PVShortArray)to).get(0, count, toData);
+            short[] src = fromData.data;
+            short[] dst = toData.data;
+            int s = fromData.offset + offset;
+            int d = toData.offset;
+            for(int i=0; i<count; i++, s+=stride) dst[d+i] = src[s];
+            break;
+        }
+        case pvInt: {
+            IntArrayData fromData = new IntArrayData();
+            IntArrayData toData = new IntArrayData();
+            ((PVIntArray)from).get(0, length, fromData);
+            ((PVIntArray)to).get(0, count, toData);
+            int[] src = fromData.data;
+            int[] dst = toData.data;
+            int s = fromData.offset + offset;
+            int d = toData.offset;
+            for(int i=0; i<count; i++, s+=stride) dst[d+i] = src[s];
+            break;
+        }
+        case pvLong: {
+            LongArrayData fromData = new LongArrayData();
+            LongArrayData toData = new LongArrayData();
+            ((PVLongArray)from).get(0, length, fromData);
+            ((PVLongArray)to).get(0, count, toData);
+            long[] src = fromData.data;
+            long[] dst = toData.data;
+            int s = fromData.offset + offset;
+            int d = toData.offset;
+            for(int i=0; i<count; i++, s+=stride) dst[d+i] = src[s];
+            break;
+        }
+        case pvFloat: {
+            FloatArrayData fromData = new FloatArrayData();
+            FloatArrayData toData = new FloatArrayData();
+            ((PVFloatArray)from).get(0, length, fromData);
+            ((PVFloatArray)to).get(0, count, toData);
+            float[] src = fromData.data;
+            float[] dst = toData.data;
+            int s = fromData.offset + offset;
+            int d = toData.offset;
+            for(int i=0; i<count; i++, s+=stride) dst[d+i] = src[s];
+            break;
+        }
+        case pvDouble: {
+            DoubleArrayData fromData = new DoubleArrayData();
+            DoubleArrayData toData = new DoubleArrayData();
+            ((PVDoubleArray)from).get(0, length, fromData);
+            ((PVDoubleArray)to).get(0, count, toData);
+            double[] src = fromData.data;
+            double[] dst = toData.data;
+            int s = fromData.offset + offset;
+            int d = toData.offset;
+            for(int i=0; i<count; i++, s+=stride) dst[d+i] = src[s];
+            break;
+        }
+        case pvString: {
+            StringArrayData fromData = new StringArrayData();
+            StringArrayData toData = new StringArrayData();
+            ((PVStringArray)from).get(0, length, fromData);
+            ((PVStringArray)to).get(0, count, toData);
+            String[] src = fromData.data;
+            String[] dst = toData.data;
+            int s = fromData.offset + offset;
+            int d = toData.offset;
+            for(int i=0; i<count; i++, s+=stride) dst[d+i] = src[s];
+            break;
+        }
+        default:
+            for(int i=0; i<count; i++) convert.copyScalarArray(from, offset + i*stride, to, i, 1);
+        }
+        return count;
+    }
+
+    /**
+     * Put the elements of from into every stride'th element of to.
+     * @param from The source.
+     * @param count The number of elements of from. A value &lt;= 0 means all.
+     * @param to The destination.
+     * @param offset The offset of the first element of to.
+     * @param stride The stride. Must be &gt; 0.
+     * @return The number of elements.
+     */
+    static int put(PVScalarArray from,int count,PVScalarArray to,int offset,int stride) {
+        int length = from.getLength();
+        if(count<=0 || count>length) count = length;
+        if(count==0) return 0;
+        int toLength = offset + (count-1)*stride + 1;
+        if(to.getLength()<toLength) to.setLength(toLength);
+        ScalarType scalarType = to.getScalarArray().getElementType();
+        if(scalarType!=from.getScalarArray().getElementType()) {
+            for(int i=0; i<count; i++) convert.copyScalarArray(from, i, to, offset + i*stride, 1);
+            return count;
+        }
+        toLength = to.getLength();
+        switch(scalarType) {
+        case pvBoolean: {
+            BooleanArrayData fromData = new BooleanArrayData();
+            BooleanArrayData toData = new BooleanArrayData();
+            ((PVBooleanArray)from).get(0, count, fromData);
+            ((PVBooleanArray)to).get(0, toLength, toData);
+            boolean[] src = fromData.data;
+            boolean[] dst = toData.data;
+            int s = fromData.offset;
+            int d = toData.offset + offset;
+            for(int i=0; i<count; i++, d+=stride) dst[d] = src[s+i];
+            break;
+        }
+        case pvByte: {
+            ByteArrayData fromData = new ByteArrayData();
+            ByteArrayData toData = new ByteArrayData();
+            ((PVByteArray)from).get(0, count, fromData);
+            ((PVByteArray)to).get(0, toLength, toData);
+            byte[] src = fromData.data;
+            byte[] dst = toData.data;
+            int s = fromData.offset;
+            int d = toData.offset + offset;
+            for(int i=0; i<count; i++, d+=stride) dst[d] = src[s+i];
+            break;
+        }
+        case pvShort: {
+            ShortArrayData fromData = new ShortArrayData();
+            ShortArrayData toData = new ShortArrayData();
+            ((PVShortArray)from).get(0, count, fromData);
+            ((PVShortArray)to).get(0, toLength, toData);
+            short[] src = fromData.data;
+            short[] dst = toData.data;
+            int s = fromData.offset;
+            int d = toData.offset + offset;
+            for(int i=0; i<count; i++, d+=stride) dst[d] = src[s+i];
+            break;
+        }
+        case pvInt: {
+            IntArrayData fromData = new IntArrayData();
+            IntArrayData toData = new IntArrayData();
+            ((PVIntArray)from).get(0, count, fromData);
+            ((PVIntArray)to).get(0, toLength, toData);
+            int[] src = fromData.data;
+            int[] dst = toData.data;
+            int s = fromData.offset;
+            int d = toData.offset + offset;
+            for(int i=0; i<count; i++, d+=stride) dst[d] = src[s+i];
+            break;
+        }
+        case pvLong: {
+            LongArrayData fromData = new LongArrayData();
+            LongArrayData toData = new LongArrayData();
+            ((PVLongArray)from).get(0, count, fromData);
+            ((PVLongArray)to).get(0, toLength, toData);
+            long[] src = fromData.data;
+            long[] dst = toData.data;
+            int s = fromData.offset;
+            int d = toData.offset + offset;
+            for(int i=0; i<count; i++, d+=stride) dst[d] = src[s+i];
+            break;
+        }
+        case pvFloat: {
+            FloatArrayData fromData = new FloatArrayData();
+            FloatArrayData toData = new FloatArrayData();
+            ((PVFloatArray)from).get(0, count, fromData);
+            ((PVFloatArray)to).get(0, toLength, toData);
+            float[] src = fromData.data;
+            float[] dst = toData.data;
+            int s = fromData.offset;
+            int d = toData.offset + offset;
+            for(int i=0; i<count; i++, d+=stride) dst[d] = src[s+i];
+            break;
+        }
+        case pvDouble: {
+            DoubleArrayData fromData = new DoubleArrayData();
+            DoubleArrayData toData = new DoubleArrayData();
+            ((PVDoubleArray)from).get(0, count, fromData);
+            ((PVDoubleArray)to).get(0, toLength, toData);
+            double[] src = fromData.data;
+            double[] dst = toData.data;
+            int s = fromData.offset;
+            int d = toData.offset + offset;
+            for(int i=0; i<count; i++, d+=stride) dst[d] = src[s+i];
+            break;
+        }
+        case pvString: {
+            StringArrayData fromData = new StringArrayData();
+            StringArrayData toData = new StringArrayData();
+            ((PVStringArray)from).get(0, count, fromData);
+            ((PVStringArray)to).get(0, toLength, toData);
+            String[] src = fromData.data;
+            String[] dst = toData.data;
+            int s = fromData.offset;
+            int d = toData.offset + offset;
+            for(int i=0; i<count; i++, d+=stride) dst[d] = src[s+i];
+            break;
+        }
+        default:
+            for(int i=0; i<count; i++) convert.copyScalarArray(from, i, to, offset + i*stride, 1);
+            return count;
+        }
+        // the elements were put directly into the array that holds the data
+        to.postPut();
+        return count;
+    }
+
+    /**
+     * Get every stride'th element of from into to.
+     * The elements are shared, just like convert.copyStructureArray does.
+     * @param from The source.
+     * @param offset The offset of the first element of from.
+     * @param count The number of elements. A value &lt;= 0 means as many as are available.
+     * @param stride The stride. Must be &gt; 0.
+     * @param to The destination.
+     * @return The number of elements.
+     */
+    static int get(PVStructureArray from,int offset,int count,int stride,PVStructureArray to) {
+        int length = from.getLength();
+        count = getCount(length,offset,count,stride);
+        StructureArrayData fromData = new StructureArrayData();
+        from.get(0, length, fromData);
+        PVStructure[] elements = new PVStructure[count];
+        int s = fromData.offset + offset;
+        for(int i=0; i<count; i++, s+=stride) elements[i] = fromData.data[s];
+        to.setLength(count);
+        if(count>0) to.put(0, count, elements, 0);
+        return count;
+    }
+
+    /**
+     * Put the elements of from into every stride'th element of to.
+     * @param from The source.
+     * @param count The number of elements of from. A value &lt;= 0 means all.
+     * @param to The destination.
+     * @param offset The offset of the first element of to.
+     * @param stride The stride. Must be &gt; 0.
+     * @return The number of elements.
+     */
+    static int put(PVStructureArray from,int count,PVStructureArray to,int offset,int stride) {
+        int length = from.getLength();
+        if(count<=0 || count>length) count = length;
+        if(count==0) return 0;
+        StructureArrayData fromData = new StructureArrayData();
+        from.get(0, count, fromData);
+        for(int i=0; i<count; i++) {
+            to.put(offset + i*stride, 1, fromData.data, fromData.offset + i);
+        }
+        return count;
+    }
+
+    /**
+     * Get every stride'th element of from into to.
+     * The elements are shared, just like convert.copyUnionArray does.
+     * @param from The source.
+     * @param offset The offset of the first element of from.
+     * @param count The number of elements. A value &lt;= 0 means as many as are available.
+     * @param stride The stride. Must be &gt; 0.
+     * @param to The destination.
+     * @return The number of elements.
+     */
+    static int get(PVUnionArray from,int offset,int count,int stride,PVUnionArray to) {
+        int length = from.getLength();
+        count = getCount(length,offset,count,stride);
+        UnionArrayData fromData = new UnionArrayData();
+        from.get(0, length, fromData);
+        PVUnion[] elements = new PVUnion[count];
+        int s = fromData.offset + offset;
+        for(int i=0; i<count; i++, s+=stride) elements[i] = fromData.data[s];
+        to.setLength(count);
+        if(count>0) to.put(0, count, elements, 0);
+        return count;
+    }
+
+    /**
+     * Put the elements of from into every stride'th element of to.
+     * @param from The source.
+     * @param count The number of elements of from. A value &lt;= 0 means all.
+     * @param to The destination.
+     * @param offset The offset of the first element of to.
+     * @param stride The stride. Must be &gt; 0.
+     * @return The number of elements.
+     */
+    static int put(PVUnionArray from,int count,PVUnionArray to,int offset,int stride) {
+        int length = from.getLength();
+        if(count<=0 || count>length) count = length;
+        if(count==0) return 0;
+        UnionArrayData fromData = new UnionArrayData();
+        from.get(0, count, fromData);
+        for(int i=0; i<count; i++) {
+            to.put(offset + i*stride, 1, fromData.data, fromData.offset + i);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.support;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of times in nanoseconds with a bounded relative error.
+ * Values below 64 have their own bucket.
+ * Each larger power of two is split into 32 buckets, so a value is known to within about 3 percent.
+ * Values above 2 to the 40 nanoseconds, about 18 minutes, are counted in the last bucket.
+ * record does not allocate or lock and can be called by any thread.
+ * @author mrk
+ *
+ */
+public class LatencyHistogram {
+    private static final int subBucketBits = 5;
+    private static final int subBucketCount = 1<<subBucketBits;
+    private static final int linearLimit = 2*subBucketCount;
+    private static final int maxExponent = 40;
+    // the last bucket is for all values of 2 to the maxExponent or more
+    private static final int numberBuckets = linearLimit + (maxExponent - subBucketBits - 1)*subBucketCount + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(numberBuckets);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong total = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * Record a time.
+     * @param nanoseconds The time. A negative value is recorded as 0.
+     */
+    public void record(long nanoseconds) {
+        if(nanoseconds<0) nanoseconds = 0;
+        counts.incrementAndGet(getIndex(nanoseconds));
+        count.incrementAndGet();
+        total.addAndGet(nanoseconds);
+        long oldMax = max.get();
+        while(nanoseconds>oldMax) {
+            if(max.compareAndSet(oldMax, nanoseconds)) break;
+            oldMax = max.get();
+        }
+    }
+    /**
+     * Get the number of recorded times.
+     * @return The number.
+     */
+    public long getCount() {
+        return count.get();
+    }
+    /**
+     * Get the mean in microseconds.
+     * @return The mean.
+     */
+    public double getMean() {
+        long number = count.get();
+        if(number==0) return 0.0;
+        return total.get()/(number*1000.0);
+    }
+    /**
+     * Get the maximum in microseconds.
+     * @return The maximum.
+     */
+    public double getMax() {
+        return max.get()/1000.0;
+    }
+    /**
+     * Get the time in microseconds below which a percentage of the recorded times are.
+     * @param percentile The percentage, from 0 to 100.
+     * @return The time.
+     */
+    public double getValueAtPercentile(double percentile) {
+        long number = count.get();
+        if(number==0) return 0.0;
+        long limit = (long)Math.ceil(number*percentile/100.0);
+        if(limit<1) limit = 1;
+        long sum = 0;
+        for(int i=0; i<numberBuckets; i++) {
+            sum += counts.get(i);
+            if(sum>=limit) return Math.min(getValue(i),max.get())/1000.0;
+        }
+        return getMax();
+    }
+    /**
+     * Forget all recorded times.
+     */
+    public void reset() {
+        for(int i=0; i<numberBuckets; i++) counts.set(i, 0);
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+    /**
+     * Show the statistics in microseconds.
+     * @return A single line without a trailing newline.
+     */
+    public String show() {
+        return String.format(
+            "count %d mean %.1f p50 %.1f p90 %.1f p99 %.1f p99.9 %.1f max %.1f",
+            getCount(),getMean(),getValueAtPercentile(50.0),getValueAtPercentile(90.0),
+            getValueAtPercentile(99.0),getValueAtPercentile(99.9),getMax());
+    }
+
+    private static int getIndex(long value) {
+        if(value<linearLimit) return (int)value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if(exponent>=maxExponent) return numberBuckets-1;
+        int shift = exponent - subBucketBits;
+        int subBucket = (int)(value>>>shift) - subBucketCount;
+        return linearLimit + (exponent - subBucketBits - 1)*subBucketCount + subBucket;
+    }
+
+    // the middle of the bucket
+    private static long getValue(int index) {
+        if(index<linearLimit) return index;
+        int bucket = index - linearLimit;
+        int shift = bucket/subBucketCount + 1;
+        long lowest = ((long)(bucket%subBucketCount + subBucketCount))<<shift;
+        return lowest + (1L<<(shift-1));
+    }
+}
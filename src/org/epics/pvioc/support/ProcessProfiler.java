@@ -0,0 +1,212 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.support;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.epics.pvioc.database.PVRecord;
+import org.epics.pvioc.util.RequestResult;
+
+/**
+ * Profiler for record processing.
+ * When it is enabled the following times are recorded for each record that processes:
+ * <ul>
+ * <li>process: From the time the record is processed until processing completes.</li>
+ * <li>lockWait: The time it takes to lock the record in order to queue a process request,
+ * or to lock the record and its linked records in order to process or continue processing.</li>
+ * <li>queueWait: The time a process request waits because the record is active.</li>
+ * <li>The time from Support.process until supportProcessDone for each support that a generic structure calls.</li>
+ * </ul>
+ * The profiler is enabled if IOCProcessProfiler is true. It can also be enabled and disabled at run time.
+ * When it is disabled the only cost is a check of isEnabled.
+ * @author mrk
+ *
+ */
+public class ProcessProfiler {
+    /**
+     * Is the profiler enabled?
+     * @return (false,true) if it (is not, is) enabled.
+     */
+    public static boolean isEnabled() {
+        return isEnabled;
+    }
+    /**
+     * Enable or disable the profiler.
+     * Times that have already been recorded are kept.
+     * @param value (false,true) to (disable, enable).
+     */
+    public static void setEnabled(boolean value) {
+        isEnabled = value;
+    }
+    /**
+     * Get the profile of a record.
+     * @param pvRecord The record.
+     * @param create Create the profile if it does not exist.
+     * @return The profile or null if it does not exist and create is false.
+     */
+    public static RecordProfile getRecordProfile(PVRecord pvRecord,boolean create) {
+        synchronized(recordProfileMap) {
+            RecordProfile recordProfile = recordProfileMap.get(pvRecord);
+            if(recordProfile==null && create) {
+                recordProfile = new RecordProfile();
+                recordProfileMap.put(pvRecord, recordProfile);
+            }
+            return recordProfile;
+        }
+    }
+    /**
+     * Forget all recorded times.
+     */
+    public static void reset() {
+        synchronized(recordProfileMap) {
+            for(RecordProfile recordProfile : recordProfileMap.values()) recordProfile.reset();
+        }
+    }
+    /**
+     * Create a timer for a support.
+     * @param support The support.
+     * @return The timer.
+     */
+    public static SupportTimer createSupportTimer(Support support) {
+        return new SupportTimer(support);
+    }
+
+    /**
+     * The histograms of a record.
+     */
+    public static class RecordProfile {
+        private final LatencyHistogram process = new LatencyHistogram();
+        private final LatencyHistogram lockWait = new LatencyHistogram();
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+        private final ArrayList<String> supportNames = new ArrayList<String>();
+        private final ArrayList<LatencyHistogram> supportHistograms = new ArrayList<LatencyHistogram>();
+
+        private RecordProfile() {}
+        /**
+         * Get the histogram of process times.
+         * @return The histogram.
+         */
+        public LatencyHistogram getProcess() {
+            return process;
+        }
+        /**
+         * Get the histogram of times waiting for the record lock.
+         * @return The histogram.
+         */
+        public LatencyHistogram getLockWait() {
+            return lockWait;
+        }
+        /**
+         * Get the histogram of times a process request was queued.
+         * @return The histogram.
+         */
+        public LatencyHistogram getQueueWait() {
+            return queueWait;
+        }
+        /**
+         * Get the names of the fields for which support times are recorded.
+         * @return The full field names.
+         */
+        public synchronized String[] getSupportNames() {
+            return supportNames.toArray(new String[supportNames.size()]);
+        }
+        /**
+         * Get the histogram of a support.
+         * @param fullFieldName The full field name of the support.
+         * @return The histogram or null if there are no times for the support.
+         */
+        public synchronized LatencyHistogram getSupport(String fullFieldName) {
+            int index = supportNames.indexOf(fullFieldName);
+            if(index<0) return null;
+            return supportHistograms.get(index);
+        }
+        /**
+         * Show the histograms in microseconds.
+         * @return One line for each histogram that has a time.
+         */
+        public String show() {
+            StringBuilder builder = new StringBuilder();
+            show(builder,"process",process);
+            show(builder,"lockWait",lockWait);
+            show(builder,"queueWait",queueWait);
+            for(String name : getSupportNames()) show(builder,"support " + name,getSupport(name));
+            return builder.toString();
+        }
+
+        private void show(StringBuilder builder,String name,LatencyHistogram histogram) {
+            if(histogram.getCount()==0) return;
+            builder.append(String.format("    %s %s%n",name,histogram.show()));
+        }
+
+        private synchronized LatencyHistogram addSupport(String fullFieldName) {
+            LatencyHistogram histogram = getSupport(fullFieldName);
+            if(histogram!=null) return histogram;
+            histogram = new LatencyHistogram();
+            supportNames.add(fullFieldName);
+            supportHistograms.add(histogram);
+            return histogram;
+        }
+
+        private synchronized void reset() {
+            process.reset();
+            lockWait.reset();
+            queueWait.reset();
+            for(LatencyHistogram histogram : supportHistograms) histogram.reset();
+        }
+    }
+
+    /**
+     * Records the time from Support.process until supportProcessDone.
+     * Instead of calling support.process(requester) the caller calls
+     * support.process(supportTimer.start(requester)) when the profiler is enabled.
+     * A timer can only time one process request at a time.
+     */
+    public static class SupportTimer implements SupportProcessRequester {
+        private final Support support;
+        private LatencyHistogram histogram = null;
+        private SupportProcessRequester supportProcessRequester = null;
+        private long startTime = 0;
+
+        private SupportTimer(Support support) {
+            this.support = support;
+        }
+        /**
+         * Start timing a process request.
+         * @param supportProcessRequester The requester that is called when the support is done.
+         * @return The requester to give to Support.process.
+         */
+        public SupportProcessRequester start(SupportProcessRequester supportProcessRequester) {
+            if(histogram==null) {
+                RecordProfile recordProfile = getRecordProfile(support.getPVRecordField().getPVRecord(), true);
+                histogram = recordProfile.addSupport(support.getPVRecordField().getFullFieldName());
+            }
+            this.supportProcessRequester = supportProcessRequester;
+            startTime = System.nanoTime();
+            return this;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.support.SupportProcessRequester#supportProcessDone(org.epics.pvioc.util.RequestResult)
+         */
+        @Override
+        public void supportProcessDone(RequestResult requestResult) {
+            histogram.record(System.nanoTime() - startTime);
+            SupportProcessRequester requester = supportProcessRequester;
+            supportProcessRequester = null;
+            requester.supportProcessDone(requestResult);
+        }
+    }
+
+    private static volatile boolean isEnabled = false;
+    // weak so that the profile of a removed record is garbage collected
+    private static final Map<PVRecord,RecordProfile> recordProfileMap = new WeakHashMap<PVRecord,RecordProfile>();
+
+    static {
+        String envValue = System.getProperty("IOCProcessProfiler", System.getenv("IOCProcessProfiler"));
+        if(envValue!=null) isEnabled = Boolean.parseBoolean(envValue);
+    }
+}
@@ -105,8 +105,25 @@ public interface RecordProcess {
      * @return The name of the current record processor or null if no record processor is registered.
      */
     String getRecordProcessRequesterName();
+    /**
+     * Lock another record whenever this record is processed.
+     * process and processContinue lock this record and all linked records as a PVRecordLockSet,
+     * so support can access a linked record without PVRecord.lockOtherRecord unlocking this record.
+     * A record that is added more than once must be removed the same number of times.
+     * @param linkedRecord The record.
+     */
+    void addLinkedRecord(PVRecord linkedRecord);
+    /**
+     * Stop locking a record that was added by addLinkedRecord.
+     * @param linkedRecord The record.
+     */
+    void removeLinkedRecord(PVRecord linkedRecord);
     /**
      * queue a request to become record process requester.
+     * If the record is not ready, is disabled, or the token is the active token then canNotProcess is called.
+     * If the token is already queued then the call does nothing.
+     * canNotProcess is not called and the requester still gets a single becomeProcessor
+     * when the request that is already queued is removed from the queue.
      * @param processToken The token returned by requestProcessToken.
      */
     void queueProcessRequest(ProcessToken processToken);
@@ -5,9 +5,10 @@
  */
 package org.epics.pvioc.support;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
+import java.util.HashSet;
 
 import org.epics.pvdata.misc.ThreadPriority;
 import org.epics.pvdata.property.PVTimeStamp;
@@ -22,6 +23,7 @@ import org.epics.pvdata.pv.Structure;
 import org.epics.pvioc.database.PVListener;
 import org.epics.pvioc.database.PVRecord;
 import org.epics.pvioc.database.PVRecordField;
+import org.epics.pvioc.database.PVRecordLockSet;
 import org.epics.pvioc.database.PVRecordStructure;
 import org.epics.pvioc.install.AfterStart;
 import org.epics.pvioc.install.AfterStartFactory;
@@ -52,6 +54,10 @@ public class RecordProcessFactory {
     static private class Token implements ProcessToken 
     {
     	private RecordProcessRequester recordProcessRequester;
+    	// true while the token is in queueRequestList. Only accessed with the record locked.
+    	private boolean queued = false;
+    	// the time the token was queued if the profiler was enabled. Only accessed with the record locked.
+    	private long queueTime = 0;
     	
     	Token(RecordProcessRequester recordProcessRequester) {
     		this.recordProcessRequester = recordProcessRequester;
@@ -72,12 +78,16 @@ public class RecordProcessFactory {
         private boolean singleProcessRequester = false;
         
         private ArrayList<Token> tokenList = new ArrayList<Token>();
-        private ArrayList<Token> queueRequestList = new ArrayList<Token>();
+        private ArrayDeque<Token> queueRequestList = new ArrayDeque<Token>();
         private boolean leaveActive = false;
         private Token activeToken = null;
         private boolean recordProcessActive = false;
-        private List<ProcessCallbackRequester> processCallbackRequesterList =
-            new ArrayList<ProcessCallbackRequester>();
+        // processCallbackRequesterList and processCallbackRequesterSet are guarded by synchronized(processCallbackRequesterList)
+        private ArrayDeque<ProcessCallbackRequester> processCallbackRequesterList =
+            new ArrayDeque<ProcessCallbackRequester>();
+        // the requesters that are in processCallbackRequesterList. Used to detect duplicate requests.
+        private HashSet<ProcessCallbackRequester> processCallbackRequesterSet =
+            new HashSet<ProcessCallbackRequester>();
         private boolean callStopAfterActive = false;
         private boolean callUninitializeAfterActive = false;
         private boolean processIsComplete = false;
@@ -85,11 +95,19 @@ public class RecordProcessFactory {
         private boolean callRecordProcessComplete = false;
         private RequestResult requestResult = null;
      
+        // the records that are locked with this record by process and processContinue
+        private ArrayList<PVRecord> linkedRecordList = new ArrayList<PVRecord>();
+        private volatile PVRecordLockSet processLockSet;
+        
         private TimeStamp timeStamp = TimeStampFactory.create();
         private PVTimeStamp pvTimeStamp = PVTimeStampFactory.create();
+        // only used if the profiler is enabled
+        private ProcessProfiler.RecordProfile recordProfile = null;
+        private long processStartTime = 0;
         
         private RecordProcessImpl(PVRecord pvRecord) {
             this.pvRecord = pvRecord;
+            processLockSet = new PVRecordLockSet(new PVRecord[]{pvRecord});
             pvRecord.setRecordProcess(this);
         }
         /* (non-Javadoc)
@@ -306,13 +324,39 @@ public class RecordProcessFactory {
 			}
 		}
 		/* (non-Javadoc)
+		 * @see org.epics.pvioc.support.RecordProcess#addLinkedRecord(org.epics.pvioc.database.PVRecord)
+		 */
+		@Override
+		public void addLinkedRecord(PVRecord linkedRecord) {
+			pvRecord.lock();
+			try {
+				linkedRecordList.add(linkedRecord);
+				createProcessLockSet();
+			} finally {
+				pvRecord.unlock();
+			}
+		}
+		/* (non-Javadoc)
+		 * @see org.epics.pvioc.support.RecordProcess#removeLinkedRecord(org.epics.pvioc.database.PVRecord)
+		 */
+		@Override
+		public void removeLinkedRecord(PVRecord linkedRecord) {
+			pvRecord.lock();
+			try {
+				if(!linkedRecordList.remove(linkedRecord)) return;
+				createProcessLockSet();
+			} finally {
+				pvRecord.unlock();
+			}
+		}
+		/* (non-Javadoc)
          * @see org.epics.pvioc.support.RecordProcess#queueProcessRequest(org.epics.pvioc.support.ProcessToken)
          */
         @Override
         public void queueProcessRequest(ProcessToken processToken) {
         	Token token = (Token) processToken;
             RecordProcessRequester recordProcessRequester = token.recordProcessRequester;
-        	pvRecord.lock();
+        	lockRecord();
         	try {
         		SupportState supportState = fieldSupport.getSupportState();
         		if (supportState != SupportState.ready) {
@@ -328,6 +372,10 @@ public class RecordProcessFactory {
         			return;
         		}
         		if(activeToken!=null) {
+        			// a request that is already queued is satisfied when the queued request is processed
+        			if(token.queued) return;
+        			token.queued = true;
+        			token.queueTime = ProcessProfiler.isEnabled() ? System.nanoTime() : 0;
         			queueRequestList.add(token);
         			return;
         		}
@@ -389,8 +437,9 @@ public class RecordProcessFactory {
                 throw new IllegalStateException("not the active process requester");
             }
             RecordProcessRequester recordProcessRequester;
-            pvRecord.lock();
+            PVRecordLockSet lockSet = lockProcessLockSet();
             try {
+                processStartTime = ProcessProfiler.isEnabled() ? System.nanoTime() : 0;
                 recordProcessRequester = activeToken.recordProcessRequester;
                 if(pvTimeStamp.isAttached()) {
                     pvTimeStamp.set(timeStamp);
@@ -409,7 +458,7 @@ public class RecordProcessFactory {
                     completeProcessing();
                 }
             } finally {
-                pvRecord.unlock();
+                lockSet.unlock();
             }
             if(callRecordProcessComplete) {
                 callRecordProcessComplete = false;
@@ -420,11 +469,8 @@ public class RecordProcessFactory {
                 return;
             }
             while(true) {
-                ProcessCallbackRequester processCallbackRequester = null;
-                synchronized(processCallbackRequesterList) {
-                	if(processCallbackRequesterList.size()<1) break;
-                	processCallbackRequester = processCallbackRequesterList.remove(0);
-                }
+                ProcessCallbackRequester processCallbackRequester = pollProcessCallbackRequester();
+                if(processCallbackRequester==null) break;
                 processCallbackRequester.processCallback();
             }
             return;
@@ -447,10 +493,7 @@ public class RecordProcessFactory {
                 if(!processCompleteDone) {
                     throw new IllegalStateException("process complete is not done");
                 }
-                activeToken = null;
-                if(queueRequestList.size()>0) {
-                	activeToken = queueRequestList.remove(0);
-                }
+                activeToken = pollQueueRequest();
             } finally {
                 pvRecord.unlock();
             }
@@ -461,7 +504,7 @@ public class RecordProcessFactory {
          */
         public void processContinue(ProcessContinueRequester processContinueRequester) {
         	RecordProcessRequester recordProcessRequester;
-            pvRecord.lock();
+            PVRecordLockSet lockSet = lockProcessLockSet();
             try {
                 if(activeToken==null) {
                     throw new IllegalStateException(
@@ -480,7 +523,7 @@ public class RecordProcessFactory {
                     completeProcessing();
                 }
             } finally {
-                pvRecord.unlock();
+                lockSet.unlock();
             }
             if(callRecordProcessComplete) {
                 callRecordProcessComplete = false;
@@ -491,11 +534,8 @@ public class RecordProcessFactory {
                 return;
             }
             while(true) {
-                ProcessCallbackRequester processCallbackRequester = null;
-                synchronized(processCallbackRequesterList) {
-                	if(processCallbackRequesterList.size()<1) break;
-                	processCallbackRequester = processCallbackRequesterList.remove(0);
-                }
+                ProcessCallbackRequester processCallbackRequester = pollProcessCallbackRequester();
+                if(processCallbackRequester==null) break;
                 processCallbackRequester.processCallback();
             }
             return;
@@ -518,10 +558,25 @@ public class RecordProcessFactory {
                 traceMessage("requestProcessCallback " + processCallbackRequester.getRequesterName());
             }
             synchronized(processCallbackRequesterList) {
-            	if(processCallbackRequesterList.contains(processCallbackRequester)) {
-            		throw new IllegalStateException("requestProcessCallback called but already on list");
-            	}
-            	processCallbackRequesterList.add(processCallbackRequester);
+                if(!processCallbackRequesterSet.add(processCallbackRequester)) {
+                    throw new IllegalStateException("requestProcessCallback called but already on list");
+                }
+                processCallbackRequesterList.add(processCallbackRequester);
+            }
+        }
+        
+        // the list and the set change together so that a requester is never on one without the other
+        private ProcessCallbackRequester pollProcessCallbackRequester() {
+            synchronized(processCallbackRequesterList) {
+                ProcessCallbackRequester processCallbackRequester = processCallbackRequesterList.poll();
+                if(processCallbackRequester!=null) processCallbackRequesterSet.remove(processCallbackRequester);
+                return processCallbackRequester;
+            }
+        }
+        
+        private boolean isProcessCallbackListEmpty() {
+            synchronized(processCallbackRequesterList) {
+                return processCallbackRequesterList.isEmpty();
             }
         }
         
@@ -578,11 +633,7 @@ public class RecordProcessFactory {
 					Token token = tokenList.remove(index-1);
 					token.recordProcessRequester.lostRightToProcess();
 				}
-				while(true) {
-					int index = queueRequestList.size();
-					if(index==0) break;
-					queueRequestList.remove(index-1);
-				}
+				while(pollQueueRequest()!=null) {}
 			} finally {
 				pvRecord.unlock();
 			}
@@ -616,6 +667,10 @@ public class RecordProcessFactory {
 		}
         // called by process and processContinue with record locked.
         private void completeProcessing() {
+            if(processStartTime!=0) {
+                getRecordProfile().getProcess().record(System.nanoTime() - processStartTime);
+                processStartTime = 0;
+            }
             processCompleteDone = true;
             callRecordProcessComplete = true;
             if(callStopAfterActive) {
@@ -631,7 +686,7 @@ public class RecordProcessFactory {
                 fieldSupport.uninitialize();
                 callUninitializeAfterActive = false;
             }
-            if(!processCallbackRequesterList.isEmpty()){
+            if(!isProcessCallbackListEmpty()){
                 pvRecord.message(
                     "completing processing but ProcessCallbackRequesters are still present",
                     MessageType.fatalError);
@@ -639,9 +694,8 @@ public class RecordProcessFactory {
             pvRecord.endGroupPut();
             activeToken.recordProcessRequester.recordProcessResult(requestResult);
             if(!leaveActive) {
-            	activeToken = null;
-            	if(queueRequestList.size()>0) {
-                	activeToken = queueRequestList.remove(0);
+            	activeToken = pollQueueRequest();
+            	if(activeToken!=null) {
                 	processIsComplete = false;
             		processCompleteDone = false;
             		pvRecord.beginGroupPut();
@@ -650,6 +704,55 @@ public class RecordProcessFactory {
             if(trace) traceMessage("process completion " + fieldSupport.getRequesterName());
         }
         
+        private ProcessProfiler.RecordProfile getRecordProfile() {
+            if(recordProfile==null) recordProfile = ProcessProfiler.getRecordProfile(pvRecord, true);
+            return recordProfile;
+        }
+        
+        // lock the record and, if the profiler is enabled, record the time it took
+        private void lockRecord() {
+            if(!ProcessProfiler.isEnabled()) {
+                pvRecord.lock();
+                return;
+            }
+            long startTime = System.nanoTime();
+            pvRecord.lock();
+            getRecordProfile().getLockWait().record(System.nanoTime() - startTime);
+        }
+        
+        // lock the record and the linked records and, if the profiler is enabled, record the time it took
+        private PVRecordLockSet lockProcessLockSet() {
+            PVRecordLockSet lockSet = processLockSet;
+            if(!ProcessProfiler.isEnabled()) {
+                lockSet.lock();
+                return lockSet;
+            }
+            long startTime = System.nanoTime();
+            lockSet.lock();
+            getRecordProfile().getLockWait().record(System.nanoTime() - startTime);
+            return lockSet;
+        }
+        
+        // called with the record locked
+        private void createProcessLockSet() {
+            PVRecord[] pvRecords = new PVRecord[linkedRecordList.size() + 1];
+            pvRecords[0] = pvRecord;
+            for(int i=0; i<linkedRecordList.size(); i++) pvRecords[i+1] = linkedRecordList.get(i);
+            processLockSet = new PVRecordLockSet(pvRecords);
+        }
+        
+        // called with the record locked
+        private Token pollQueueRequest() {
+            Token token = queueRequestList.poll();
+            if(token==null) return null;
+            token.queued = false;
+            if(token.queueTime!=0) {
+                getRecordProfile().getQueueWait().record(System.nanoTime() - token.queueTime);
+                token.queueTime = 0;
+            }
+            return token;
+        }
+        
 		private void checkForIllegalRequest() {
             if(activeToken!=null && (recordProcessActive)) return;
             if(activeToken==null) {
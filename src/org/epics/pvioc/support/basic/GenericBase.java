@@ -14,6 +14,7 @@ import org.epics.pvioc.database.PVRecordField;
 import org.epics.pvioc.database.PVRecordStructure;
 import org.epics.pvioc.install.AfterStart;
 import org.epics.pvioc.support.AbstractSupport;
+import org.epics.pvioc.support.ProcessProfiler;
 import org.epics.pvioc.support.Support;
 import org.epics.pvioc.support.SupportProcessRequester;
 import org.epics.pvioc.support.SupportState;
@@ -29,6 +30,10 @@ public class GenericBase extends AbstractSupport implements SupportProcessReques
     private PVRecordStructure pvRecordStructure = null;
     private String processRequesterName = null;
     private PVBoolean[] pvWaits = null;
+    // used if a support does not have a wait field
+    private boolean[] waits = null;
+    // created when a support is processed while the profiler is enabled
+    private ProcessProfiler.SupportTimer[] supportTimers = null;
     private Support[] supports = null;
     private AlarmSupport alarmSupport = null;
     private SupportProcessRequester supportProcessRequester;
@@ -51,9 +56,31 @@ public class GenericBase extends AbstractSupport implements SupportProcessReques
      * Get the supports for the fields in this structure.
      * @return Support[]
      */
-    protected Support[] getSupports() {
+    public Support[] getSupports() {
         return supports;
     }
+    /**
+     * Set whether process waits for a support to complete before it processes the next support.
+     * The default is true. It is only used if the field of the support does not have a wait field.
+     * When initialize is called the default is restored.
+     * @param index The index of the support in the array returned by getSupports.
+     * @param wait (false,true) if process (does not wait, waits).
+     * @return (false,true) if the value (is not, is) used.
+     */
+    public boolean setWait(int index,boolean wait) {
+        if(pvWaits[index]!=null) return false;
+        waits[index] = wait;
+        return true;
+    }
+    /**
+     * Does process wait for a support to complete before it processes the next support?
+     * @param index The index of the support in the array returned by getSupports.
+     * @return (false,true) if process (does not wait, waits).
+     */
+    public boolean getWait(int index) {
+        if(pvWaits[index]!=null) return pvWaits[index].get();
+        return waits[index];
+    }
     /* (non-Javadoc)
      * @see org.epics.pvioc.process.SupportProcessRequester#getProcessRequesterName()
      */
@@ -88,6 +115,8 @@ public class GenericBase extends AbstractSupport implements SupportProcessReques
             if(pvRecordField.getSupport()!=null) numberSupport++;
         }
         pvWaits = new PVBoolean[numberSupport];
+        waits = new boolean[numberSupport];
+        supportTimers = new ProcessProfiler.SupportTimer[numberSupport];
         supports = new Support[numberSupport];
         int indSupport = 0;
         for(int i=0; i< n; i++) {
@@ -99,6 +128,7 @@ public class GenericBase extends AbstractSupport implements SupportProcessReques
             Support support = pvRecordField.getSupport();
             if(support==null) continue;
             pvWaits[indSupport] = null;
+            waits[indSupport] = true;
             supports[indSupport] = support;
             PVField pvField = pvRecordField.getPVField();
             if(pvField.getField().getType()==Type.structure) {
@@ -216,8 +246,9 @@ public class GenericBase extends AbstractSupport implements SupportProcessReques
         }
         while(nextLink<supports.length) {    
             Support support = supports[nextLink];
-            boolean wait = true; 
-            if(pvWaits[nextLink]!=null) wait = pvWaits[nextLink].get();
+            int index = nextLink;
+            boolean wait = waits[index];
+            if(pvWaits[index]!=null) wait = pvWaits[index].get();
             nextLink++;
             if(support.getSupportState()!=SupportState.ready) {
                 if(finalResult==RequestResult.success) {
@@ -225,7 +256,12 @@ public class GenericBase extends AbstractSupport implements SupportProcessReques
                 }
             } else {
                 numberWait++;
-                support.process(this);
+                if(ProcessProfiler.isEnabled()) {
+                    if(supportTimers[index]==null) supportTimers[index] = ProcessProfiler.createSupportTimer(support);
+                    support.process(supportTimers[index].start(this));
+                } else {
+                    support.process(this);
+                }
             }
             if(wait) return;
         }
@@ -6,10 +6,6 @@
 package org.epics.pvioc.support.caLink;
 
 import org.epics.pvdata.misc.BitSet;
-import org.epics.pvdata.misc.Executor;
-import org.epics.pvdata.misc.ExecutorFactory;
-import org.epics.pvdata.misc.ExecutorNode;
-import org.epics.pvdata.misc.ThreadPriority;
 import org.epics.pvdata.monitor.Monitor;
 import org.epics.pvdata.monitor.MonitorElement;
 import org.epics.pvdata.monitor.MonitorRequester;
@@ -48,10 +44,10 @@ implements MonitorRequester,Runnable,RecordProcessRequester
      */
     public MonitorLinkBase(String supportName,PVRecordField pvRecordField) {
         super(supportName,pvRecordField);
+        monitorTask = MonitorLinkDispatcher.createTask(pvRecord.getRecordName(), this, this);
     }
     
-    private static Executor executor = ExecutorFactory.create("caLinkMonitor", ThreadPriority.low);
-    private ExecutorNode executorNode = executor.createNode(this);
+    private final MonitorLinkDispatcher.Task monitorTask;
     private PVBoolean reportOverrunAccess = null;
     private PVBoolean processAccess = null;
     private ProcessToken processToken = null;
@@ -140,7 +136,7 @@ implements MonitorRequester,Runnable,RecordProcessRequester
                 } finally {
                     pvRecord.unlock();
                 }
-                executor.execute(executorNode);
+                monitorTask.schedule();
             }
         } else {
             pvRecord.lock();
@@ -149,7 +145,7 @@ implements MonitorRequester,Runnable,RecordProcessRequester
             } finally {
                 pvRecord.unlock();
             }
-            executor.execute(executorNode);
+            monitorTask.schedule();
         }
     } 
     /* (non-Javadoc)
@@ -180,7 +176,7 @@ implements MonitorRequester,Runnable,RecordProcessRequester
     @Override
     public void monitorEvent(Monitor monitor) {
         this.monitor = monitor;
-        executor.execute(executorNode);
+        monitorTask.schedule();
     }
     /* (non-Javadoc)
      * @see java.lang.Runnable#run()
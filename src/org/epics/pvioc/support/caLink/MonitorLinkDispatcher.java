@@ -0,0 +1,248 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.support.caLink;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.epics.pvdata.misc.RunnableReady;
+import org.epics.pvdata.misc.ThreadCreate;
+import org.epics.pvdata.misc.ThreadCreateFactory;
+import org.epics.pvdata.misc.ThreadPriority;
+import org.epics.pvdata.misc.ThreadReady;
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.Requester;
+
+/**
+ * Lanes that handle the monitor events of caLink monitor links.
+ * Monitor links and monitor notify links have separate lanes, so the events of one kind never wait for the other.
+ * The records are partitioned across the lanes of a kind by the hash code of the record name,
+ * so all links of a record use the same lane and a burst of events for one record
+ * only delays the records that share its lane.
+ * Each lane is a single thread, which keeps the events of a link in order.
+ * The number of lanes for monitor links is given by IOCCaLinkMonitorLanes
+ * and for monitor notify links by IOCCaLinkNotifyLanes. Both default to 1.
+ * @author mrk
+ *
+ */
+public class MonitorLinkDispatcher {
+    /**
+     * Create a task for a monitor link.
+     * @param recordName The name of the record that holds the link.
+     * @param requester The requester that is given a message if runnable throws an exception.
+     * @param runnable The code that handles the events of the link.
+     * @return The task.
+     */
+    public static Task createTask(String recordName,Requester requester,Runnable runnable) {
+        return new Task(lanes[getLaneIndex(recordName,numberMonitorLanes)],requester,runnable);
+    }
+    /**
+     * Create a task for a monitor notify link.
+     * @param recordName The name of the record that holds the link.
+     * @param requester The requester that is given a message if runnable throws an exception.
+     * @param runnable The code that handles the events of the link.
+     * @return The task.
+     */
+    public static Task createNotifyTask(String recordName,Requester requester,Runnable runnable) {
+        int index = getLaneIndex(recordName,lanes.length - numberMonitorLanes);
+        return new Task(lanes[numberMonitorLanes + index],requester,runnable);
+    }
+    /**
+     * Get the number of lanes.
+     * The lanes of monitor links come first and are followed by the lanes of monitor notify links.
+     * @return The number.
+     */
+    public static int getNumberLanes() {
+        return lanes.length;
+    }
+    /**
+     * Get the number of tasks waiting in a lane.
+     * @param index The lane.
+     * @return The number.
+     */
+    public static int getQueueDepth(int index) {
+        return lanes[index].getQueueDepth();
+    }
+    /**
+     * Get the mean time in microseconds a task waited before it was run.
+     * @param index The lane.
+     * @return The time.
+     */
+    public static double getMeanLatency(int index) {
+        Lane lane = lanes[index];
+        long number = lane.numberRun.get();
+        if(number==0) return 0.0;
+        return lane.totalLatency.get()/(number*1000.0);
+    }
+    /**
+     * Get the maximum time in microseconds a task waited before it was run.
+     * @param index The lane.
+     * @return The time.
+     */
+    public static double getMaxLatency(int index) {
+        return lanes[index].maxLatency.get()/1000.0;
+    }
+    /**
+     * Clear the latency statistics of all lanes.
+     */
+    public static void resetStatistics() {
+        for(Lane lane : lanes) {
+            lane.numberRun.set(0);
+            lane.totalLatency.set(0);
+            lane.maxLatency.set(0);
+        }
+    }
+    /**
+     * Show the state of the lanes.
+     * @return One line for each lane.
+     */
+    public static String show() {
+        StringBuilder builder = new StringBuilder();
+        for(int i=0; i<lanes.length; i++) {
+            builder.append(String.format(
+                "%s queueDepth %d dispatched %d meanLatency %.1f maxLatency %.1f microseconds%n",
+                lanes[i].name,getQueueDepth(i),lanes[i].numberRun.get(),getMeanLatency(i),getMaxLatency(i)));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * A task that is scheduled at most once until it runs.
+     * Events that arrive while it is queued are coalesced into a single run.
+     * An event that arrives while it is running schedules it again.
+     */
+    public static class Task {
+        private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+        final Lane lane;
+        private final Requester requester;
+        private final Runnable runnable;
+        // the time the task was scheduled
+        private volatile long scheduleTime = 0;
+
+        Task(Lane lane,Requester requester,Runnable runnable) {
+            this.lane = lane;
+            this.requester = requester;
+            this.runnable = runnable;
+        }
+        /**
+         * Schedule the task unless it is already scheduled.
+         */
+        public void schedule() {
+            if(!isScheduled.compareAndSet(false, true)) return;
+            scheduleTime = System.nanoTime();
+            lane.add(this);
+        }
+
+        private void run() {
+            isScheduled.set(false);
+            lane.recordLatency(System.nanoTime() - scheduleTime);
+            try {
+                runnable.run();
+            } catch (Throwable e) {
+                requester.message("monitor event failed " + e, MessageType.error);
+            }
+        }
+    }
+
+    private static final ThreadCreate threadCreate = ThreadCreateFactory.getThreadCreate();
+    private static final int numberMonitorLanes = getLaneProperty("IOCCaLinkMonitorLanes");
+    private static final Lane[] lanes;
+
+    static {
+        int numberNotifyLanes = getLaneProperty("IOCCaLinkNotifyLanes");
+        lanes = new Lane[numberMonitorLanes + numberNotifyLanes];
+        for(int i=0; i<numberMonitorLanes; i++) lanes[i] = new Lane("caLinkMonitor[" + i + "]");
+        for(int i=0; i<numberNotifyLanes; i++) {
+            lanes[numberMonitorLanes + i] = new Lane("caNotifyLinkMonitor[" + i + "]");
+        }
+    }
+
+    // all links of a record have the same index
+    static int getLaneIndex(String recordName,int numberLanes) {
+        return (recordName.hashCode() & 0x7fffffff) % numberLanes;
+    }
+
+    private static int getLaneProperty(String name) {
+        int value = 1;
+        String envValue = System.getProperty(name, System.getenv(name));
+        if(envValue!=null) value = Integer.parseInt(envValue);
+        if(value<1) value = 1;
+        return value;
+    }
+
+    /**
+     * A single thread and the queue of scheduled tasks.
+     */
+    static class Lane implements RunnableReady {
+        private final String name;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition waitForWork = lock.newCondition();
+        private final ArrayDeque<Task> queue = new ArrayDeque<Task>();
+        private final AtomicLong numberRun = new AtomicLong(0);
+        private final AtomicLong totalLatency = new AtomicLong(0);
+        private final AtomicLong maxLatency = new AtomicLong(0);
+
+        /**
+         * Constructor. The thread is created immediately.
+         * @param name The thread name.
+         */
+        Lane(String name) {
+            this.name = name;
+            threadCreate.create(name, ThreadPriority.low.getJavaPriority(), this);
+        }
+
+        private void add(Task task) {
+            lock.lock();
+            try {
+                queue.add(task);
+                waitForWork.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int getQueueDepth() {
+            lock.lock();
+            try {
+                return queue.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.misc.RunnableReady#run(org.epics.pvdata.misc.ThreadReady)
+         */
+        public void run(ThreadReady threadReady) {
+            threadReady.ready();
+            try {
+                while(true) {
+                    Task task = null;
+                    lock.lock();
+                    try {
+                        while(queue.isEmpty()) waitForWork.await();
+                        task = queue.poll();
+                    } finally {
+                        lock.unlock();
+                    }
+                    task.run();
+                }
+            } catch(InterruptedException e) {}
+        }
+
+        private void recordLatency(long latency) {
+            numberRun.incrementAndGet();
+            totalLatency.addAndGet(latency);
+            long max = maxLatency.get();
+            while(latency>max) {
+                if(maxLatency.compareAndSet(max, latency)) break;
+                max = maxLatency.get();
+            }
+        }
+    }
+}
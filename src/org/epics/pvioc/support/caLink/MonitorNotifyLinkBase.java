@@ -6,10 +6,6 @@
 package org.epics.pvioc.support.caLink;
 
 import org.epics.pvdata.copy.CreateRequest;
-import org.epics.pvdata.misc.Executor;
-import org.epics.pvdata.misc.ExecutorFactory;
-import org.epics.pvdata.misc.ExecutorNode;
-import org.epics.pvdata.misc.ThreadPriority;
 import org.epics.pvdata.monitor.Monitor;
 import org.epics.pvdata.monitor.MonitorRequester;
 import org.epics.pvdata.pv.MessageType;
@@ -38,9 +34,9 @@ implements MonitorRequester,Runnable,RecordProcessRequester
      */
     public MonitorNotifyLinkBase(String supportName,PVRecordField pvRecordField) {
         super(supportName,pvRecordField);
+        monitorTask = MonitorLinkDispatcher.createNotifyTask(pvRecord.getRecordName(), this, this);
     }
-    private static Executor executor = ExecutorFactory.create("caNotifyLinkMonitor", ThreadPriority.low);
-    private ExecutorNode executorNode = executor.createNode(this);
+    private final MonitorLinkDispatcher.Task monitorTask;
     private ProcessToken processToken = null;
     
     private Monitor monitor = null;
@@ -107,7 +103,7 @@ implements MonitorRequester,Runnable,RecordProcessRequester
     @Override
     public void monitorEvent(Monitor monitor) {
         this.monitor = monitor;
-        executor.execute(executorNode);
+        monitorTask.schedule();
     }
     /* (non-Javadoc)
      * @see java.lang.Runnable#run()
@@ -5,25 +5,37 @@
  */
 package org.epics.pvioc.support.caLink;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.epics.pvaccess.client.ChannelPut;
 import org.epics.pvaccess.client.ChannelPutRequester;
 import org.epics.pvdata.misc.BitSet;
 import org.epics.pvdata.property.AlarmSeverity;
 import org.epics.pvdata.property.AlarmStatus;
 import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.PVBoolean;
 import org.epics.pvdata.pv.PVField;
 import org.epics.pvdata.pv.PVStructure;
 import org.epics.pvdata.pv.Status;
 import org.epics.pvdata.pv.Structure;
+import org.epics.pvioc.database.PVChangeTracker;
+import org.epics.pvioc.database.PVChangeTrackerFactory;
 import org.epics.pvioc.database.PVRecordField;
 import org.epics.pvioc.support.ProcessCallbackRequester;
 import org.epics.pvioc.support.ProcessContinueRequester;
 import org.epics.pvioc.support.SupportProcessRequester;
+import org.epics.pvioc.support.SupportState;
 import org.epics.pvioc.util.RequestResult;
 
 
 /**
  * Implementation for a channel access output link.
+ * If field wait is false, processing completes as soon as the put is sent.
+ * Only one put is in flight at a time, so the puts arrive at the server in the order they were sent.
+ * Data that can not be sent because a put is in flight is kept until the put completes.
+ * Data put by later processing replaces it, so only the latest values are sent.
+ * If the channel disconnects the put in flight is abandoned and its data is sent again after the channel reconnects.
+ * A failed put is reported by an alarm the next time the record is processed.
  * @author mrk
  *
  */
@@ -41,10 +53,38 @@ implements ProcessCallbackRequester,ChannelPutRequester,ProcessContinueRequester
     
     private SupportProcessRequester supportProcessRequester = null;
     private RequestResult requestResult = null;   
-    private boolean isReady = false;
+    private volatile boolean isReady = false;
     private ChannelPut channelPut = null;
     private PVStructure linkPVStructure = null;
     protected BitSet bitSet = null;
+    // tracks the puts to pvFields so that only changed fields are compared and copied
+    private PVChangeTracker changeTracker = null;
+    // The following are used if wait is false. The data in flight is in putPVStructure and putBitSet.
+    // linkPVStructure, bitSet, isPutBusy and hasPending are guarded by putLock.
+    // channelPut is changed while holding putLock so that sendPending can use it after releasing the lock.
+    private boolean wait = true;
+    private final Object putLock = new Object();
+    private PVStructure putPVStructure = null;
+    private BitSet putBitSet = null;
+    private boolean isPutBusy = false;
+    private boolean hasPending = false;
+    private final AtomicReference<String> putFailure = new AtomicReference<String>();
+    /* (non-Javadoc)
+     * @see org.epics.pvioc.support.caLink.AbstractIOLink#initialize()
+     */
+    @Override
+    public void initialize() {
+        super.initialize();
+        if(super.getSupportState()!=SupportState.readyForStart) return;
+        // wait is optional
+        if(pvStructure.getSubField("wait")!=null) {
+            PVBoolean pvWait = pvStructure.getBooleanField("wait");
+            if(pvWait==null) {
+                uninitialize(); return;
+            }
+            wait = pvWait.get();
+        }
+    }
     /* (non-Javadoc)
      * @see org.epics.pvioc.support.ca.AbstractLinkSupport#connectionChange(boolean)
      */
@@ -59,6 +99,7 @@ implements ProcessCallbackRequester,ChannelPutRequester,ProcessContinueRequester
                 } finally {
                     pvRecord.unlock();
                 }
+                if(!wait) sendPending();
             }
         } else {
             pvRecord.lock();
@@ -67,6 +108,16 @@ implements ProcessCallbackRequester,ChannelPutRequester,ProcessContinueRequester
             } finally {
                 pvRecord.unlock();
             }
+            if(!wait) {
+                // putDone may never be called for the put in flight so send its data again after reconnect
+                synchronized(putLock) {
+                    if(isPutBusy) {
+                        isPutBusy = false;
+                        bitSet.or(putBitSet);
+                        hasPending = true;
+                    }
+                }
+            }
         }
     }
     /* (non-Javadoc)
@@ -86,14 +137,42 @@ implements ProcessCallbackRequester,ChannelPutRequester,ProcessContinueRequester
             }
             linkPVStructure = pvDataCreate.createPVStructure(structure);
             bitSet = new BitSet(linkPVStructure.getNumberFields());
-            this.channelPut = channelPut;
+            changeTracker = PVChangeTrackerFactory.create(pvRecord);
+            for(int i=0; i< pvFields.length; i++) {
+                if(i==indexAlarmLinkField) continue;
+                changeTracker.addField(pvRecord.findPVRecordField(pvFields[i]));
+            }
+            if(!wait) {
+                putPVStructure = pvDataCreate.createPVStructure(structure);
+                putBitSet = new BitSet(putPVStructure.getNumberFields());
+            }
+            synchronized(putLock) {
+                this.channelPut = channelPut;
+            }
             isReady = true;
         } finally {
             pvRecord.unlock();
         }
     }
     
-   
+    /* (non-Javadoc)
+     * @see org.epics.pvioc.support.caLink.AbstractLink#stop()
+     */
+    @Override
+    public void stop() {
+        if(changeTracker!=null) {
+            changeTracker.destroy();
+            changeTracker = null;
+        }
+        isReady = false;
+        synchronized(putLock) {
+            // a new ChannelPut, and with it a new tracker, is created when the link is started again
+            channelPut = null;
+            isPutBusy = false;
+            hasPending = false;
+        }
+        super.stop();
+    }
     /* (non-Javadoc)
      * @see org.epics.pvioc.process.AbstractSupport#process(org.epics.pvioc.process.SupportProcessRequester)
      */
@@ -105,13 +184,20 @@ implements ProcessCallbackRequester,ChannelPutRequester,ProcessContinueRequester
             supportProcessRequester.supportProcessDone(RequestResult.success);
             return;
         }
-        for(int i=0; i< pvFields.length; i++) {
-            if(i==indexAlarmLinkField) continue;
-            PVField pvFrom = pvFields[i];
-            PVField pvTo = linkPVStructure.getSubField(nameInRemote[i]);
-            if(pvFrom.equals(pvTo)) continue;
-            convert.copy(pvFrom, pvTo);
-            bitSet.set(pvTo.getFieldOffset());
+        if(wait) {
+            copyFields();
+        } else {
+            String failure = putFailure.getAndSet(null);
+            if(failure!=null) {
+                alarmSupport.setAlarm(
+                        pvRecordField.getFullFieldName() + ": put request failed " + failure,
+                        AlarmSeverity.MAJOR,AlarmStatus.DB);
+            }
+            synchronized(putLock) {
+                copyFields();
+                // nothing is sent if no field changed
+                if(!bitSet.isEmpty()) hasPending = true;
+            }
         }
         this.supportProcessRequester = supportProcessRequester;
         recordProcess.requestProcessCallback(this);
@@ -122,7 +208,13 @@ implements ProcessCallbackRequester,ChannelPutRequester,ProcessContinueRequester
      */
     @Override
     public void processCallback() {
-        channelPut.put(linkPVStructure,bitSet);  
+        if(wait) {
+            channelPut.put(linkPVStructure,bitSet);
+            return;
+        }
+        sendPending();
+        requestResult = RequestResult.success;
+        recordProcess.processContinue(this);
     }
     /* (non-Javadoc)
      * @see org.epics.pvaccess.client.ChannelPutRequester#getDone(Status)
@@ -136,6 +228,16 @@ implements ProcessCallbackRequester,ChannelPutRequester,ProcessContinueRequester
      */
     @Override
     public void putDone(Status success, ChannelPut channelPut) {
+        if(!wait) {
+            synchronized(putLock) {
+                // the put was already abandoned if the channel disconnected
+                if(!isPutBusy) return;
+                isPutBusy = false;
+            }
+            if(!success.isOK()) putFailure.set(success.getMessage());
+            sendPending();
+            return;
+        }
         requestResult = (success.isOK() ? RequestResult.success : RequestResult.failure);
         recordProcess.processContinue(this);
     }
@@ -149,5 +251,37 @@ implements ProcessCallbackRequester,ChannelPutRequester,ProcessContinueRequester
                     AlarmSeverity.MAJOR,AlarmStatus.DB);
         }
         supportProcessRequester.supportProcessDone(requestResult);
-    }        
+    }
+    
+    // called by process with the record locked. If wait is false the caller also holds putLock.
+    private void copyFields() {
+        for(int i=0; i< pvFields.length; i++) {
+            if(i==indexAlarmLinkField) continue;
+            PVField pvFrom = pvFields[i];
+            // linkPVStructure is only changed by this link so a field that was not put is still equal
+            if(!changeTracker.isChanged(pvFrom)) continue;
+            PVField pvTo = linkPVStructure.getSubField(nameInRemote[i]);
+            if(pvFrom.equals(pvTo)) continue;
+            convert.copy(pvFrom, pvTo);
+            bitSet.set(pvTo.getFieldOffset());
+        }
+        changeTracker.clear();
+    }
+    
+    // Send the latest data if no put is in flight. Otherwise the data is sent when the put completes.
+    private void sendPending() {
+        ChannelPut channelPut = null;
+        synchronized(putLock) {
+            channelPut = this.channelPut;
+            if(!hasPending || isPutBusy || !isReady || channelPut==null) return;
+            convert.copy(linkPVStructure, putPVStructure);
+            putBitSet.clear();
+            putBitSet.or(bitSet);
+            bitSet.clear();
+            hasPending = false;
+            isPutBusy = true;
+        }
+        // putPVStructure and putBitSet are not changed until putDone or a disconnect
+        channelPut.put(putPVStructure,putBitSet);
+    }
 }
@@ -11,28 +11,45 @@ package org.epics.pvioc.support.calc;
  * in file LICENSE that is included with this distribution.
  */
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 
 import org.epics.pvdata.factory.ConvertFactory;
 import org.epics.pvdata.factory.PVDataFactory;
 import org.epics.pvdata.property.AlarmSeverity;
 import org.epics.pvdata.property.AlarmStatus;
+import org.epics.pvdata.pv.ByteArrayData;
 import org.epics.pvdata.pv.Convert;
+import org.epics.pvdata.pv.DoubleArrayData;
+import org.epics.pvdata.pv.FloatArrayData;
+import org.epics.pvdata.pv.IntArrayData;
+import org.epics.pvdata.pv.LongArrayData;
 import org.epics.pvdata.pv.MessageType;
 import org.epics.pvdata.pv.PVBoolean;
 import org.epics.pvdata.pv.PVByte;
+import org.epics.pvdata.pv.PVByteArray;
 import org.epics.pvdata.pv.PVDataCreate;
 import org.epics.pvdata.pv.PVDouble;
+import org.epics.pvdata.pv.PVDoubleArray;
 import org.epics.pvdata.pv.PVField;
 import org.epics.pvdata.pv.PVFloat;
+import org.epics.pvdata.pv.PVFloatArray;
 import org.epics.pvdata.pv.PVInt;
+import org.epics.pvdata.pv.PVIntArray;
 import org.epics.pvdata.pv.PVLong;
+import org.epics.pvdata.pv.PVLongArray;
 import org.epics.pvdata.pv.PVScalar;
+import org.epics.pvdata.pv.PVScalarArray;
 import org.epics.pvdata.pv.PVShort;
+import org.epics.pvdata.pv.PVShortArray;
 import org.epics.pvdata.pv.PVString;
 import org.epics.pvdata.pv.PVStructure;
 import org.epics.pvdata.pv.Scalar;
 import org.epics.pvdata.pv.ScalarType;
+import org.epics.pvdata.pv.ShortArrayData;
 import org.epics.pvdata.pv.Type;
 import org.epics.pvioc.database.PVRecordStructure;
 import org.epics.pvioc.support.AbstractSupport;
@@ -48,6 +65,15 @@ import org.epics.pvioc.util.RequestResult;
 
 /**
  * Factory that provides support for expressions.
+ * After parsing, the expression is compiled into a tree of nodes that compute primitive values.
+ * Subexpressions that can not be compiled are computed by the interpreter.
+ * Setting IOCExpressionCalculatorCompile=false always uses the interpreter.
+ * <p>
+ * value and calcArgs may also be numeric arrays. The expression is then evaluated element by element.
+ * An array of length 1 is broadcast and scalar arguments are used for every element.
+ * sum, mean, arrayMin, and arrayMax reduce an array expression to a double.
+ * The length of a reduction is determined only by the arrays that appear in its argument.
+ * </p>
  * @author mrk
  *
  */
@@ -60,6 +86,20 @@ public abstract class ExpressionCalculatorFactory  {
     private static Convert convert = ConvertFactory.getConvert();
     private static boolean dumpTokenList = false;
     private static boolean dumpExpression = false;
+    // IOCExpressionCalculatorCompile=false forces the interpreter
+    private static volatile boolean compileExpression =
+        !"false".equalsIgnoreCase(System.getProperty("IOCExpressionCalculatorCompile", System.getenv("IOCExpressionCalculatorCompile")));
+    
+    // Used by tests that compare the compiled expression with the interpreter.
+    // Only affects supports that are initialized afterwards.
+    static void setCompileExpression(boolean value) {
+        compileExpression = value;
+    }
+    
+    // Is the scalar expression of the support compiled?
+    static boolean isCompiled(Support support) {
+        return ((ExpressionCalculator)support).compiledExpression!=null;
+    }
     
     private static class ExpressionCalculator extends AbstractSupport {
         
@@ -75,7 +115,12 @@ public abstract class ExpressionCalculatorFactory  {
         private PVScalar pvValue = null;
         private CalcArgs calcArgsSupport = null;
         
+        private PVScalarArray pvValueArray = null;
         private Expression expression = null;
+        private CompiledExpression compiledExpression = null;
+        private ArrayList<ArrayArgument> arrayArguments = new ArrayList<ArrayArgument>();
+        private ArrayList<ArrayReduction> arrayReductions = new ArrayList<ArrayReduction>();
+        private ArrayEvaluator arrayEvaluator = null;
         /* (non-Javadoc)
          * @see org.epics.pvioc.support.AbstractSupport#initialize()
          */
@@ -96,11 +141,14 @@ public abstract class ExpressionCalculatorFactory  {
                 pvRecordStructure.message("value field not found", MessageType.error);
                 return;
             }
-            if(pvValue.getField().getType()!=Type.scalar) {
-                pvRecordStructure.message("ExpressionCalculator requires value field to be a scalar", MessageType.error);
+            if(isNumericArray(pvValue)) {
+                pvValueArray = (PVScalarArray)pvValue;
+            } else if(pvValue.getField().getType()!=Type.scalar) {
+                pvRecordStructure.message("ExpressionCalculator requires value field to be a scalar or numeric array", MessageType.error);
                 return;
+            } else {
+                this.pvValue = (PVScalar)pvValue;
             }
-            this.pvValue = (PVScalar)pvValue;
             PVField pvField = pvParent.getSubField("calcArgs");
             if(pvField!=null) {
                 Support support = pvRecordStructure.getPVRecord().findPVRecordField(pvField).getSupport();
@@ -115,6 +163,17 @@ public abstract class ExpressionCalculatorFactory  {
             Parse parse = new Parse(pvExpression);
             expression = parse.parse();
             if(expression==null) return;
+            if(pvValueArray!=null || !arrayArguments.isEmpty() || !arrayReductions.isEmpty()) {
+                arrayEvaluator = new ArrayEvaluator(arrayArguments,arrayReductions);
+                String error = arrayEvaluator.compile(expression, this.pvValue, pvValueArray);
+                if(error!=null) {
+                    pvRecordStructure.message(error, MessageType.error);
+                    arrayEvaluator = null;
+                    return;
+                }
+            } else if(compileExpression) {
+                compiledExpression = new ExpressionCompiler().compile(expression, this.pvValue);
+            }
             super.initialize();
         }
         /* (non-Javadoc)
@@ -123,6 +182,11 @@ public abstract class ExpressionCalculatorFactory  {
         @Override
         public void uninitialize() {
             expression = null;
+            compiledExpression = null;
+            arrayEvaluator = null;
+            arrayArguments.clear();
+            arrayReductions.clear();
+            pvValueArray = null;
             alarmSupport = null;
             pvValue = null;
             super.uninitialize();
@@ -133,11 +197,18 @@ public abstract class ExpressionCalculatorFactory  {
         @Override
         public void process(SupportProcessRequester supportProcessRequester) {
             try {
-                if(expression.operator!=null) {
-                    expression.operator.compute();
+                if(arrayEvaluator!=null) {
+                    String error = arrayEvaluator.evaluate();
+                    if(error!=null) alarmSupport.setAlarm(error, AlarmSeverity.INVALID,AlarmStatus.RECORD);
+                } else if(compiledExpression!=null) {
+                    compiledExpression.execute();
+                } else {
+                    if(expression.operator!=null) {
+                        expression.operator.compute();
+                    }
+                    PVScalar pvResult = expression.pvResult;
+                    if(pvResult!=pvValue) convert.copyScalar(pvResult, pvValue);
                 }
-                PVScalar pvResult = expression.pvResult;
-                if(pvResult!=pvValue) convert.copyScalar(pvResult, pvValue);
             } catch (ArithmeticException e) {
                 alarmSupport.setAlarm(e.getMessage(), AlarmSeverity.INVALID,AlarmStatus.RECORD);
             }
@@ -275,6 +346,10 @@ public abstract class ExpressionCalculatorFactory  {
             toDegrees,
             toRadians,
             ulp,
+            sum,
+            mean,
+            arrayMin,
+            arrayMax,
         }
         
         static private class MathFunctionSemantics {
@@ -324,6 +399,11 @@ public abstract class ExpressionCalculatorFactory  {
             new MathFunctionSemantics(MathFunction.toDegrees,1,false),
             new MathFunctionSemantics(MathFunction.toRadians,1,false),
             new MathFunctionSemantics(MathFunction.ulp,1,false),
+            // reductions are never constant
+            new MathFunctionSemantics(MathFunction.sum,1,true),
+            new MathFunctionSemantics(MathFunction.mean,1,true),
+            new MathFunctionSemantics(MathFunction.arrayMin,1,true),
+            new MathFunctionSemantics(MathFunction.arrayMax,1,true),
         };
         
         private enum TokenType {
@@ -367,6 +447,20 @@ public abstract class ExpressionCalculatorFactory  {
             }
         }
         
+        private static boolean isNumericArray(PVField pvField) {
+            if(pvField.getField().getType()!=Type.scalarArray) return false;
+            return ((PVScalarArray)pvField).getScalarArray().getElementType().isNumeric();
+        }
+        
+        private ArrayArgument getArrayArgument(PVScalarArray pvArray) {
+            for(ArrayArgument arrayArgument : arrayArguments) {
+                if(arrayArgument.pvArray==pvArray) return arrayArgument;
+            }
+            ArrayArgument arrayArgument = new ArrayArgument(pvArray);
+            arrayArguments.add(arrayArgument);
+            return arrayArgument;
+        }
+        
         private static class Token {
             TokenType type = null;
             String value = null;
@@ -1136,7 +1230,7 @@ public abstract class ExpressionCalculatorFactory  {
                     PVField pvField = null;
                     String name = token.value;
                     if(name.equals("value")) {
-                        pvField = pvValue;
+                        pvField = (pvValueArray!=null) ? pvValueArray : pvValue;
                     } else if(calcArgsSupport!=null){
                         pvField = calcArgsSupport.getPVField(name);
                     }
@@ -1144,8 +1238,13 @@ public abstract class ExpressionCalculatorFactory  {
                         pvRecordStructure.message("variable " + name + " not found", MessageType.error);
                         return false;
                     }
+                    if(isNumericArray(pvField)) {
+                        exp.pvResult = getArrayArgument((PVScalarArray)pvField).pvElement;
+                        expStack.push(exp);
+                        return true;
+                    }
                     if(pvField.getField().getType()!=Type.scalar) {
-                        pvRecordStructure.message("ExpressionCalculator requires variable " + name +" to be a scalar ", MessageType.error);
+                        pvRecordStructure.message("ExpressionCalculator requires variable " + name +" to be a scalar or numeric array", MessageType.error);
                         return false;
                     }
                     exp.pvResult = (PVScalar)pvField;
@@ -1260,6 +1359,7 @@ public abstract class ExpressionCalculatorFactory  {
                     }
                     funcExp.operator = MathFactory.create(pvRecordStructure,funcExp);
                     if(!funcExp.operator.createPVResult()) return false;
+                    if(funcExp.operator instanceof ArrayReduction) arrayReductions.add((ArrayReduction)funcExp.operator);
                     expStack.push(exp);
                     return true;
                 }
@@ -1536,6 +1636,1049 @@ public abstract class ExpressionCalculatorFactory  {
         
         
         
+        /*
+         * The compiled form of an expression.
+         * The parsed Expression is translated into a tree of CompiledNodes.
+         * Each node evaluates to a primitive boolean, long, or double so that
+         * intermediate results never go through a PVScalar or convert.
+         * Integer types (byte,short,int,long) are evaluated as long and narrowed to the
+         * result type of the node. float and double are evaluated as double and
+         * float results are rounded to float. This gives exactly the same results as the
+         * interpreted operators.
+         * Any subexpression that can not be compiled, e.g. a string operation,
+         * is evaluated by its interpreted Operator and the result is read from its pvResult.
+         */
+        private interface CompiledExpression {
+            void execute();
+        }
+        
+        private static abstract class CompiledNode {
+            final ScalarType scalarType;
+            CompiledNode(ScalarType scalarType) {
+                this.scalarType = scalarType;
+            }
+        }
+        
+        private static abstract class BooleanNode extends CompiledNode {
+            BooleanNode() {
+                super(ScalarType.pvBoolean);
+            }
+            abstract boolean get();
+        }
+        
+        private static abstract class LongNode extends CompiledNode {
+            LongNode(ScalarType scalarType) {
+                super(scalarType);
+            }
+            abstract long get();
+        }
+        
+        private static abstract class DoubleNode extends CompiledNode {
+            DoubleNode(ScalarType scalarType) {
+                super(scalarType);
+            }
+            abstract double get();
+        }
+        
+        private static class ExpressionCompiler {
+            private static final int noLane = 0;
+            private static final int booleanLane = 1;
+            private static final int longLane = 2;
+            private static final int doubleLane = 3;
+            
+            private static int getLane(ScalarType scalarType) {
+                switch(scalarType) {
+                case pvBoolean: return booleanLane;
+                case pvByte:
+                case pvShort:
+                case pvInt:
+                case pvLong: return longLane;
+                case pvFloat:
+                case pvDouble: return doubleLane;
+                default: return noLane;
+                }
+            }
+            
+            private static ScalarType getType(Expression expression) {
+                return expression.pvResult.getScalar().getScalarType();
+            }
+            
+            private static ScalarType maxType(ScalarType type0,ScalarType type1) {
+                return (type0.ordinal()>=type1.ordinal()) ? type0 : type1;
+            }
+            
+            private final Map<PVScalar,ArrayArgument> arrayElements = new IdentityHashMap<PVScalar,ArrayArgument>();
+            private final ArrayIndex arrayIndex;
+            // true if some part of the expression is computed by the interpreter
+            private boolean interpreted = false;
+            // true if an array element is referenced outside a reduction
+            private boolean usesElements = false;
+            
+            ExpressionCompiler() {
+                this.arrayIndex = null;
+            }
+            
+            ExpressionCompiler(ArrayIndex arrayIndex,List<ArrayArgument> arrayArguments) {
+                this.arrayIndex = arrayIndex;
+                for(ArrayArgument arrayArgument : arrayArguments) {
+                    arrayElements.put(arrayArgument.pvElement, arrayArgument);
+                }
+            }
+            
+            /**
+             * Compile an expression.
+             * @param expression The parsed expression.
+             * @param pvValue The field that receives the result.
+             * @return The compiled expression or null if the interpreter should be used.
+             */
+            CompiledExpression compile(Expression expression,PVScalar pvValue) {
+                if(expression.operator==null) return null;
+                if(expression.operator instanceof UnaryPlus) return null;
+                return createStore(compileNode(expression),pvValue);
+            }
+            
+            /**
+             * Create a CompiledExpression that puts the result of node into pvValue.
+             * @param node The compiled node.
+             * @param pvValue The field that receives the result.
+             * @return The compiled expression or null if node is null.
+             */
+            static CompiledExpression createStore(CompiledNode node,PVScalar pvValue) {
+                if(node==null) return null;
+                PVScalar pvCopy = null;
+                if(pvValue.getScalar().getScalarType()!=node.scalarType) {
+                    // same as the interpreter. Put into a temporary and then convert to pvValue.
+                    pvCopy = pvValue;
+                    pvValue = pvDataCreate.createPVScalar(node.scalarType);
+                }
+                switch(node.scalarType) {
+                case pvBoolean: return new BooleanStore((BooleanNode)node,(PVBoolean)pvValue,pvCopy);
+                case pvByte: return new ByteStore((LongNode)node,(PVByte)pvValue,pvCopy);
+                case pvShort: return new ShortStore((LongNode)node,(PVShort)pvValue,pvCopy);
+                case pvInt: return new IntStore((LongNode)node,(PVInt)pvValue,pvCopy);
+                case pvLong: return new LongStore((LongNode)node,(PVLong)pvValue,pvCopy);
+                case pvFloat: return new FloatStore((DoubleNode)node,(PVFloat)pvValue,pvCopy);
+                case pvDouble: return new DoubleStore((DoubleNode)node,(PVDouble)pvValue,pvCopy);
+                default: return null;
+                }
+            }
+            
+            private CompiledNode compileNode(Expression expression) {
+                ScalarType scalarType = getType(expression);
+                if(getLane(scalarType)==noLane) return null;
+                if(expression.operator==null) return compileLeaf(expression.pvResult);
+                // computed before the expression is evaluated for each element
+                if(expression.operator instanceof ArrayReduction) return compileLeaf(expression.pvResult);
+                CompiledNode node = null;
+                if(expression.operator instanceof TernaryIf) {
+                    node = compileTernaryIf(expression,scalarType);
+                } else if(expression instanceof OperatorExpression) {
+                    OperationSemantics operationSemantics = ((OperatorExpression)expression).operationSemantics;
+                    if(operationSemantics!=null) {
+                        node = compileOperation(expression,operationSemantics.operation,scalarType);
+                    }
+                } else if(expression instanceof MathFunctionExpression) {
+                    MathFunctionSemantics functionSemantics = ((MathFunctionExpression)expression).functionSemantics;
+                    if(functionSemantics!=null) {
+                        node = compileMathFunction(expression,functionSemantics.mathFunction,scalarType);
+                    }
+                }
+                if(node==null) node = compileInterpreted(expression);
+                return node;
+            }
+            
+            // a constant or a variable
+            private CompiledNode compileLeaf(PVScalar pvScalar) {
+                ScalarType scalarType = pvScalar.getScalar().getScalarType();
+                ArrayArgument arrayArgument = arrayElements.get(pvScalar);
+                if(arrayArgument!=null) {
+                    usesElements = true;
+                    return compileElement(arrayArgument);
+                }
+                if(pvScalar.isImmutable()) {
+                    switch(getLane(scalarType)) {
+                    case booleanLane: {
+                        final boolean value = ((PVBoolean)pvScalar).get();
+                        return new BooleanNode() { boolean get() { return value; } };
+                    }
+                    case longLane: {
+                        final long value = convert.toLong(pvScalar);
+                        return new LongNode(scalarType) { long get() { return value; } };
+                    }
+                    case doubleLane: {
+                        final double value = convert.toDouble(pvScalar);
+                        return new DoubleNode(scalarType) { double get() { return value; } };
+                    }
+                    default: return null;
+                    }
+                }
+                switch(scalarType) {
+                case pvBoolean: {
+                    final PVBoolean pv = (PVBoolean)pvScalar;
+                    return new BooleanNode() { boolean get() { return pv.get(); } };
+                }
+                case pvByte: {
+                    final PVByte pv = (PVByte)pvScalar;
+                    return new LongNode(scalarType) { long get() { return pv.get(); } };
+                }
+                case pvShort: {
+                    final PVShort pv = (PVShort)pvScalar;
+                    return new LongNode(scalarType) { long get() { return pv.get(); } };
+                }
+                case pvInt: {
+                    final PVInt pv = (PVInt)pvScalar;
+                    return new LongNode(scalarType) { long get() { return pv.get(); } };
+                }
+                case pvLong: {
+                    final PVLong pv = (PVLong)pvScalar;
+                    return new LongNode(scalarType) { long get() { return pv.get(); } };
+                }
+                case pvFloat: {
+                    final PVFloat pv = (PVFloat)pvScalar;
+                    return new DoubleNode(scalarType) { double get() { return pv.get(); } };
+                }
+                case pvDouble: {
+                    final PVDouble pv = (PVDouble)pvScalar;
+                    return new DoubleNode(scalarType) { double get() { return pv.get(); } };
+                }
+                default: return null;
+                }
+            }
+            
+            // the element of an array argument selected by arrayIndex
+            private CompiledNode compileElement(final ArrayArgument arg) {
+                final ArrayIndex index = arrayIndex;
+                ScalarType scalarType = arg.elementType;
+                switch(scalarType) {
+                case pvByte:
+                    return new LongNode(scalarType) {
+                        long get() { return arg.byteData.data[arg.byteData.offset + (index.value & arg.mask)]; }
+                    };
+                case pvShort:
+                    return new LongNode(scalarType) {
+                        long get() { return arg.shortData.data[arg.shortData.offset + (index.value & arg.mask)]; }
+                    };
+                case pvInt:
+                    return new LongNode(scalarType) {
+                        long get() { return arg.intData.data[arg.intData.offset + (index.value & arg.mask)]; }
+                    };
+                case pvLong:
+                    return new LongNode(scalarType) {
+                        long get() { return arg.longData.data[arg.longData.offset + (index.value & arg.mask)]; }
+                    };
+                case pvFloat:
+                    return new DoubleNode(scalarType) {
+                        double get() { return arg.floatData.data[arg.floatData.offset + (index.value & arg.mask)]; }
+                    };
+                case pvDouble:
+                    return new DoubleNode(scalarType) {
+                        double get() { return arg.doubleData.data[arg.doubleData.offset + (index.value & arg.mask)]; }
+                    };
+                default: return null;
+                }
+            }
+            
+            // let the interpreter compute the expression and then read the result.
+            private CompiledNode compileInterpreted(Expression expression) {
+                final Operator operator = expression.operator;
+                CompiledNode result = compileLeaf(expression.pvResult);
+                if(result==null) return null;
+                interpreted = true;
+                if(result instanceof BooleanNode) {
+                    final BooleanNode node = (BooleanNode)result;
+                    return new BooleanNode() {
+                        boolean get() { operator.compute(); return node.get(); }
+                    };
+                }
+                if(result instanceof LongNode) {
+                    final LongNode node = (LongNode)result;
+                    return new LongNode(node.scalarType) {
+                        long get() { operator.compute(); return node.get(); }
+                    };
+                }
+                final DoubleNode node = (DoubleNode)result;
+                return new DoubleNode(node.scalarType) {
+                    double get() { operator.compute(); return node.get(); }
+                };
+            }
+            
+            // same as (byte),(short),(int) casts.
+            private static LongNode narrow(final LongNode node,ScalarType scalarType) {
+                switch(scalarType) {
+                case pvByte: return new LongNode(scalarType) { long get() { return (byte)node.get(); } };
+                case pvShort: return new LongNode(scalarType) { long get() { return (short)node.get(); } };
+                case pvInt: return new LongNode(scalarType) { long get() { return (int)node.get(); } };
+                default: return node;
+                }
+            }
+            
+            private static DoubleNode roundToFloat(final DoubleNode node) {
+                return new DoubleNode(ScalarType.pvFloat) { double get() { return (float)node.get(); } };
+            }
+            
+            // same as convert.toByte, toShort, toInt, or toLong
+            private static LongNode toLong(CompiledNode compiledNode,ScalarType scalarType) {
+                if(compiledNode instanceof LongNode) {
+                    LongNode node = (LongNode)compiledNode;
+                    if(node.scalarType.ordinal()<=scalarType.ordinal()) return node;
+                    return narrow(node,scalarType);
+                }
+                if(compiledNode instanceof DoubleNode) {
+                    final DoubleNode node = (DoubleNode)compiledNode;
+                    if(scalarType==ScalarType.pvLong) {
+                        return new LongNode(scalarType) { long get() { return (long)node.get(); } };
+                    }
+                    return narrow(new LongNode(ScalarType.pvInt) { long get() { return (int)node.get(); } },scalarType);
+                }
+                return null;
+            }
+            
+            // same as convert.toFloat or toDouble
+            private static DoubleNode toDouble(CompiledNode compiledNode,ScalarType scalarType) {
+                if(compiledNode instanceof DoubleNode) {
+                    DoubleNode node = (DoubleNode)compiledNode;
+                    if(scalarType==ScalarType.pvFloat && node.scalarType==ScalarType.pvDouble) {
+                        return roundToFloat(node);
+                    }
+                    return node;
+                }
+                if(compiledNode instanceof LongNode) {
+                    final LongNode node = (LongNode)compiledNode;
+                    if(scalarType==ScalarType.pvFloat) {
+                        return new DoubleNode(scalarType) { double get() { return (float)node.get(); } };
+                    }
+                    return new DoubleNode(scalarType) { double get() { return node.get(); } };
+                }
+                return null;
+            }
+            
+            private CompiledNode compileTernaryIf(Expression expression,ScalarType scalarType) {
+                Expression[] args = expression.expressionArguments;
+                CompiledNode ifNode = compileNode(args[0]);
+                CompiledNode arg0 = compileNode(args[1]);
+                CompiledNode arg1 = compileNode(args[2]);
+                if(!(ifNode instanceof BooleanNode) || arg0==null || arg1==null) return null;
+                final BooleanNode test = (BooleanNode)ifNode;
+                switch(getLane(scalarType)) {
+                case booleanLane: {
+                    if(!(arg0 instanceof BooleanNode) || !(arg1 instanceof BooleanNode)) return null;
+                    final BooleanNode a = (BooleanNode)arg0;
+                    final BooleanNode b = (BooleanNode)arg1;
+                    return new BooleanNode() { boolean get() { return test.get() ? a.get() : b.get(); } };
+                }
+                case longLane: {
+                    final LongNode a = toLong(arg0,scalarType);
+                    final LongNode b = toLong(arg1,scalarType);
+                    if(a==null || b==null) return null;
+                    return new LongNode(scalarType) { long get() { return test.get() ? a.get() : b.get(); } };
+                }
+                case doubleLane: {
+                    final DoubleNode a = toDouble(arg0,scalarType);
+                    final DoubleNode b = toDouble(arg1,scalarType);
+                    if(a==null || b==null) return null;
+                    return new DoubleNode(scalarType) { double get() { return test.get() ? a.get() : b.get(); } };
+                }
+                default: return null;
+                }
+            }
+            
+            private CompiledNode compileOperation(Expression expression,Operation operation,ScalarType scalarType) {
+                Expression[] args = expression.expressionArguments;
+                CompiledNode arg0 = compileNode(args[0]);
+                if(arg0==null) return null;
+                if(args.length==1) return compileUnary(operation,arg0,scalarType);
+                CompiledNode arg1 = compileNode(args[1]);
+                if(arg1==null) return null;
+                switch(operation) {
+                case multiplication:
+                case division:
+                case remainder:
+                case plus:
+                case minus:
+                    return compileArithmetic(operation,arg0,arg1,scalarType);
+                case leftShift:
+                case rightShiftSignExtended:
+                case rightShiftZeroExtended:
+                    return compileShift(operation,arg0,arg1,scalarType);
+                case lessThan:
+                case lessThanEqual:
+                case greaterThan:
+                case greaterThanEqual:
+                case equalEqual:
+                case notEqual:
+                    return compileRelational(operation,arg0,arg1);
+                case bitwiseAnd:
+                case bitwiseXOR:
+                case bitwiseOr:
+                    return compileBitwise(operation,arg0,arg1,scalarType);
+                case booleanAnd:
+                case booleanXOR:
+                case booleanOr:
+                case conditionalAnd:
+                case conditionalOr:
+                    return compileBoolean(operation,arg0,arg1);
+                default:
+                    return null;
+                }
+            }
+            
+            private static CompiledNode compileUnary(Operation operation,CompiledNode arg,ScalarType scalarType) {
+                switch(operation) {
+                case unaryPlus:
+                    return arg;
+                case unaryMinus:
+                    if(arg instanceof LongNode) {
+                        final LongNode a = (LongNode)arg;
+                        return narrow(new LongNode(scalarType) { long get() { return -a.get(); } },scalarType);
+                    }
+                    if(arg instanceof DoubleNode) {
+                        final DoubleNode a = (DoubleNode)arg;
+                        return new DoubleNode(scalarType) { double get() { return -a.get(); } };
+                    }
+                    return null;
+                case bitwiseComplement:
+                    if(arg instanceof LongNode) {
+                        final LongNode a = (LongNode)arg;
+                        return narrow(new LongNode(scalarType) { long get() { return ~a.get(); } },scalarType);
+                    }
+                    return null;
+                case booleanNot:
+                    if(arg instanceof BooleanNode) {
+                        final BooleanNode a = (BooleanNode)arg;
+                        return new BooleanNode() { boolean get() { return !a.get(); } };
+                    }
+                    return null;
+                default:
+                    return null;
+                }
+            }
+            
+            private static CompiledNode compileArithmetic(Operation operation,CompiledNode arg0,CompiledNode arg1,ScalarType scalarType) {
+                int lane = getLane(scalarType);
+                if(lane==longLane) {
+                    final LongNode a = toLong(arg0,scalarType);
+                    final LongNode b = toLong(arg1,scalarType);
+                    if(a==null || b==null) return null;
+                    LongNode node = null;
+                    switch(operation) {
+                    case multiplication: node = new LongNode(scalarType) { long get() { return a.get() * b.get(); } }; break;
+                    case division: node = new LongNode(scalarType) { long get() { return a.get() / b.get(); } }; break;
+                    case remainder: node = new LongNode(scalarType) { long get() { return a.get() % b.get(); } }; break;
+                    case plus: node = new LongNode(scalarType) { long get() { return a.get() + b.get(); } }; break;
+                    case minus: node = new LongNode(scalarType) { long get() { return a.get() - b.get(); } }; break;
+                    default: return null;
+                    }
+                    return narrow(node,scalarType);
+                }
+                if(lane==doubleLane) {
+                    final DoubleNode a = toDouble(arg0,scalarType);
+                    final DoubleNode b = toDouble(arg1,scalarType);
+                    if(a==null || b==null) return null;
+                    DoubleNode node = null;
+                    switch(operation) {
+                    case multiplication: node = new DoubleNode(scalarType) { double get() { return a.get() * b.get(); } }; break;
+                    case division: node = new DoubleNode(scalarType) { double get() { return a.get() / b.get(); } }; break;
+                    case remainder: node = new DoubleNode(scalarType) { double get() { return a.get() % b.get(); } }; break;
+                    case plus: node = new DoubleNode(scalarType) { double get() { return a.get() + b.get(); } }; break;
+                    case minus: node = new DoubleNode(scalarType) { double get() { return a.get() - b.get(); } }; break;
+                    default: return null;
+                    }
+                    // float operations computed as double and rounded give the same result as float operations
+                    if(scalarType==ScalarType.pvFloat) node = roundToFloat(node);
+                    return node;
+                }
+                return null;
+            }
+            
+            private static CompiledNode compileShift(Operation operation,CompiledNode arg0,CompiledNode arg1,ScalarType scalarType) {
+                if(!(arg0 instanceof LongNode) || !(arg1 instanceof LongNode)) return null;
+                final LongNode a = (LongNode)arg0;
+                final LongNode b = (LongNode)arg1;
+                // the interpreter uses convert.toByte for the shift count
+                if(scalarType==ScalarType.pvLong) {
+                    switch(operation) {
+                    case leftShift: return new LongNode(scalarType) { long get() { return a.get() << (byte)b.get(); } };
+                    case rightShiftSignExtended: return new LongNode(scalarType) { long get() { return a.get() >> (byte)b.get(); } };
+                    case rightShiftZeroExtended: return new LongNode(scalarType) { long get() { return a.get() >>> (byte)b.get(); } };
+                    default: return null;
+                    }
+                }
+                // byte, short and int are shifted as int
+                LongNode node = null;
+                switch(operation) {
+                case leftShift:
+                    node = new LongNode(scalarType) { long get() { return (int)a.get() << (byte)b.get(); } };
+                    break;
+                case rightShiftSignExtended:
+                    node = new LongNode(scalarType) { long get() { return (int)a.get() >> (byte)b.get(); } };
+                    break;
+                case rightShiftZeroExtended: {
+                    final int mask = (scalarType==ScalarType.pvByte) ? 0x0ff : ((scalarType==ScalarType.pvShort) ? 0x0ffff : -1);
+                    node = new LongNode(scalarType) { long get() { return ((int)a.get() & mask) >>> (byte)b.get(); } };
+                    break;
+                }
+                default: return null;
+                }
+                return narrow(node,scalarType);
+            }
+            
+            private static CompiledNode compileRelational(Operation operation,CompiledNode arg0,CompiledNode arg1) {
+                ScalarType scalarType = maxType(arg0.scalarType,arg1.scalarType);
+                switch(getLane(scalarType)) {
+                case booleanLane: {
+                    if(operation!=Operation.equalEqual) return null;
+                    if(!(arg0 instanceof BooleanNode) || !(arg1 instanceof BooleanNode)) return null;
+                    final BooleanNode a = (BooleanNode)arg0;
+                    final BooleanNode b = (BooleanNode)arg1;
+                    return new BooleanNode() { boolean get() { return a.get()==b.get(); } };
+                }
+                case longLane: {
+                    final LongNode a = toLong(arg0,scalarType);
+                    final LongNode b = toLong(arg1,scalarType);
+                    if(a==null || b==null) return null;
+                    switch(operation) {
+                    case lessThan: return new BooleanNode() { boolean get() { return a.get() < b.get(); } };
+                    case lessThanEqual: return new BooleanNode() { boolean get() { return a.get() <= b.get(); } };
+                    case greaterThan: return new BooleanNode() { boolean get() { return a.get() > b.get(); } };
+                    case greaterThanEqual: return new BooleanNode() { boolean get() { return a.get() >= b.get(); } };
+                    case equalEqual: return new BooleanNode() { boolean get() { return a.get() == b.get(); } };
+                    case notEqual: return new BooleanNode() { boolean get() { return a.get() != b.get(); } };
+                    default: return null;
+                    }
+                }
+                case doubleLane: {
+                    final DoubleNode a = toDouble(arg0,scalarType);
+                    final DoubleNode b = toDouble(arg1,scalarType);
+                    if(a==null || b==null) return null;
+                    switch(operation) {
+                    case lessThan: return new BooleanNode() { boolean get() { return a.get() < b.get(); } };
+                    case lessThanEqual: return new BooleanNode() { boolean get() { return a.get() <= b.get(); } };
+                    case greaterThan: return new BooleanNode() { boolean get() { return a.get() > b.get(); } };
+                    case greaterThanEqual: return new BooleanNode() { boolean get() { return a.get() >= b.get(); } };
+                    case equalEqual: return new BooleanNode() { boolean get() { return a.get() == b.get(); } };
+                    case notEqual: return new BooleanNode() { boolean get() { return a.get() != b.get(); } };
+                    default: return null;
+                    }
+                }
+                default: return null;
+                }
+            }
+            
+            private static CompiledNode compileBitwise(Operation operation,CompiledNode arg0,CompiledNode arg1,ScalarType scalarType) {
+                // and, or, xor of sign extended values are already in range.
+                final LongNode a = toLong(arg0,scalarType);
+                final LongNode b = toLong(arg1,scalarType);
+                if(a==null || b==null || getLane(scalarType)!=longLane) return null;
+                switch(operation) {
+                case bitwiseAnd: return new LongNode(scalarType) { long get() { return a.get() & b.get(); } };
+                case bitwiseXOR: return new LongNode(scalarType) { long get() { return a.get() ^ b.get(); } };
+                case bitwiseOr: return new LongNode(scalarType) { long get() { return a.get() | b.get(); } };
+                default: return null;
+                }
+            }
+            
+            private static CompiledNode compileBoolean(Operation operation,CompiledNode arg0,CompiledNode arg1) {
+                if(!(arg0 instanceof BooleanNode) || !(arg1 instanceof BooleanNode)) return null;
+                final BooleanNode a = (BooleanNode)arg0;
+                final BooleanNode b = (BooleanNode)arg1;
+                switch(operation) {
+                case booleanAnd: return new BooleanNode() { boolean get() { return a.get() & b.get(); } };
+                case booleanXOR: return new BooleanNode() { boolean get() { return a.get() ^ b.get(); } };
+                case booleanOr: return new BooleanNode() { boolean get() { return a.get() | b.get(); } };
+                case conditionalAnd: return new BooleanNode() { boolean get() { return a.get() && b.get(); } };
+                case conditionalOr: return new BooleanNode() { boolean get() { return a.get() || b.get(); } };
+                default: return null;
+                }
+            }
+            
+            private CompiledNode compileMathFunction(Expression expression,MathFunction mathFunction,final ScalarType scalarType) {
+                Expression[] args = expression.expressionArguments;
+                CompiledNode[] nodes = new CompiledNode[args.length];
+                for(int i=0; i<args.length; i++) {
+                    nodes[i] = compileNode(args[i]);
+                    if(nodes[i]==null) return null;
+                }
+                switch(mathFunction) {
+                case random:
+                    return new DoubleNode(scalarType) { double get() { return Math.random(); } };
+                case abs: {
+                    if(nodes[0] instanceof LongNode) {
+                        final LongNode a = (LongNode)nodes[0];
+                        if(scalarType==ScalarType.pvLong) {
+                            return new LongNode(scalarType) { long get() { return Math.abs(a.get()); } };
+                        }
+                        return new LongNode(scalarType) { long get() { return Math.abs((int)a.get()); } };
+                    }
+                    final DoubleNode a = toDouble(nodes[0],scalarType);
+                    if(a==null) return null;
+                    return new DoubleNode(scalarType) { double get() { return Math.abs(a.get()); } };
+                }
+                case max:
+                case min: {
+                    final boolean isMax = (mathFunction==MathFunction.max);
+                    if(getLane(scalarType)==longLane) {
+                        final LongNode a = toLong(nodes[0],scalarType);
+                        final LongNode b = toLong(nodes[1],scalarType);
+                        if(a==null || b==null) return null;
+                        if(isMax) return new LongNode(scalarType) { long get() { return Math.max(a.get(),b.get()); } };
+                        return new LongNode(scalarType) { long get() { return Math.min(a.get(),b.get()); } };
+                    }
+                    final DoubleNode a = toDouble(nodes[0],scalarType);
+                    final DoubleNode b = toDouble(nodes[1],scalarType);
+                    if(a==null || b==null) return null;
+                    if(isMax) return new DoubleNode(scalarType) { double get() { return Math.max(a.get(),b.get()); } };
+                    return new DoubleNode(scalarType) { double get() { return Math.min(a.get(),b.get()); } };
+                }
+                case round: {
+                    if(!(nodes[0] instanceof DoubleNode)) return null;
+                    final DoubleNode a = (DoubleNode)nodes[0];
+                    if(a.scalarType==ScalarType.pvFloat) {
+                        return new LongNode(scalarType) { long get() { return Math.round((float)a.get()); } };
+                    }
+                    return new LongNode(scalarType) { long get() { return Math.round(a.get()); } };
+                }
+                case signum: {
+                    final DoubleNode a = toDouble(nodes[0],scalarType);
+                    if(a==null) return null;
+                    return new DoubleNode(scalarType) { double get() { return Math.signum(a.get()); } };
+                }
+                case ulp: {
+                    final DoubleNode a = toDouble(nodes[0],scalarType);
+                    if(a==null) return null;
+                    if(scalarType==ScalarType.pvFloat) {
+                        return new DoubleNode(scalarType) { double get() { return Math.ulp((float)a.get()); } };
+                    }
+                    return new DoubleNode(scalarType) { double get() { return Math.ulp(a.get()); } };
+                }
+                default:
+                    break;
+                }
+                if(scalarType!=ScalarType.pvDouble) return null;
+                if(nodes.length==2) {
+                    final DoubleNode a = toDouble(nodes[0],scalarType);
+                    final DoubleNode b = toDouble(nodes[1],scalarType);
+                    if(a==null || b==null) return null;
+                    switch(mathFunction) {
+                    case atan2: return new DoubleNode(scalarType) { double get() { return Math.atan2(a.get(),b.get()); } };
+                    case hypot: return new DoubleNode(scalarType) { double get() { return Math.hypot(a.get(),b.get()); } };
+                    case IEEEremainder: return new DoubleNode(scalarType) { double get() { return Math.IEEEremainder(a.get(),b.get()); } };
+                    case pow: return new DoubleNode(scalarType) { double get() { return Math.pow(a.get(),b.get()); } };
+                    default: return null;
+                    }
+                }
+                if(nodes.length!=1) return null;
+                final DoubleNode a = toDouble(nodes[0],scalarType);
+                if(a==null) return null;
+                switch(mathFunction) {
+                case acos: return new DoubleNode(scalarType) { double get() { return Math.acos(a.get()); } };
+                case asin: return new DoubleNode(scalarType) { double get() { return Math.asin(a.get()); } };
+                case atan: return new DoubleNode(scalarType) { double get() { return Math.atan(a.get()); } };
+                case cbrt: return new DoubleNode(scalarType) { double get() { return Math.cbrt(a.get()); } };
+                case ceil: return new DoubleNode(scalarType) { double get() { return Math.ceil(a.get()); } };
+                case cos: return new DoubleNode(scalarType) { double get() { return Math.cos(a.get()); } };
+                case cosh: return new DoubleNode(scalarType) { double get() { return Math.cosh(a.get()); } };
+                case exp: return new DoubleNode(scalarType) { double get() { return Math.exp(a.get()); } };
+                case expm1: return new DoubleNode(scalarType) { double get() { return Math.expm1(a.get()); } };
+                case floor: return new DoubleNode(scalarType) { double get() { return Math.floor(a.get()); } };
+                case log: return new DoubleNode(scalarType) { double get() { return Math.log(a.get()); } };
+                case log10: return new DoubleNode(scalarType) { double get() { return Math.log10(a.get()); } };
+                case log1p: return new DoubleNode(scalarType) { double get() { return Math.log1p(a.get()); } };
+                case rint: return new DoubleNode(scalarType) { double get() { return Math.rint(a.get()); } };
+                case sin: return new DoubleNode(scalarType) { double get() { return Math.sin(a.get()); } };
+                case sinh: return new DoubleNode(scalarType) { double get() { return Math.sinh(a.get()); } };
+                case sqrt: return new DoubleNode(scalarType) { double get() { return Math.sqrt(a.get()); } };
+                case tan: return new DoubleNode(scalarType) { double get() { return Math.tan(a.get()); } };
+                case tanh: return new DoubleNode(scalarType) { double get() { return Math.tanh(a.get()); } };
+                case toDegrees: return new DoubleNode(scalarType) { double get() { return Math.toDegrees(a.get()); } };
+                case toRadians: return new DoubleNode(scalarType) { double get() { return Math.toRadians(a.get()); } };
+                default: return null;
+                }
+            }
+        }
+        
+        private static class BooleanStore implements CompiledExpression {
+            private final BooleanNode node;
+            private final PVBoolean pvValue;
+            private final PVScalar pvCopy;
+            BooleanStore(BooleanNode node,PVBoolean pvValue,PVScalar pvCopy) {
+                this.node = node;
+                this.pvValue = pvValue;
+                this.pvCopy = pvCopy;
+            }
+            public void execute() {
+                pvValue.put(node.get());
+                if(pvCopy!=null) convert.copyScalar(pvValue, pvCopy);
+            }
+        }
+        
+        private static class ByteStore implements CompiledExpression {
+            private final LongNode node;
+            private final PVByte pvValue;
+            private final PVScalar pvCopy;
+            ByteStore(LongNode node,PVByte pvValue,PVScalar pvCopy) {
+                this.node = node;
+                this.pvValue = pvValue;
+                this.pvCopy = pvCopy;
+            }
+            public void execute() {
+                pvValue.put((byte)node.get());
+                if(pvCopy!=null) convert.copyScalar(pvValue, pvCopy);
+            }
+        }
+        
+        private static class ShortStore implements CompiledExpression {
+            private final LongNode node;
+            private final PVShort pvValue;
+            private final PVScalar pvCopy;
+            ShortStore(LongNode node,PVShort pvValue,PVScalar pvCopy) {
+                this.node = node;
+                this.pvValue = pvValue;
+                this.pvCopy = pvCopy;
+            }
+            public void execute() {
+                pvValue.put((short)node.get());
+                if(pvCopy!=null) convert.copyScalar(pvValue, pvCopy);
+            }
+        }
+        
+        private static class IntStore implements CompiledExpression {
+            private final LongNode node;
+            private final PVInt pvValue;
+            private final PVScalar pvCopy;
+            IntStore(LongNode node,PVInt pvValue,PVScalar pvCopy) {
+                this.node = node;
+                this.pvValue = pvValue;
+                this.pvCopy = pvCopy;
+            }
+            public void execute() {
+                pvValue.put((int)node.get());
+                if(pvCopy!=null) convert.copyScalar(pvValue, pvCopy);
+            }
+        }
+        
+        private static class LongStore implements CompiledExpression {
+            private final LongNode node;
+            private final PVLong pvValue;
+            private final PVScalar pvCopy;
+            LongStore(LongNode node,PVLong pvValue,PVScalar pvCopy) {
+                this.node = node;
+                this.pvValue = pvValue;
+                this.pvCopy = pvCopy;
+            }
+            public void execute() {
+                pvValue.put(node.get());
+                if(pvCopy!=null) convert.copyScalar(pvValue, pvCopy);
+            }
+        }
+        
+        private static class FloatStore implements CompiledExpression {
+            private final DoubleNode node;
+            private final PVFloat pvValue;
+            private final PVScalar pvCopy;
+            FloatStore(DoubleNode node,PVFloat pvValue,PVScalar pvCopy) {
+                this.node = node;
+                this.pvValue = pvValue;
+                this.pvCopy = pvCopy;
+            }
+            public void execute() {
+                pvValue.put((float)node.get());
+                if(pvCopy!=null) convert.copyScalar(pvValue, pvCopy);
+            }
+        }
+        
+        private static class DoubleStore implements CompiledExpression {
+            private final DoubleNode node;
+            private final PVDouble pvValue;
+            private final PVScalar pvCopy;
+            DoubleStore(DoubleNode node,PVDouble pvValue,PVScalar pvCopy) {
+                this.node = node;
+                this.pvValue = pvValue;
+                this.pvCopy = pvCopy;
+            }
+            public void execute() {
+                pvValue.put(node.get());
+                if(pvCopy!=null) convert.copyScalar(pvValue, pvCopy);
+            }
+        }
+        
+        /*
+         * Array expressions.
+         * Each numeric array in calcArgs (and value if it is an array) is an ArrayArgument.
+         * The parser sees the element of the array as a scalar variable.
+         * The compiled expression is evaluated for each index and reads the element directly
+         * from the array data. An array of length 1 is broadcast, i.e. its element is used for every index.
+         * The number of elements is the minimum length of the other arrays.
+         * A reduction uses the same rule but only for the arrays that appear in its argument.
+         * If value is a scalar then each array whose element is used outside of a reduction must have length 1.
+         * Any other length is reported as an error when the record is processed, rather than storing the element at index 0.
+         */
+        private static class ArrayIndex {
+            int value = 0;
+        }
+        
+        private static class ArrayArgument {
+            final PVScalarArray pvArray;
+            final ScalarType elementType;
+            // the element seen by the interpreter
+            final PVScalar pvElement;
+            ByteArrayData byteData = null;
+            ShortArrayData shortData = null;
+            IntArrayData intData = null;
+            LongArrayData longData = null;
+            FloatArrayData floatData = null;
+            DoubleArrayData doubleData = null;
+            int length = 0;
+            // -1 if index selects the element, 0 if the single element is broadcast
+            int mask = -1;
+            
+            ArrayArgument(PVScalarArray pvArray) {
+                this.pvArray = pvArray;
+                elementType = pvArray.getScalarArray().getElementType();
+                pvElement = pvDataCreate.createPVScalar(elementType);
+                switch(elementType) {
+                case pvByte: byteData = new ByteArrayData(); break;
+                case pvShort: shortData = new ShortArrayData(); break;
+                case pvInt: intData = new IntArrayData(); break;
+                case pvLong: longData = new LongArrayData(); break;
+                case pvFloat: floatData = new FloatArrayData(); break;
+                case pvDouble: doubleData = new DoubleArrayData(); break;
+                default: throw new IllegalArgumentException("array element type must be numeric");
+                }
+            }
+            
+            void fetch() {
+                length = pvArray.getLength();
+                mask = (length==1) ? 0 : -1;
+                switch(elementType) {
+                case pvByte: ((PVByteArray)pvArray).get(0, length, byteData); break;
+                case pvShort: ((PVShortArray)pvArray).get(0, length, shortData); break;
+                case pvInt: ((PVIntArray)pvArray).get(0, length, intData); break;
+                case pvLong: ((PVLongArray)pvArray).get(0, length, longData); break;
+                case pvFloat: ((PVFloatArray)pvArray).get(0, length, floatData); break;
+                case pvDouble: ((PVDoubleArray)pvArray).get(0, length, doubleData); break;
+                default: break;
+                }
+            }
+            
+            void loadElement(int index) {
+                index &= mask;
+                switch(elementType) {
+                case pvByte: ((PVByte)pvElement).put(byteData.data[byteData.offset + index]); break;
+                case pvShort: ((PVShort)pvElement).put(shortData.data[shortData.offset + index]); break;
+                case pvInt: ((PVInt)pvElement).put(intData.data[intData.offset + index]); break;
+                case pvLong: ((PVLong)pvElement).put(longData.data[longData.offset + index]); break;
+                case pvFloat: ((PVFloat)pvElement).put(floatData.data[floatData.offset + index]); break;
+                case pvDouble: ((PVDouble)pvElement).put(doubleData.data[doubleData.offset + index]); break;
+                default: break;
+                }
+            }
+        }
+        
+        private static class ArrayEvaluator {
+            private final ArrayIndex arrayIndex = new ArrayIndex();
+            private final ArrayArgument[] arrayArguments;
+            private final ArrayReduction[] arrayReductions;
+            private DoubleNode[] reductionNodes = null;
+            // the array arguments of each reduction
+            private ArrayArgument[][] reductionArguments = null;
+            private boolean interpreted = false;
+            private boolean usesElements = false;
+            // value is a scalar
+            private CompiledExpression scalarStore = null;
+            // value is an array
+            private PVScalarArray pvValueArray = null;
+            private LongNode longNode = null;
+            private DoubleNode doubleNode = null;
+            private ByteArrayData byteData = null;
+            private ShortArrayData shortData = null;
+            private IntArrayData intData = null;
+            private LongArrayData longData = null;
+            private FloatArrayData floatData = null;
+            private DoubleArrayData doubleData = null;
+            
+            ArrayEvaluator(List<ArrayArgument> arrayArguments,List<ArrayReduction> arrayReductions) {
+                this.arrayArguments = arrayArguments.toArray(new ArrayArgument[arrayArguments.size()]);
+                this.arrayReductions = arrayReductions.toArray(new ArrayReduction[arrayReductions.size()]);
+            }
+            
+            /**
+             * Compile the expression.
+             * @param expression The parsed expression.
+             * @param pvValue The value field if it is a scalar.
+             * @param pvValueArray The value field if it is an array.
+             * @return null if ok or the reason the expression can not be evaluated for arrays.
+             */
+            String compile(Expression expression,PVScalar pvValue,PVScalarArray pvValueArray) {
+                ExpressionCompiler compiler = new ExpressionCompiler(arrayIndex,Arrays.asList(arrayArguments));
+                int numberReductions = arrayReductions.length;
+                reductionNodes = new DoubleNode[numberReductions];
+                reductionArguments = new ArrayArgument[numberReductions][];
+                for(int i=0; i<numberReductions; i++) {
+                    Expression argument = arrayReductions[i].mathFunctionExpression.expressionArguments[0];
+                    reductionNodes[i] = ExpressionCompiler.toDouble(compiler.compileNode(argument),ScalarType.pvDouble);
+                    if(reductionNodes[i]==null) return "argument of " + arrayReductions[i].getName() + " must be numeric";
+                    List<ArrayArgument> used = new ArrayList<ArrayArgument>();
+                    getArrayArguments(argument,used);
+                    reductionArguments[i] = used.toArray(new ArrayArgument[used.size()]);
+                }
+                compiler.usesElements = false;
+                CompiledNode node = compiler.compileNode(expression);
+                if(node==null) return "array expression must be boolean or numeric";
+                usesElements = compiler.usesElements;
+                interpreted = compiler.interpreted;
+                if(pvValue!=null) {
+                    scalarStore = ExpressionCompiler.createStore(node, pvValue);
+                    return null;
+                }
+                this.pvValueArray = pvValueArray;
+                ScalarType elementType = pvValueArray.getScalarArray().getElementType();
+                switch(elementType) {
+                case pvByte: byteData = new ByteArrayData(); break;
+                case pvShort: shortData = new ShortArrayData(); break;
+                case pvInt: intData = new IntArrayData(); break;
+                case pvLong: longData = new LongArrayData(); break;
+                case pvFloat: floatData = new FloatArrayData(); break;
+                case pvDouble: doubleData = new DoubleArrayData(); break;
+                default: return "value array must be numeric";
+                }
+                if(elementType.isInteger()) {
+                    longNode = ExpressionCompiler.toLong(node, elementType);
+                } else {
+                    doubleNode = ExpressionCompiler.toDouble(node, elementType);
+                }
+                if(longNode==null && doubleNode==null) return "array expression must be numeric";
+                return null;
+            }
+            
+            /**
+             * Evaluate the expression.
+             * @return null if ok or the reason the expression could not be evaluated.
+             */
+            String evaluate() {
+                for(ArrayArgument arrayArgument : arrayArguments) arrayArgument.fetch();
+                // each reduction is over the elements of its own arguments
+                for(int i=0; i<arrayReductions.length; i++) {
+                    arrayReductions[i].reduce(this,reductionNodes[i],getLength(reductionArguments[i]));
+                }
+                int length = getLength(arrayArguments);
+                if(scalarStore!=null) {
+                    if(usesElements && length!=1) return "value is a scalar but the array expression has " + length + " elements";
+                    setIndex(0);
+                    scalarStore.execute();
+                    return null;
+                }
+                if(pvValueArray.getLength()!=length) pvValueArray.setLength(length);
+                try {
+                    store(length);
+                } finally {
+                    pvValueArray.postPut();
+                }
+                return null;
+            }
+            
+            void setIndex(int index) {
+                arrayIndex.value = index;
+                if(!interpreted) return;
+                for(ArrayArgument arrayArgument : arrayArguments) {
+                    // a reduction may index past the end of arguments it does not use
+                    if(arrayArgument.mask==0 || index<arrayArgument.length) arrayArgument.loadElement(index);
+                }
+            }
+            
+            // the array arguments whose elements appear in an expression
+            private void getArrayArguments(Expression expression,List<ArrayArgument> used) {
+                for(ArrayArgument arrayArgument : arrayArguments) {
+                    if(arrayArgument.pvElement==expression.pvResult && !used.contains(arrayArgument)) {
+                        used.add(arrayArgument);
+                    }
+                }
+                if(expression.expressionArguments==null) return;
+                for(Expression expressionArgument : expression.expressionArguments) {
+                    if(expressionArgument!=null) getArrayArguments(expressionArgument,used);
+                }
+            }
+            
+            // the broadcast length: the shortest array that does not have length 1, else 1
+            private static int getLength(ArrayArgument[] arguments) {
+                int length = 1;
+                boolean haveLength = false;
+                for(ArrayArgument arrayArgument : arguments) {
+                    int argLength = arrayArgument.length;
+                    if(argLength==1) continue;
+                    if(!haveLength || argLength<length) length = argLength;
+                    haveLength = true;
+                }
+                return length;
+            }
+            
+            private void store(int length) {
+                switch(pvValueArray.getScalarArray().getElementType()) {
+                case pvByte: {
+                    ((PVByteArray)pvValueArray).get(0, length, byteData);
+                    byte[] data = byteData.data;
+                    int offset = byteData.offset;
+                    for(int i=0; i<length; i++) {
+                        setIndex(i);
+                        data[offset + i] = (byte)longNode.get();
+                    }
+                    return;
+                }
+                case pvShort: {
+                    ((PVShortArray)pvValueArray).get(0, length, shortData);
+                    short[] data = shortData.data;
+                    int offset = shortData.offset;
+                    for(int i=0; i<length; i++) {
+                        setIndex(i);
+                        data[offset + i] = (short)longNode.get();
+                    }
+                    return;
+                }
+                case pvInt: {
+                    ((PVIntArray)pvValueArray).get(0, length, intData);
+                    int[] data = intData.data;
+                    int offset = intData.offset;
+                    for(int i=0; i<length; i++) {
+                        setIndex(i);
+                        data[offset + i] = (int)longNode.get();
+                    }
+                    return;
+                }
+                case pvLong: {
+                    ((PVLongArray)pvValueArray).get(0, length, longData);
+                    long[] data = longData.data;
+                    int offset = longData.offset;
+                    for(int i=0; i<length; i++) {
+                        setIndex(i);
+                        data[offset + i] = longNode.get();
+                    }
+                    return;
+                }
+                case pvFloat: {
+                    ((PVFloatArray)pvValueArray).get(0, length, floatData);
+                    float[] data = floatData.data;
+                    int offset = floatData.offset;
+                    for(int i=0; i<length; i++) {
+                        setIndex(i);
+                        data[offset + i] = (float)doubleNode.get();
+                    }
+                    return;
+                }
+                case pvDouble: {
+                    ((PVDoubleArray)pvValueArray).get(0, length, doubleData);
+                    double[] data = doubleData.data;
+                    int offset = doubleData.offset;
+                    for(int i=0; i<length; i++) {
+                        setIndex(i);
+                        data[offset + i] = doubleNode.get();
+                    }
+                    return;
+                }
+                default:
+                    return;
+                }
+            }
+        }
+        
         private static class OperatorFactory {
             static Operator create(
                     PVRecordStructure parent,
@@ -3126,6 +4269,10 @@ public abstract class ExpressionCalculatorFactory  {
                 case toDegrees: return new MathToDegrees(parent,mathFunctionExpression);
                 case toRadians: return new MathToRadians(parent,mathFunctionExpression);
                 case ulp: return new MathUlp(parent,mathFunctionExpression);
+                case sum:
+                case mean:
+                case arrayMin:
+                case arrayMax: return new ArrayReduction(parent,mathFunctionExpression);
                 }
                 return null;
             }
@@ -3723,6 +4870,72 @@ public abstract class ExpressionCalculatorFactory  {
                 }
             } 
         }
+        /*
+         * sum, mean, arrayMin, and arrayMax of an array expression.
+         * The reduction is computed by ArrayEvaluator before the expression is evaluated.
+         * compute just leaves the result in pvResult.
+         */
+        static class ArrayReduction implements Operator {
+            private MathFunctionExpression mathFunctionExpression;
+            private PVRecordStructure parent;
+            private PVDouble pvResult;
+            
+            ArrayReduction(PVRecordStructure parent,MathFunctionExpression mathFunctionExpression) {
+                this.parent = parent;
+                this.mathFunctionExpression = mathFunctionExpression;
+            }
+            @Override
+            public boolean createPVResult() {
+                if(mathFunctionExpression.expressionArguments.length!=1) {
+                    parent.message("illegal number of args", MessageType.error);
+                    return false;
+                }
+                PVScalar pvArg = mathFunctionExpression.expressionArguments[0].pvResult;
+                if(!pvArg.getScalar().getScalarType().isNumeric()) {
+                    parent.message("illegal arg type", MessageType.error);
+                    return false;
+                }
+                pvResult = (PVDouble)pvDataCreate.createPVScalar(ScalarType.pvDouble);
+                mathFunctionExpression.pvResult = pvResult;
+                return true;
+            }
+            public void compute() {}
+            
+            String getName() {
+                return mathFunctionExpression.functionSemantics.mathFunction.name();
+            }
+            
+            void reduce(ArrayEvaluator arrayEvaluator,DoubleNode argument,int length) {
+                double result = 0.0;
+                switch(mathFunctionExpression.functionSemantics.mathFunction) {
+                case sum:
+                case mean:
+                    for(int i=0; i<length; i++) {
+                        arrayEvaluator.setIndex(i);
+                        result += argument.get();
+                    }
+                    if(mathFunctionExpression.functionSemantics.mathFunction==MathFunction.mean) result /= length;
+                    break;
+                case arrayMin:
+                    result = (length==0) ? Double.NaN : Double.POSITIVE_INFINITY;
+                    for(int i=0; i<length; i++) {
+                        arrayEvaluator.setIndex(i);
+                        result = Math.min(result, argument.get());
+                    }
+                    break;
+                case arrayMax:
+                    result = (length==0) ? Double.NaN : Double.NEGATIVE_INFINITY;
+                    for(int i=0; i<length; i++) {
+                        arrayEvaluator.setIndex(i);
+                        result = Math.max(result, argument.get());
+                    }
+                    break;
+                default:
+                    break;
+                }
+                pvResult.put(result);
+            }
+        }
     }
 }
 
@@ -5,6 +5,7 @@
  */
 package org.epics.pvioc.support.dbLink;
 
+import org.epics.pvdata.misc.BitSet;
 import org.epics.pvdata.pv.MessageType;
 import org.epics.pvdata.pv.PVBoolean;
 import org.epics.pvdata.pv.PVField;
@@ -13,6 +14,8 @@ import org.epics.pvdata.pv.PVScalarArray;
 import org.epics.pvdata.pv.PVStructure;
 import org.epics.pvdata.pv.PVStructureArray;
 import org.epics.pvdata.pv.Type;
+import org.epics.pvioc.database.PVChangeTracker;
+import org.epics.pvioc.database.PVChangeTrackerFactory;
 import org.epics.pvioc.database.PVRecordField;
 import org.epics.pvioc.install.AfterStart;
 import org.epics.pvioc.support.SupportState;
@@ -37,6 +40,11 @@ abstract class AbstractIOLink extends AbstractLink {
     protected PVScalarArray linkValuePVArray = null;
     protected PVStructure linkValuePVStructure = null;
     protected PVStructureArray linkValuePVStructureArray = null;
+    // For scalarArray and structure values these track the puts to value and to the link value.
+    protected PVChangeTracker changeTracker = null;
+    protected PVChangeTracker linkChangeTracker = null;
+    private BitSet changedBitSet = null;
+    private boolean isLinkedRecord = false;
     /**
      * Constructor.
      * @param supportName The support name.
@@ -143,7 +151,90 @@ abstract class AbstractIOLink extends AbstractLink {
             }
             break;
         }
-        
-        	
+        if(valueType==Type.scalarArray || valueType==Type.structure) {
+            changeTracker = PVChangeTrackerFactory.create(pvRecord);
+            changeTracker.addField(pvRecord.findPVRecordField(valuePVField));
+            pvRecord.lockOtherRecord(linkPVRecord);
+            try {
+                linkChangeTracker = PVChangeTrackerFactory.create(linkPVRecord);
+                linkChangeTracker.addField(linkPVRecord.findPVRecordField(linkValuePVField));
+            } finally {
+                linkPVRecord.unlock();
+            }
+            changedBitSet = new BitSet(valuePVField.getNumberFields());
+        }
+    }
+    /* (non-Javadoc)
+     * @see org.epics.pvioc.support.AbstractSupport#stop()
+     */
+    @Override
+    public void stop() {
+        if(isLinkedRecord) {
+            recordProcess.removeLinkedRecord(linkPVRecord);
+            isLinkedRecord = false;
+        }
+        if(changeTracker!=null) {
+            changeTracker.destroy();
+            changeTracker = null;
+        }
+        if(linkChangeTracker!=null) {
+            pvRecord.lockOtherRecord(linkPVRecord);
+            try {
+                linkChangeTracker.destroy();
+            } finally {
+                linkPVRecord.unlock();
+            }
+            linkChangeTracker = null;
+        }
+        super.stop();
+    }
+    /**
+     * Lock the link record whenever this record is processed.
+     * Then the link record is already locked when process or processContinue copies the value
+     * and lockOtherRecord never has to unlock this record.
+     * stop undoes this.
+     */
+    protected void addLinkedRecord() {
+        recordProcess.addLinkedRecord(linkPVRecord);
+        isLinkedRecord = true;
+    }
+    /**
+     * Copy a scalarArray or structure value between this record and the link record.
+     * Only the fields that were put in either record since the last copy are copied,
+     * so a value that was changed in the destination by someone else is still overwritten.
+     * Must be called with both records locked.
+     * @param pvFrom The source field.
+     * @param fromTracker The tracker for the source record.
+     * @param pvTo The destination field.
+     * @param toTracker The tracker for the destination record.
+     */
+    protected void copyChanged(PVField pvFrom,PVChangeTracker fromTracker,PVField pvTo,PVChangeTracker toTracker) {
+        changedBitSet.clear();
+        boolean isKnown = fromTracker.getChanged(pvFrom, changedBitSet)
+            && toTracker.getChanged(pvTo, changedBitSet);
+        if(isKnown && changedBitSet.nextSetBit(0)<0) return;
+        if(!isKnown || valueType==Type.scalarArray || changedBitSet.get(0)
+        || pvFrom.getNumberFields()!=pvTo.getNumberFields()) {
+            if(valueType==Type.scalarArray) {
+                PVScalarArray from = (PVScalarArray)pvFrom;
+                convert.copyScalarArray(from, 0, (PVScalarArray)pvTo, 0, from.getLength());
+            } else {
+                convert.copyStructure((PVStructure)pvFrom, (PVStructure)pvTo);
+            }
+        } else {
+            PVStructure from = (PVStructure)pvFrom;
+            PVStructure to = (PVStructure)pvTo;
+            int fromOffset = pvFrom.getFieldOffset();
+            int toOffset = pvTo.getFieldOffset();
+            int offset = changedBitSet.nextSetBit(0);
+            while(offset>=0) {
+                PVField fromField = from.getSubField(fromOffset + offset);
+                convert.copy(fromField, to.getSubField(toOffset + offset));
+                offset = changedBitSet.nextSetBit(fromField.getNextFieldOffset() - fromOffset);
+            }
+        }
+        // the copy was also seen by toTracker
+        fromTracker.clear();
+        toTracker.clear();
     }
 }
@@ -20,6 +20,7 @@ import org.epics.pvioc.database.PVRecord;
 import org.epics.pvioc.database.PVRecordField;
 import org.epics.pvioc.install.AfterStart;
 import org.epics.pvioc.support.AbstractSupport;
+import org.epics.pvioc.support.ProcessToken;
 import org.epics.pvioc.support.RecordProcess;
 import org.epics.pvioc.support.SupportState;
 import org.epics.pvioc.support.alarm.AlarmSupport;
@@ -76,6 +77,16 @@ abstract class AbstractLink extends AbstractSupport {
      * The locateSupport for the linjkPVRecord.
      */
     
+    // set by LinkGraphFactory if linkPVRecord can be processed at the same time as the records of other links
+    private volatile boolean isParallel = false;
+    // A link has at most one process request outstanding, so a single request is reused.
+    private volatile ProcessToken parallelProcessToken = null;
+    private final Runnable parallelRequest = new Runnable() {
+        public void run() {
+            linkRecordProcess.queueProcessRequest(parallelProcessToken);
+        }
+    };
+    
     /**
      * Constructor.
      * @param supportName The support name.
@@ -133,6 +144,28 @@ abstract class AbstractLink extends AbstractSupport {
         linkRecordProcess = linkPVRecord.getRecordProcess();
         super.start(afterStart);
     }
+    /**
+     * Ask linkRecordProcess to process linkPVRecord.
+     * If LinkGraphFactory made this link a parallel branch the request is made by a LinkGraphFactory thread.
+     * @param processToken The token for linkRecordProcess.
+     */
+    protected void queueProcessRequest(ProcessToken processToken) {
+        if(!isParallel) {
+            linkRecordProcess.queueProcessRequest(processToken);
+            return;
+        }
+        parallelProcessToken = processToken;
+        LinkGraphFactory.execute(parallelRequest);
+    }
+    
+    void setParallel(boolean isParallel) {
+        this.isParallel = isParallel;
+    }
+    
+    boolean isParallel() {
+        return isParallel;
+    }
+    
     /* (non-Javadoc)
      * @see org.epics.pvioc.support.AbstractSupport#message(java.lang.String, org.epics.pvdata.pv.MessageType)
      */
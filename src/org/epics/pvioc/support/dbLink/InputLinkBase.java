@@ -12,9 +12,14 @@ import org.epics.pvdata.property.PVAlarm;
 import org.epics.pvdata.property.PVAlarmFactory;
 import org.epics.pvdata.property.TimeStamp;
 import org.epics.pvdata.property.TimeStampFactory;
+import org.epics.pvdata.factory.PVDataFactory;
 import org.epics.pvdata.pv.MessageType;
 import org.epics.pvdata.pv.PVBoolean;
+import org.epics.pvdata.pv.PVDataCreate;
 import org.epics.pvdata.pv.PVField;
+import org.epics.pvdata.pv.PVScalar;
+import org.epics.pvdata.pv.Type;
+import org.epics.pvioc.database.OptimisticReadFactory;
 import org.epics.pvioc.database.PVRecordField;
 import org.epics.pvioc.install.AfterStart;
 import org.epics.pvioc.support.ProcessCallbackRequester;
@@ -35,6 +40,7 @@ import org.epics.pvioc.util.RequestResult;
 public class InputLinkBase extends AbstractIOLink
 implements ProcessCallbackRequester, ProcessContinueRequester, RecordProcessRequester
 {
+    private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
     private boolean process = false;
     private ProcessToken processToken = null;
     private SupportProcessRequester supportProcessRequester = null;
@@ -44,6 +50,15 @@ implements ProcessCallbackRequester, ProcessContinueRequester, RecordProcessRequ
     private Alarm alarm = new Alarm();
     private PVAlarm pvAlarm = PVAlarmFactory.create();
     private TimeStamp timeStamp = TimeStampFactory.create();
+    // a scalar value is read into this without locking the link record
+    private PVScalar optimisticPVScalar = null;
+    private boolean optimisticInheritSeverity = false;
+    private final Runnable optimisticRead = new Runnable() {
+        public void run() {
+            convert.copyScalar(linkValuePVScalar, optimisticPVScalar);
+            if(optimisticInheritSeverity) pvAlarm.get(alarm);
+        }
+    };
     /**
      * The constructor.
      * @param supportName The supportName.
@@ -85,6 +100,13 @@ implements ProcessCallbackRequester, ProcessContinueRequester, RecordProcessRequ
             }
             pvAlarm.attach(pvField);
         }
+        if(getSupportState()!=SupportState.ready) return;
+        // a scalar is read optimistically, which only works if the link record is not already locked
+        if(valueType==Type.scalar) {
+            optimisticPVScalar = pvDataCreate.createPVScalar(linkValuePVScalar.getScalar().getScalarType());
+        } else {
+            addLinkedRecord();
+        }
     }
     /* (non-Javadoc)
      * @see org.epics.pvioc.support.AbstractSupport#stop()
@@ -116,7 +138,7 @@ implements ProcessCallbackRequester, ProcessContinueRequester, RecordProcessRequ
      */
     @Override
     public void processCallback() {
-    	linkRecordProcess.queueProcessRequest(processToken);
+    	queueProcessRequest(processToken);
     }
     /* (non-Javadoc)
      * @see org.epics.pvioc.support.ProcessContinueRequester#processContinue()
@@ -176,6 +198,7 @@ implements ProcessCallbackRequester, ProcessContinueRequester, RecordProcessRequ
 	}
 	
     private void getData() {
+        if(optimisticPVScalar!=null && getDataOptimistic()) return;
         pvRecord.lockOtherRecord(linkPVRecord);
         try {
             switch(valueType) {
@@ -183,10 +206,18 @@ implements ProcessCallbackRequester, ProcessContinueRequester, RecordProcessRequ
                 convert.copyScalar(linkValuePVScalar, valuePVScalar);
                 break;
             case scalarArray:
-                convert.copyScalarArray(linkValuePVArray, 0, valuePVArray, 0,linkValuePVArray.getLength() );
+                if(changeTracker!=null) {
+                    copyChanged(linkValuePVArray,linkChangeTracker,valuePVArray,changeTracker);
+                } else {
+                    convert.copyScalarArray(linkValuePVArray, 0, valuePVArray, 0,linkValuePVArray.getLength() );
+                }
                 break;
             case structure:
-                convert.copyStructure(linkValuePVStructure,valuePVStructure );
+                if(changeTracker!=null) {
+                    copyChanged(linkValuePVStructure,linkChangeTracker,valuePVStructure,changeTracker);
+                } else {
+                    convert.copyStructure(linkValuePVStructure,valuePVStructure );
+                }
                 break;
             }
             if(pvInheritSeverity.get() && pvAlarm.isAttached()) {
@@ -199,4 +230,15 @@ implements ProcessCallbackRequester, ProcessContinueRequester, RecordProcessRequ
             linkPVRecord.unlock();
         }
     }
+    // Read a scalar without locking the link record.
+    // Returns false if the link record is locked or keeps changing while it is read.
+    private boolean getDataOptimistic() {
+        optimisticInheritSeverity = pvInheritSeverity.get() && pvAlarm.isAttached();
+        if(OptimisticReadFactory.tryRead(linkPVRecord, optimisticRead)==0) return false;
+        convert.copyScalar(optimisticPVScalar, valuePVScalar);
+        if(optimisticInheritSeverity && alarm.getSeverity()!=AlarmSeverity.NONE) {
+            alarmSupport.setAlarm(alarm.getMessage(),alarm.getSeverity(),AlarmStatus.DB);
+        }
+        return true;
+    }
 }
@@ -7,6 +7,7 @@ package org.epics.pvioc.support.dbLink;
 
 import org.epics.pvdata.pv.MessageType;
 import org.epics.pvdata.pv.PVAuxInfo;
+import org.epics.pvdata.pv.PVField;
 import org.epics.pvdata.pv.PVScalar;
 import org.epics.pvdata.pv.PVString;
 import org.epics.pvdata.pv.ScalarType;
@@ -47,6 +48,22 @@ public class LinkFactory {
         pvRecordField.message("no support for " + supportName, MessageType.fatalError);
         return null;
     }
+    /**
+     * Get the name of the record that a database link refers to.
+     * The support must already have been created.
+     * @param pvRecordField A field of a record.
+     * @return The record name or null if the field does not have database link support.
+     */
+    public static String getLinkRecordName(PVRecordField pvRecordField) {
+        if(!(pvRecordField.getSupport() instanceof AbstractLink)) return null;
+        PVField pvField = pvRecordField.getPVField();
+        if(!(pvField instanceof PVString)) return null;
+        String name = ((PVString)pvField).get();
+        if(name==null) return null;
+        int ind = name.indexOf(".");
+        if(ind>=0) name = name.substring(0,ind);
+        return name;
+    }
     private static final String dbProcessLinkName = "org.epics.pvioc.dbProcessLink";
     private static final String dbInputLinkName = "org.epics.pvioc.dbInputLink";
     private static final String dbOutputLinkName = "org.epics.pvioc.dbOutputLink";
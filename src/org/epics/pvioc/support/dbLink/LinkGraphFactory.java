@@ -0,0 +1,342 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.support.dbLink;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.epics.pvdata.misc.RunnableReady;
+import org.epics.pvdata.misc.ThreadCreate;
+import org.epics.pvdata.misc.ThreadCreateFactory;
+import org.epics.pvdata.misc.ThreadPriority;
+import org.epics.pvdata.misc.ThreadReady;
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.Requester;
+import org.epics.pvdata.pv.Type;
+import org.epics.pvioc.database.PVRecord;
+import org.epics.pvioc.database.PVRecordField;
+import org.epics.pvioc.database.PVRecordStructure;
+import org.epics.pvioc.support.Support;
+import org.epics.pvioc.support.SupportState;
+import org.epics.pvioc.support.basic.GenericBase;
+
+/**
+ * The graph of records connected by database links.
+ * A link that processes its link record is a process edge; any other link is a data edge.
+ * When records are installed the graph is used to:
+ * <ul>
+ * <li>Report cycles of process edges.</li>
+ * <li>Find adjacent process links of a generic structure whose link records are independent,
+ * i.e. the records processed because of one link are not processed or accessed because of another link.
+ * The generic support starts such links without waiting for each other and then waits for all of them.
+ * This is only done if the property or environment variable IOCLinkGraphThreads is greater than 0.
+ * It is the number of threads that request processing of the link records. The default is 0,
+ * which keeps the links sequential.</li>
+ * </ul>
+ * @author mrk
+ *
+ */
+public class LinkGraphFactory {
+    /**
+     * Analyze the links of newly started records.
+     * Must be called after the support of all the records has been started.
+     * @param pvRecords The records.
+     * @param requester The requester for messages.
+     */
+    public static void schedule(PVRecord[] pvRecords,Requester requester) {
+        Graph graph = new Graph();
+        for(PVRecord pvRecord : pvRecords) graph.reportCycles(graph.getNode(pvRecord),requester);
+        if(numberThreads<=0) return;
+        findBranches(graph,pvRecords);
+    }
+
+    // Group the independent links of pvRecords even if IOCLinkGraphThreads is 0.
+    static void findBranches(PVRecord[] pvRecords) {
+        findBranches(new Graph(),pvRecords);
+    }
+
+    private static void findBranches(Graph graph,PVRecord[] pvRecords) {
+        for(PVRecord pvRecord : pvRecords) graph.findBranches(pvRecord.getPVRecordStructure());
+    }
+
+    static void execute(Runnable runnable) {
+        getPool().execute(runnable);
+    }
+
+    private static final ThreadCreate threadCreate = ThreadCreateFactory.getThreadCreate();
+    private static final int numberThreads;
+    private static Pool pool = null;
+
+    static {
+        int value = 0;
+        String envValue = System.getProperty("IOCLinkGraphThreads", System.getenv("IOCLinkGraphThreads"));
+        if(envValue!=null) value = Integer.parseInt(envValue);
+        numberThreads = value;
+    }
+
+    private static synchronized Pool getPool() {
+        if(pool==null) pool = new Pool((numberThreads>0) ? numberThreads : 1);
+        return pool;
+    }
+
+    // The threads that run the requests of the links and the queue of requests.
+    private static class Pool implements RunnableReady {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition waitForWork = lock.newCondition();
+        private final ArrayDeque<Runnable> queue = new ArrayDeque<Runnable>();
+
+        private Pool(int numberThreads) {
+            for(int i=0; i<numberThreads; i++) {
+                threadCreate.create("dbLinkBranch[" + String.valueOf(i) + "]", ThreadPriority.middle.getJavaPriority(), this);
+            }
+        }
+
+        private void execute(Runnable runnable) {
+            lock.lock();
+            try {
+                queue.add(runnable);
+                waitForWork.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.misc.RunnableReady#run(org.epics.pvdata.misc.ThreadReady)
+         */
+        public void run(ThreadReady threadReady) {
+            threadReady.ready();
+            try {
+                while(true) {
+                    Runnable runnable = null;
+                    lock.lock();
+                    try {
+                        while(queue.isEmpty()) waitForWork.await();
+                        runnable = queue.poll();
+                    } finally {
+                        lock.unlock();
+                    }
+                    try {
+                        runnable.run();
+                    } catch (RuntimeException e) {
+                        // keep the thread for the requests of the other links
+                        e.printStackTrace();
+                    }
+                }
+            } catch(InterruptedException e) {}
+        }
+    }
+
+    private static class Node {
+        private final PVRecord pvRecord;
+        private final ArrayList<Node> processNodes = new ArrayList<Node>();
+        private final ArrayList<Node> dataNodes = new ArrayList<Node>();
+        private boolean isDone = false;
+        private boolean isOnPath = false;
+
+        private Node(PVRecord pvRecord) {
+            this.pvRecord = pvRecord;
+        }
+    }
+
+    // A link record and everything that processing it can process or access.
+    private static class Branch {
+        private final int index;
+        private final AbstractLink link;
+        private final Set<Node> processed = new HashSet<Node>();
+        private final Set<Node> accessed = new HashSet<Node>();
+
+        private Branch(int index,AbstractLink link) {
+            this.index = index;
+            this.link = link;
+        }
+
+        private boolean isIndependent(Branch other) {
+            for(Node node : processed) {
+                if(other.processed.contains(node) || other.accessed.contains(node)) return false;
+            }
+            for(Node node : other.processed) {
+                if(accessed.contains(node)) return false;
+            }
+            return true;
+        }
+    }
+
+    private static class Graph {
+        private final Map<PVRecord,Node> nodeMap = new HashMap<PVRecord,Node>();
+
+        private Node getNode(PVRecord pvRecord) {
+            Node node = nodeMap.get(pvRecord);
+            if(node!=null) return node;
+            node = new Node(pvRecord);
+            nodeMap.put(pvRecord, node);
+            ArrayList<AbstractLink> links = new ArrayList<AbstractLink>();
+            getLinks(pvRecord.getPVRecordStructure(),links);
+            for(AbstractLink link : links) {
+                Node linkNode = getNode(link.linkPVRecord);
+                if(isProcessLink(link)) {
+                    node.processNodes.add(linkNode);
+                } else {
+                    node.dataNodes.add(linkNode);
+                }
+            }
+            return node;
+        }
+
+        // depth first search that does not recurse so that long chains do not overflow the stack
+        private void reportCycles(Node start,Requester requester) {
+            if(start.isDone) return;
+            ArrayList<Node> path = new ArrayList<Node>();
+            ArrayList<Integer> nextIndex = new ArrayList<Integer>();
+            path.add(start);
+            nextIndex.add(0);
+            start.isOnPath = true;
+            while(!path.isEmpty()) {
+                int last = path.size()-1;
+                Node node = path.get(last);
+                int index = nextIndex.get(last);
+                if(index>=node.processNodes.size()) {
+                    node.isOnPath = false;
+                    node.isDone = true;
+                    path.remove(last);
+                    nextIndex.remove(last);
+                    continue;
+                }
+                nextIndex.set(last, index+1);
+                Node next = node.processNodes.get(index);
+                if(next.isOnPath) {
+                    StringBuilder builder = new StringBuilder();
+                    builder.append("dbLink process cycle");
+                    for(int i=path.indexOf(next); i<path.size(); i++) {
+                        builder.append(" ");
+                        builder.append(path.get(i).pvRecord.getRecordName());
+                        builder.append(" ->");
+                    }
+                    builder.append(" ");
+                    builder.append(next.pvRecord.getRecordName());
+                    requester.message(builder.toString(), MessageType.warning);
+                    continue;
+                }
+                if(next.isDone) continue;
+                next.isOnPath = true;
+                path.add(next);
+                nextIndex.add(0);
+            }
+        }
+
+        private void findBranches(PVRecordStructure pvRecordStructure) {
+            Support support = pvRecordStructure.getSupport();
+            if(support instanceof GenericBase && support.getSupportState()==SupportState.ready) {
+                findBranches((GenericBase)support,pvRecordStructure.getPVRecord());
+            }
+            PVRecordField[] pvRecordFields = pvRecordStructure.getPVRecordFields();
+            for(PVRecordField pvRecordField : pvRecordFields) {
+                if(pvRecordField.getPVField().getField().getType()==Type.structure) {
+                    findBranches((PVRecordStructure)pvRecordField);
+                }
+            }
+        }
+
+        // Adjacent independent branches are put in a group.
+        // All but the last link of a group do not wait.
+        private void findBranches(GenericBase genericBase,PVRecord pvRecord) {
+            Support[] supports = genericBase.getSupports();
+            Node parent = getNode(pvRecord);
+            ArrayList<Branch> group = new ArrayList<Branch>();
+            for(int i=0; i<supports.length; i++) {
+                Branch branch = getBranch(i,supports[i],genericBase,parent);
+                if(branch!=null) {
+                    boolean isIndependent = true;
+                    for(Branch other : group) {
+                        if(!branch.isIndependent(other)) {
+                            isIndependent = false;
+                            break;
+                        }
+                    }
+                    if(isIndependent) {
+                        group.add(branch);
+                        continue;
+                    }
+                }
+                setGroup(genericBase,group);
+                group.clear();
+                if(branch!=null) group.add(branch);
+            }
+            setGroup(genericBase,group);
+        }
+
+        private void setGroup(GenericBase genericBase,ArrayList<Branch> group) {
+            if(group.size()<2) return;
+            for(int i=0; i<group.size(); i++) {
+                Branch branch = group.get(i);
+                genericBase.setWait(branch.index, i==group.size()-1);
+                branch.link.setParallel(true);
+            }
+        }
+
+        // A branch is a field whose only support, except alarm, is a ready link that processes its link record.
+        private Branch getBranch(int index,Support support,GenericBase genericBase,Node parent) {
+            if(support.getSupportState()!=SupportState.ready) return null;
+            AbstractLink link = null;
+            if(support instanceof AbstractLink) {
+                link = (AbstractLink)support;
+            } else if(support instanceof GenericBase) {
+                PVRecordField pvRecordField = support.getPVRecordField();
+                if(pvRecordField.getPVField().getField().getType()!=Type.structure) return null;
+                for(PVRecordField pvField : ((PVRecordStructure)pvRecordField).getPVRecordFields()) {
+                    Support fieldSupport = pvField.getSupport();
+                    if(fieldSupport==null) continue;
+                    if(pvField.getPVField().getFieldName().equals("alarm")) continue;
+                    if(link!=null || !(fieldSupport instanceof AbstractLink)) return null;
+                    link = (AbstractLink)fieldSupport;
+                }
+            }
+            if(link==null || link.getSupportState()!=SupportState.ready || !isProcessLink(link)) return null;
+            // a wait field in the database always wins
+            if(!genericBase.setWait(index, true)) return null;
+            Branch branch = new Branch(index,link);
+            ArrayList<Node> stack = new ArrayList<Node>();
+            stack.add(getNode(link.linkPVRecord));
+            while(!stack.isEmpty()) {
+                Node node = stack.remove(stack.size()-1);
+                if(!branch.processed.add(node)) continue;
+                branch.accessed.addAll(node.dataNodes);
+                stack.addAll(node.processNodes);
+            }
+            if(branch.processed.contains(parent) || branch.accessed.contains(parent)) return null;
+            return branch;
+        }
+    }
+
+    private static boolean isProcessLink(AbstractLink link) {
+        if(link instanceof ProcessLinkBase) return true;
+        if(link instanceof AbstractIOLink) {
+            AbstractIOLink ioLink = (AbstractIOLink)link;
+            return ioLink.pvProcess!=null && ioLink.pvProcess.get();
+        }
+        return false;
+    }
+
+    private static void getLinks(PVRecordStructure pvRecordStructure,ArrayList<AbstractLink> links) {
+        PVRecordField[] pvRecordFields = pvRecordStructure.getPVRecordFields();
+        for(PVRecordField pvRecordField : pvRecordFields) {
+            if(pvRecordField.getPVField().getField().getType()==Type.structure) {
+                getLinks((PVRecordStructure)pvRecordField,links);
+                continue;
+            }
+            Support support = pvRecordField.getSupport();
+            if(!(support instanceof AbstractLink)) continue;
+            AbstractLink link = (AbstractLink)support;
+            if(link.getSupportState()!=SupportState.ready || link.linkPVRecord==null) continue;
+            links.add(link);
+        }
+    }
+}
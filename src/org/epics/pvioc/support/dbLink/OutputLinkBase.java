@@ -57,6 +57,9 @@ implements ProcessCallbackRequester, ProcessContinueRequester, RecordProcessRequ
                         "can not process record", MessageType.error);
                 super.stop();
             }
+        } else {
+            // the data is put while this record is processed
+            addLinkedRecord();
         }
     }
     /* (non-Javadoc)
@@ -89,7 +92,7 @@ implements ProcessCallbackRequester, ProcessContinueRequester, RecordProcessRequ
      */
     @Override
     public void processCallback() {
-    	linkRecordProcess.queueProcessRequest(processToken);
+    	queueProcessRequest(processToken);
     }
     /* (non-Javadoc)
      * @see org.epics.pvioc.support.ProcessContinueRequester#processContinue()
@@ -156,10 +159,18 @@ implements ProcessCallbackRequester, ProcessContinueRequester, RecordProcessRequ
                 convert.copyScalar(valuePVScalar,linkValuePVScalar);
                 break;
             case scalarArray:
-                convert.copyScalarArray(valuePVArray, 0, linkValuePVArray, 0,valuePVArray.getLength() );
+                if(changeTracker!=null) {
+                    copyChanged(valuePVArray,changeTracker,linkValuePVArray,linkChangeTracker);
+                } else {
+                    convert.copyScalarArray(valuePVArray, 0, linkValuePVArray, 0,valuePVArray.getLength() );
+                }
                 break;
             case structure:
-                convert.copyStructure(valuePVStructure,linkValuePVStructure );
+                if(changeTracker!=null) {
+                    copyChanged(valuePVStructure,changeTracker,linkValuePVStructure,linkChangeTracker);
+                } else {
+                    convert.copyStructure(valuePVStructure,linkValuePVStructure );
+                }
                 break;
             }
         } finally {
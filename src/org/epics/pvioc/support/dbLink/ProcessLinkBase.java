@@ -79,7 +79,7 @@ implements ProcessCallbackRequester,ProcessContinueRequester,RecordProcessReques
      * @see org.epics.pvioc.support.ProcessCallbackRequester#processCallback()
      */
     public void processCallback() {
-    	linkRecordProcess.queueProcessRequest(processToken);
+    	queueProcessRequest(processToken);
     }
     /* (non-Javadoc)
      * @see org.epics.pvioc.support.ProcessContinueRequester#processContinue()
@@ -17,11 +17,13 @@ import org.epics.pvioc.database.PVDatabase;
 import org.epics.pvioc.database.PVDatabaseFactory;
 import org.epics.pvioc.database.PVRecord;
 import org.epics.pvioc.database.PVRecordStructure;
+import org.epics.pvioc.database.RecordNameMatch;
 import org.epics.pvioc.support.AbstractSupport;
 import org.epics.pvioc.support.RecordProcess;
 import org.epics.pvioc.support.Support;
 import org.epics.pvioc.support.SupportProcessRequester;
 import org.epics.pvioc.support.SupportState;
+import org.epics.pvioc.support.caLink.MonitorLinkDispatcher;
 import org.epics.pvioc.util.EventScanner;
 import org.epics.pvioc.util.PeriodicScanner;
 import org.epics.pvioc.util.RequestResult;
@@ -46,12 +48,14 @@ public class IocShowFactory {
     private static final PVDatabase masterPVDatabase = PVDatabaseFactory.getMaster();
     private static final String newLine = String.format("%n");
     private static final Runtime runTime = Runtime.getRuntime();
+    private static final int pageSize = 1000;
     
     private static class IocShowImpl extends AbstractSupport
     {
     	private final PVRecordStructure pvRecordStructure;
         private PVEnumerated command = PVEnumeratedFactory.create();
         private PVString pvResult = null;
+        private PVString pvRecordName = null;
         private StringBuilder stringBuilder = new StringBuilder();
         private StringBuilder subStringBuilder = new StringBuilder();
         
@@ -73,6 +77,10 @@ public class IocShowFactory {
             }
             pvResult = pvStructure.getStringField("result.value");
             if(pvResult==null) return;
+            // argument.recordName is optional
+            if(pvStructure.getSubField("argument.recordName")!=null) {
+                pvRecordName = pvStructure.getStringField("argument.recordName");
+            }
             super.initialize();
         }
         /* (non-Javadoc)
@@ -96,41 +104,53 @@ public class IocShowFactory {
         
         private void showBadRecords() {
             stringBuilder.setLength(0);
-            PVRecord[] pvRecords = masterPVDatabase.getRecords();
-            for(PVRecord pvRecord : pvRecords) {
-                subStringBuilder.setLength(0);
-                RecordProcess recordProcess = pvRecordStructure.getPVRecord().getRecordProcess();
-                boolean isActive = recordProcess.isActive();
-                boolean isEnabled = recordProcess.isEnabled();
-                SupportState supportState = recordProcess.getSupportState();
-                int alarmSeverity = 0;
-                PVField pvField = pvRecord.getPVRecordStructure().getPVStructure().getSubField("alarm.severity");
-                if(pvField!=null) {
-                    PVInt pvint = pvRecord.getPVRecordStructure().getPVStructure().getIntField("alarm.severity");
-                    if(pvint!=null) alarmSeverity = pvint.get(); 
-                }
-                String alarmMessage = "";
-                pvField = pvRecord.getPVRecordStructure().getPVStructure().getSubField("alarm.message");
-                if(pvField!=null) {
-                    PVString pvString = pvRecord.getPVRecordStructure().getPVStructure().getStringField("alarm.message");
-                    if(pvString!=null) alarmMessage = pvString.get();
-                }
-                if(isActive) subStringBuilder.append(" isActive");
-                if(!isEnabled) subStringBuilder.append(" disabled");
-                if(supportState!=SupportState.ready) subStringBuilder.append(" supportState " + supportState.name());
-                if(alarmSeverity>0) subStringBuilder.append(" alarmSeverity " + alarmSeverity);
-                if(alarmMessage!=null && alarmMessage.length()>0) {
-                    subStringBuilder.append(" alarmMessage " + alarmMessage);
-                }
-                if(subStringBuilder.length()>2) {
-                    stringBuilder.append(pvRecord.getRecordName());
-                    stringBuilder.append(subStringBuilder.toString());
-                    stringBuilder.append(newLine);
+            String pattern = (pvRecordName==null) ? null : pvRecordName.get();
+            if(pattern!=null && pattern.length()==0) pattern = null;
+            String cursor = null;
+            while(true) {
+                String[] names = masterPVDatabase.findRecordNames(pattern, RecordNameMatch.glob, cursor, pageSize);
+                for(String name : names) {
+                    PVRecord pvRecord = masterPVDatabase.findRecord(name);
+                    if(pvRecord!=null) showBadRecord(pvRecord);
                 }
+                if(names.length<pageSize) break;
+                cursor = names[names.length-1];
             }
             pvResult.put(stringBuilder.toString());
         }
         
+        private void showBadRecord(PVRecord pvRecord) {
+            subStringBuilder.setLength(0);
+            RecordProcess recordProcess = pvRecord.getRecordProcess();
+            boolean isActive = recordProcess.isActive();
+            boolean isEnabled = recordProcess.isEnabled();
+            SupportState supportState = recordProcess.getSupportState();
+            int alarmSeverity = 0;
+            PVField pvField = pvRecord.getPVRecordStructure().getPVStructure().getSubField("alarm.severity");
+            if(pvField!=null) {
+                PVInt pvint = pvRecord.getPVRecordStructure().getPVStructure().getIntField("alarm.severity");
+                if(pvint!=null) alarmSeverity = pvint.get(); 
+            }
+            String alarmMessage = "";
+            pvField = pvRecord.getPVRecordStructure().getPVStructure().getSubField("alarm.message");
+            if(pvField!=null) {
+                PVString pvString = pvRecord.getPVRecordStructure().getPVStructure().getStringField("alarm.message");
+                if(pvString!=null) alarmMessage = pvString.get();
+            }
+            if(isActive) subStringBuilder.append(" isActive");
+            if(!isEnabled) subStringBuilder.append(" disabled");
+            if(supportState!=SupportState.ready) subStringBuilder.append(" supportState " + supportState.name());
+            if(alarmSeverity>0) subStringBuilder.append(" alarmSeverity " + alarmSeverity);
+            if(alarmMessage!=null && alarmMessage.length()>0) {
+                subStringBuilder.append(" alarmMessage " + alarmMessage);
+            }
+            if(subStringBuilder.length()>2) {
+                stringBuilder.append(pvRecord.getRecordName());
+                stringBuilder.append(subStringBuilder.toString());
+                stringBuilder.append(newLine);
+            }
+        }
+        
         private void showThreads() {
             stringBuilder.setLength(0);
             Thread[] threads = ThreadCreateFactory.getThreadCreate().getThreads();
@@ -143,6 +163,7 @@ public class IocShowFactory {
             EventScanner eventScanner = ScannerFactory.getEventScanner();
             stringBuilder.append(periodicScanner.toString());
             stringBuilder.append(eventScanner.toString());
+            stringBuilder.append(MonitorLinkDispatcher.show());
             pvResult.put(stringBuilder.toString());
         }
         
@@ -0,0 +1,121 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.support.rpc;
+
+import org.epics.pvdata.property.PVEnumerated;
+import org.epics.pvdata.property.PVEnumeratedFactory;
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.PVString;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvioc.database.PVDatabase;
+import org.epics.pvioc.database.PVDatabaseFactory;
+import org.epics.pvioc.database.PVRecord;
+import org.epics.pvioc.database.PVRecordStructure;
+import org.epics.pvioc.database.RecordNameMatch;
+import org.epics.pvioc.support.AbstractSupport;
+import org.epics.pvioc.support.ProcessProfiler;
+import org.epics.pvioc.support.Support;
+import org.epics.pvioc.support.SupportProcessRequester;
+import org.epics.pvioc.util.RequestResult;
+
+/**
+ * Support for remotely controlling the process profiler and getting the times it recorded.
+ * @author mrk
+ *
+ */
+public class ProcessProfileFactory {
+    /**
+     * Create support for a processProfile structure.
+     * @param pvRecordStructure The structure.
+     * @return An interface to the support.
+     */
+    public static Support create(PVRecordStructure pvRecordStructure) {
+        return new ProcessProfileImpl(pvRecordStructure);
+    }
+
+    private static final String supportName = "org.epics.pvioc.rpc.processProfile";
+    private static final PVDatabase masterPVDatabase = PVDatabaseFactory.getMaster();
+    private static final String newLine = String.format("%n");
+    private static final int pageSize = 1000;
+
+    private static class ProcessProfileImpl extends AbstractSupport
+    {
+        private final PVRecordStructure pvRecordStructure;
+        private PVEnumerated command = PVEnumeratedFactory.create();
+        private PVString pvResult = null;
+        private PVString pvRecordName = null;
+        private StringBuilder stringBuilder = new StringBuilder();
+
+        private ProcessProfileImpl(PVRecordStructure pvRecordStructure) {
+            super(ProcessProfileFactory.supportName,pvRecordStructure);
+            this.pvRecordStructure = pvRecordStructure;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.support.AbstractSupport#initialize()
+         */
+        @Override
+        public void initialize() {
+            PVStructure pvStructure = pvRecordStructure.getPVStructure();
+            PVStructure pvTemp = pvStructure.getStructureField("argument.command");
+            if(pvTemp==null) return;
+            if(!command.attach(pvTemp)) {
+                super.message("argument.command is not enumerated", MessageType.error);
+                return;
+            }
+            pvResult = pvStructure.getStringField("result.value");
+            if(pvResult==null) return;
+            // argument.recordName is optional
+            if(pvStructure.getSubField("argument.recordName")!=null) {
+                pvRecordName = pvStructure.getStringField("argument.recordName");
+            }
+            super.initialize();
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.support.AbstractSupport#process(org.epics.pvioc.support.SupportProcessRequester)
+         */
+        @Override
+        public void process(SupportProcessRequester supportProcessRequester) {
+            String cmd = command.getChoice();
+            if(cmd.equals("enable")) {
+                ProcessProfiler.setEnabled(true);
+            } else if(cmd.equals("disable")) {
+                ProcessProfiler.setEnabled(false);
+            } else if(cmd.equals("reset")) {
+                ProcessProfiler.reset();
+            }
+            stringBuilder.setLength(0);
+            stringBuilder.append("profiler ");
+            stringBuilder.append(ProcessProfiler.isEnabled() ? "enabled" : "disabled");
+            stringBuilder.append(newLine);
+            if(cmd.equals("showProfile")) showProfile();
+            pvResult.put(stringBuilder.toString());
+            supportProcessRequester.supportProcessDone(RequestResult.success);
+        }
+
+        private void showProfile() {
+            String pattern = (pvRecordName==null) ? null : pvRecordName.get();
+            if(pattern!=null && pattern.length()==0) pattern = null;
+            String cursor = null;
+            while(true) {
+                String[] names = masterPVDatabase.findRecordNames(pattern, RecordNameMatch.glob, cursor, pageSize);
+                for(String name : names) {
+                    PVRecord pvRecord = masterPVDatabase.findRecord(name);
+                    if(pvRecord==null) continue;
+                    ProcessProfiler.RecordProfile recordProfile = ProcessProfiler.getRecordProfile(pvRecord, false);
+                    if(recordProfile==null) continue;
+                    String show = recordProfile.show();
+                    if(show.length()==0) continue;
+                    stringBuilder.append(name);
+                    stringBuilder.append(" microseconds");
+                    stringBuilder.append(newLine);
+                    stringBuilder.append(show);
+                }
+                if(names.length<pageSize) break;
+                cursor = names[names.length-1];
+            }
+        }
+    }
+}
@@ -30,6 +30,7 @@ import org.epics.pvioc.database.PVDatabase;
 import org.epics.pvioc.database.PVDatabaseFactory;
 import org.epics.pvioc.database.PVRecord;
 import org.epics.pvioc.database.PVRecordStructure;
+import org.epics.pvioc.database.RecordNameMatch;
 import org.epics.pvioc.support.AbstractSupport;
 import org.epics.pvioc.support.ProcessContinueRequester;
 import org.epics.pvioc.support.ProcessToken;
@@ -58,6 +59,7 @@ public class RecordShowFactory {
     private static final String supportName = "org.epics.pvioc.rpc.recordShow";
     private static final PVDatabase masterPVDatabase = PVDatabaseFactory.getMaster();
     private static final String newLine = String.format("%n");
+    private static final int pageSize = 1000;
     private static final Executor executor = ExecutorFactory.create("recordShowFactory",ThreadPriority.low);
     
     private static class RecordShowImpl extends AbstractSupport implements Runnable,ProcessContinueRequester
@@ -110,8 +112,12 @@ public class RecordShowFactory {
          */
         @Override
         public void run() {
-            pvRecord = masterPVDatabase.findRecord(pvRecordName.get());
-            if(pvRecord==null) {
+            String recordName = pvRecordName.get();
+            pvRecord = masterPVDatabase.findRecord(recordName);
+            if(pvRecord==null && command.getChoice().equals("showState")
+            && (recordName.indexOf('*')>=0 || recordName.indexOf('?')>=0)) {
+                showStates(recordName);
+            } else if(pvRecord==null) {
                 pvResult.put("record not found");
             } else {
                 recordProcess = pvRecord.getRecordProcess();
@@ -151,6 +157,30 @@ public class RecordShowFactory {
             supportProcessRequester.supportProcessDone(RequestResult.success);
         }
         private void showState() {
+            stringBuilder.setLength(0);
+            appendState();
+            pvResult.put(stringBuilder.toString());
+        }
+        // recordName is a glob pattern
+        private void showStates(String pattern) {
+            stringBuilder.setLength(0);
+            String cursor = null;
+            while(true) {
+                String[] names = masterPVDatabase.findRecordNames(pattern, RecordNameMatch.glob, cursor, pageSize);
+                for(String name : names) {
+                    pvRecord = masterPVDatabase.findRecord(name);
+                    if(pvRecord==null) continue;
+                    recordProcess = pvRecord.getRecordProcess();
+                    if(recordProcess==null) continue;
+                    appendState();
+                }
+                if(names.length<pageSize) break;
+                cursor = names[names.length-1];
+            }
+            if(stringBuilder.length()==0) stringBuilder.append("record not found");
+            pvResult.put(stringBuilder.toString());
+        }
+        private void appendState() {
             boolean singleProcessRequester = false;
             PVField pvField = pvRecord.getPVRecordStructure().getPVStructure().getSubField("scan.singleProcessRequester");
             if(pvField!=null && pvField.getField().getType()==Type.scalar) {
@@ -168,7 +198,6 @@ public class RecordShowFactory {
             String alarmMessage = null;
             pvField = pvRecord.getPVRecordStructure().getPVStructure().getSubField("alarm.message");
             if(pvField!=null) alarmMessage = pvField.toString();
-            stringBuilder.setLength(0);
             stringBuilder.append(pvRecord.getRecordName());
             stringBuilder.append(newLine);
             stringBuilder.append("  singleProcessRequester ");
@@ -190,7 +219,6 @@ public class RecordShowFactory {
             stringBuilder.append(" alarmMessage ");
             stringBuilder.append(alarmMessage);
             stringBuilder.append(newLine);
-            pvResult.put(stringBuilder.toString());
         }
         
         private void timeProcess() {
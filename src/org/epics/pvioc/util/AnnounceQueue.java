@@ -0,0 +1,128 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.util;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The announcements of an event that have not yet been scanned.
+ * The sequence, time, and nanoTime of each announce are kept in a bounded ring.
+ * An announce made while the ring is full is not kept and is counted as an overrun.
+ * Any thread can call add but only one thread at a time can call remove.
+ * @author mrk
+ *
+ */
+class AnnounceQueue {
+    /**
+     * The announcements removed by a call to remove.
+     */
+    static class Entry {
+        /**
+         * The sequence of the newest announce.
+         */
+        long sequence = 0;
+        /**
+         * The time, in milliseconds, of the newest announce.
+         */
+        long time = 0;
+        /**
+         * The System.nanoTime of the oldest announce.
+         */
+        long nanos = 0;
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long[] sequences;
+    private final long[] times;
+    private final long[] nanos;
+    // index of the oldest announce
+    private int head = 0;
+    private int size = 0;
+    private long numberOverruns = 0;
+
+    /**
+     * Constructor.
+     * @param capacity The maximum number of pending announcements.
+     */
+    AnnounceQueue(int capacity) {
+        if(capacity<1) capacity = 1;
+        sequences = new long[capacity];
+        times = new long[capacity];
+        nanos = new long[capacity];
+    }
+    /**
+     * Add an announce.
+     * @param sequence The sequence number of the announce.
+     * @param time The time in milliseconds.
+     * @param nanoTime The System.nanoTime of the announce.
+     * @return (false,true) if the announce (was an overrun, was added).
+     */
+    boolean add(long sequence,long time,long nanoTime) {
+        lock.lock();
+        try {
+            int capacity = sequences.length;
+            if(size==capacity) {
+                numberOverruns++;
+                return false;
+            }
+            int index = (head + size)%capacity;
+            sequences[index] = sequence;
+            times[index] = time;
+            nanos[index] = nanoTime;
+            size++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    /**
+     * Remove pending announcements.
+     * @param all (false,true) means remove (the oldest, all) pending announcements.
+     * @param entry Set to the sequence and time of the newest removed announce and the nanoTime of the oldest.
+     * @return The number of announcements removed.
+     */
+    int remove(boolean all,Entry entry) {
+        lock.lock();
+        try {
+            if(size==0) return 0;
+            int capacity = sequences.length;
+            int number = all ? size : 1;
+            int newest = (head + number - 1)%capacity;
+            entry.sequence = sequences[newest];
+            entry.time = times[newest];
+            entry.nanos = nanos[head];
+            head = (head + number)%capacity;
+            size -= number;
+            return number;
+        } finally {
+            lock.unlock();
+        }
+    }
+    /**
+     * Get the number of pending announcements.
+     * @return The number.
+     */
+    int getNumberPending() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+    /**
+     * Get the number of announcements that were not added because the queue was full.
+     * @return The number.
+     */
+    long getNumberOverruns() {
+        lock.lock();
+        try {
+            return numberOverruns;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -15,6 +15,11 @@ public interface EventAnnounce {
     /**
      * Announce an event.
      * All records that are event scanned for the event name are scheduled for execution.
+     * Every call is counted and is never lost. If IOCEventScanCoalesce is true, the default,
+     * calls made while the records are waiting to be scanned result in a single scan.
+     * At most IOCEventScanQueueSize, default 64, calls are pending for each list of records.
+     * A call made while the list is full is counted as an overrun.
+     * This does not block.
      */
     void announce();
 }
@@ -12,7 +12,10 @@ import org.epics.pvioc.database.PVRecord;
  * Periodic Scanner.
  * This is implemented by ScannerFactory.
  * It is the interface for records that are periodically scanned.
- * New periodic threads are created dynamically as needed.
+ * Each unique rate,priority pair has a list of records.
+ * All lists with the same priority are scanned by a bounded pool of threads with that priority.
+ * Threads are created dynamically as needed up to the limit.
+ * Each list is scheduled against absolute deadlines so that scan periods do not drift.
  * A record can be periodically scanned and can also have a scheduling priority.
  * A scan rate is specified by a double value with units of seconds, e.g. .05
  * says to process every .05 seconds.
@@ -20,6 +23,11 @@ import org.epics.pvioc.database.PVRecord;
  * The defaults are minPeriod = .01 seconds and deltaPeriod = .01 seconds.
  * These can be overridden by environment variables IOCPeriodicScanPeriodMinimum
  * and IOCPeriodicScanPeriodDelta.
+ * The maximum number of threads for each priority defaults to the number of available processors.
+ * This can be overridden by environment variable IOCPeriodicScanThreads.
+ * Large lists can be split into shards that are executed concurrently.
+ * This is off by default. It can be enabled by calling setNumberShards or by
+ * environment variable IOCPeriodicScanShards, which has the form rate:shards,rate:shards,...
  * The priority values are defined by ThreadPriority.
  * @author mrk
  *
@@ -43,8 +51,20 @@ public interface PeriodicScanner {
      * @return false if the request failed or true if it was successful.
      */
     boolean removeRecord(PVRecord pvRecord,double rate,ThreadPriority threadPriority);
+    /**
+     * Set the number of shards for all lists with the specified rate.
+     * Each scan of a list splits the list into numberShards shards that are executed concurrently
+     * by the scanning thread and a pool of threads with the same priority.
+     * The scan is complete only when all shards are done.
+     * @param rate The scan rate.
+     * @param numberShards The number of shards. A value less than 2 means the list is scanned serially.
+     */
+    void setNumberShards(double rate,int numberShards);
     /**
      * Show a list of all records being periodically scanned.
+     * For each list the number of scans, the number of overruns,
+     * i.e. deadlines missed because a scan took too long,
+     * and the jitter between the deadline and the actual start of each scan are also shown.
      * @return The list.
      */
     String toString();
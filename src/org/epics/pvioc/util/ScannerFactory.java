@@ -5,9 +5,14 @@
  */
 package org.epics.pvioc.util;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.ListIterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -221,9 +226,7 @@ public class ScannerFactory {
                 lock.unlock();
             }
             timeStamp.put(startTime);
-            for(ProcessRecord processRecord : processRecords) {
-                if(processRecord!=null) processRecord.execute(timeStamp);
-            }
+            executeList(processRecords,timeStamp);
             lock.lock();
             try {
                 isActive = false;
@@ -235,6 +238,13 @@ public class ScannerFactory {
             }
         }
 
+        // called by runList with isActive true. Must not return until every record has been executed.
+        void executeList(ProcessRecord[] processRecords,TimeStamp timeStamp) {
+            for(ProcessRecord processRecord : processRecords) {
+                if(processRecord!=null) processRecord.execute(timeStamp);
+            }
+        }
+
         boolean remove(PVRecord pvRecord) {
             lock.lock();
             try {
@@ -304,17 +314,156 @@ public class ScannerFactory {
         }
     }
 
-    private static class ProcessPeriodic extends ProcessRecordList implements RunnableReady {
-        private long period;
-        private Thread thread;
+    private static class ProcessPeriodic extends ProcessRecordList implements ShardPool.Task {
+        private final long period;
+        private final long periodNanos;
+        private final int priority;
+        private final PeriodNode periodNode;
+        private final PeriodicPool periodicPool;
+        // the following are guarded by periodicPool.lock
+        private long deadline = 0;
+        private long numberScans = 0;
+        private long numberOverruns = 0;
+        private long lastJitter = 0;
+        private long maxJitter = 0;
+        private long totalJitter = 0;
+        private long maxExecute = 0;
+        // the following are only used while this list is being scanned
+        private final ShardPool.Job shardJob = new ShardPool.Job(this);
+        private ProcessRecord[] shardRecords = null;
+        private TimeStamp shardTimeStamp = null;
+        private int shardLength = 0;
 
-        private ProcessPeriodic(String name,long period, int priority) {
+        private ProcessPeriodic(String name,PeriodNode periodNode, int priority,PeriodicPool periodicPool) {
             super(name);
-            this.period = period;
-            thread = threadCreate.create(name, priority, this);
-            
+            this.period = periodNode.period;
+            this.periodNanos = period*1000000L;
+            this.priority = priority;
+            this.periodNode = periodNode;
+            this.periodicPool = periodicPool;
+            periodicPool.schedule(this);
+        }
+        
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.util.ScannerFactory.ProcessRecordList#executeList(org.epics.pvioc.util.ScannerFactory.ProcessRecord[], org.epics.pvdata.property.TimeStamp)
+         */
+        @Override
+        void executeList(ProcessRecord[] processRecords,TimeStamp timeStamp) {
+            int numberShards = periodNode.numberShards;
+            if(numberShards<2 || processRecords.length<2) {
+                super.executeList(processRecords, timeStamp);
+                return;
+            }
+            if(numberShards>processRecords.length) numberShards = processRecords.length;
+            shardRecords = processRecords;
+            shardTimeStamp = timeStamp;
+            shardLength = (processRecords.length + numberShards - 1)/numberShards;
+            numberShards = (processRecords.length + shardLength - 1)/shardLength;
+            try {
+                // each record is in exactly one shard and invoke does not return until every shard is done,
+                // so a record is never executed concurrently with itself.
+                periodicPool.getShardPool().invoke(shardJob,numberShards);
+            } finally {
+                shardRecords = null;
+                shardTimeStamp = null;
+            }
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.util.ShardPool.Task#execute(int)
+         */
+        public void execute(int shard) {
+            ProcessRecord[] processRecords = shardRecords;
+            int to = Math.min((shard+1)*shardLength, processRecords.length);
+            for(int i=shard*shardLength; i<to; i++) {
+                ProcessRecord processRecord = processRecords[i];
+                if(processRecord!=null) processRecord.execute(shardTimeStamp);
+            }
+        }
+        
+        // called by a PeriodicPool thread. Not called with periodicPool.lock held.
+        private void scan() {
+            super.runList(System.currentTimeMillis());
+        }
+        // called with periodicPool.lock held after scan completes.
+        // The next deadline is computed from the previous deadline, not from the
+        // completion time, so that periods do not accumulate drift.
+        private void scanDone(long startTime,long endTime) {
+            long jitter = startTime - deadline;
+            long execute = endTime - startTime;
+            numberScans++;
+            lastJitter = jitter;
+            totalJitter += jitter;
+            if(jitter>maxJitter) maxJitter = jitter;
+            if(execute>maxExecute) maxExecute = execute;
+            deadline += periodNanos;
+            long late = endTime - deadline;
+            if(late>=0) {
+                long missed = late/periodNanos + 1;
+                numberOverruns += missed;
+                deadline += missed*periodNanos;
+            }
+        }
+        private long getPeriod() {
+            return period;
+        }
+        private int getPriority() {
+            return priority;
+        }
+        private String getName() {
+            return super.name;
+        }
+    }
+    
+    private static final Comparator<ProcessPeriodic> deadlineComparator = new Comparator<ProcessPeriodic>() {
+        public int compare(ProcessPeriodic a, ProcessPeriodic b) {
+            long diff = a.deadline - b.deadline;
+            if(diff<0) return -1;
+            if(diff>0) return 1;
+            return 0;
+        }
+    };
+    
+    /*
+     * A bounded set of threads, all with the same priority, that scan every
+     * ProcessPeriodic with that priority. Lists are kept in a queue ordered by
+     * the absolute System.nanoTime() deadline of their next scan.
+     * A thread takes the list at the head of the queue when its deadline is reached,
+     * scans it, and puts it back with the next deadline.
+     */
+    private static class PeriodicPool implements RunnableReady {
+        private final String name;
+        private final int priority;
+        private final int maxThreads;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition waitForWork = lock.newCondition();
+        private final PriorityQueue<ProcessPeriodic> queue =
+            new PriorityQueue<ProcessPeriodic>(11,deadlineComparator);
+        private final ArrayList<Thread> threadList = new ArrayList<Thread>();
+        private int numberLists = 0;
+        private ShardPool shardPool = null;
+        
+        private PeriodicPool(int priority,int maxThreads) {
+            this.name = "periodic(" + String.valueOf(priority) + ")";
+            this.priority = priority;
+            this.maxThreads = maxThreads;
+        }
+        
+        private void schedule(ProcessPeriodic processPeriodic) {
+            lock.lock();
+            try {
+                processPeriodic.deadline = System.nanoTime();
+                queue.add(processPeriodic);
+                numberLists++;
+                int numberThreads = threadList.size();
+                if(numberThreads<maxThreads && numberThreads<numberLists) {
+                    String threadName = name + "[" + String.valueOf(numberThreads) + "]";
+                    threadList.add(threadCreate.create(threadName, priority, this));
+                }
+                waitForWork.signal();
+            } finally {
+                lock.unlock();
+            }
         }
-
         /* (non-Javadoc)
          * @see org.epics.pvioc.util.RunnableReady#run(org.epics.pvioc.util.ThreadReady)
          */
@@ -322,49 +471,96 @@ public class ScannerFactory {
             threadReady.ready();
             try {
                 while(true) {
-                    long startTime = System.currentTimeMillis();
-                    super.runList(startTime);
-                    long endTime = System.currentTimeMillis();
-                    long delay = period - (endTime - startTime);
-                    if(delay<1) delay = 1;
-                    Thread.sleep(delay);
+                    ProcessPeriodic processPeriodic = null;
+                    lock.lock();
+                    try {
+                        while(true) {
+                            processPeriodic = queue.peek();
+                            if(processPeriodic==null) {
+                                waitForWork.await();
+                                continue;
+                            }
+                            long delay = processPeriodic.deadline - System.nanoTime();
+                            if(delay<=0) break;
+                            waitForWork.awaitNanos(delay);
+                        }
+                        queue.poll();
+                        // let another thread wait for the new head of the queue
+                        if(!queue.isEmpty()) waitForWork.signal();
+                    } finally {
+                        lock.unlock();
+                    }
+                    long startTime = System.nanoTime();
+                    processPeriodic.scan();
+                    long endTime = System.nanoTime();
+                    lock.lock();
+                    try {
+                        processPeriodic.scanDone(startTime, endTime);
+                        queue.add(processPeriodic);
+                        waitForWork.signal();
+                    } finally {
+                        lock.unlock();
+                    }
                 }
             } catch(InterruptedException e) {}
         }
-        private long getPeriod() {
-            return period;
+        
+        private String getName() {
+            return name;
         }
-        private Thread getThread() {
-            return thread;
+        
+        // The pool used for lists that are split into shards.
+        // It is only created if a list with this priority is split.
+        // The thread that scans the list executes shards too, so one less thread than processors is created.
+        private ShardPool getShardPool() {
+            lock.lock();
+            try {
+                if(shardPool==null) {
+                    int numberThreads = Runtime.getRuntime().availableProcessors() - 1;
+                    if(numberThreads<1) numberThreads = 1;
+                    shardPool = new ShardPool(name + "shard",priority,numberThreads);
+                }
+                return shardPool;
+            } finally {
+                lock.unlock();
+            }
         }
-        private String getName() {
-            return super.name;
+        
+        private int getNumberThreads() {
+            lock.lock();
+            try {
+                return threadList.size();
+            } finally {
+                lock.unlock();
+            }
         }
     }
 
     private static class PeriodNode {
         private long period;
+        // number of shards each list is split into. Less than 2 means the list is scanned serially.
+        private volatile int numberShards = 0;
         private LinkedList<ProcessPeriodic> priorityList = new LinkedList<ProcessPeriodic>();
         
         PeriodNode(long period) {
             this.period = period;
         }
         
-        ProcessPeriodic getProcessPeriodioc(int priority,boolean addNew,String name) {
+        ProcessPeriodic getProcessPeriodioc(int priority,boolean addNew,String name,PeriodicPool periodicPool) {
             ListIterator<ProcessPeriodic> iter = priorityList.listIterator();
             while(iter.hasNext()) {
                 ProcessPeriodic next = iter.next();
-                int threadPriority = next.getThread().getPriority();
-                if(priority>threadPriority) continue;
-                if(priority==threadPriority) return next;
+                int listPriority = next.getPriority();
+                if(priority>listPriority) continue;
+                if(priority==listPriority) return next;
                 if(!addNew) return null;
-                next = new ProcessPeriodic(name,period,priority);
+                next = new ProcessPeriodic(name,this,priority,periodicPool);
                 iter.previous();
                 iter.add(next);
                 return next;
             }
             if(!addNew) return null;
-            ProcessPeriodic processPeriodioc = new ProcessPeriodic(name,period,priority);
+            ProcessPeriodic processPeriodioc = new ProcessPeriodic(name,this,priority,periodicPool);
             priorityList.add(processPeriodioc);
             return processPeriodioc;
         }
@@ -375,6 +571,9 @@ public class ScannerFactory {
         private ReentrantLock lock = new ReentrantLock();
         private long minPeriod = 10;
         private int deltaPeriod = 10;
+        private int maxThreads = Runtime.getRuntime().availableProcessors();
+        // indexed by java priority
+        private PeriodicPool[] periodicPools = new PeriodicPool[Thread.MAX_PRIORITY + 1];
                 
         private PeriodicScannerImpl() {
             String envValue = System.getProperty("IOCPeriodicScanPeriodMinimum", System.getenv("IOCPeriodicScanPeriodMinimum"));
@@ -387,6 +586,22 @@ public class ScannerFactory {
                 double value = Double.parseDouble(envValue);
                 deltaPeriod = (int)(value*1000.0);
             }
+            envValue = System.getProperty("IOCPeriodicScanThreads", System.getenv("IOCPeriodicScanThreads"));
+            if(envValue!=null) {
+                maxThreads = Integer.parseInt(envValue);
+            }
+            if(maxThreads<1) maxThreads = 1;
+            envValue = System.getProperty("IOCPeriodicScanShards", System.getenv("IOCPeriodicScanShards"));
+            if(envValue!=null) {
+                String[] items = envValue.split(",");
+                for(String item : items) {
+                    String[] rateShards = item.trim().split(":");
+                    if(rateShards.length!=2) {
+                        throw new IllegalArgumentException("IOCPeriodicScanShards must be rate:shards,...");
+                    }
+                    setNumberShards(Double.parseDouble(rateShards[0]),Integer.parseInt(rateShards[1]));
+                }
+            }
         }
         
         
@@ -417,7 +632,7 @@ public class ScannerFactory {
             lock.lock();
             try {
                 PeriodNode periodNode = getPeriodNode(period,true);
-                processPeriodic = periodNode.getProcessPeriodioc(priority, true, name);
+                processPeriodic = periodNode.getProcessPeriodioc(priority, true, name, getPeriodicPool(priority));
             } finally {
                 lock.unlock();
             }
@@ -439,7 +654,7 @@ public class ScannerFactory {
             try {
                 PeriodNode periodNode = getPeriodNode(period,false);
                 if(periodNode!=null) {
-                    processPeriodic = periodNode.getProcessPeriodioc(priority, false, null);
+                    processPeriodic = periodNode.getProcessPeriodioc(priority, false, null, null);
                 }
             } finally {
                 lock.unlock();
@@ -453,6 +668,19 @@ public class ScannerFactory {
             processPeriodic.remove(pvRecord);
             return true;
         }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.util.PeriodicScanner#setNumberShards(double, int)
+         */
+        public void setNumberShards(double rate, int numberShards) {
+            long period = rateToPeriod(rate);
+            lock.lock();
+            try {
+                PeriodNode periodNode = getPeriodNode(period,true);
+                periodNode.numberShards = numberShards;
+            } finally {
+                lock.unlock();
+            }
+        }
         /* (non-Javadoc)
          * @see java.lang.Object#toString()
          */
@@ -486,7 +714,7 @@ public class ScannerFactory {
                 ProcessPeriodic processPeriodic = null;
                 PeriodNode periodNode = getPeriodNode(period,false);
                 if(periodNode!=null) {
-                    processPeriodic = periodNode.getProcessPeriodioc(priority, false, null);
+                    processPeriodic = periodNode.getProcessPeriodioc(priority, false, null, null);
                 }
                 if(processPeriodic!=null) {
                     builder.append(showProcessPeriodic(processPeriodic) + lineBreak);
@@ -528,7 +756,7 @@ public class ScannerFactory {
                 ListIterator<PeriodNode> iter = periodList.listIterator();
                 while(iter.hasNext()) {
                     PeriodNode periodNode = iter.next();
-                    ProcessPeriodic processPeriodic = periodNode.getProcessPeriodioc(priority, false, null);
+                    ProcessPeriodic processPeriodic = periodNode.getProcessPeriodioc(priority, false, null, null);
                     if(processPeriodic!=null) {
                         builder.append(showProcessPeriodic(processPeriodic) + lineBreak);
                     }
@@ -557,6 +785,16 @@ public class ScannerFactory {
             return periodNode;
         }
         
+        // must be called with lock held
+        private PeriodicPool getPeriodicPool(int priority) {
+            PeriodicPool periodicPool = periodicPools[priority];
+            if(periodicPool==null) {
+                periodicPool = new PeriodicPool(priority,maxThreads);
+                periodicPools[priority] = periodicPool;
+            }
+            return periodicPool;
+        }
+        
         private long rateToPeriod(double rate) {
             long period = (long)(rate*1000);
             if(period<minPeriod) period = minPeriod;
@@ -569,11 +807,29 @@ public class ScannerFactory {
             StringBuilder builder = new StringBuilder();
             ProcessRecordList processRecordList = processPeriodic;
             ProcessRecord[] processRecords = processRecordList.processRecords;
-            Thread thread = processPeriodic.getThread();
-            builder.append(String.format("thread %s period %d priority %d record list{",
-                    thread.getName(),
-                    processPeriodic.getPeriod(),
-                    thread.getPriority()));
+            PeriodicPool periodicPool = processPeriodic.periodicPool;
+            periodicPool.lock.lock();
+            try {
+                long numberScans = processPeriodic.numberScans;
+                long meanJitter = (numberScans==0) ? 0 : processPeriodic.totalJitter/numberScans;
+                builder.append(String.format(
+                        "list %s pool %s threads %d period %d priority %d shards %d"
+                        + " scans %d overruns %d jitter(us) last %d mean %d max %d maxExecute(us) %d record list{",
+                        processPeriodic.getName(),
+                        periodicPool.getName(),
+                        periodicPool.getNumberThreads(),
+                        processPeriodic.getPeriod(),
+                        processPeriodic.getPriority(),
+                        processPeriodic.periodNode.numberShards,
+                        numberScans,
+                        processPeriodic.numberOverruns,
+                        processPeriodic.lastJitter/1000,
+                        meanJitter/1000,
+                        processPeriodic.maxJitter/1000,
+                        processPeriodic.maxExecute/1000));
+            } finally {
+                periodicPool.lock.unlock();
+            }
             for(int i=0; i<processRecords.length; i++) {
                 ProcessRecord processRecord = processRecords[i];
                 if(processRecord==null) continue;
@@ -586,187 +842,211 @@ public class ScannerFactory {
         }
     }
 
-    private static class ProcessEvent extends ProcessRecordList
-    implements EventAnnounce, RunnableReady
+    /*
+     * The records with the same event name and priority.
+     * Every announce is counted. The list is scanned by an EventPool thread.
+     * The pending announcements are kept in an AnnounceQueue. An announce made while it is full is an overrun.
+     * If coalesce is true all announcements that are pending when a scan starts
+     * cause a single scan and are counted as coalesced. The scan uses the sequence and time of the newest
+     * and the latency is measured from the oldest. Otherwise each announcement causes a scan with its own
+     * sequence, time, and latency.
+     * numberAnnounced is always numberScans + numberCoalesced + numberOverruns + numberPending.
+     */
+    private static class ProcessEvent extends ProcessRecordList implements Runnable
     {
-        private ReentrantLock lock = new ReentrantLock();
-        private Condition waitForWork = lock.newCondition();
-        /* gotWork prevents following race condition:
-         *  super.runList results in announce being called before waitForWork is called.
-         */
-        private volatile boolean gotWork = false;
-        private Thread thread;
-        private long startTime = 0;
+        private final int priority;
+        private final boolean coalesce;
+        private final EventPool eventPool;
+        private final AnnounceQueue announceQueue;
+        private final AtomicLong numberAnnounced = new AtomicLong(0);
+        private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+        // the following are only modified by the thread that is scanning the list
+        private final AnnounceQueue.Entry entry = new AnnounceQueue.Entry();
+        private volatile long numberScans = 0;
+        private volatile long numberCoalesced = 0;
+        private volatile long lastSequence = 0;
+        private volatile long maxLatency = 0;
+        private volatile long totalLatency = 0;
+        private volatile long maxScanTime = 0;
+        private volatile long totalScanTime = 0;
 
-        private ProcessEvent(String name,int priority) {
+        private ProcessEvent(String name,int priority,boolean coalesce,int queueSize,EventPool eventPool) {
             super(name);
-            thread = threadCreate.create(name, priority, this);
+            this.priority = priority;
+            this.coalesce = coalesce;
+            this.eventPool = eventPool;
+            announceQueue = new AnnounceQueue(queueSize);
+        }
+        
+        private void announce(long sequence,long time,long nanos) {
+            numberAnnounced.incrementAndGet();
+            announceQueue.add(sequence, time, nanos);
+            if(isScheduled.compareAndSet(false, true)) eventPool.execute(this);
+        }
+        /* (non-Javadoc)
+         * @see java.lang.Runnable#run()
+         */
+        public void run() {
+            int number = announceQueue.remove(coalesce, entry);
+            if(number>0) {
+                long startNanos = System.nanoTime();
+                long latency = startNanos - entry.nanos;
+                super.runList(entry.time);
+                long scanTime = System.nanoTime() - startNanos;
+                numberScans++;
+                numberCoalesced += number - 1;
+                lastSequence = entry.sequence;
+                totalLatency += latency;
+                if(latency>maxLatency) maxLatency = latency;
+                totalScanTime += scanTime;
+                if(scanTime>maxScanTime) maxScanTime = scanTime;
+            }
+            isScheduled.set(false);
+            // requeue rather than loop so that other lists with the same priority are not starved
+            if(announceQueue.getNumberPending()>0 && isScheduled.compareAndSet(false, true)) eventPool.execute(this);
+        }
+        
+        private int getPriority() {
+            return priority;
+        }
+        
+        private String getName() {
+            return super.name;
+        }
+        
+        private String getStatistics() {
+            long numberScans = this.numberScans;
+            long averageLatency = (numberScans==0) ? 0 : totalLatency/numberScans;
+            long averageScanTime = (numberScans==0) ? 0 : totalScanTime/numberScans;
+            return String.format(
+                "announced %d scans %d coalesced %d overruns %d pending %d lastSequence %d"
+                + " latency(us) average %d max %d scanTime(us) average %d max %d",
+                numberAnnounced.get(),numberScans,numberCoalesced,
+                announceQueue.getNumberOverruns(),announceQueue.getNumberPending(),lastSequence,
+                averageLatency/1000,maxLatency/1000,averageScanTime/1000,maxScanTime/1000);
+        }
+    }
+    
+    /*
+     * A bounded set of threads, all with the same priority, shared by every ProcessEvent
+     * with that priority. A ProcessEvent is in the queue at most once.
+     */
+    private static class EventPool implements RunnableReady {
+        private final String name;
+        private final int priority;
+        private final int maxThreads;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition waitForWork = lock.newCondition();
+        private final ArrayDeque<ProcessEvent> queue = new ArrayDeque<ProcessEvent>();
+        private final ArrayList<Thread> threadList = new ArrayList<Thread>();
+        private int numberLists = 0;
+        
+        private EventPool(int priority,int maxThreads) {
+            this.name = "event(" + String.valueOf(priority) + ")";
+            this.priority = priority;
+            this.maxThreads = maxThreads;
+        }
+        
+        // a thread is created for each list until maxThreads is reached
+        private void addList() {
+            lock.lock();
+            try {
+                numberLists++;
+                int numberThreads = threadList.size();
+                if(numberThreads<maxThreads && numberThreads<numberLists) {
+                    String threadName = name + "[" + String.valueOf(numberThreads) + "]";
+                    threadList.add(threadCreate.create(threadName, priority, this));
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        private void execute(ProcessEvent processEvent) {
+            lock.lock();
+            try {
+                queue.add(processEvent);
+                waitForWork.signal();
+            } finally {
+                lock.unlock();
+            }
         }
         /* (non-Javadoc)
          * @see org.epics.pvioc.util.RunnableReady#run(org.epics.pvioc.util.ThreadReady)
          */
         public void run(ThreadReady threadReady) {
-            boolean firstTime = true;
+            threadReady.ready();
             try {
                 while(true) {
+                    ProcessEvent processEvent = null;
                     lock.lock();
                     try {
-                        if(firstTime) {
-                            firstTime = false;
-                            threadReady.ready();
-                        }
-                        if(!gotWork) {
-                            waitForWork.await();
-                        }
-                        gotWork = false;
+                        while(queue.isEmpty()) waitForWork.await();
+                        processEvent = queue.poll();
                     } finally {
                         lock.unlock();
                     }
-                    super.runList(startTime);
+                    processEvent.run();
                 }
             } catch(InterruptedException e) {}
         }
-        public void announce() {
-            lock.lock();
-            try {
-                gotWork = true;
-                waitForWork.signal();
-            } finally {
-                lock.unlock();
-            }
+        
+        private String getName() {
+            return name;
         }
-
-        private void setStartTime(long startTime) {
+        
+        private int getNumberThreads() {
             lock.lock();
             try {
-                this.startTime = startTime;
+                return threadList.size();
             } finally {
                 lock.unlock();
             }
         }
-        private Thread getThread() {
-            return thread;
-        }
-        private String getName() {
-            return super.name;
-        }
     }
 
-    private static class Announce implements EventAnnounce, RunnableReady {
+    private static class Announce implements EventAnnounce {
         // announcerList kept for diagnostic purpose only
         private LinkedList<String> announcerList = new LinkedList<String>();
-        
-        private ProcessEvent[] processEvents = new ProcessEvent[0];
-        
-        private volatile boolean isActive = false;
-        private volatile boolean listModify = false;
+        // copy on write. Modified with lock held.
+        private volatile ProcessEvent[] processEvents = new ProcessEvent[0];
+        private final AtomicLong sequence = new AtomicLong(0);
         private ReentrantLock lock = new ReentrantLock();
-        private Condition waitForWork = lock.newCondition();
-        private Condition waitForModify = lock.newCondition();
-        private Condition waitForNotActive = lock.newCondition();
         private String eventName;
-        private Thread thread;
 
         private Announce(String name) {
             super();
             eventName = name;
-            thread = threadCreate.create(
-                "event(" + name + ")",
-                ThreadPriority.valueOf("higher").getJavaPriority(),
-                this);
         }
         /* (non-Javadoc)
-         * @see org.epics.pvioc.util.RunnableReady#run(org.epics.pvioc.util.ThreadReady)
+         * @see org.epics.pvioc.util.EventAnnounce#announce()
          */
-        public void run(ThreadReady threadReady) {
-            boolean firstTime = true;
-            while(true) {
-                lock.lock();
-                try {
-                    if(firstTime) {
-                        firstTime = false;
-                        threadReady.ready();
-                    }
-                    try {
-                        waitForWork.await();
-                    } catch(InterruptedException e) {
-                        return;
-                    }
-                    if(listModify) {
-                        try {
-                            waitForModify.await();
-                        } catch(InterruptedException e) {
-                            return;
-                        }
-                    }
-                    isActive = true;
-                } finally {
-                    lock.unlock();
-                }
-                long startTime = System.currentTimeMillis();
-                for(ProcessEvent processEvent : processEvents) {
-                    if(processEvent==null) continue;
-                    processEvent.setStartTime(startTime);
-                    processEvent.announce();
-                }
-                lock.lock();
-                try {
-                    isActive = false;
-                    if(listModify) {
-                        waitForNotActive.signal();
-                    }
-                } finally {
-                    lock.unlock();
-                }
-            }
-        }
-        
         public void announce() {
-            lock.lock();
-            try {
-                waitForWork.signal();
-            } finally {
-                lock.unlock();
+            long sequence = this.sequence.incrementAndGet();
+            long time = System.currentTimeMillis();
+            long nanos = System.nanoTime();
+            for(ProcessEvent processEvent : processEvents) {
+                processEvent.announce(sequence, time, nanos);
             }
         }
 
-        private Thread getThread() {
-            return thread;
-        }
-
         private String getEventName() {
             return eventName;
         }
+        
+        private long getSequence() {
+            return sequence.get();
+        }
 
         void addProcessEvent(ProcessEvent processEvent) {
             lock.lock();
             try {
-                listModify = true;
-                while(isActive) {
-                    try {
-                        waitForNotActive.await();
-                    } catch(InterruptedException e) {
-                        return;
-                    }
-                }
-                int index = -1;
+                ProcessEvent[] executors = new ProcessEvent[processEvents.length+1];
                 for(int i=0; i< processEvents.length; i++) {
-                    if(processEvents[i]==null) {
-                        index = i;
-                        break;
-                    }
-                }
-                if(index<0) {
-                    ProcessEvent[] executors = new ProcessEvent[processEvents.length+1];
-                    for(int i=0; i< processEvents.length; i++) {
-                        executors[i] = processEvents[i];
-                    }
-                    index = executors.length -1;
-                    processEvents = executors;
+                    executors[i] = processEvents[i];
                 }
-                processEvents[index] = processEvent;
-                listModify = false;
-                waitForModify.signal();
+                executors[processEvents.length] = processEvent;
+                processEvents = executors;
             } finally {
                 lock.unlock();
             }
@@ -808,8 +1088,31 @@ public class ScannerFactory {
     private static class EventScannerImpl implements EventScanner {
         private ReentrantLock lock = new ReentrantLock();
         private ArrayList<Announce> eventAnnouncerList = new ArrayList<Announce>();
+        private boolean coalesce = true;
+        private int queueSize = 64;
+        private int maxThreads = Runtime.getRuntime().availableProcessors();
+        // indexed by java priority
+        private EventPool[] eventPools = new EventPool[Thread.MAX_PRIORITY + 1];
 
-        private EventScannerImpl() {}
+        private EventScannerImpl() {
+            String envValue = System.getProperty("IOCEventScanCoalesce", System.getenv("IOCEventScanCoalesce"));
+            if(envValue!=null) coalesce = Boolean.parseBoolean(envValue);
+            envValue = System.getProperty("IOCEventScanQueueSize", System.getenv("IOCEventScanQueueSize"));
+            if(envValue!=null) queueSize = Integer.parseInt(envValue);
+            envValue = System.getProperty("IOCEventScanThreads", System.getenv("IOCEventScanThreads"));
+            if(envValue!=null) maxThreads = Integer.parseInt(envValue);
+            if(maxThreads<1) maxThreads = 1;
+        }
+        
+        // must be called with lock held
+        private EventPool getEventPool(int priority) {
+            EventPool eventPool = eventPools[priority];
+            if(eventPool==null) {
+                eventPool = new EventPool(priority,maxThreads);
+                eventPools[priority] = eventPool;
+            }
+            return eventPool;
+        }
 
         private Announce getAnnounce(String name) {
             Announce announce = null;
@@ -870,21 +1173,21 @@ public class ScannerFactory {
                     return false;
                 }
                 int priority = scanField.getPriority().getJavaPriority();
-                String threadName = "event(" + eventName + "," + String.valueOf(priority) + ")";
+                String listName = "event(" + eventName + "," + String.valueOf(priority) + ")";
                 Announce announce = getAnnounce(eventName);
                 ProcessEvent processEvent = null;
                 ProcessEvent[] processEvents = announce.processEvents;
                 for(int i=0; i<processEvents.length; i++) {
                     ProcessEvent processEventNow = processEvents[i];
-                    int threadPriority = processEventNow.getThread().getPriority();
-                    if(priority<threadPriority) continue;
-                    if(priority==threadPriority) {
+                    if(priority==processEventNow.getPriority()) {
                         processEvent = processEventNow;
                         break;
                     }
                 }
                 if(processEvent==null) {
-                    processEvent = new ProcessEvent(threadName,priority);
+                    EventPool eventPool = getEventPool(priority);
+                    processEvent = new ProcessEvent(listName,priority,coalesce,queueSize,eventPool);
+                    eventPool.addList();
                     announce.addProcessEvent(processEvent);
                 }
                 ProcessRecord processRecord = new ProcessRecord(processEvent.getName(),pvRecord.getRecordProcess());
@@ -921,9 +1224,7 @@ public class ScannerFactory {
                 ProcessEvent[] processEvents = announce.processEvents;
                 for(int i=0; i<processEvents.length; i++) {
                     ProcessEvent processEventNow = processEvents[i];
-                    int threadPrio = processEventNow.getThread().getPriority();
-                    if(priority<threadPrio) continue;
-                    if(priority==threadPrio) {
+                    if(priority==processEventNow.getPriority()) {
                         processEvent = processEventNow;
                         break;
                     }
@@ -976,10 +1277,9 @@ public class ScannerFactory {
         }        
         private String showAnnounce(Announce announce) {
             StringBuilder builder = new StringBuilder();
-            Thread thread = announce.getThread();
             builder.append(String.format(
-                    "thread %s eventName %s priority %d announcers {",
-                    thread.getName(),announce.getEventName(),thread.getPriority()));
+                    "eventName %s sequence %d announcers {",
+                    announce.getEventName(),announce.getSequence()));
             String[] announcerList = announce.getAnnouncerList();
             boolean isFirst = true;
             for(String announcer : announcerList) {
@@ -993,11 +1293,12 @@ public class ScannerFactory {
             builder.append("}");
             ProcessEvent[] processEvents = announce.processEvents;
             for(ProcessEvent processEvent : processEvents) {
-                if(processEvent==null) continue;
-                thread = processEvent.getThread();
-                builder.append(String.format(lineBreak + "    thread %s priority %d record list{",
-                        thread.getName(),
-                        thread.getPriority()));
+                EventPool eventPool = processEvent.eventPool;
+                builder.append(String.format(lineBreak + "    list %s pool %s threads %d %s record list{",
+                        processEvent.getName(),
+                        eventPool.getName(),
+                        eventPool.getNumberThreads(),
+                        processEvent.getStatistics()));
                 ProcessRecordList processRecordList = processEvent;
                 ProcessRecord[] recordExecutors = processRecordList.processRecords;
                 for(int j=0; j<recordExecutors.length; j++) {
@@ -0,0 +1,168 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.util;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.epics.pvdata.misc.RunnableReady;
+import org.epics.pvdata.misc.ThreadCreate;
+import org.epics.pvdata.misc.ThreadCreateFactory;
+import org.epics.pvdata.misc.ThreadReady;
+
+/**
+ * Threads that execute the shards of a periodic scan list.
+ * The thread that calls invoke also executes shards, and invoke does not return until every shard is done.
+ * Thus each shard is executed exactly once for each invoke and a job is never executed concurrently with itself.
+ * @author mrk
+ *
+ */
+class ShardPool implements RunnableReady {
+    /**
+     * The work done for each shard.
+     */
+    interface Task {
+        /**
+         * Execute a shard.
+         * @param shard The shard, from 0 to numberShards-1.
+         */
+        void execute(int shard);
+    }
+
+    /**
+     * A task and the state of its current invoke.
+     * A job can be reused but only one invoke at a time is allowed.
+     */
+    static class Job {
+        private final Task task;
+        // the number of shards not yet claimed. It is negative when all shards are claimed.
+        private final AtomicInteger unclaimed = new AtomicInteger(-1);
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition waitForDone = lock.newCondition();
+        private volatile int numberShards = 0;
+        private int numberDone = 0;
+        private RuntimeException exception = null;
+
+        Job(Task task) {
+            this.task = task;
+        }
+
+        private void start(int numberShards) {
+            lock.lock();
+            try {
+                numberDone = 0;
+                exception = null;
+                this.numberShards = numberShards;
+            } finally {
+                lock.unlock();
+            }
+            unclaimed.set(numberShards);
+        }
+
+        // Called by the invoker and by pool threads until all shards are claimed.
+        // Counting down means that a pool thread that is late for an earlier invoke can never claim a shard twice.
+        private void executeShards() {
+            int remaining = 0;
+            while((remaining = unclaimed.decrementAndGet())>=0) {
+                RuntimeException failure = null;
+                try {
+                    task.execute(numberShards - 1 - remaining);
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+                lock.lock();
+                try {
+                    if(failure!=null && exception==null) exception = failure;
+                    if(++numberDone==numberShards) waitForDone.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private void waitDone() {
+            boolean interrupted = false;
+            lock.lock();
+            try {
+                while(numberDone<numberShards) {
+                    try {
+                        waitForDone.await();
+                    } catch (InterruptedException e) {
+                        // the shards still refer to the caller's data so keep waiting
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            if(interrupted) Thread.currentThread().interrupt();
+            if(exception!=null) throw exception;
+        }
+    }
+
+    private static final ThreadCreate threadCreate = ThreadCreateFactory.getThreadCreate();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition waitForWork = lock.newCondition();
+    private final ArrayDeque<Job> queue = new ArrayDeque<Job>();
+    private final int numberThreads;
+
+    /**
+     * Constructor. The threads are created immediately.
+     * @param name The thread name prefix.
+     * @param priority The java priority of the threads.
+     * @param numberThreads The number of threads in addition to the threads that call invoke.
+     */
+    ShardPool(String name,int priority,int numberThreads) {
+        this.numberThreads = numberThreads;
+        for(int i=0; i<numberThreads; i++) {
+            threadCreate.create(name + "[" + String.valueOf(i) + "]", priority, this);
+        }
+    }
+    /**
+     * Execute each shard of a job and wait until all are done.
+     * If a shard throws a RuntimeException the remaining shards are still executed and the first exception is rethrown.
+     * @param job The job.
+     * @param numberShards The number of shards.
+     */
+    void invoke(Job job,int numberShards) {
+        if(numberShards<1) return;
+        job.start(numberShards);
+        int number = Math.min(numberShards - 1, numberThreads);
+        if(number>0) {
+            lock.lock();
+            try {
+                for(int i=0; i<number; i++) queue.add(job);
+                waitForWork.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        job.executeShards();
+        job.waitDone();
+    }
+    /* (non-Javadoc)
+     * @see org.epics.pvdata.misc.RunnableReady#run(org.epics.pvdata.misc.ThreadReady)
+     */
+    public void run(ThreadReady threadReady) {
+        threadReady.ready();
+        try {
+            while(true) {
+                Job job = null;
+                lock.lock();
+                try {
+                    while(queue.isEmpty()) waitForWork.await();
+                    job = queue.poll();
+                } finally {
+                    lock.unlock();
+                }
+                // a job that was already finished by other threads just finds no unclaimed shard
+                job.executeShards();
+            }
+        } catch(InterruptedException e) {}
+    }
+}
@@ -0,0 +1,818 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.xml;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.epics.pvdata.factory.FieldFactory;
+import org.epics.pvdata.factory.PVDataFactory;
+import org.epics.pvdata.pv.BooleanArrayData;
+import org.epics.pvdata.pv.ByteArrayData;
+import org.epics.pvdata.pv.DoubleArrayData;
+import org.epics.pvdata.pv.Field;
+import org.epics.pvdata.pv.FieldCreate;
+import org.epics.pvdata.pv.FloatArrayData;
+import org.epics.pvdata.pv.IntArrayData;
+import org.epics.pvdata.pv.LongArrayData;
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.PVArray;
+import org.epics.pvdata.pv.PVAuxInfo;
+import org.epics.pvdata.pv.PVBoolean;
+import org.epics.pvdata.pv.PVBooleanArray;
+import org.epics.pvdata.pv.PVByte;
+import org.epics.pvdata.pv.PVByteArray;
+import org.epics.pvdata.pv.PVDataCreate;
+import org.epics.pvdata.pv.PVDouble;
+import org.epics.pvdata.pv.PVDoubleArray;
+import org.epics.pvdata.pv.PVField;
+import org.epics.pvdata.pv.PVFloat;
+import org.epics.pvdata.pv.PVFloatArray;
+import org.epics.pvdata.pv.PVInt;
+import org.epics.pvdata.pv.PVIntArray;
+import org.epics.pvdata.pv.PVLong;
+import org.epics.pvdata.pv.PVLongArray;
+import org.epics.pvdata.pv.PVScalar;
+import org.epics.pvdata.pv.PVScalarArray;
+import org.epics.pvdata.pv.PVShort;
+import org.epics.pvdata.pv.PVShortArray;
+import org.epics.pvdata.pv.PVString;
+import org.epics.pvdata.pv.PVStringArray;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.PVStructureArray;
+import org.epics.pvdata.pv.Requester;
+import org.epics.pvdata.pv.Scalar;
+import org.epics.pvdata.pv.ScalarArray;
+import org.epics.pvdata.pv.ScalarType;
+import org.epics.pvdata.pv.ShortArrayData;
+import org.epics.pvdata.pv.StringArrayData;
+import org.epics.pvdata.pv.Structure;
+import org.epics.pvdata.pv.StructureArray;
+import org.epics.pvdata.pv.StructureArrayData;
+import org.epics.pvioc.database.PVDatabase;
+import org.epics.pvioc.database.PVRecord;
+import org.epics.pvioc.database.PVRecordCreate;
+import org.epics.pvioc.database.PVRecordCreateFactory;
+
+/**
+ * Factory that keeps a binary image of the database created from an xml file.
+ * The image holds the structures and records, with all values and auxInfo,
+ * exactly as XMLToPVDatabaseFactory created them, i.e. after include and macro substitution.
+ * It also holds the name and modification time of every source file, the value of every
+ * ${name} that appears in them, and a digest of every structure that the definitions extend
+ * but that is not defined by the sources.
+ * Loading an image maps the file into memory and creates the database without any xml parsing or string conversion.
+ * An image is rebuilt from xml when any source file, any referenced ${name}, or any extended structure changes.
+ * @author mrk
+ *
+ */
+public class PVDatabaseImageFactory {
+    /**
+     * Get the image file for an xml file.
+     * The image is in the directory given by the property or environment variable IOCDatabaseImageDir.
+     * @param fileName The xml file.
+     * @return The image file or null if IOCDatabaseImageDir is not defined.
+     */
+    public static String getImageFile(String fileName) {
+        String dir = System.getProperty("IOCDatabaseImageDir", System.getenv("IOCDatabaseImageDir"));
+        if(dir==null || dir.length()==0) return null;
+        String name = new File(expand(fileName)).getAbsolutePath();
+        name = name.replace(File.separatorChar, '_').replace(':', '_');
+        return new File(dir,name + ".pvdb").getPath();
+    }
+    /**
+     * Put the definitions of an xml file into a database.
+     * If imageFile is current it is loaded. Otherwise the xml file is converted and, if there were no errors,
+     * a new imageFile is written.
+     * @param pvDatabase The database into which the new structures and records are added.
+     * @param fileName The xml file.
+     * @param imageFile The image file.
+     * @param requester The requester.
+     * @param reportSubstitutionFailure Should an error be reported if a ${from} does not have a substitution.
+     */
+    public static void convert(PVDatabase pvDatabase,String fileName,String imageFile,
+            Requester requester,boolean reportSubstitutionFailure)
+    {
+        if(isCurrent(pvDatabase,imageFile) && load(pvDatabase,imageFile,requester)) return;
+        compile(pvDatabase,fileName,imageFile,requester,reportSubstitutionFailure);
+    }
+    /**
+     * Is an image up to date with its sources?
+     * @param pvDatabase The database into which the image would be loaded.
+     * The structures that the image extends are looked up in it and in master.
+     * @param imageFile The image file.
+     * @return (false,true) if the image (does not, does) match the current sources.
+     */
+    public static boolean isCurrent(PVDatabase pvDatabase,String imageFile) {
+        File file = new File(imageFile);
+        if(!file.isFile()) return false;
+        try {
+            ByteBuffer buffer = map(file);
+            if(buffer.getInt()!=magic || buffer.getInt()!=formatVersion) return false;
+            int number = buffer.getInt();
+            for(int i=0; i<number; i++) {
+                File source = new File(readString(buffer));
+                long lastModified = buffer.getLong();
+                long length = buffer.getLong();
+                if(source.lastModified()!=lastModified || source.length()!=length) return false;
+            }
+            number = buffer.getInt();
+            for(int i=0; i<number; i++) {
+                String name = readString(buffer);
+                String value = readNullableString(buffer);
+                String now = System.getProperty(name, System.getenv(name));
+                if(value==null ? now!=null : !value.equals(now)) return false;
+            }
+            number = buffer.getInt();
+            for(int i=0; i<number; i++) {
+                String name = readString(buffer);
+                byte[] digest = new byte[buffer.getInt()];
+                buffer.get(digest);
+                PVStructure pvStructure = pvDatabase.findStructure(name);
+                if(pvStructure==null || !Arrays.equals(digest, getDigest(pvStructure))) return false;
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+    /**
+     * Convert an xml file into a database and write the image of the new definitions.
+     * Only the structures and records that the file adds to pvDatabase are written.
+     * The image is not written if the conversion reports any warning or error or
+     * if the xml file changes a record that was not created by the file.
+     * @param pvDatabase The database into which the new structures and records are added.
+     * @param fileName The xml file.
+     * @param imageFile The image file.
+     * @param requester The requester.
+     * @param reportSubstitutionFailure Should an error be reported if a ${from} does not have a substitution.
+     * @return (false,true) if the image (was not, was) written.
+     */
+    public static boolean compile(PVDatabase pvDatabase,String fileName,String imageFile,
+            Requester requester,boolean reportSubstitutionFailure)
+    {
+        IdentityHashMap<Object,Object> oldDefinitions = new IdentityHashMap<Object,Object>();
+        for(PVStructure pvStructure : pvDatabase.getStructures()) oldDefinitions.put(pvStructure, pvStructure);
+        for(PVRecord pvRecord : pvDatabase.getRecords()) oldDefinitions.put(pvRecord, pvRecord);
+        Sources sources = new Sources(requester);
+        XMLToPVDatabaseFactory.convert(pvDatabase, fileName, sources, reportSubstitutionFailure, sources, null, sources);
+        if(sources.maxError!=MessageType.info) return false;
+        List<String> structureNames = new ArrayList<String>();
+        List<PVStructure> pvStructures = new ArrayList<PVStructure>();
+        String[] allStructureNames = pvDatabase.getStructureNames();
+        PVStructure[] allStructures = pvDatabase.getStructures();
+        for(int i=0; i<allStructures.length; i++) {
+            if(oldDefinitions.containsKey(allStructures[i])) continue;
+            structureNames.add(allStructureNames[i]);
+            pvStructures.add(allStructures[i]);
+        }
+        List<PVRecord> pvRecords = new ArrayList<PVRecord>();
+        IdentityHashMap<PVRecord,PVRecord> newRecords = new IdentityHashMap<PVRecord,PVRecord>();
+        for(PVRecord pvRecord : pvDatabase.getRecords()) {
+            if(oldDefinitions.containsKey(pvRecord)) continue;
+            pvRecords.add(pvRecord);
+            newRecords.put(pvRecord, pvRecord);
+        }
+        for(PVRecord pvRecord : sources.pvRecordList) {
+            if(!newRecords.containsKey(pvRecord)) {
+                requester.message(fileName + " changes existing record " + pvRecord.getRecordName()
+                        + " so no image is written", MessageType.info);
+                return false;
+            }
+        }
+        File file = new File(imageFile);
+        File tempFile = new File(imageFile + ".tmp");
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if(dir!=null && !dir.isDirectory()) dir.mkdirs();
+            Map<String,byte[]> dependencies = getDependencies(pvDatabase,sources.extendsNameSet,structureNames);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                out.writeInt(magic);
+                out.writeInt(formatVersion);
+                out.writeInt(sources.sourceFileList.size());
+                for(String name : sources.sourceFileList) {
+                    File source = new File(name);
+                    writeString(out,source.getAbsolutePath());
+                    out.writeLong(source.lastModified());
+                    out.writeLong(source.length());
+                }
+                out.writeInt(sources.macroMap.size());
+                for(String name : sources.macroMap.keySet()) {
+                    writeString(out,name);
+                    writeNullableString(out,sources.macroMap.get(name));
+                }
+                out.writeInt(dependencies.size());
+                for(String name : dependencies.keySet()) {
+                    byte[] digest = dependencies.get(name);
+                    writeString(out,name);
+                    out.writeInt(digest.length);
+                    out.write(digest);
+                }
+                out.writeInt(pvStructures.size());
+                for(int i=0; i<pvStructures.size(); i++) {
+                    writeString(out,structureNames.get(i));
+                    writeField(out,pvStructures.get(i).getStructure());
+                    writeValue(out,pvStructures.get(i));
+                }
+                out.writeInt(pvRecords.size());
+                for(PVRecord pvRecord : pvRecords) {
+                    PVStructure pvStructure = pvRecord.getPVRecordStructure().getPVStructure();
+                    writeString(out,pvRecord.getRecordName());
+                    writeField(out,pvStructure.getStructure());
+                    writeValue(out,pvStructure);
+                }
+            } finally {
+                out.close();
+            }
+            if(file.exists() && !file.delete()) throw new IOException("can not replace " + imageFile);
+            if(!tempFile.renameTo(file)) throw new IOException("can not rename " + tempFile);
+        } catch (IOException e) {
+            tempFile.delete();
+            requester.message("image " + imageFile + " not written " + e.getMessage(), MessageType.warning);
+            return false;
+        } catch (IllegalArgumentException e) {
+            tempFile.delete();
+            requester.message("image " + imageFile + " not written " + e.getMessage(), MessageType.info);
+            return false;
+        }
+        return true;
+    }
+    /**
+     * Load an image into a database.
+     * @param pvDatabase The database into which the structures and records are added.
+     * @param imageFile The image file.
+     * @param requester The requester.
+     * @return (false,true) if the image (was not, was) loaded. If it was not loaded nothing was added to pvDatabase.
+     */
+    public static boolean load(PVDatabase pvDatabase,String imageFile,Requester requester) {
+        String[] structureNames = null;
+        PVStructure[] pvStructures = null;
+        String[] recordNames = null;
+        PVStructure[] recordStructures = null;
+        try {
+            ByteBuffer buffer = map(new File(imageFile));
+            if(buffer.getInt()!=magic || buffer.getInt()!=formatVersion) {
+                throw new IllegalArgumentException("not an image");
+            }
+            int number = buffer.getInt();
+            for(int i=0; i<number; i++) {
+                readString(buffer);
+                buffer.getLong();
+                buffer.getLong();
+            }
+            number = buffer.getInt();
+            for(int i=0; i<number; i++) {
+                readString(buffer);
+                readNullableString(buffer);
+            }
+            number = buffer.getInt();
+            for(int i=0; i<number; i++) {
+                readString(buffer);
+                buffer.position(buffer.position() + buffer.getInt());
+            }
+            number = buffer.getInt();
+            structureNames = new String[number];
+            pvStructures = new PVStructure[number];
+            for(int i=0; i<number; i++) {
+                structureNames[i] = readString(buffer);
+                pvStructures[i] = pvDataCreate.createPVStructure((Structure)readField(buffer));
+                readValue(buffer,pvStructures[i]);
+            }
+            number = buffer.getInt();
+            recordNames = new String[number];
+            recordStructures = new PVStructure[number];
+            for(int i=0; i<number; i++) {
+                recordNames[i] = readString(buffer);
+                recordStructures[i] = pvDataCreate.createPVStructure((Structure)readField(buffer));
+                readValue(buffer,recordStructures[i]);
+            }
+        } catch (IOException e) {
+            requester.message("image " + imageFile + " not loaded " + e.getMessage(), MessageType.info);
+            return false;
+        } catch (BufferUnderflowException e) {
+            requester.message("image " + imageFile + " is truncated", MessageType.info);
+            return false;
+        } catch (RuntimeException e) {
+            requester.message("image " + imageFile + " not loaded " + e.getMessage(), MessageType.info);
+            return false;
+        }
+        for(int i=0; i<pvStructures.length; i++) {
+            if(!pvDatabase.addStructure(pvStructures[i], structureNames[i])) {
+                requester.message("structure " + structureNames[i] + " not added to database", MessageType.warning);
+            }
+        }
+        for(int i=0; i<recordStructures.length; i++) {
+            PVRecord pvRecord = pvRecordCreate.createPVRecord(recordNames[i], recordStructures[i]);
+            if(!pvDatabase.addRecord(pvRecord)) {
+                requester.message("record " + recordNames[i] + " not added to database", MessageType.warning);
+            }
+        }
+        return true;
+    }
+
+    private static final PVRecordCreate pvRecordCreate = PVRecordCreateFactory.getPVRecordCreate();
+    private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
+    private static final FieldCreate fieldCreate = FieldFactory.getFieldCreate();
+    private static final Charset utf8 = Charset.forName("UTF-8");
+    private static final int magic = 0x50564442; // PVDB
+    private static final int formatVersion = 2;
+    // the codes used for the field types
+    private static final byte scalarCode = 0;
+    private static final byte scalarArrayCode = 1;
+    private static final byte structureCode = 2;
+    private static final byte structureArrayCode = 3;
+
+    /*
+     * Collects the source files, the ${name} references, the extends names, the records started by the xml
+     * and the most severe message while an xml file is converted.
+     */
+    private static class Sources implements Requester,IncludeSubstituteDetailsXMLListener,XMLToPVDatabaseListener
+    {
+        private final Requester requester;
+        private MessageType maxError = MessageType.info;
+        private final List<String> sourceFileList = new ArrayList<String>();
+        private final Map<String,String> macroMap = new TreeMap<String,String>();
+        private final List<PVRecord> pvRecordList = new ArrayList<PVRecord>();
+        private final Set<String> extendsNameSet = new TreeSet<String>();
+
+        private Sources(Requester requester) {
+            this.requester = requester;
+        }
+        public String getRequesterName() {
+            return requester.getRequesterName();
+        }
+        public void message(String message, MessageType messageType) {
+            if(messageType.compareTo(maxError)>0) maxError = messageType;
+            requester.message(message, messageType);
+        }
+        public void startElementBeforeSubstitution(String name,Map<String,String> attributes) {
+            for(String value : attributes.values()) addMacros(value);
+            String extendsName = attributes.get("extends");
+            if(extendsName!=null && extendsName.length()>0) extendsNameSet.add(expand(extendsName));
+        }
+        public void elementBeforeSubstitution(String content) {
+            addMacros(content);
+        }
+        public void newSourceFile(String fileName) {
+            addMacros(fileName);
+            sourceFileList.add(expand(fileName));
+        }
+        public void endSourceFile() {}
+        public void addPath(String pathName) {
+            addMacros(pathName);
+        }
+        public void removePath(String pathName) {}
+        public void substitute(String from,String to) {}
+        public void removeSubstitute(String from) {}
+        public void startStructure(PVStructure pvStructure) {}
+        public void endStructure() {}
+        public void startRecord(PVRecord pvRecord) {
+            pvRecordList.add(pvRecord);
+        }
+        public void endRecord() {}
+        public void newStructureField(PVStructure pvStructure) {}
+        public void endStructureField() {}
+        public void startArray(PVArray pvArray) {}
+        public void endArray() {}
+        public void startScalar(PVScalar pvScalar) {}
+        public void endScalar() {}
+        public void startAuxInfo(String name,Map<String,String> attributes) {}
+        public void endAuxInfo() {}
+
+        private void addMacros(String value) {
+            int start = 0;
+            while(true) {
+                start = value.indexOf("${",start);
+                if(start<0) return;
+                int end = value.indexOf('}',start);
+                if(end<0) return;
+                String name = value.substring(start+2, end);
+                if(!macroMap.containsKey(name)) {
+                    macroMap.put(name, System.getProperty(name, System.getenv(name)));
+                }
+                start = end + 1;
+            }
+        }
+    }
+
+    // The digest of each structure that an extends name can refer to and that is not defined by the file.
+    // An extends name without a package matches every structure whose name ends with it, as an import can,
+    // so an image may depend on more structures than it uses.
+    private static Map<String,byte[]> getDependencies(PVDatabase pvDatabase,Set<String> extendsNames,
+            List<String> newStructureNames)
+    {
+        Map<String,byte[]> dependencies = new TreeMap<String,byte[]>();
+        Set<String> names = new TreeSet<String>(Arrays.asList(pvDatabase.getStructureNames()));
+        if(pvDatabase.getMaster()!=pvDatabase) names.addAll(Arrays.asList(pvDatabase.getMaster().getStructureNames()));
+        for(String name : names) {
+            if(newStructureNames.contains(name)) continue;
+            boolean isExtended = false;
+            for(String extendsName : extendsNames) {
+                if(name.equals(extendsName) || (extendsName.indexOf('.')<0 && name.endsWith("." + extendsName))) {
+                    isExtended = true;
+                    break;
+                }
+            }
+            if(!isExtended) continue;
+            PVStructure pvStructure = pvDatabase.findStructure(name);
+            if(pvStructure!=null) dependencies.put(name, getDigest(pvStructure));
+        }
+        return dependencies;
+    }
+
+    private static byte[] getDigest(PVStructure pvStructure) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            writeField(out,pvStructure.getStructure());
+            writeValue(out,pvStructure);
+            out.flush();
+            return MessageDigest.getInstance("SHA-1").digest(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    // expand ${name} in a file name the same way as IncludeSubstituteXMLReaderFactory
+    private static String expand(String fileName) {
+        int start = fileName.indexOf("${");
+        int end = fileName.indexOf("}");
+        if(start>=0 && end>start) {
+            String name = fileName.substring(start+2, end);
+            name = System.getProperty(name, System.getenv(name));
+            fileName = fileName.substring(0, start) + name + fileName.substring(end+1);
+        }
+        return fileName;
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file,"r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static void writeString(DataOutputStream out,String value) throws IOException {
+        byte[] bytes = value.getBytes(utf8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeNullableString(DataOutputStream out,String value) throws IOException {
+        if(value==null) {
+            out.writeInt(-1);
+            return;
+        }
+        writeString(out,value);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes,utf8);
+    }
+
+    private static String readNullableString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if(length<0) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes,utf8);
+    }
+
+    private static void writeField(DataOutputStream out,Field field) throws IOException {
+        switch(field.getType()) {
+        case scalar:
+            out.writeByte(scalarCode);
+            out.writeByte(((Scalar)field).getScalarType().ordinal());
+            return;
+        case scalarArray:
+            out.writeByte(scalarArrayCode);
+            out.writeByte(((ScalarArray)field).getElementType().ordinal());
+            return;
+        case structure: {
+            Structure structure = (Structure)field;
+            String[] fieldNames = structure.getFieldNames();
+            Field[] fields = structure.getFields();
+            out.writeByte(structureCode);
+            writeString(out,structure.getID());
+            out.writeInt(fields.length);
+            for(int i=0; i<fields.length; i++) {
+                writeString(out,fieldNames[i]);
+                writeField(out,fields[i]);
+            }
+            return;
+        }
+        case structureArray:
+            out.writeByte(structureArrayCode);
+            writeField(out,((StructureArray)field).getStructure());
+            return;
+        default:
+            throw new IllegalArgumentException("field type " + field.getType() + " is not supported");
+        }
+    }
+
+    private static Field readField(ByteBuffer buffer) {
+        byte code = buffer.get();
+        switch(code) {
+        case scalarCode:
+            return fieldCreate.createScalar(ScalarType.values()[buffer.get()]);
+        case scalarArrayCode:
+            return fieldCreate.createScalarArray(ScalarType.values()[buffer.get()]);
+        case structureCode: {
+            String id = readString(buffer);
+            int number = buffer.getInt();
+            String[] fieldNames = new String[number];
+            Field[] fields = new Field[number];
+            for(int i=0; i<number; i++) {
+                fieldNames[i] = readString(buffer);
+                fields[i] = readField(buffer);
+            }
+            return fieldCreate.createStructure(id, fieldNames, fields);
+        }
+        case structureArrayCode:
+            return fieldCreate.createStructureArray((Structure)readField(buffer));
+        default:
+            throw new IllegalArgumentException("illegal field code " + code);
+        }
+    }
+
+    // the value of a field is its auxInfo, its data and its immutable flag
+    private static void writeValue(DataOutputStream out,PVField pvField) throws IOException {
+        PVAuxInfo pvAuxInfo = pvField.getPVAuxInfo();
+        Map<String,PVScalar> infos = (pvAuxInfo==null) ? null : pvAuxInfo.getInfos();
+        if(infos==null) {
+            out.writeInt(0);
+        } else {
+            out.writeInt(infos.size());
+            for(String key : infos.keySet()) {
+                PVScalar pvScalar = infos.get(key);
+                writeString(out,key);
+                out.writeByte(pvScalar.getScalar().getScalarType().ordinal());
+                writeScalar(out,pvScalar);
+            }
+        }
+        switch(pvField.getField().getType()) {
+        case scalar:
+            writeScalar(out,(PVScalar)pvField);
+            break;
+        case scalarArray:
+            writeScalarArray(out,(PVScalarArray)pvField);
+            break;
+        case structure: {
+            PVField[] pvFields = ((PVStructure)pvField).getPVFields();
+            for(PVField pvSubField : pvFields) writeValue(out,pvSubField);
+            break;
+        }
+        case structureArray: {
+            PVStructureArray pvArray = (PVStructureArray)pvField;
+            int length = pvArray.getLength();
+            out.writeInt(pvArray.getCapacity());
+            out.writeInt(length);
+            out.writeBoolean(pvArray.isCapacityMutable());
+            StructureArrayData data = new StructureArrayData();
+            pvArray.get(0, length, data);
+            for(int i=0; i<length; i++) {
+                PVStructure pvStructure = data.data[data.offset + i];
+                out.writeBoolean(pvStructure!=null);
+                if(pvStructure!=null) writeValue(out,pvStructure);
+            }
+            break;
+        }
+        default:
+            throw new IllegalArgumentException("field type " + pvField.getField().getType() + " is not supported");
+        }
+        out.writeBoolean(pvField.isImmutable());
+    }
+
+    private static void readValue(ByteBuffer buffer,PVField pvField) {
+        int number = buffer.getInt();
+        for(int i=0; i<number; i++) {
+            String key = readString(buffer);
+            ScalarType scalarType = ScalarType.values()[buffer.get()];
+            readScalar(buffer,pvField.getPVAuxInfo().createInfo(key, scalarType));
+        }
+        switch(pvField.getField().getType()) {
+        case scalar:
+            readScalar(buffer,(PVScalar)pvField);
+            break;
+        case scalarArray:
+            readScalarArray(buffer,(PVScalarArray)pvField);
+            break;
+        case structure: {
+            PVField[] pvFields = ((PVStructure)pvField).getPVFields();
+            for(PVField pvSubField : pvFields) readValue(buffer,pvSubField);
+            break;
+        }
+        case structureArray: {
+            PVStructureArray pvArray = (PVStructureArray)pvField;
+            int capacity = buffer.getInt();
+            int length = buffer.getInt();
+            boolean capacityMutable = buffer.get()!=0;
+            Structure structure = pvArray.getStructureArray().getStructure();
+            PVStructure[] pvStructures = new PVStructure[length];
+            for(int i=0; i<length; i++) {
+                if(buffer.get()==0) continue;
+                pvStructures[i] = pvDataCreate.createPVStructure(structure);
+                readValue(buffer,pvStructures[i]);
+            }
+            pvArray.setCapacity(capacity);
+            if(length>0) pvArray.put(0, length, pvStructures, 0);
+            if(!capacityMutable) pvArray.setCapacityMutable(false);
+            break;
+        }
+        default:
+            throw new IllegalArgumentException("field type " + pvField.getField().getType() + " is not supported");
+        }
+        if(buffer.get()!=0) pvField.setImmutable();
+    }
+
+    private static void writeScalar(DataOutputStream out,PVScalar pvScalar) throws IOException {
+        ScalarType scalarType = pvScalar.getScalar().getScalarType();
+        switch(scalarType) {
+        case pvBoolean: out.writeBoolean(((PVBoolean)pvScalar).get()); return;
+        case pvByte: out.writeByte(((PVByte)pvScalar).get()); return;
+        case pvShort: out.writeShort(((PVShort)pvScalar).get()); return;
+        case pvInt: out.writeInt(((PVInt)pvScalar).get()); return;
+        case pvLong: out.writeLong(((PVLong)pvScalar).get()); return;
+        case pvFloat: out.writeFloat(((PVFloat)pvScalar).get()); return;
+        case pvDouble: out.writeDouble(((PVDouble)pvScalar).get()); return;
+        case pvString: writeNullableString(out,((PVString)pvScalar).get()); return;
+        default:
+            throw new IllegalArgumentException("scalarType " + scalarType + " is not supported");
+        }
+    }
+
+    private static void readScalar(ByteBuffer buffer,PVScalar pvScalar) {
+        ScalarType scalarType = pvScalar.getScalar().getScalarType();
+        switch(scalarType) {
+        case pvBoolean: ((PVBoolean)pvScalar).put(buffer.get()!=0); return;
+        case pvByte: ((PVByte)pvScalar).put(buffer.get()); return;
+        case pvShort: ((PVShort)pvScalar).put(buffer.getShort()); return;
+        case pvInt: ((PVInt)pvScalar).put(buffer.getInt()); return;
+        case pvLong: ((PVLong)pvScalar).put(buffer.getLong()); return;
+        case pvFloat: ((PVFloat)pvScalar).put(buffer.getFloat()); return;
+        case pvDouble: ((PVDouble)pvScalar).put(buffer.getDouble()); return;
+        case pvString: ((PVString)pvScalar).put(readNullableString(buffer)); return;
+        default:
+            throw new IllegalArgumentException("scalarType " + scalarType + " is not supported");
+        }
+    }
+
+    private static void writeScalarArray(DataOutputStream out,PVScalarArray pvArray) throws IOException {
+        ScalarType scalarType = pvArray.getScalarArray().getElementType();
+        int length = pvArray.getLength();
+        out.writeInt(pvArray.getCapacity());
+        out.writeInt(length);
+        out.writeBoolean(pvArray.isCapacityMutable());
+        switch(scalarType) {
+        case pvBoolean: {
+            BooleanArrayData data = new BooleanArrayData();
+            ((PVBooleanArray)pvArray).get(0, length, data);
+            for(int i=0; i<length; i++) out.writeBoolean(data.data[data.offset + i]);
+            return;
+        }
+        case pvByte: {
+            ByteArrayData data = new ByteArrayData();
+            ((PVByteArray)pvArray).get(0, length, data);
+            out.write(data.data, data.offset, length);
+            return;
+        }
+        case pvShort: {
+            ShortArrayData data = new ShortArrayData();
+            ((PVShortArray)pvArray).get(0, length, data);
+            for(int i=0; i<length; i++) out.writeShort(data.data[data.offset + i]);
+            return;
+        }
+        case pvInt: {
+            IntArrayData data = new IntArrayData();
+            ((PVIntArray)pvArray).get(0, length, data);
+            for(int i=0; i<length; i++) out.writeInt(data.data[data.offset + i]);
+            return;
+        }
+        case pvLong: {
+            LongArrayData data = new LongArrayData();
+            ((PVLongArray)pvArray).get(0, length, data);
+            for(int i=0; i<length; i++) out.writeLong(data.data[data.offset + i]);
+            return;
+        }
+        case pvFloat: {
+            FloatArrayData data = new FloatArrayData();
+            ((PVFloatArray)pvArray).get(0, length, data);
+            for(int i=0; i<length; i++) out.writeFloat(data.data[data.offset + i]);
+            return;
+        }
+        case pvDouble: {
+            DoubleArrayData data = new DoubleArrayData();
+            ((PVDoubleArray)pvArray).get(0, length, data);
+            for(int i=0; i<length; i++) out.writeDouble(data.data[data.offset + i]);
+            return;
+        }
+        case pvString: {
+            StringArrayData data = new StringArrayData();
+            ((PVStringArray)pvArray).get(0, length, data);
+            for(int i=0; i<length; i++) writeNullableString(out,data.data[data.offset + i]);
+            return;
+        }
+        default:
+            throw new IllegalArgumentException("scalarType " + scalarType + " is not supported");
+        }
+    }
+
+    private static void readScalarArray(ByteBuffer buffer,PVScalarArray pvArray) {
+        ScalarType scalarType = pvArray.getScalarArray().getElementType();
+        int capacity = buffer.getInt();
+        int length = buffer.getInt();
+        boolean capacityMutable = buffer.get()!=0;
+        pvArray.setCapacity(capacity);
+        switch(scalarType) {
+        case pvBoolean: {
+            boolean[] value = new boolean[length];
+            for(int i=0; i<length; i++) value[i] = buffer.get()!=0;
+            ((PVBooleanArray)pvArray).put(0, length, value, 0);
+            break;
+        }
+        case pvByte: {
+            byte[] value = new byte[length];
+            buffer.get(value);
+            ((PVByteArray)pvArray).put(0, length, value, 0);
+            break;
+        }
+        case pvShort: {
+            short[] value = new short[length];
+            buffer.asShortBuffer().get(value);
+            buffer.position(buffer.position() + 2*length);
+            ((PVShortArray)pvArray).put(0, length, value, 0);
+            break;
+        }
+        case pvInt: {
+            int[] value = new int[length];
+            buffer.asIntBuffer().get(value);
+            buffer.position(buffer.position() + 4*length);
+            ((PVIntArray)pvArray).put(0, length, value, 0);
+            break;
+        }
+        case pvLong: {
+            long[] value = new long[length];
+            buffer.asLongBuffer().get(value);
+            buffer.position(buffer.position() + 8*length);
+            ((PVLongArray)pvArray).put(0, length, value, 0);
+            break;
+        }
+        case pvFloat: {
+            float[] value = new float[length];
+            buffer.asFloatBuffer().get(value);
+            buffer.position(buffer.position() + 4*length);
+            ((PVFloatArray)pvArray).put(0, length, value, 0);
+            break;
+        }
+        case pvDouble: {
+            double[] value = new double[length];
+            buffer.asDoubleBuffer().get(value);
+            buffer.position(buffer.position() + 8*length);
+            ((PVDoubleArray)pvArray).put(0, length, value, 0);
+            break;
+        }
+        case pvString: {
+            String[] value = new String[length];
+            for(int i=0; i<length; i++) value[i] = readNullableString(buffer);
+            ((PVStringArray)pvArray).put(0, length, value, 0);
+            break;
+        }
+        default:
+            throw new IllegalArgumentException("scalarType " + scalarType + " is not supported");
+        }
+        if(!capacityMutable) pvArray.setCapacityMutable(false);
+    }
+}
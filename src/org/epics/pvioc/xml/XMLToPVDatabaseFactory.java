@@ -9,7 +9,6 @@ import java.util.ArrayList;
 import java.util.Map;
 import java.util.Stack;
 import java.util.TreeMap;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 
 import org.epics.pvdata.factory.BasePVAuxInfo;
@@ -44,6 +43,7 @@ import org.epics.pvioc.database.PVRecordCreateFactory;
 /**
  * Factory to convert an xml file to an IOCDatabase and put it in the database.
  * The only public methods are two versions of convert.
+ * Each call of convert has its own reader, so different threads can convert different files at the same time.
  * @author mrk
  *
  */
@@ -51,14 +51,9 @@ public class XMLToPVDatabaseFactory {
 	private static final PVRecordCreate pvRecordCreate = PVRecordCreateFactory.getPVRecordCreate();
     private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
     public static final FieldCreate fieldCreate = FieldFactory.getFieldCreate();
-    private static final AtomicBoolean isInUse = new AtomicBoolean(false);
-    private static IncludeSubstituteXMLReader iocxmlReader = IncludeSubstituteXMLReaderFactory.getReader();
     //  for use by private classes
     private static final Convert convert = ConvertFactory.getConvert();
     private static final Pattern commaPattern = Pattern.compile("[,]");
-    private static PVDatabase pvDatabase;
-    private static IncludeSubstituteXMLListener isListener;
-    private static XMLToPVDatabaseListener pvListener;
     
     /**
      * Convert an xml file to PVDatabase definitions and put the definitions in a database.
@@ -77,27 +72,16 @@ public class XMLToPVDatabaseFactory {
             IncludeSubstituteXMLListener isListener,
             IncludeSubstituteDetailsXMLListener detailsListener)
     {
-        boolean gotIt = isInUse.compareAndSet(false,true);
-        if(!gotIt) {
-            requester.message("XMLToIOCDBFactory.convert is already active",MessageType.fatalError);
-        }
+        IncludeSubstituteXMLReader iocxmlReader = IncludeSubstituteXMLReaderFactory.getReader();
+        IncludeSubstituteXMLListener listener = new Listener(iocxmlReader,pvDatabase,isListener,pvListener);
         try {
-            XMLToPVDatabaseFactory.pvDatabase = pvDatabase;
-            XMLToPVDatabaseFactory.isListener = isListener;
-            XMLToPVDatabaseFactory.pvListener = pvListener;
-            IncludeSubstituteXMLListener listener = new Listener();
-            try {
-                iocxmlReader.parse("database",fileName,requester,reportSubstitutionFailure,listener,detailsListener);
-            } catch (RuntimeException e) {
-                String message = "iocxmlReader.parse" + e.getMessage();
-            	requester.message(message,MessageType.error);
-            	
-            	e.printStackTrace();
-            }
-        } finally {
-            isInUse.set(false);
+            iocxmlReader.parse("database",fileName,requester,reportSubstitutionFailure,listener,detailsListener);
+        } catch (RuntimeException e) {
+            String message = "iocxmlReader.parse" + e.getMessage();
+            requester.message(message,MessageType.error);
+
+            e.printStackTrace();
         }
-        
     }
     /**
      * Convert an xml file to PVDatabase definitions and put the definitions in a database.
@@ -117,6 +101,20 @@ public class XMLToPVDatabaseFactory {
      */
     private static class Listener implements IncludeSubstituteXMLListener
     {
+        private final IncludeSubstituteXMLReader iocxmlReader;
+        private final PVDatabase pvDatabase;
+        private final IncludeSubstituteXMLListener isListener;
+        private final XMLToPVDatabaseListener pvListener;
+        
+        private Listener(IncludeSubstituteXMLReader iocxmlReader,PVDatabase pvDatabase,
+                IncludeSubstituteXMLListener isListener,XMLToPVDatabaseListener pvListener)
+        {
+            this.iocxmlReader = iocxmlReader;
+            this.pvDatabase = pvDatabase;
+            this.isListener = isListener;
+            this.pvListener = pvListener;
+        }
+        
         private enum State {
             idle,
             record,
@@ -0,0 +1,192 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.caV3;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import gov.aps.jca.CAStatus;
+import gov.aps.jca.cas.ProcessVariable;
+import gov.aps.jca.cas.ProcessVariableReadCallback;
+import gov.aps.jca.cas.ProcessVariableWriteCallback;
+import gov.aps.jca.dbr.DBR_Double;
+import junit.framework.TestCase;
+
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.Requester;
+import org.epics.pvioc.database.PVDatabase;
+import org.epics.pvioc.database.PVDatabaseFactory;
+import org.epics.pvioc.database.PVRecord;
+import org.epics.pvioc.install.Install;
+import org.epics.pvioc.install.InstallFactory;
+import org.epics.pvioc.support.RecordProcess;
+import org.epics.pvioc.xml.XMLToPVDatabaseFactory;
+
+
+/**
+ * JUnit test for reads and writes of a caV3 channel that process the record.
+ * The record has a delay of 0.5 seconds so that requests are queued while it is processing.
+ * @author mrk
+ *
+ */
+public class ProcessRequestTest extends TestCase {
+    private static final PVDatabase masterPVDatabase = PVDatabaseFactory.getMaster();
+    private static final Install install = InstallFactory.get();
+    private static MessageType maxMessageType = MessageType.info;
+    private static final Requester iocRequester = new RequesterForTesting("processRequestTest");
+    private static final String channelName = "caV3Delay.record[process=true]field(value,alarm,timeStamp)";
+    private static boolean isInstalled = false;
+
+    /**
+     * Asynchronous requests are completed in order after the record processes.
+     */
+    public static void testQueued() throws Exception {
+        if(!install()) return;
+        ProcessVariable processVariable = ServerFactory.attach(channelName, null);
+        ReadCallback first = new ReadCallback();
+        WriteCallback second = new WriteCallback();
+        ReadCallback third = new ReadCallback();
+        assertNull(processVariable.read(new DBR_Double(1), first));
+        assertNull(processVariable.write(createDBR(5.0), second));
+        assertNull(processVariable.read(new DBR_Double(1), third));
+        assertTrue(first.await());
+        assertTrue(second.await());
+        assertTrue(third.await());
+        assertEquals(CAStatus.NORMAL,first.status);
+        assertEquals(CAStatus.NORMAL,second.status);
+        assertEquals(CAStatus.NORMAL,third.status);
+        processVariable.destroy();
+        assertFalse(getRecordProcess().isActive());
+    }
+    /**
+     * destroy completes the active request, the queued requests, and a caller that waits.
+     */
+    public static void testDestroy() throws Exception {
+        if(!install()) return;
+        final ProcessVariable processVariable = ServerFactory.attach(channelName, null);
+        ReadCallback active = new ReadCallback();
+        WriteCallback queued = new WriteCallback();
+        assertNull(processVariable.read(new DBR_Double(1), active));
+        assertNull(processVariable.write(createDBR(10.0), queued));
+        // a write without a callback waits until it is completed
+        final CAStatus[] waitStatus = new CAStatus[1];
+        final CountDownLatch waitDone = new CountDownLatch(1);
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    waitStatus[0] = processVariable.write(createDBR(20.0), null);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    waitDone.countDown();
+                }
+            }
+        },"processRequestTest");
+        thread.start();
+        Thread.sleep(100);
+        processVariable.destroy();
+        assertTrue(active.await());
+        assertTrue(queued.await());
+        assertTrue(waitDone.await(5, TimeUnit.SECONDS));
+        assertEquals(CAStatus.CHANDESTROY,active.status);
+        assertEquals(CAStatus.CHANDESTROY,queued.status);
+        assertEquals(CAStatus.CHANDESTROY,waitStatus[0]);
+        // the callbacks are not called again when the record finishes processing
+        Thread.sleep(1000);
+        assertEquals(1,active.numberCalls);
+        assertEquals(1,queued.numberCalls);
+        assertFalse(getRecordProcess().isActive());
+        // the queued write was not put into the record
+        PVRecord pvRecord = masterPVDatabase.findRecord("caV3Delay");
+        assertTrue(pvRecord.getPVRecordStructure().getPVStructure().getDoubleField("value").get()!=10.0);
+        // requests after destroy are rejected
+        assertEquals(CAStatus.CHANDESTROY,processVariable.read(new DBR_Double(1), new ReadCallback()));
+        // a new channel can process the record so the token was released
+        ProcessVariable other = ServerFactory.attach(channelName, null);
+        ReadCallback read = new ReadCallback();
+        assertNull(other.read(new DBR_Double(1), read));
+        assertTrue(read.await());
+        assertEquals(CAStatus.NORMAL,read.status);
+        other.destroy();
+    }
+
+    private static boolean install() {
+        if(isInstalled) return true;
+        XMLToPVDatabaseFactory.convert(masterPVDatabase,"${JAVAIOC}/xml/structures.xml", iocRequester,false,null,null,null);
+        if(maxMessageType!=MessageType.info&&maxMessageType!=MessageType.warning) return false;
+        boolean ok = install.installRecords("test/org/epics/pvioc/caV3/processRequestPV.xml", iocRequester);
+        assertTrue(ok);
+        isInstalled = true;
+        return true;
+    }
+
+    private static RecordProcess getRecordProcess() {
+        return masterPVDatabase.findRecord("caV3Delay").getRecordProcess();
+    }
+
+    private static DBR_Double createDBR(double value) {
+        DBR_Double dbr = new DBR_Double(1);
+        dbr.getDoubleValue()[0] = value;
+        return dbr;
+    }
+
+    private static class ReadCallback implements ProcessVariableReadCallback {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile CAStatus status = null;
+        private volatile int numberCalls = 0;
+        /* (non-Javadoc)
+         * @see gov.aps.jca.cas.ProcessVariableReadCallback#processVariableReadCompleted(gov.aps.jca.CAStatus)
+         */
+        public void processVariableReadCompleted(CAStatus status) {
+            this.status = status;
+            numberCalls++;
+            done.countDown();
+        }
+
+        boolean await() throws InterruptedException {
+            return done.await(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static class WriteCallback implements ProcessVariableWriteCallback {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile CAStatus status = null;
+        private volatile int numberCalls = 0;
+        /* (non-Javadoc)
+         * @see gov.aps.jca.cas.ProcessVariableWriteCallback#processVariableWriteCompleted(gov.aps.jca.CAStatus)
+         */
+        public void processVariableWriteCompleted(CAStatus status) {
+            this.status = status;
+            numberCalls++;
+            done.countDown();
+        }
+
+        boolean await() throws InterruptedException {
+            return done.await(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static class RequesterForTesting implements Requester {
+        private String requesterName = null;
+
+        RequesterForTesting(String requesterName) {
+            this.requesterName = requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.util.Requester#getRequestorName()
+         */
+        public String getRequesterName() {
+            return requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.util.Requester#message(java.lang.String, org.epics.pvioc.util.MessageType)
+         */
+        public void message(String message, MessageType messageType) {
+            System.out.println(message);
+            if(messageType.ordinal()>maxMessageType.ordinal()) maxMessageType = messageType;
+        }
+    }
+}
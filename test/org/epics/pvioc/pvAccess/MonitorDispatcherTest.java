@@ -0,0 +1,140 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.pvAccess;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.Requester;
+
+
+/**
+ * JUnit test for MonitorDispatcher.
+ * @author mrk
+ *
+ */
+public class MonitorDispatcherTest extends TestCase {
+    /**
+     * Requests made while a task is queued or running result in at most one more dispatch.
+     */
+    public static void testCoalesce() {
+        MonitorDispatcher.Pool pool = new MonitorDispatcher.Pool("monitorDispatcherTestCoalesce",2);
+        BlockingTask task = new BlockingTask(pool);
+        task.schedule();
+        await(task.started);
+        // the task is running so these requests only mark it to run again
+        for(int i=0; i<100; i++) task.schedule();
+        assertEquals(1,task.numberDispatch.get());
+        task.release.countDown();
+        sleep(200);
+        assertEquals(2,task.numberDispatch.get());
+        // the second dispatch did not start until the first returned
+        assertEquals(1,task.maxConcurrent.get());
+        task.schedule();
+        sleep(200);
+        assertEquals(3,task.numberDispatch.get());
+    }
+    /**
+     * A slow task only holds one thread, so other tasks are still dispatched.
+     */
+    public static void testSlowTask() {
+        MonitorDispatcher.Pool pool = new MonitorDispatcher.Pool("monitorDispatcherTestSlow",2);
+        BlockingTask slow = new BlockingTask(pool);
+        final CountDownLatch fastDone = new CountDownLatch(10);
+        MonitorDispatcher.Task fast = new MonitorDispatcher.Task(new RequesterForTesting(),pool) {
+            protected void dispatch() {
+                fastDone.countDown();
+            }
+        };
+        slow.schedule();
+        await(slow.started);
+        for(int i=0; i<10; i++) {
+            fast.schedule();
+            sleep(10);
+        }
+        assertTrue(await(fastDone));
+        assertEquals(1,slow.numberDispatch.get());
+        slow.release.countDown();
+    }
+    /**
+     * An exception thrown by dispatch is given to the requester and the thread keeps running.
+     */
+    public static void testException() {
+        MonitorDispatcher.Pool pool = new MonitorDispatcher.Pool("monitorDispatcherTestException",1);
+        RequesterForTesting requester = new RequesterForTesting();
+        final CountDownLatch done = new CountDownLatch(1);
+        MonitorDispatcher.Task failing = new MonitorDispatcher.Task(requester,pool) {
+            protected void dispatch() {
+                throw new IllegalStateException("failing task");
+            }
+        };
+        MonitorDispatcher.Task next = new MonitorDispatcher.Task(requester,pool) {
+            protected void dispatch() {
+                done.countDown();
+            }
+        };
+        failing.schedule();
+        next.schedule();
+        assertTrue(await(done));
+        assertEquals(1,requester.numberErrors.get());
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    private static void sleep(long milliseconds) {
+        try {
+            Thread.sleep(milliseconds);
+        } catch (InterruptedException e) {}
+    }
+
+    private static class BlockingTask extends MonitorDispatcher.Task {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger numberDispatch = new AtomicInteger(0);
+        private final AtomicInteger numberActive = new AtomicInteger(0);
+        private final AtomicInteger maxConcurrent = new AtomicInteger(0);
+
+        private BlockingTask(MonitorDispatcher.Pool pool) {
+            super(new RequesterForTesting(),pool);
+        }
+
+        protected void dispatch() {
+            int active = numberActive.incrementAndGet();
+            if(active>maxConcurrent.get()) maxConcurrent.set(active);
+            numberDispatch.incrementAndGet();
+            started.countDown();
+            await(release);
+            numberActive.decrementAndGet();
+        }
+    }
+
+    private static class RequesterForTesting implements Requester {
+        private final AtomicInteger numberErrors = new AtomicInteger(0);
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.Requester#getRequesterName()
+         */
+        public String getRequesterName() {
+            return "monitorDispatcherTest";
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.Requester#message(java.lang.String, org.epics.pvdata.pv.MessageType)
+         */
+        public void message(String message, MessageType messageType) {
+            System.out.println(message);
+            if(messageType==MessageType.error) numberErrors.incrementAndGet();
+        }
+    }
+}
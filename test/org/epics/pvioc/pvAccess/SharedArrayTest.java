@@ -0,0 +1,130 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.pvAccess;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.pv.DoubleArrayData;
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.PVDoubleArray;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.Requester;
+import org.epics.pvdata.pv.ScalarType;
+import org.epics.pvioc.database.PVDatabase;
+import org.epics.pvioc.database.PVDatabaseFactory;
+import org.epics.pvioc.database.PVRecord;
+import org.epics.pvioc.xml.XMLToPVDatabaseFactory;
+
+
+/**
+ * JUnit test for SharedArrayFactory.
+ * @author mrk
+ *
+ */
+public class SharedArrayTest extends TestCase {
+    private final static PVDatabase master = PVDatabaseFactory.getMaster();
+
+    /**
+     * Readers share a copy until the record changes and a referenced copy is never overwritten.
+     */
+    public static void testReferenceCount() {
+        PVRecord pvRecord = getRecord();
+        PVDoubleArray pvArray = (PVDoubleArray)pvRecord.getPVRecordStructure().getPVStructure()
+            .getScalarArrayField("value", ScalarType.pvDouble);
+        put(pvRecord,pvArray,new double[]{1.0,2.0,3.0});
+        SharedArray first = SharedArrayFactory.acquire(pvRecord, pvArray);
+        SharedArray second = SharedArrayFactory.acquire(pvRecord, pvArray);
+        // the record did not change so both readers get the same copy
+        assertSame(first,second);
+        check(first,new double[]{1.0,2.0,3.0});
+        put(pvRecord,pvArray,new double[]{4.0,5.0});
+        SharedArray third = SharedArrayFactory.acquire(pvRecord, pvArray);
+        assertNotSame(first,third);
+        assertNotSame(first.getPVScalarArray(),third.getPVScalarArray());
+        check(third,new double[]{4.0,5.0});
+        // first is still referenced so it was not overwritten
+        check(first,new double[]{1.0,2.0,3.0});
+        first.release();
+        put(pvRecord,pvArray,new double[]{6.0});
+        SharedArray fourth = SharedArrayFactory.acquire(pvRecord, pvArray);
+        // second still holds the first copy and third holds its own
+        assertNotSame(first,fourth);
+        assertNotSame(third,fourth);
+        check(second,new double[]{1.0,2.0,3.0});
+        check(third,new double[]{4.0,5.0});
+        check(fourth,new double[]{6.0});
+        second.release();
+        put(pvRecord,pvArray,new double[]{7.0,8.0});
+        SharedArray fifth = SharedArrayFactory.acquire(pvRecord, pvArray);
+        // the first copy has no references so its buffer is reused
+        assertSame(first.getPVScalarArray(),fifth.getPVScalarArray());
+        check(fifth,new double[]{7.0,8.0});
+        check(third,new double[]{4.0,5.0});
+        check(fourth,new double[]{6.0});
+        // an extra reference keeps a copy after the reader that acquired it releases it
+        fourth.acquire();
+        fourth.release();
+        put(pvRecord,pvArray,new double[]{9.0});
+        SharedArray sixth = SharedArrayFactory.acquire(pvRecord, pvArray);
+        assertNotSame(fourth.getPVScalarArray(),sixth.getPVScalarArray());
+        check(fourth,new double[]{6.0});
+        third.release();
+        fourth.release();
+        fifth.release();
+        sixth.release();
+    }
+
+    private static PVRecord getRecord() {
+        PVRecord pvRecord = master.findRecord("doubleArray");
+        if(pvRecord!=null) return pvRecord;
+        Requester iocRequester = new RequesterForTesting("sharedArrayTest");
+        XMLToPVDatabaseFactory.convert(master,"${JAVAIOC}/xml/structures.xml", iocRequester);
+        XMLToPVDatabaseFactory.convert(master,"${JAVAIOC}/test/org/epics/pvioc/pvCopy/scalarArray.xml", iocRequester);
+        pvRecord = master.findRecord("doubleArray");
+        assertNotNull(pvRecord);
+        return pvRecord;
+    }
+
+    private static void put(PVRecord pvRecord,PVDoubleArray pvArray,double[] value) {
+        pvRecord.lock();
+        try {
+            pvArray.setLength(value.length);
+            pvArray.put(0, value.length, value, 0);
+        } finally {
+            pvRecord.unlock();
+        }
+    }
+
+    private static void check(SharedArray sharedArray,double[] expected) {
+        PVDoubleArray pvArray = (PVDoubleArray)sharedArray.getPVScalarArray();
+        assertEquals(expected.length,pvArray.getLength());
+        DoubleArrayData data = new DoubleArrayData();
+        pvArray.get(0, expected.length, data);
+        for(int i=0; i<expected.length; i++) {
+            assertEquals(expected[i],data.data[data.offset + i],0.0);
+        }
+    }
+
+    private static class RequesterForTesting implements Requester {
+        private String requesterName = null;
+
+        RequesterForTesting(String requesterName) {
+            this.requesterName = requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.Requester#getRequesterName()
+         */
+        public String getRequesterName() {
+            return requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.Requester#message(java.lang.String, org.epics.pvdata.pv.MessageType)
+         */
+        public void message(String message, MessageType messageType) {
+            System.out.println(message);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.pvAccess;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.factory.ConvertFactory;
+import org.epics.pvdata.factory.FieldFactory;
+import org.epics.pvdata.factory.PVDataFactory;
+import org.epics.pvdata.pv.Convert;
+import org.epics.pvdata.pv.DoubleArrayData;
+import org.epics.pvdata.pv.Field;
+import org.epics.pvdata.pv.FieldCreate;
+import org.epics.pvdata.pv.IntArrayData;
+import org.epics.pvdata.pv.PVDataCreate;
+import org.epics.pvdata.pv.PVDoubleArray;
+import org.epics.pvdata.pv.PVIntArray;
+import org.epics.pvdata.pv.PVScalarArray;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.PVStructureArray;
+import org.epics.pvdata.pv.PVUnion;
+import org.epics.pvdata.pv.PVUnionArray;
+import org.epics.pvdata.pv.ScalarType;
+import org.epics.pvdata.pv.Structure;
+import org.epics.pvdata.pv.StructureArrayData;
+import org.epics.pvdata.pv.UnionArrayData;
+
+
+/**
+ * JUnit test for StridedArrayCopy.
+ * @author mrk
+ *
+ */
+public class StridedArrayCopyTest extends TestCase {
+    private static final Convert convert = ConvertFactory.getConvert();
+    private static final FieldCreate fieldCreate = FieldFactory.getFieldCreate();
+    private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
+    private static final ScalarType[] scalarTypes = {
+        ScalarType.pvBoolean,ScalarType.pvByte,ScalarType.pvShort,ScalarType.pvInt,
+        ScalarType.pvLong,ScalarType.pvFloat,ScalarType.pvDouble,ScalarType.pvString
+    };
+    private static final int length = 10;
+
+    /**
+     * The count is rounded up to include a partial stride and is limited by the length.
+     */
+    public static void testGetCount() {
+        // elements 0,3,6,9
+        assertEquals(4,StridedArrayCopy.getCount(length,0,0,3));
+        // elements 1,4,7
+        assertEquals(3,StridedArrayCopy.getCount(length,1,0,3));
+        assertEquals(2,StridedArrayCopy.getCount(length,0,2,3));
+        assertEquals(length,StridedArrayCopy.getCount(length,0,100,1));
+        assertEquals(length,StridedArrayCopy.getCount(length,0,-1,1));
+        assertEquals(1,StridedArrayCopy.getCount(length,9,0,5));
+        assertEquals(1,StridedArrayCopy.getCount(length,0,0,length));
+        assertEquals(0,StridedArrayCopy.getCount(length,length,0,1));
+        assertEquals(0,StridedArrayCopy.getCount(length,length + 5,3,2));
+        assertEquals(0,StridedArrayCopy.getCount(0,0,0,1));
+    }
+    /**
+     * get of each scalar type.
+     */
+    public static void testGetScalar() {
+        for(ScalarType scalarType : scalarTypes) {
+            PVScalarArray from = createSource(scalarType);
+            PVScalarArray to = pvDataCreate.createPVScalarArray(scalarType);
+            assertEquals(scalarType.name(),3,StridedArrayCopy.get(from, 1, 0, 3, to));
+            checkElements(scalarType.name(),to,new int[]{1,4,7});
+            assertEquals(scalarType.name(),2,StridedArrayCopy.get(from, 0, 2, 4, to));
+            checkElements(scalarType.name(),to,new int[]{0,4});
+            // an offset at or beyond the length gives an empty result
+            assertEquals(scalarType.name(),0,StridedArrayCopy.get(from, length, 0, 1, to));
+            assertEquals(scalarType.name(),0,to.getLength());
+            StridedArrayCopy.get(from, 0, 1, 1, to);
+            assertEquals(scalarType.name(),0,StridedArrayCopy.get(from, length + 3, 2, 2, to));
+            assertEquals(scalarType.name(),0,to.getLength());
+        }
+    }
+    /**
+     * put of each scalar type, including a put that makes the destination longer.
+     */
+    public static void testPutScalar() {
+        for(ScalarType scalarType : scalarTypes) {
+            PVScalarArray from = createSource(scalarType);
+            PVScalarArray to = pvDataCreate.createPVScalarArray(scalarType);
+            to.setLength(2);
+            // elements 0,1,2 of from go to elements 1,4,7 of to
+            assertEquals(scalarType.name(),3,StridedArrayCopy.put(from, 3, to, 1, 3));
+            assertEquals(scalarType.name(),8,to.getLength());
+            String[] values = getStrings(to);
+            String[] expected = getStrings(from);
+            for(int i=0; i<3; i++) assertEquals(scalarType.name(),expected[i],values[1 + i*3]);
+            // a put that fits does not change the length
+            assertEquals(scalarType.name(),2,StridedArrayCopy.put(from, 2, to, 0, 2));
+            assertEquals(scalarType.name(),8,to.getLength());
+            values = getStrings(to);
+            assertEquals(scalarType.name(),expected[0],values[0]);
+            assertEquals(scalarType.name(),expected[1],values[2]);
+            assertEquals(scalarType.name(),expected[1],values[4]);
+            // count <= 0 means all of from
+            to.setLength(0);
+            assertEquals(scalarType.name(),length,StridedArrayCopy.put(from, 0, to, 0, 2));
+            assertEquals(scalarType.name(),2*length - 1,to.getLength());
+        }
+    }
+    /**
+     * Arrays with different element types are copied with convert.
+     */
+    public static void testConvert() {
+        PVIntArray from = (PVIntArray)pvDataCreate.createPVScalarArray(ScalarType.pvInt);
+        int[] value = new int[length];
+        for(int i=0; i<length; i++) value[i] = i*10;
+        from.put(0, length, value, 0);
+        PVDoubleArray to = (PVDoubleArray)pvDataCreate.createPVScalarArray(ScalarType.pvDouble);
+        assertEquals(4,StridedArrayCopy.get(from, 0, 0, 3, to));
+        DoubleArrayData doubleData = new DoubleArrayData();
+        to.get(0, to.getLength(), doubleData);
+        assertEquals(4,to.getLength());
+        for(int i=0; i<4; i++) assertEquals(i*30.0,doubleData.data[doubleData.offset + i],0.0);
+        PVIntArray back = (PVIntArray)pvDataCreate.createPVScalarArray(ScalarType.pvInt);
+        assertEquals(4,StridedArrayCopy.put(to, 0, back, 2, 2));
+        assertEquals(9,back.getLength());
+        IntArrayData intData = new IntArrayData();
+        back.get(0, back.getLength(), intData);
+        for(int i=0; i<4; i++) assertEquals(i*30,intData.data[intData.offset + 2 + i*2]);
+        assertEquals(0,intData.data[intData.offset + 3]);
+    }
+    /**
+     * Structure array elements are shared, not copied.
+     */
+    public static void testStructureArray() {
+        Structure structure = fieldCreate.createStructure(
+            new String[]{"value"},
+            new Field[]{fieldCreate.createScalar(ScalarType.pvDouble)});
+        PVStructureArray from = pvDataCreate.createPVStructureArray(fieldCreate.createStructureArray(structure));
+        PVStructure[] elements = new PVStructure[length];
+        for(int i=0; i<length; i++) {
+            elements[i] = pvDataCreate.createPVStructure(structure);
+            elements[i].getDoubleField("value").put(i);
+        }
+        from.put(0, length, elements, 0);
+        PVStructureArray to = pvDataCreate.createPVStructureArray(fieldCreate.createStructureArray(structure));
+        assertEquals(3,StridedArrayCopy.get(from, 2, 0, 3, to));
+        assertEquals(3,to.getLength());
+        StructureArrayData data = new StructureArrayData();
+        to.get(0, 3, data);
+        for(int i=0; i<3; i++) assertSame(elements[2 + i*3],data.data[data.offset + i]);
+        assertEquals(0,StridedArrayCopy.get(from, length, 0, 1, to));
+        assertEquals(0,to.getLength());
+        assertEquals(3,StridedArrayCopy.put(from, 3, to, 1, 4));
+        assertEquals(10,to.getLength());
+        to.get(0, to.getLength(), data);
+        for(int i=0; i<3; i++) assertSame(elements[i],data.data[data.offset + 1 + i*4]);
+    }
+    /**
+     * Union array elements are shared, not copied.
+     */
+    public static void testUnionArray() {
+        PVUnionArray from = pvDataCreate.createPVUnionArray(fieldCreate.createVariantUnionArray());
+        PVUnion[] elements = new PVUnion[length];
+        for(int i=0; i<length; i++) elements[i] = pvDataCreate.createPVVariantUnion();
+        from.put(0, length, elements, 0);
+        PVUnionArray to = pvDataCreate.createPVUnionArray(fieldCreate.createVariantUnionArray());
+        assertEquals(5,StridedArrayCopy.get(from, 0, 0, 2, to));
+        assertEquals(5,to.getLength());
+        UnionArrayData data = new UnionArrayData();
+        to.get(0, 5, data);
+        for(int i=0; i<5; i++) assertSame(elements[i*2],data.data[data.offset + i]);
+        assertEquals(0,StridedArrayCopy.get(from, length + 1, 0, 1, to));
+        assertEquals(0,to.getLength());
+        assertEquals(2,StridedArrayCopy.put(from, 2, to, 3, 3));
+        assertEquals(7,to.getLength());
+        to.get(0, to.getLength(), data);
+        assertSame(elements[0],data.data[data.offset + 3]);
+        assertSame(elements[1],data.data[data.offset + 6]);
+    }
+
+    // element i has the value i, or i%2==1 for boolean
+    private static PVScalarArray createSource(ScalarType scalarType) {
+        PVScalarArray pvArray = pvDataCreate.createPVScalarArray(scalarType);
+        String[] values = new String[length];
+        for(int i=0; i<length; i++) {
+            values[i] = (scalarType==ScalarType.pvBoolean) ? String.valueOf(i%2==1) : String.valueOf(i);
+        }
+        convert.fromStringArray(pvArray, 0, length, values, 0);
+        return pvArray;
+    }
+
+    private static String[] getStrings(PVScalarArray pvArray) {
+        int length = pvArray.getLength();
+        String[] values = new String[length];
+        convert.toStringArray(pvArray, 0, length, values, 0);
+        return values;
+    }
+
+    private static void checkElements(String description,PVScalarArray to,int[] indexes) {
+        assertEquals(description,indexes.length,to.getLength());
+        String[] values = getStrings(to);
+        String[] expected = getStrings(createSource(to.getScalarArray().getElementType()));
+        for(int i=0; i<indexes.length; i++) assertEquals(description,expected[indexes[i]],values[i]);
+    }
+}
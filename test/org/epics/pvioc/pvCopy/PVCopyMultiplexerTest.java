@@ -0,0 +1,146 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.pvCopy;
+
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.copy.CreateRequest;
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.PVDouble;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.Requester;
+import org.epics.pvioc.database.PVDatabase;
+import org.epics.pvioc.database.PVDatabaseFactory;
+import org.epics.pvioc.database.PVRecord;
+import org.epics.pvioc.database.PVReplaceFactory;
+import org.epics.pvioc.pvAccess.PVCopyMultiplexer;
+import org.epics.pvioc.pvAccess.PVCopyMultiplexerFactory;
+import org.epics.pvioc.xml.XMLToPVDatabaseFactory;
+
+
+/**
+ * JUnit test for PVCopyMultiplexer.
+ * Equivalent requests for a record share one multiplexer and every subscriber gets the same snapshot.
+ * @author mrk
+ *
+ */
+public class PVCopyMultiplexerTest extends TestCase {
+    private final static PVDatabase master = PVDatabaseFactory.getMaster();
+    private static final CreateRequest createRequest = CreateRequest.create();
+    private static final String request = "field(alarm,timeStamp,power{value,alarm})";
+
+    /**
+     * Concurrent creates for an equivalent pvRequest return the same multiplexer.
+     */
+    public static void testConcurrentCreate() {
+        final PVRecord pvRecord = getRecord();
+        final PVStructure pvRequest = createPVRequest(request);
+        final int numberThreads = 8;
+        final PVCopyMultiplexer[] multiplexers = new PVCopyMultiplexer[numberThreads];
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(numberThreads);
+        for(int i=0; i<numberThreads; i++) {
+            final int index = i;
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        multiplexers[index] = PVCopyMultiplexerFactory.create(pvRecord, pvRequest, "field");
+                    } catch (InterruptedException e) {
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            },"multiplexerTest" + i);
+            thread.start();
+        }
+        start.countDown();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            fail(e.getMessage());
+        }
+        assertNotNull(multiplexers[0]);
+        for(int i=1; i<numberThreads; i++) assertSame(multiplexers[0],multiplexers[i]);
+        // the record options are not part of the comparison
+        PVStructure pvOther = createPVRequest("record[queueSize=5]" + request);
+        assertSame(multiplexers[0],PVCopyMultiplexerFactory.create(pvRecord, pvOther, "field"));
+        assertNotSame(multiplexers[0],PVCopyMultiplexerFactory.create(pvRecord, createPVRequest("field(power{value})"), "field"));
+    }
+    /**
+     * Subscribers of equivalent requests get the same snapshot.
+     */
+    public static void testSharedSnapshot() {
+        PVRecord pvRecord = getRecord();
+        PVCopyMultiplexer multiplexer = PVCopyMultiplexerFactory.create(pvRecord, createPVRequest(request), "field");
+        SubscriberForTesting first = new SubscriberForTesting();
+        SubscriberForTesting second = new SubscriberForTesting();
+        multiplexer.addSubscriber(first);
+        PVCopyMultiplexer other = PVCopyMultiplexerFactory.create(pvRecord, createPVRequest("record[queueSize=3]" + request), "field");
+        assertSame(multiplexer,other);
+        other.addSubscriber(second);
+        // the second subscriber starts with the latest snapshot
+        assertNotNull(first.snapshot);
+        assertSame(first.snapshot,second.snapshot);
+        PVDouble pvPower = (PVDouble)pvRecord.getPVRecordStructure().getPVStructure().getSubField("power.value");
+        pvRecord.lock();
+        try {
+            pvRecord.beginGroupPut();
+            pvPower.put(pvPower.get() + 1.0);
+            pvRecord.endGroupPut();
+        } finally {
+            pvRecord.unlock();
+        }
+        PVCopyMultiplexer.Snapshot snapshot = first.snapshot;
+        assertEquals(2,first.numberChanged);
+        assertEquals(2,second.numberChanged);
+        assertSame(snapshot,second.snapshot);
+        PVDouble pvCopyPower = (PVDouble)snapshot.getPVStructure().getSubField("power.value");
+        assertEquals(pvPower.get(),pvCopyPower.get(),0.0);
+        multiplexer.removeSubscriber(first);
+        multiplexer.removeSubscriber(second);
+        // the last subscriber is gone so a new multiplexer is created
+        assertNotSame(multiplexer,PVCopyMultiplexerFactory.create(pvRecord, createPVRequest(request), "field"));
+    }
+
+    private static PVRecord getRecord() {
+        PVRecord pvRecord = master.findRecord("powerSupply");
+        if(pvRecord!=null) return pvRecord;
+        Requester iocRequester = new RequesterForTesting("multiplexerTest");
+        XMLToPVDatabaseFactory.convert(master,"${JAVAIOC}/xml/structures.xml", iocRequester);
+        XMLToPVDatabaseFactory.convert(master,"${JAVAIOC}/test/org/epics/pvioc/pvCopy/powerSupply.xml", iocRequester);
+        PVReplaceFactory.replace(master);
+        pvRecord = master.findRecord("powerSupply");
+        assertNotNull(pvRecord);
+        return pvRecord;
+    }
+
+    private static PVStructure createPVRequest(String request) {
+        PVStructure pvRequest = createRequest.createRequest(request);
+        if(pvRequest==null) System.out.printf("message %s messageType %s%n",createRequest.getMessage(),MessageType.error.name());
+        assertNotNull(pvRequest);
+        return pvRequest;
+    }
+
+    private static class SubscriberForTesting implements PVCopyMultiplexer.Subscriber {
+        private PVCopyMultiplexer.Snapshot snapshot = null;
+        private int numberChanged = 0;
+
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.pvAccess.PVCopyMultiplexer.Subscriber#dataChanged(org.epics.pvioc.pvAccess.PVCopyMultiplexer.Snapshot)
+         */
+        public void dataChanged(PVCopyMultiplexer.Snapshot snapshot) {
+            this.snapshot = snapshot;
+            numberChanged++;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.pvAccess.PVCopyMultiplexer.Subscriber#unlisten()
+         */
+        public void unlisten() {}
+    }
+}
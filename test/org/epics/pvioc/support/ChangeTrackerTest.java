@@ -0,0 +1,113 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.support;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.misc.BitSet;
+import org.epics.pvdata.pv.DoubleArrayData;
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.PVDouble;
+import org.epics.pvdata.pv.PVDoubleArray;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.Requester;
+import org.epics.pvdata.pv.ScalarType;
+import org.epics.pvioc.database.PVChangeTracker;
+import org.epics.pvioc.database.PVChangeTrackerFactory;
+import org.epics.pvioc.database.PVDatabase;
+import org.epics.pvioc.database.PVDatabaseFactory;
+import org.epics.pvioc.database.PVRecord;
+import org.epics.pvioc.install.Install;
+import org.epics.pvioc.install.InstallFactory;
+import org.epics.pvioc.xml.XMLToPVDatabaseFactory;
+
+
+/**
+ * JUnit test for PVChangeTracker.
+ * @author mrk
+ *
+ */
+public class ChangeTrackerTest extends TestCase {
+    private static final PVDatabase masterPVDatabase = PVDatabaseFactory.getMaster();
+    private static final Install install = InstallFactory.get();
+    private static MessageType maxMessageType = MessageType.info;
+    private static final Requester iocRequester = new RequesterForTesting("changeTrackerTest");
+    /**
+     * Only fields that were put since the last clear are reported as changed.
+     */
+    public static void testChangeTracker() {
+        XMLToPVDatabaseFactory.convert(masterPVDatabase,"${JAVAIOC}/xml/structures.xml", iocRequester,false,null,null,null);
+        if(maxMessageType!=MessageType.info&&maxMessageType!=MessageType.warning) return;
+        boolean ok = install.installRecords("test/org/epics/pvioc/support/changeTrackerPV.xml", iocRequester);
+        assertTrue(ok);
+        PVRecord pvRecord = masterPVDatabase.findRecord("changeTracker");
+        assertNotNull(pvRecord);
+        PVStructure pvStructure = pvRecord.getPVRecordStructure().getPVStructure();
+        PVDouble pvValue = pvStructure.getDoubleField("value");
+        PVDoubleArray pvArray = (PVDoubleArray)pvStructure.getScalarArrayField("array",ScalarType.pvDouble);
+        PVDouble pvOther = pvStructure.getDoubleField("other");
+        assertNotNull(pvArray);
+        pvRecord.lock();
+        try {
+            PVChangeTracker changeTracker = PVChangeTrackerFactory.create(pvRecord);
+            assertTrue(changeTracker.addField(pvRecord.findPVRecordField(pvValue)));
+            assertTrue(changeTracker.addField(pvRecord.findPVRecordField(pvArray)));
+            // until the first clear everything is changed and the changes are not known
+            assertTrue(changeTracker.isChanged(pvValue));
+            assertFalse(changeTracker.getChanged(pvValue, new BitSet(1)));
+            changeTracker.clear();
+            assertFalse(changeTracker.isChanged(pvValue));
+            assertFalse(changeTracker.isChanged(pvArray));
+            BitSet bitSet = new BitSet(1);
+            assertTrue(changeTracker.getChanged(pvValue, bitSet));
+            assertTrue(bitSet.nextSetBit(0)<0);
+            pvValue.put(1.0);
+            assertTrue(changeTracker.isChanged(pvValue));
+            assertFalse(changeTracker.isChanged(pvArray));
+            assertTrue(changeTracker.getChanged(pvValue, bitSet));
+            assertTrue(bitSet.get(0));
+            // a field that is not tracked is never seen
+            pvOther.put(1.0);
+            changeTracker.clear();
+            assertFalse(changeTracker.isChanged(pvValue));
+            // an array modified in place is not seen until postPut is called
+            DoubleArrayData data = new DoubleArrayData();
+            pvArray.get(0, pvArray.getLength(), data);
+            data.data[data.offset] = 10.0;
+            assertFalse(changeTracker.isChanged(pvArray));
+            pvArray.postPut();
+            assertTrue(changeTracker.isChanged(pvArray));
+            // after destroy every field is changed
+            changeTracker.clear();
+            changeTracker.destroy();
+            assertTrue(changeTracker.isChanged(pvValue));
+            assertFalse(changeTracker.addField(pvRecord.findPVRecordField(pvValue)));
+        } finally {
+            pvRecord.unlock();
+        }
+    }
+    
+    private static class RequesterForTesting implements Requester {
+        private String requesterName = null;
+        
+        RequesterForTesting(String requesterName) {
+            this.requesterName = requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.util.Requester#getRequestorName()
+         */
+        public String getRequesterName() {
+            return requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.util.Requester#message(java.lang.String, org.epics.pvioc.util.MessageType)
+         */
+        public void message(String message, MessageType messageType) {
+            System.out.println(message);
+            if(messageType.ordinal()>maxMessageType.ordinal()) maxMessageType = messageType;
+        }
+    }
+}
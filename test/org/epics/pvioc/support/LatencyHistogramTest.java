@@ -0,0 +1,104 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.support;
+
+import junit.framework.TestCase;
+
+
+/**
+ * JUnit test for LatencyHistogram.
+ * @author mrk
+ *
+ */
+public class LatencyHistogramTest extends TestCase {
+    private static final double delta = 1e-9;
+    /**
+     * Values below 64 have their own bucket.
+     */
+    public static void testExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5);
+        assertEquals(0.005,histogram.getValueAtPercentile(50.0),delta);
+        histogram.reset();
+        for(int i=1; i<=63; i++) histogram.record(i);
+        assertEquals(0.001,histogram.getValueAtPercentile(0.0),delta);
+        assertEquals(0.032,histogram.getValueAtPercentile(50.0),delta);
+        assertEquals(0.063,histogram.getValueAtPercentile(100.0),delta);
+    }
+    /**
+     * Above 63 a value is reported as the middle of its bucket.
+     */
+    public static void testBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 64 and 65 share a bucket and 66 starts the next one
+        histogram.record(64);
+        histogram.record(1000);
+        assertEquals(0.065,histogram.getValueAtPercentile(50.0),delta);
+        histogram.reset();
+        histogram.record(65);
+        histogram.record(1000);
+        assertEquals(0.065,histogram.getValueAtPercentile(50.0),delta);
+        histogram.reset();
+        histogram.record(66);
+        histogram.record(1000);
+        assertEquals(0.067,histogram.getValueAtPercentile(50.0),delta);
+        // the relative error is bounded
+        for(long value=64; value<(1L<<39); value = value*3/2 + 7) {
+            histogram.reset();
+            histogram.record(value);
+            histogram.record(1L<<39);
+            double expected = value/1000.0;
+            double actual = histogram.getValueAtPercentile(50.0);
+            assertTrue(Math.abs(actual-expected)<=expected*0.03);
+        }
+        histogram.reset();
+        histogram.record(1000000);
+        histogram.record(2000000);
+        assertEquals(1000.0,histogram.getValueAtPercentile(50.0),1000.0*0.03);
+        assertEquals(2000.0,histogram.getValueAtPercentile(100.0),2000.0*0.03);
+    }
+    /**
+     * Values of 2 to the 40 or more are in the last bucket and a percentile is never above the maximum.
+     */
+    public static void testOverflow() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long value = 1L<<40;
+        histogram.record(value);
+        assertEquals(value/1000.0,histogram.getValueAtPercentile(50.0),delta);
+        assertEquals(value/1000.0,histogram.getMax(),delta);
+        histogram.record(Long.MAX_VALUE/2);
+        assertTrue(histogram.getValueAtPercentile(100.0)<=histogram.getMax());
+        histogram.reset();
+        histogram.record(1000000);
+        assertEquals(1000.0,histogram.getValueAtPercentile(50.0),delta);
+    }
+    /**
+     * count, mean, max, reset and show.
+     */
+    public static void testStatistics() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0,histogram.getCount());
+        assertEquals(0.0,histogram.getMean(),delta);
+        assertEquals(0.0,histogram.getValueAtPercentile(50.0),delta);
+        histogram.record(-5);
+        assertEquals(1,histogram.getCount());
+        assertEquals(0.0,histogram.getMean(),delta);
+        assertEquals(0.0,histogram.getMax(),delta);
+        assertEquals(0.0,histogram.getValueAtPercentile(50.0),delta);
+        histogram.reset();
+        histogram.record(1000);
+        histogram.record(3000);
+        assertEquals(2,histogram.getCount());
+        assertEquals(2.0,histogram.getMean(),delta);
+        assertEquals(3.0,histogram.getMax(),delta);
+        assertTrue(histogram.show().startsWith("count 2 mean "));
+        histogram.reset();
+        assertEquals(0,histogram.getCount());
+        assertEquals(0.0,histogram.getMax(),delta);
+        assertEquals(0.0,histogram.getValueAtPercentile(99.0),delta);
+        assertTrue(histogram.show().startsWith("count 0 "));
+    }
+}
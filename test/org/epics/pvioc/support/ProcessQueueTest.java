@@ -0,0 +1,162 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.support;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.Requester;
+import org.epics.pvioc.database.PVDatabase;
+import org.epics.pvioc.database.PVDatabaseFactory;
+import org.epics.pvioc.database.PVRecord;
+import org.epics.pvioc.install.Install;
+import org.epics.pvioc.install.InstallFactory;
+import org.epics.pvioc.util.RequestResult;
+import org.epics.pvioc.xml.XMLToPVDatabaseFactory;
+
+
+/**
+ * JUnit test for the process request queue of RecordProcess.
+ * @author mrk
+ *
+ */
+public class ProcessQueueTest extends TestCase {
+    private static final PVDatabase masterPVDatabase = PVDatabaseFactory.getMaster();
+    private static final Install install = InstallFactory.get();
+    private static MessageType maxMessageType = MessageType.info;
+    private static final Requester iocRequester = new RequesterForTesting("processQueueTest");
+    private static final ArrayList<String> processOrder = new ArrayList<String>();
+    private static final ArrayList<String> canNotProcess = new ArrayList<String>();
+    /**
+     * Requests made while the record is active are processed once each, in order.
+     */
+    public static void testQueue() {
+        XMLToPVDatabaseFactory.convert(masterPVDatabase,"${JAVAIOC}/xml/structures.xml", iocRequester,false,null,null,null);
+        if(maxMessageType!=MessageType.info&&maxMessageType!=MessageType.warning) return;
+        boolean ok = install.installRecords("test/org/epics/pvioc/support/processQueuePV.xml", iocRequester);
+        assertTrue(ok);
+        PVRecord pvRecord = masterPVDatabase.findRecord("processQueue");
+        assertNotNull(pvRecord);
+        RecordProcess recordProcess = pvRecord.getRecordProcess();
+        TestRequester a = new TestRequester(recordProcess,"a",true);
+        TestRequester b = new TestRequester(recordProcess,"b",false);
+        TestRequester c = new TestRequester(recordProcess,"c",false);
+        recordProcess.queueProcessRequest(a.processToken);
+        assertTrue(recordProcess.isActive());
+        assertEquals(1,processOrder.size());
+        // the record is left active by a so these are queued
+        recordProcess.queueProcessRequest(b.processToken);
+        recordProcess.queueProcessRequest(c.processToken);
+        recordProcess.queueProcessRequest(b.processToken);
+        assertEquals(1,processOrder.size());
+        assertEquals(0,canNotProcess.size());
+        recordProcess.setInactive(a.processToken);
+        assertEquals(3,processOrder.size());
+        assertEquals("a",processOrder.get(0));
+        assertEquals("b",processOrder.get(1));
+        assertEquals("c",processOrder.get(2));
+        assertFalse(recordProcess.isActive());
+        // the active requester can not queue another request
+        recordProcess.queueProcessRequest(a.processToken);
+        assertEquals(4,processOrder.size());
+        recordProcess.queueProcessRequest(a.processToken);
+        assertEquals(1,canNotProcess.size());
+        recordProcess.setInactive(a.processToken);
+        a.release();
+        b.release();
+        c.release();
+    }
+    
+    private static class RequesterForTesting implements Requester {
+        private String requesterName = null;
+        
+        RequesterForTesting(String requesterName) {
+            this.requesterName = requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.util.Requester#getRequestorName()
+         */
+        public String getRequesterName() {
+            return requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.util.Requester#message(java.lang.String, org.epics.pvioc.util.MessageType)
+         */
+        public void message(String message, MessageType messageType) {
+            System.out.println(message);
+            if(messageType.ordinal()>maxMessageType.ordinal()) maxMessageType = messageType;
+        }
+    }
+    
+    private static class TestRequester implements RecordProcessRequester {
+        private final RecordProcess recordProcess;
+        private final String name;
+        private final boolean leaveActive;
+        private final ProcessToken processToken;
+        
+        private TestRequester(RecordProcess recordProcess,String name,boolean leaveActive) {
+            this.recordProcess = recordProcess;
+            this.name = name;
+            this.leaveActive = leaveActive;
+            processToken = recordProcess.requestProcessToken(this);
+            assertNotNull(processToken);
+        }
+        
+        private void release() {
+            recordProcess.releaseProcessToken(processToken);
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.Requester#getRequesterName()
+         */
+        @Override
+        public String getRequesterName() {
+            return name;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.Requester#message(java.lang.String, org.epics.pvdata.pv.MessageType)
+         */
+        @Override
+        public void message(String message, MessageType messageType) {
+            System.out.println(message + " messageType " + messageType.toString());
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.support.RecordProcessRequester#becomeProcessor()
+         */
+        @Override
+        public void becomeProcessor() {
+            processOrder.add(name);
+            recordProcess.process(processToken, leaveActive);
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.support.RecordProcessRequester#canNotProcess(java.lang.String)
+         */
+        @Override
+        public void canNotProcess(String reason) {
+            canNotProcess.add(name + " " + reason);
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.support.RecordProcessRequester#lostRightToProcess()
+         */
+        @Override
+        public void lostRightToProcess() {
+            fail("lostRightToProcess");
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.support.RecordProcessRequester#recordProcessResult(org.epics.pvioc.util.RequestResult)
+         */
+        @Override
+        public void recordProcessResult(RequestResult requestResult) {
+            assertEquals(RequestResult.success,requestResult);
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.support.RecordProcessRequester#recordProcessComplete()
+         */
+        @Override
+        public void recordProcessComplete() {}
+    }
+}
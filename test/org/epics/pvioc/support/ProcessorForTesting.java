@@ -0,0 +1,124 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.support;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.TimeUnit;
+
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvioc.database.PVRecord;
+import org.epics.pvioc.util.RequestResult;
+
+/**
+ * Processes a record and waits until processing is complete.
+ * @author mrk
+ *
+ */
+public class ProcessorForTesting implements RecordProcessRequester {
+    private final RecordProcess recordProcess;
+    private final ProcessToken processToken;
+    private final Lock lock = new ReentrantLock();
+    private final Condition waitDone = lock.newCondition();
+    private boolean done = false;
+    private RequestResult requestResult = null;
+    
+    /**
+     * Constructor.
+     * @param pvRecord The record to process.
+     */
+    public ProcessorForTesting(PVRecord pvRecord) {
+        recordProcess = pvRecord.getRecordProcess();
+        processToken = recordProcess.requestProcessToken(this);
+        if(processToken==null) throw new IllegalStateException("could not get process token");
+    }
+    /**
+     * Process the record and wait for up to 5 seconds for processing to complete.
+     * @return The result or null if processing did not complete.
+     */
+    public RequestResult process() {
+        lock.lock();
+        try {
+            done = false;
+            requestResult = null;
+        } finally {
+            lock.unlock();
+        }
+        recordProcess.queueProcessRequest(processToken);
+        lock.lock();
+        try {
+            long nanos = TimeUnit.SECONDS.toNanos(5);
+            while(!done && nanos>0) nanos = waitDone.awaitNanos(nanos);
+            return done ? requestResult : null;
+        } catch (InterruptedException e) {
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+    /**
+     * Release the process token.
+     */
+    public void release() {
+        recordProcess.releaseProcessToken(processToken);
+    }
+    /* (non-Javadoc)
+     * @see org.epics.pvdata.pv.Requester#getRequesterName()
+     */
+    @Override
+    public String getRequesterName() {
+        return "processorForTesting";
+    }
+    /* (non-Javadoc)
+     * @see org.epics.pvdata.pv.Requester#message(java.lang.String, org.epics.pvdata.pv.MessageType)
+     */
+    @Override
+    public void message(String message, MessageType messageType) {
+        System.out.println(message + " messageType " + messageType.toString());
+    }
+    /* (non-Javadoc)
+     * @see org.epics.pvioc.support.RecordProcessRequester#becomeProcessor()
+     */
+    @Override
+    public void becomeProcessor() {
+        recordProcess.process(processToken, false);
+    }
+    /* (non-Javadoc)
+     * @see org.epics.pvioc.support.RecordProcessRequester#canNotProcess(java.lang.String)
+     */
+    @Override
+    public void canNotProcess(String reason) {
+        message("canNotProcess " + reason, MessageType.error);
+        recordProcessResult(RequestResult.failure);
+        recordProcessComplete();
+    }
+    /* (non-Javadoc)
+     * @see org.epics.pvioc.support.RecordProcessRequester#lostRightToProcess()
+     */
+    @Override
+    public void lostRightToProcess() {}
+    /* (non-Javadoc)
+     * @see org.epics.pvioc.support.RecordProcessRequester#recordProcessResult(org.epics.pvioc.util.RequestResult)
+     */
+    @Override
+    public void recordProcessResult(RequestResult requestResult) {
+        this.requestResult = requestResult;
+    }
+    /* (non-Javadoc)
+     * @see org.epics.pvioc.support.RecordProcessRequester#recordProcessComplete()
+     */
+    @Override
+    public void recordProcessComplete() {
+        lock.lock();
+        try {
+            done = true;
+            waitDone.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.support;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.PVDouble;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.Requester;
+import org.epics.pvioc.database.PVDatabase;
+import org.epics.pvioc.database.PVDatabaseFactory;
+import org.epics.pvioc.database.PVRecord;
+import org.epics.pvioc.database.PVRecordLockSet;
+import org.epics.pvioc.install.Install;
+import org.epics.pvioc.install.InstallFactory;
+import org.epics.pvioc.xml.XMLToPVDatabaseFactory;
+
+
+/**
+ * JUnit test for record lock sets and optimistic reads.
+ * @author mrk
+ *
+ */
+public class RecordLockTest extends TestCase {
+    private static final PVDatabase masterPVDatabase = PVDatabaseFactory.getMaster();
+    private static final Install install = InstallFactory.get();
+    private static MessageType maxMessageType = MessageType.info;
+    private static final Requester iocRequester = new RequesterForTesting("recordLockTest");
+    /**
+     * A stamp is only valid if the record was not locked since the stamp was taken.
+     */
+    public static void testOptimisticRead() {
+        if(!installRecords()) return;
+        PVRecord pvRecord = masterPVDatabase.findRecord("recordLockA");
+        assertNotNull(pvRecord);
+        assertFalse(pvRecord.validate(0));
+        long stamp = pvRecord.tryOptimisticRead();
+        assertTrue(stamp!=0);
+        assertTrue(pvRecord.validate(stamp));
+        assertTrue(pvRecord.validate(stamp));
+        pvRecord.lock();
+        try {
+            assertEquals(0,pvRecord.tryOptimisticRead());
+            assertFalse(pvRecord.validate(stamp));
+            // a reentrant lock does not change the version
+            pvRecord.lock();
+            pvRecord.unlock();
+            assertEquals(0,pvRecord.tryOptimisticRead());
+        } finally {
+            pvRecord.unlock();
+        }
+        assertFalse(pvRecord.validate(stamp));
+        stamp = pvRecord.tryOptimisticRead();
+        assertTrue(stamp!=0);
+        assertTrue(pvRecord.validate(stamp));
+    }
+    /**
+     * A validated read never sees a partly written record.
+     */
+    public static void testOptimisticReadConcurrent() throws InterruptedException {
+        if(!installRecords()) return;
+        final PVRecord pvRecord = masterPVDatabase.findRecord("recordLockA");
+        assertNotNull(pvRecord);
+        PVStructure pvStructure = pvRecord.getPVRecordStructure().getPVStructure();
+        final PVDouble pvValue = pvStructure.getDoubleField("value");
+        final PVDouble pvCopy = pvStructure.getDoubleField("copy");
+        final int numberPuts = 100000;
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                for(int i=1; i<=numberPuts; i++) {
+                    pvRecord.lock();
+                    try {
+                        pvValue.put(i);
+                        pvCopy.put(i);
+                    } finally {
+                        pvRecord.unlock();
+                    }
+                }
+            }
+        });
+        writer.start();
+        int numberValid = 0;
+        while(writer.isAlive()) {
+            long stamp = pvRecord.tryOptimisticRead();
+            if(stamp==0) continue;
+            double value = pvValue.get();
+            double copy = pvCopy.get();
+            if(!pvRecord.validate(stamp)) continue;
+            assertEquals(value,copy);
+            numberValid++;
+        }
+        writer.join();
+        long stamp = pvRecord.tryOptimisticRead();
+        assertTrue(stamp!=0);
+        assertEquals((double)numberPuts,pvValue.get());
+        assertTrue(pvRecord.validate(stamp));
+        assertTrue(numberValid>0);
+    }
+    /**
+     * A lock set locks each record once in lock order.
+     */
+    public static void testLockSet() {
+        if(!installRecords()) return;
+        PVRecord pvRecordA = masterPVDatabase.findRecord("recordLockA");
+        PVRecord pvRecordB = masterPVDatabase.findRecord("recordLockB");
+        assertNotNull(pvRecordA);
+        assertNotNull(pvRecordB);
+        PVRecordLockSet lockSet = new PVRecordLockSet(new PVRecord[]{pvRecordB,pvRecordA,pvRecordB});
+        PVRecord[] pvRecords = lockSet.getPVRecords();
+        assertEquals(2,pvRecords.length);
+        assertTrue(pvRecords[0].getLockOrder()<pvRecords[1].getLockOrder());
+        lockSet.lock();
+        try {
+            assertEquals(0,pvRecordA.tryOptimisticRead());
+            assertEquals(0,pvRecordB.tryOptimisticRead());
+            // both records are held so locking the other one never releases a record
+            pvRecords[1].lockOtherRecord(pvRecords[0]);
+            pvRecords[0].unlock();
+            assertEquals(0,pvRecords[0].tryOptimisticRead());
+        } finally {
+            lockSet.unlock();
+        }
+        assertTrue(pvRecordA.tryOptimisticRead()!=0);
+        assertTrue(pvRecordB.tryOptimisticRead()!=0);
+    }
+    
+    private static boolean installRecords() {
+        if(masterPVDatabase.findRecord("recordLockA")!=null) return true;
+        XMLToPVDatabaseFactory.convert(masterPVDatabase,"${JAVAIOC}/xml/structures.xml", iocRequester,false,null,null,null);
+        if(maxMessageType!=MessageType.info&&maxMessageType!=MessageType.warning) return false;
+        boolean ok = install.installRecords("test/org/epics/pvioc/support/recordLockPV.xml", iocRequester);
+        assertTrue(ok);
+        return true;
+    }
+    
+    private static class RequesterForTesting implements Requester {
+        private String requesterName = null;
+        
+        RequesterForTesting(String requesterName) {
+            this.requesterName = requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.util.Requester#getRequestorName()
+         */
+        public String getRequesterName() {
+            return requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.util.Requester#message(java.lang.String, org.epics.pvioc.util.MessageType)
+         */
+        public void message(String message, MessageType messageType) {
+            System.out.println(message);
+            if(messageType.ordinal()>maxMessageType.ordinal()) maxMessageType = messageType;
+        }
+    }
+}
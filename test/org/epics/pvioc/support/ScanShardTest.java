@@ -0,0 +1,112 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.support;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.Requester;
+import org.epics.pvioc.database.PVDatabase;
+import org.epics.pvioc.database.PVDatabaseFactory;
+import org.epics.pvioc.database.PVRecord;
+import org.epics.pvioc.install.Install;
+import org.epics.pvioc.install.InstallFactory;
+import org.epics.pvioc.util.PeriodicScanner;
+import org.epics.pvioc.util.ScannerFactory;
+import org.epics.pvioc.xml.XMLToPVDatabaseFactory;
+
+
+/**
+ * JUnit test for periodic lists that are split into shards.
+ * @author mrk
+ *
+ */
+public class ScanShardTest extends TestCase {
+    private static final PVDatabase masterPVDatabase = PVDatabaseFactory.getMaster();
+    private static final Install install = InstallFactory.get();
+    private static MessageType maxMessageType = MessageType.info;
+    private static final Requester iocRequester = new RequesterForTesting("scanShardTest");
+    private static final int numberRecords = 8;
+    /**
+     * Each record of a sharded list stays active because its delay is longer than the period.
+     * It must report "active too long" once, after scan.maxConsecutiveActive scans,
+     * just like a record of a list that is scanned serially.
+     */
+    public static void testMaxConsecutiveActive() {
+        XMLToPVDatabaseFactory.convert(masterPVDatabase,"${JAVAIOC}/xml/structures.xml", iocRequester,false,null,null,null);
+        if(maxMessageType!=MessageType.info&&maxMessageType!=MessageType.warning) return;
+        PeriodicScanner periodicScanner = ScannerFactory.getPeriodicScanner();
+        periodicScanner.setNumberShards(0.1, 4);
+        boolean ok = install.installRecords("test/org/epics/pvioc/support/scanShardPV.xml", iocRequester);
+        assertTrue(ok);
+        ActiveRequester[] requesters = new ActiveRequester[numberRecords];
+        for(int i=0; i<numberRecords; i++) {
+            PVRecord pvRecord = masterPVDatabase.findRecord("scanShard" + i);
+            assertNotNull(pvRecord);
+            requesters[i] = new ActiveRequester("scanShard" + i);
+            pvRecord.lock();
+            try {
+                pvRecord.addRequester(requesters[i]);
+            } finally {
+                pvRecord.unlock();
+            }
+        }
+        // the delay is 3 seconds and the period is 0.1 seconds, so every record stays active
+        try {
+            Thread.sleep(1500);
+        } catch (InterruptedException e) {}
+        String show = periodicScanner.show(0.1);
+        System.out.println(show);
+        assertTrue(show.indexOf("shards 4")>=0);
+        for(int i=0; i<numberRecords; i++) {
+            assertEquals(1,requesters[i].numberActiveTooLong.get());
+        }
+    }
+
+    private static class ActiveRequester implements Requester {
+        private final String requesterName;
+        private final AtomicInteger numberActiveTooLong = new AtomicInteger(0);
+
+        private ActiveRequester(String requesterName) {
+            this.requesterName = requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.Requester#getRequesterName()
+         */
+        public String getRequesterName() {
+            return requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.Requester#message(java.lang.String, org.epics.pvdata.pv.MessageType)
+         */
+        public void message(String message, MessageType messageType) {
+            if(message.indexOf("active too long")>=0) numberActiveTooLong.incrementAndGet();
+        }
+    }
+    
+    private static class RequesterForTesting implements Requester {
+        private String requesterName = null;
+        
+        RequesterForTesting(String requesterName) {
+            this.requesterName = requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.util.Requester#getRequestorName()
+         */
+        public String getRequesterName() {
+            return requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.util.Requester#message(java.lang.String, org.epics.pvioc.util.MessageType)
+         */
+        public void message(String message, MessageType messageType) {
+            System.out.println(message);
+            if(messageType.ordinal()>maxMessageType.ordinal()) maxMessageType = messageType;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.support.caLink;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.Requester;
+
+
+/**
+ * JUnit test for MonitorLinkDispatcher.
+ * @author mrk
+ *
+ */
+public class MonitorLinkDispatcherTest extends TestCase {
+    /**
+     * The events of each link are handled in the order they arrive and a link never runs concurrently with itself.
+     */
+    public static void testOrdering() throws InterruptedException {
+        MonitorLinkDispatcher.Lane lane = new MonitorLinkDispatcher.Lane("monitorLinkDispatcherTestOrdering");
+        final int numberLinks = 4;
+        final int numberEvents = 10000;
+        final Link[] links = new Link[numberLinks];
+        for(int i=0; i<numberLinks; i++) links[i] = new Link(lane,numberEvents);
+        Thread[] producers = new Thread[numberLinks];
+        for(int i=0; i<numberLinks; i++) {
+            final Link link = links[i];
+            producers[i] = new Thread(new Runnable() {
+                public void run() {
+                    for(int j=0; j<numberEvents; j++) link.post(j);
+                }
+            },"monitorLinkDispatcherTestProducer" + i);
+            producers[i].start();
+        }
+        for(Thread producer : producers) producer.join();
+        for(Link link : links) {
+            assertTrue(link.done.await(10, TimeUnit.SECONDS));
+            assertEquals(0,link.numberOutOfOrder.get());
+            assertEquals(1,link.maxConcurrent.get());
+            assertEquals(0,link.requester.numberErrors.get());
+        }
+    }
+    /**
+     * All links of a record use one lane, and a blocked lane only delays the links on it.
+     */
+    public static void testLanes() throws InterruptedException {
+        int numberLanes = 4;
+        boolean[] used = new boolean[numberLanes];
+        for(int i=0; i<100; i++) {
+            String recordName = "record" + i;
+            int index = MonitorLinkDispatcher.getLaneIndex(recordName, numberLanes);
+            assertTrue(index>=0 && index<numberLanes);
+            assertEquals(index,MonitorLinkDispatcher.getLaneIndex(new String(recordName), numberLanes));
+            used[index] = true;
+        }
+        for(boolean isUsed : used) assertTrue(isUsed);
+        RequesterForTesting requester = new RequesterForTesting();
+        Runnable nothing = new Runnable() {
+            public void run() {}
+        };
+        MonitorLinkDispatcher.Task first = MonitorLinkDispatcher.createTask("record", requester, nothing);
+        MonitorLinkDispatcher.Task second = MonitorLinkDispatcher.createTask("record", requester, nothing);
+        MonitorLinkDispatcher.Task notify = MonitorLinkDispatcher.createNotifyTask("record", requester, nothing);
+        assertSame(first.lane,second.lane);
+        // monitor and monitor notify links never share a lane
+        assertNotSame(first.lane,notify.lane);
+        MonitorLinkDispatcher.Lane blockedLane = new MonitorLinkDispatcher.Lane("monitorLinkDispatcherTestBlocked");
+        MonitorLinkDispatcher.Lane otherLane = new MonitorLinkDispatcher.Lane("monitorLinkDispatcherTestOther");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        MonitorLinkDispatcher.Task blocking = new MonitorLinkDispatcher.Task(blockedLane,requester,new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {}
+            }
+        });
+        final CountDownLatch sameLaneDone = new CountDownLatch(1);
+        MonitorLinkDispatcher.Task sameLane = new MonitorLinkDispatcher.Task(blockedLane,requester,new Runnable() {
+            public void run() {
+                sameLaneDone.countDown();
+            }
+        });
+        final CountDownLatch otherLaneDone = new CountDownLatch(1);
+        MonitorLinkDispatcher.Task other = new MonitorLinkDispatcher.Task(otherLane,requester,new Runnable() {
+            public void run() {
+                otherLaneDone.countDown();
+            }
+        });
+        blocking.schedule();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        sameLane.schedule();
+        other.schedule();
+        assertTrue(otherLaneDone.await(10, TimeUnit.SECONDS));
+        assertFalse(sameLaneDone.await(100, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(sameLaneDone.await(10, TimeUnit.SECONDS));
+    }
+    /**
+     * An exception thrown by a task is given to its requester and the lane keeps running.
+     */
+    public static void testException() throws InterruptedException {
+        MonitorLinkDispatcher.Lane lane = new MonitorLinkDispatcher.Lane("monitorLinkDispatcherTestException");
+        RequesterForTesting requester = new RequesterForTesting();
+        MonitorLinkDispatcher.Task failing = new MonitorLinkDispatcher.Task(lane,requester,new Runnable() {
+            public void run() {
+                throw new IllegalStateException("failing task");
+            }
+        });
+        final CountDownLatch done = new CountDownLatch(1);
+        MonitorLinkDispatcher.Task next = new MonitorLinkDispatcher.Task(lane,requester,new Runnable() {
+            public void run() {
+                done.countDown();
+            }
+        });
+        failing.schedule();
+        next.schedule();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1,requester.numberErrors.get());
+    }
+
+    // a link that handles the events queued for it, as a monitor link polls its monitor
+    private static class Link implements Runnable {
+        private final ConcurrentLinkedQueue<Integer> events = new ConcurrentLinkedQueue<Integer>();
+        private final RequesterForTesting requester = new RequesterForTesting();
+        private final MonitorLinkDispatcher.Task task;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicInteger numberOutOfOrder = new AtomicInteger(0);
+        private final AtomicInteger concurrent = new AtomicInteger(0);
+        private final AtomicInteger maxConcurrent = new AtomicInteger(0);
+        private final int numberEvents;
+        private int next = 0;
+
+        private Link(MonitorLinkDispatcher.Lane lane,int numberEvents) {
+            this.numberEvents = numberEvents;
+            task = new MonitorLinkDispatcher.Task(lane,requester,this);
+        }
+
+        private void post(int event) {
+            events.add(event);
+            task.schedule();
+        }
+
+        public void run() {
+            int number = concurrent.incrementAndGet();
+            if(number>maxConcurrent.get()) maxConcurrent.set(number);
+            Integer event = null;
+            while((event = events.poll())!=null) {
+                if(event.intValue()!=next) numberOutOfOrder.incrementAndGet();
+                next = event.intValue() + 1;
+            }
+            concurrent.decrementAndGet();
+            if(next==numberEvents) done.countDown();
+        }
+    }
+
+    private static class RequesterForTesting implements Requester {
+        private final AtomicInteger numberErrors = new AtomicInteger(0);
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.Requester#getRequesterName()
+         */
+        public String getRequesterName() {
+            return "monitorLinkDispatcherTest";
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.Requester#message(java.lang.String, org.epics.pvdata.pv.MessageType)
+         */
+        public void message(String message, MessageType messageType) {
+            if(messageType==MessageType.error) numberErrors.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.support.caLink;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.PVDouble;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.Requester;
+import org.epics.pvioc.database.PVDatabase;
+import org.epics.pvioc.database.PVDatabaseFactory;
+import org.epics.pvioc.database.PVListener;
+import org.epics.pvioc.database.PVRecord;
+import org.epics.pvioc.database.PVRecordField;
+import org.epics.pvioc.database.PVRecordStructure;
+import org.epics.pvioc.install.Install;
+import org.epics.pvioc.install.InstallFactory;
+import org.epics.pvioc.support.ProcessorForTesting;
+import org.epics.pvioc.util.RequestResult;
+import org.epics.pvioc.xml.XMLToPVDatabaseFactory;
+
+
+/**
+ * JUnit test for caOutputLink with wait false.
+ * The target record has a delay of 0.5 seconds so that a put is in flight while the source is processed again.
+ * @author mrk
+ *
+ */
+public class OutputLinkTest extends TestCase {
+    private static final PVDatabase masterPVDatabase = PVDatabaseFactory.getMaster();
+    private static final Install install = InstallFactory.get();
+    private static MessageType maxMessageType = MessageType.info;
+    private static final Requester iocRequester = new RequesterForTesting("outputLinkTest");
+    private static TargetListener targetListener = null;
+    private static ProcessorForTesting sourceProcessor = null;
+
+    /**
+     * Data put while a put is in flight is sent as one put with the latest values,
+     * and processing without a change does not send a put.
+     */
+    public static void testCoalesce() {
+        if(!install()) return;
+        int number = targetListener.getNumberProcessed();
+        processSource(1.0);
+        // the first put is in flight so these are kept and only the latest is sent
+        processSource(2.0);
+        processSource(3.0);
+        assertTrue(targetListener.waitProcessed(number + 2));
+        sleep(1000);
+        List<Double> values = targetListener.getValues();
+        assertEquals(number + 2,values.size());
+        assertEquals(1.0,values.get(number).doubleValue(),0.0);
+        assertEquals(3.0,values.get(number + 1).doubleValue(),0.0);
+        // the value did not change so nothing is sent
+        processSource(3.0);
+        sleep(1000);
+        assertEquals(number + 2,targetListener.getNumberProcessed());
+    }
+    /**
+     * The data of a put that is in flight when the channel disconnects is sent again after it reconnects.
+     */
+    public static void testResendAfterDisconnect() {
+        if(!install()) return;
+        OutputLinkBase outputLink = getOutputLink();
+        int number = targetListener.getNumberProcessed();
+        processSource(10.0);
+        outputLink.connectionChange(false);
+        // the abandoned put still completes, but its putDone is ignored
+        assertTrue(targetListener.waitProcessed(number + 1));
+        sleep(500);
+        assertEquals(number + 1,targetListener.getNumberProcessed());
+        outputLink.connectionChange(true);
+        assertTrue(targetListener.waitProcessed(number + 2));
+        sleep(1000);
+        List<Double> values = targetListener.getValues();
+        assertEquals(number + 2,values.size());
+        assertEquals(10.0,values.get(number + 1).doubleValue(),0.0);
+        processSource(10.0);
+        sleep(1000);
+        assertEquals(number + 2,targetListener.getNumberProcessed());
+    }
+
+    private static boolean install() {
+        if(targetListener!=null) return true;
+        XMLToPVDatabaseFactory.convert(masterPVDatabase,"${JAVAIOC}/xml/structures.xml", iocRequester,false,null,null,null);
+        if(maxMessageType!=MessageType.info&&maxMessageType!=MessageType.warning) return false;
+        boolean ok = install.installRecords("test/org/epics/pvioc/support/caLink/outputLinkPV.xml", iocRequester);
+        assertTrue(ok);
+        PVRecord target = masterPVDatabase.findRecord("outputLinkTarget");
+        PVRecord source = masterPVDatabase.findRecord("outputLinkSource");
+        assertNotNull(target);
+        assertNotNull(source);
+        targetListener = new TargetListener(target);
+        sourceProcessor = new ProcessorForTesting(source);
+        // wait for the link to connect
+        sleep(1000);
+        return true;
+    }
+
+    private static OutputLinkBase getOutputLink() {
+        PVRecord source = masterPVDatabase.findRecord("outputLinkSource");
+        PVStructure pvStructure = source.getPVRecordStructure().getPVStructure();
+        PVRecordField pvRecordField = source.findPVRecordField(pvStructure.getSubField("output.pvname"));
+        return (OutputLinkBase)pvRecordField.getSupport();
+    }
+
+    private static void processSource(double value) {
+        PVRecord source = masterPVDatabase.findRecord("outputLinkSource");
+        PVDouble pvValue = source.getPVRecordStructure().getPVStructure().getDoubleField("value");
+        source.lock();
+        try {
+            pvValue.put(value);
+        } finally {
+            source.unlock();
+        }
+        assertEquals(RequestResult.success,sourceProcessor.process());
+    }
+
+    private static void sleep(long milliseconds) {
+        try {
+            Thread.sleep(milliseconds);
+        } catch (InterruptedException e) {}
+    }
+
+    // keeps the value of the target after each time it is processed
+    private static class TargetListener implements PVListener {
+        private final PVDouble pvValue;
+        private final List<Double> values = new ArrayList<Double>();
+
+        private TargetListener(PVRecord pvRecord) {
+            PVRecordStructure pvRecordStructure = pvRecord.getPVRecordStructure();
+            pvValue = pvRecordStructure.getPVStructure().getDoubleField("value");
+            pvRecord.registerListener(this);
+            pvRecord.findPVRecordField(pvValue).addListener(this);
+        }
+
+        private synchronized int getNumberProcessed() {
+            return values.size();
+        }
+
+        private synchronized List<Double> getValues() {
+            return new ArrayList<Double>(values);
+        }
+        // wait for up to 5 seconds until the target has been processed number times
+        private synchronized boolean waitProcessed(int number) {
+            long end = System.currentTimeMillis() + 5000;
+            while(values.size()<number) {
+                long timeout = end - System.currentTimeMillis();
+                if(timeout<=0) return false;
+                try {
+                    wait(timeout);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.database.PVListener#dataPut(org.epics.pvioc.database.PVRecordField)
+         */
+        public void dataPut(PVRecordField pvRecordField) {}
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.database.PVListener#dataPut(org.epics.pvioc.database.PVRecordStructure, org.epics.pvioc.database.PVRecordField)
+         */
+        public void dataPut(PVRecordStructure requested,PVRecordField pvRecordField) {}
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.database.PVListener#beginGroupPut(org.epics.pvioc.database.PVRecord)
+         */
+        public void beginGroupPut(PVRecord pvRecord) {}
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.database.PVListener#endGroupPut(org.epics.pvioc.database.PVRecord)
+         */
+        public synchronized void endGroupPut(PVRecord pvRecord) {
+            values.add(pvValue.get());
+            notifyAll();
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.database.PVListener#unlisten(org.epics.pvioc.database.PVRecord)
+         */
+        public void unlisten(PVRecord pvRecord) {}
+    }
+
+    private static class RequesterForTesting implements Requester {
+        private String requesterName = null;
+
+        RequesterForTesting(String requesterName) {
+            this.requesterName = requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.Requester#getRequesterName()
+         */
+        public String getRequesterName() {
+            return requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.Requester#message(java.lang.String, org.epics.pvdata.pv.MessageType)
+         */
+        public void message(String message, MessageType messageType) {
+            System.out.println(message);
+            if(messageType.ordinal()>maxMessageType.ordinal()) maxMessageType = messageType;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.support.calc;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.property.AlarmSeverity;
+import org.epics.pvdata.pv.DoubleArrayData;
+import org.epics.pvdata.pv.IntArrayData;
+import org.epics.pvdata.pv.LongArrayData;
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.PVDouble;
+import org.epics.pvdata.pv.PVDoubleArray;
+import org.epics.pvdata.pv.PVIntArray;
+import org.epics.pvdata.pv.PVLongArray;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.Requester;
+import org.epics.pvdata.pv.ScalarType;
+import org.epics.pvioc.database.PVDatabase;
+import org.epics.pvioc.database.PVDatabaseFactory;
+import org.epics.pvioc.database.PVRecord;
+import org.epics.pvioc.install.Install;
+import org.epics.pvioc.install.InstallFactory;
+import org.epics.pvioc.support.ProcessorForTesting;
+import org.epics.pvioc.util.RequestResult;
+import org.epics.pvioc.xml.XMLToPVDatabaseFactory;
+
+
+/**
+ * JUnit test for calc expressions with array arguments.
+ * The arguments are a = [2], b = [1,2,3], and c = [1,2,3,4,5].
+ * Some records also have d = long[3000000000,5] or an empty array e.
+ * @author mrk
+ *
+ */
+public class ArrayCalcTest extends TestCase {
+    private static final PVDatabase masterPVDatabase = PVDatabaseFactory.getMaster();
+    private static final Install install = InstallFactory.get();
+    private static MessageType maxMessageType = MessageType.info;
+    private static final Requester iocRequester = new RequesterForTesting("arrayCalcTest");
+    private static boolean isInstalled = false;
+    
+    /**
+     * Element-wise expressions broadcast length 1 arrays and use the shortest other array.
+     */
+    public static void testBroadcast() {
+        if(!install()) return;
+        checkArray("calcArrayBroadcast",new double[]{3.0,4.0,5.0});
+        checkArray("calcArrayShortest",new double[]{2.0,4.0,6.0});
+    }
+    /**
+     * Reductions only use the arrays that appear in their argument.
+     */
+    public static void testReductions() {
+        if(!install()) return;
+        // a has length 1 so it is not multiplied by the length of b or c
+        checkScalar("calcArraySumBroadcast",2.0);
+        // c is longer than b but all of c is summed
+        checkScalar("calcArraySumLong",15.0);
+        checkScalar("calcArrayReductions",3.0 + 5.0 + 1.0);
+        checkScalar("calcArraySumExpression",(3.0 + 4.0 + 5.0) + 2.0);
+    }
+    /**
+     * An integer value array is narrowed just like a scalar value.
+     */
+    public static void testIntegerArrays() {
+        if(!install()) return;
+        // doubles are truncated toward zero
+        checkIntArray("calcArrayIntNarrow",new int[]{-1,1,3});
+        // d is the shortest array and a long is narrowed to int
+        checkIntArray("calcArrayIntFromLong",new int[]{(int)3000000001L,6});
+        checkLongArray("calcArrayLong",new long[]{6000000001L,12L});
+        checkLongArray("calcArrayLongFromDouble",new long[]{4500000001L,9L});
+    }
+    /**
+     * A zero length argument gives a zero length value and an empty reduction.
+     */
+    public static void testZeroLength() {
+        if(!install()) return;
+        checkArray("calcArrayEmpty",new double[0]);
+        checkScalar("calcArraySumEmpty",0.0);
+    }
+    /**
+     * A scalar value with an element-wise expression over arrays longer than 1 raises an alarm.
+     */
+    public static void testScalarValue() {
+        if(!install()) return;
+        PVStructure pvStructure = process("calcArrayScalarValue");
+        assertEquals(AlarmSeverity.INVALID.ordinal(),pvStructure.getIntField("alarm.severity").get());
+        assertTrue(pvStructure.getStringField("alarm.message").get().startsWith("value is a scalar"));
+        assertEquals(0.0,pvStructure.getDoubleField("value").get(),0.0);
+    }
+    
+    private static boolean install() {
+        if(isInstalled) return true;
+        XMLToPVDatabaseFactory.convert(masterPVDatabase,"${JAVAIOC}/xml/structures.xml", iocRequester,false,null,null,null);
+        if(maxMessageType!=MessageType.info&&maxMessageType!=MessageType.warning) return false;
+        boolean ok = install.installRecords("test/org/epics/pvioc/support/calc/arrayCalcPV.xml", iocRequester);
+        assertTrue(ok);
+        isInstalled = true;
+        return true;
+    }
+    
+    private static PVStructure process(String recordName) {
+        PVRecord pvRecord = masterPVDatabase.findRecord(recordName);
+        assertNotNull(pvRecord);
+        ProcessorForTesting processor = new ProcessorForTesting(pvRecord);
+        assertEquals(RequestResult.success,processor.process());
+        processor.release();
+        return pvRecord.getPVRecordStructure().getPVStructure();
+    }
+    
+    private static void checkScalar(String recordName,double expected) {
+        PVDouble pvValue = process(recordName).getDoubleField("value");
+        assertNotNull(pvValue);
+        assertEquals(recordName,expected,pvValue.get(),1e-12);
+    }
+    
+    private static void checkArray(String recordName,double[] expected) {
+        PVDoubleArray pvValue = (PVDoubleArray)process(recordName).getScalarArrayField("value",ScalarType.pvDouble);
+        assertNotNull(pvValue);
+        assertEquals(recordName,expected.length,pvValue.getLength());
+        DoubleArrayData data = new DoubleArrayData();
+        pvValue.get(0, expected.length, data);
+        for(int i=0; i<expected.length; i++) {
+            assertEquals(recordName,expected[i],data.data[data.offset + i],1e-12);
+        }
+    }
+    
+    private static void checkIntArray(String recordName,int[] expected) {
+        PVIntArray pvValue = (PVIntArray)process(recordName).getScalarArrayField("value",ScalarType.pvInt);
+        assertNotNull(pvValue);
+        assertEquals(recordName,expected.length,pvValue.getLength());
+        IntArrayData data = new IntArrayData();
+        pvValue.get(0, expected.length, data);
+        for(int i=0; i<expected.length; i++) {
+            assertEquals(recordName,expected[i],data.data[data.offset + i]);
+        }
+    }
+    
+    private static void checkLongArray(String recordName,long[] expected) {
+        PVLongArray pvValue = (PVLongArray)process(recordName).getScalarArrayField("value",ScalarType.pvLong);
+        assertNotNull(pvValue);
+        assertEquals(recordName,expected.length,pvValue.getLength());
+        LongArrayData data = new LongArrayData();
+        pvValue.get(0, expected.length, data);
+        for(int i=0; i<expected.length; i++) {
+            assertEquals(recordName,expected[i],data.data[data.offset + i]);
+        }
+    }
+    
+    private static class RequesterForTesting implements Requester {
+        private String requesterName = null;
+        
+        RequesterForTesting(String requesterName) {
+            this.requesterName = requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.util.Requester#getRequestorName()
+         */
+        public String getRequesterName() {
+            return requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.util.Requester#message(java.lang.String, org.epics.pvioc.util.MessageType)
+         */
+        public void message(String message, MessageType messageType) {
+            System.out.println(message);
+            if(messageType.ordinal()>maxMessageType.ordinal()) maxMessageType = messageType;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.support.calc;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.property.AlarmSeverity;
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.Requester;
+import org.epics.pvioc.database.PVDatabase;
+import org.epics.pvioc.database.PVDatabaseFactory;
+import org.epics.pvioc.database.PVRecord;
+import org.epics.pvioc.install.Install;
+import org.epics.pvioc.install.InstallFactory;
+import org.epics.pvioc.support.ProcessorForTesting;
+import org.epics.pvioc.support.Support;
+import org.epics.pvioc.util.RequestResult;
+import org.epics.pvioc.xml.XMLToPVDatabaseFactory;
+
+
+/**
+ * JUnit test that compares compiled calc expressions with the interpreter.
+ * Each case is installed twice, once with IOCExpressionCalculatorCompile false and once with it true.
+ * Both records are processed and must have the same value and alarm.
+ * @author mrk
+ *
+ */
+public class CompiledCalcTest extends TestCase {
+    private static final PVDatabase masterPVDatabase = PVDatabaseFactory.getMaster();
+    private static final Install install = InstallFactory.get();
+    private static MessageType maxMessageType = MessageType.info;
+    private static final Requester iocRequester = new RequesterForTesting("compiledCalcTest");
+    // name, scalarType, value
+    private static final String[][] arguments = {
+        {"b1","byte","100"},
+        {"b2","byte","-128"},
+        {"s1","short","30000"},
+        {"s2","short","-1"},
+        {"i1","int","2000000000"},
+        {"i2","int","-7"},
+        {"l1","long","9000000000000000000"},
+        {"f1","float","1.1"},
+        {"d1","double","2.5"},
+        {"z","int","0"},
+        {"zl","long","0"},
+        {"n8","int","8"},
+        {"n33","int","33"},
+        {"n70","int","70"},
+        {"bt","boolean","true"},
+        {"bf","boolean","false"},
+    };
+    // expression, scalarType of value
+    private static final String[][] cases = {
+        // narrowing and overflow
+        {"b1 + b1","byte"},
+        {"b1 + b1","short"},
+        {"b1 + b1","double"},
+        {"b1 * b1","byte"},
+        {"-b2","byte"},
+        {"s1 + s1","short"},
+        {"s1 + s1","int"},
+        {"i1 + i1","int"},
+        {"i1 + i1","long"},
+        {"i1 * i1","double"},
+        {"l1 * 10","long"},
+        {"l1 + l1","double"},
+        {"i1 + i1","byte"},
+        {"~b1","byte"},
+        {"~i2","int"},
+        // shifts
+        {"b2 >>> 1","byte"},
+        {"b2 >>> 1","int"},
+        {"s2 >>> 4","short"},
+        {"s2 >>> 4","int"},
+        {"i2 >>> 28","int"},
+        {"i2 >> 1","int"},
+        {"b1 << n8","byte"},
+        {"b1 << n8","int"},
+        {"s1 << n33","short"},
+        {"i1 << n33","int"},
+        {"i2 >> n33","int"},
+        {"i2 >>> n33","int"},
+        {"l1 >> n70","long"},
+        {"l1 << n70","long"},
+        // float rounding
+        {"f1 * 3","float"},
+        {"f1 * 3","double"},
+        {"f1 + d1","float"},
+        {"f1 + d1","double"},
+        {"d1 / 3","float"},
+        {"f1 / 3","double"},
+        {"i1 * f1","float"},
+        {"l1 * f1","double"},
+        // division and remainder
+        {"i2 / 2","int"},
+        {"i2 % 3","int"},
+        {"b2 / s2","byte"},
+        {"d1 % 1","double"},
+        {"d1 / z","double"},
+        {"i1 / z","int"},
+        {"i1 % z","int"},
+        {"b1 / z","byte"},
+        {"l1 / zl","long"},
+        {"l1 % zl","long"},
+        // booleans and comparisons
+        {"bt & bf","boolean"},
+        {"bt | bf","boolean"},
+        {"bt ^ bt","boolean"},
+        {"!bt","boolean"},
+        {"bt && bf || bt","boolean"},
+        {"b1 > s2","boolean"},
+        {"i1 == i1","boolean"},
+        {"f1 == 1.1","boolean"},
+        {"d1 != 2.5","boolean"},
+        {"b2 < i2 && i2 < z","boolean"},
+        // mixed type promotion
+        {"b1 + s1 + i1 + l1","long"},
+        {"b1 + s1 + i1","int"},
+        {"b1 * f1","float"},
+        {"i1 + d1","double"},
+        {"s1 * 2.5","double"},
+        {"s1 * 2.5","short"},
+        {"bt ? i1 : l1","long"},
+        {"bf ? b1 : d1","double"},
+        {"(i1 > z) ? s1 : b1","short"},
+        // math functions
+        {"abs(i2)","double"},
+        {"max(b1,s1)","int"},
+        {"pow(2,10)","double"},
+        {"round(d1)","long"},
+        {"floor(f1)","double"},
+        {"min(i1,l1)","double"},
+    };
+    /**
+     * The compiled expression and the interpreter give the same value and alarm.
+     */
+    public static void testCompare() {
+        XMLToPVDatabaseFactory.convert(masterPVDatabase,"${JAVAIOC}/xml/structures.xml", iocRequester,false,null,null,null);
+        if(maxMessageType!=MessageType.info&&maxMessageType!=MessageType.warning) return;
+        try {
+            ExpressionCalculatorFactory.setCompileExpression(false);
+            assertTrue(install.installRecords(writeRecords("Interpreted"), iocRequester));
+            ExpressionCalculatorFactory.setCompileExpression(true);
+            assertTrue(install.installRecords(writeRecords("Compiled"), iocRequester));
+        } finally {
+            ExpressionCalculatorFactory.setCompileExpression(true);
+        }
+        for(int i=0; i<cases.length; i++) {
+            String description = cases[i][0] + " value " + cases[i][1];
+            PVRecord interpreted = masterPVDatabase.findRecord(getRecordName(i,"Interpreted"));
+            PVRecord compiled = masterPVDatabase.findRecord(getRecordName(i,"Compiled"));
+            assertNotNull(description,interpreted);
+            assertNotNull(description,compiled);
+            assertFalse(description,ExpressionCalculatorFactory.isCompiled(getCalculator(interpreted)));
+            assertTrue(description,ExpressionCalculatorFactory.isCompiled(getCalculator(compiled)));
+            PVStructure pvInterpreted = process(interpreted);
+            PVStructure pvCompiled = process(compiled);
+            assertEquals(description,
+                pvInterpreted.getSubField("value").toString(),
+                pvCompiled.getSubField("value").toString());
+            int severity = pvInterpreted.getIntField("alarm.severity").get();
+            assertEquals(description,severity,pvCompiled.getIntField("alarm.severity").get());
+            assertEquals(description,
+                pvInterpreted.getStringField("alarm.message").get(),
+                pvCompiled.getStringField("alarm.message").get());
+            // integer division by zero is the only case that raises an alarm
+            boolean isIntegerDivideByZero = cases[i][0].matches(".*[/%] zl?") && !cases[i][0].startsWith("d1");
+            if(isIntegerDivideByZero) {
+                assertEquals(description,AlarmSeverity.INVALID.ordinal(),severity);
+            } else {
+                assertEquals(description,AlarmSeverity.NONE.ordinal(),severity);
+            }
+        }
+    }
+
+    private static String getRecordName(int index,String suffix) {
+        return "compiledCalc" + index + suffix;
+    }
+
+    private static Support getCalculator(PVRecord pvRecord) {
+        PVStructure pvStructure = pvRecord.getPVRecordStructure().getPVStructure();
+        return pvRecord.findPVRecordField(pvStructure.getSubField("input.calculator")).getSupport();
+    }
+
+    private static PVStructure process(PVRecord pvRecord) {
+        ProcessorForTesting processor = new ProcessorForTesting(pvRecord);
+        assertEquals(RequestResult.success,processor.process());
+        processor.release();
+        return pvRecord.getPVRecordStructure().getPVStructure();
+    }
+
+    private static String writeRecords(String suffix) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("<?xml version=\"1.0\" ?>\n<database>\n");
+        builder.append("<import name = \"org.epics.pvioc.*\" />\n<import name = \"org.epics.pvdata.*\" />\n");
+        for(int i=0; i<cases.length; i++) {
+            builder.append("<record recordName = \"" + getRecordName(i,suffix) + "\" >\n");
+            builder.append("    <scalar name = \"value\" scalarType = \"" + cases[i][1] + "\" />\n");
+            builder.append("    <structure name = \"alarm\" extends = \"alarm\" />\n");
+            builder.append("    <structure name = \"input\" extends = \"calculation\" >\n");
+            builder.append("       <structure name = \"calcArgs\">\n");
+            builder.append("          <auxInfo name = \"supportFactory\" scalarType = \"string\">org.epics.pvioc.calcArgsFactory</auxInfo>\n");
+            for(String[] argument : arguments) {
+                builder.append("          <structure name = \"" + argument[0] + "\" extends = \"calcArg\">\n");
+                builder.append("             <scalar name = \"value\" scalarType = \"" + argument[1] + "\">"
+                    + argument[2] + "</scalar>\n");
+                builder.append("          </structure>\n");
+            }
+            builder.append("       </structure>\n");
+            builder.append("       <structure name = \"calculator\">\n");
+            builder.append("         <scalar name = \"expression\">" + escape(cases[i][0]) + "</scalar>\n");
+            builder.append("       </structure>\n");
+            builder.append("    </structure>\n");
+            builder.append("</record>\n");
+        }
+        builder.append("</database>\n");
+        try {
+            File file = File.createTempFile("compiledCalc" + suffix, ".xml");
+            file.deleteOnExit();
+            FileWriter writer = new FileWriter(file);
+            try {
+                writer.write(builder.toString());
+            } finally {
+                writer.close();
+            }
+            return file.getPath();
+        } catch (IOException e) {
+            fail(e.getMessage());
+            return null;
+        }
+    }
+
+    private static String escape(String expression) {
+        return expression.replace("&","&amp;").replace("<","&lt;").replace(">","&gt;");
+    }
+
+    private static class RequesterForTesting implements Requester {
+        private String requesterName = null;
+
+        RequesterForTesting(String requesterName) {
+            this.requesterName = requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.util.Requester#getRequestorName()
+         */
+        public String getRequesterName() {
+            return requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.util.Requester#message(java.lang.String, org.epics.pvioc.util.MessageType)
+         */
+        public void message(String message, MessageType messageType) {
+            System.out.println(message);
+            if(messageType.ordinal()>maxMessageType.ordinal()) maxMessageType = messageType;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.support.dbLink;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.Requester;
+import org.epics.pvioc.database.PVDatabase;
+import org.epics.pvioc.database.PVDatabaseFactory;
+import org.epics.pvioc.database.PVRecord;
+import org.epics.pvioc.database.PVRecordStructure;
+import org.epics.pvioc.install.Install;
+import org.epics.pvioc.install.InstallFactory;
+import org.epics.pvioc.support.Support;
+import org.epics.pvioc.support.basic.GenericBase;
+import org.epics.pvioc.xml.XMLToPVDatabaseFactory;
+
+
+/**
+ * JUnit test for LinkGraphFactory.
+ * @author mrk
+ *
+ */
+public class LinkGraphTest extends TestCase {
+    private static final PVDatabase masterPVDatabase = PVDatabaseFactory.getMaster();
+    private static final Install install = InstallFactory.get();
+    private static MessageType maxMessageType = MessageType.info;
+    private static int numberCycleMessages = 0;
+    private static final Requester iocRequester = new RequesterForTesting("linkGraphTest");
+    /**
+     * A cycle of process links is reported once and independent links are grouped.
+     */
+    public static void testLinkGraph() {
+        XMLToPVDatabaseFactory.convert(masterPVDatabase,"${JAVAIOC}/xml/structures.xml", iocRequester,false,null,null,null);
+        if(maxMessageType!=MessageType.info&&maxMessageType!=MessageType.warning) return;
+        boolean ok = install.installRecords("test/org/epics/pvioc/support/dbLink/linkGraphPV.xml", iocRequester);
+        assertTrue(ok);
+        assertEquals(1,numberCycleMessages);
+        PVRecord pvRecord = masterPVDatabase.findRecord("linkGraphParent");
+        assertNotNull(pvRecord);
+        PVStructure pvLink = pvRecord.getPVRecordStructure().getPVStructure().getStructureField("link");
+        PVRecordStructure pvRecordStructure = (PVRecordStructure)pvRecord.findPVRecordField(pvLink);
+        GenericBase genericBase = (GenericBase)pvRecordStructure.getSupport();
+        Support[] supports = genericBase.getSupports();
+        assertEquals(4,supports.length);
+        // IOCLinkGraphThreads is 0 by default so install did not group the links
+        LinkGraphFactory.findBranches(new PVRecord[] {pvRecord});
+        // linkGraphLeaf3 reads linkGraphLeaf1 so process3 starts a new group
+        boolean[] expected = {false,true,false,true};
+        for(int i=0; i<supports.length; i++) {
+            assertEquals(expected[i],genericBase.getWait(i));
+            AbstractLink link = (AbstractLink)((GenericBase)supports[i]).getSupports()[0];
+            assertTrue(link.isParallel());
+        }
+        // grouping again does not change anything
+        LinkGraphFactory.findBranches(new PVRecord[] {pvRecord});
+        for(int i=0; i<supports.length; i++) assertEquals(expected[i],genericBase.getWait(i));
+    }
+    
+    private static class RequesterForTesting implements Requester {
+        private String requesterName = null;
+        
+        RequesterForTesting(String requesterName) {
+            this.requesterName = requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.util.Requester#getRequestorName()
+         */
+        public String getRequesterName() {
+            return requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvioc.util.Requester#message(java.lang.String, org.epics.pvioc.util.MessageType)
+         */
+        public void message(String message, MessageType messageType) {
+            System.out.println(message);
+            if(message.contains("dbLink process cycle")) numberCycleMessages++;
+            if(messageType.ordinal()>maxMessageType.ordinal()) maxMessageType = messageType;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+
+/**
+ * JUnit test for AnnounceQueue.
+ * @author mrk
+ *
+ */
+public class AnnounceQueueTest extends TestCase {
+    /**
+     * Without coalescing each scan gets the sequence, time, and nanoTime of one announce, oldest first.
+     */
+    public static void testOnePerScan() {
+        AnnounceQueue announceQueue = new AnnounceQueue(4);
+        AnnounceQueue.Entry entry = new AnnounceQueue.Entry();
+        // enough to wrap around the ring twice
+        long next = 1;
+        for(int round=0; round<3; round++) {
+            for(int i=0; i<3; i++, next++) assertTrue(announceQueue.add(next, 1000 + next, 2000 + next));
+            for(long expected=next-3; expected<next; expected++) {
+                assertEquals(1,announceQueue.remove(false, entry));
+                assertEquals(expected,entry.sequence);
+                assertEquals(1000 + expected,entry.time);
+                assertEquals(2000 + expected,entry.nanos);
+            }
+            assertEquals(0,announceQueue.remove(false, entry));
+        }
+        assertEquals(0,announceQueue.getNumberOverruns());
+    }
+    /**
+     * A coalesced scan gets the sequence and time of the newest announce and the nanoTime of the oldest.
+     */
+    public static void testCoalesce() {
+        AnnounceQueue announceQueue = new AnnounceQueue(8);
+        AnnounceQueue.Entry entry = new AnnounceQueue.Entry();
+        announceQueue.add(1, 100, 10);
+        assertEquals(1,announceQueue.remove(false, entry));
+        for(int i=2; i<=6; i++) announceQueue.add(i, 100*i, 10*i);
+        assertEquals(5,announceQueue.getNumberPending());
+        assertEquals(5,announceQueue.remove(true, entry));
+        assertEquals(6,entry.sequence);
+        assertEquals(600,entry.time);
+        // latency is measured from the oldest pending announce
+        assertEquals(20,entry.nanos);
+        assertEquals(0,announceQueue.getNumberPending());
+    }
+    /**
+     * An announce made while the queue is full is counted as an overrun and is not kept.
+     */
+    public static void testOverrun() {
+        AnnounceQueue announceQueue = new AnnounceQueue(2);
+        AnnounceQueue.Entry entry = new AnnounceQueue.Entry();
+        assertTrue(announceQueue.add(1, 1, 1));
+        assertTrue(announceQueue.add(2, 2, 2));
+        assertFalse(announceQueue.add(3, 3, 3));
+        assertFalse(announceQueue.add(4, 4, 4));
+        assertEquals(2,announceQueue.getNumberOverruns());
+        assertEquals(2,announceQueue.remove(true, entry));
+        assertEquals(2,entry.sequence);
+        assertEquals(1,entry.nanos);
+        assertTrue(announceQueue.add(5, 5, 5));
+        assertEquals(1,announceQueue.remove(false, entry));
+        assertEquals(5,entry.sequence);
+        assertEquals(2,announceQueue.getNumberOverruns());
+    }
+    /**
+     * With concurrent announcers every announce is either removed or counted as an overrun.
+     */
+    public static void testConcurrent() throws InterruptedException {
+        final AnnounceQueue announceQueue = new AnnounceQueue(16);
+        final int numberThreads = 4;
+        final int numberAnnounce = 20000;
+        final AtomicLong sequence = new AtomicLong(0);
+        final CountDownLatch done = new CountDownLatch(numberThreads);
+        for(int i=0; i<numberThreads; i++) {
+            new Thread(new Runnable() {
+                public void run() {
+                    for(int j=0; j<numberAnnounce; j++) {
+                        announceQueue.add(sequence.incrementAndGet(), 0, System.nanoTime());
+                    }
+                    done.countDown();
+                }
+            },"announceQueueTest" + i).start();
+        }
+        AnnounceQueue.Entry entry = new AnnounceQueue.Entry();
+        long numberRemoved = 0;
+        long lastSequence = 0;
+        boolean coalesce = false;
+        while(done.getCount()>0 || announceQueue.getNumberPending()>0) {
+            int number = announceQueue.remove(coalesce, entry);
+            coalesce = !coalesce;
+            if(number==0) continue;
+            numberRemoved += number;
+            // sequences are handed out before add so they are only approximately ordered
+            if(entry.sequence>lastSequence) lastSequence = entry.sequence;
+        }
+        assertEquals((long)numberThreads*numberAnnounce,numberRemoved + announceQueue.getNumberOverruns());
+        assertTrue(lastSequence>0);
+    }
+}
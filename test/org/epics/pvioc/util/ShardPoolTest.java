@@ -0,0 +1,91 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.misc.ThreadPriority;
+
+
+/**
+ * JUnit test for ShardPool.
+ * @author mrk
+ *
+ */
+public class ShardPoolTest extends TestCase {
+    private static final ShardPool shardPool = new ShardPool("shardPoolTest",ThreadPriority.middle.getJavaPriority(),3);
+    /**
+     * Every shard is executed exactly once and invoke returns only after all shards are done.
+     */
+    public static void testJoin() {
+        final int numberShards = 8;
+        final AtomicIntegerArray counts = new AtomicIntegerArray(numberShards);
+        final AtomicInteger active = new AtomicInteger(0);
+        final AtomicInteger maxActive = new AtomicInteger(0);
+        ShardPool.Job job = new ShardPool.Job(new ShardPool.Task() {
+            public void execute(int shard) {
+                int number = active.incrementAndGet();
+                if(number>maxActive.get()) maxActive.set(number);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {}
+                counts.incrementAndGet(shard);
+                active.decrementAndGet();
+            }
+        });
+        for(int cycle=1; cycle<=50; cycle++) {
+            shardPool.invoke(job, numberShards);
+            assertEquals(0,active.get());
+            for(int i=0; i<numberShards; i++) assertEquals(cycle,counts.get(i));
+        }
+        // the caller and the pool threads execute shards concurrently
+        assertTrue(maxActive.get()>1);
+        assertTrue(maxActive.get()<=4);
+    }
+    /**
+     * The number of shards can change between invokes.
+     */
+    public static void testNumberShards() {
+        final AtomicIntegerArray counts = new AtomicIntegerArray(16);
+        ShardPool.Job job = new ShardPool.Job(new ShardPool.Task() {
+            public void execute(int shard) {
+                counts.incrementAndGet(shard);
+            }
+        });
+        int[] numbers = {1,16,2,7,16,3};
+        int[] expected = new int[16];
+        for(int number : numbers) {
+            shardPool.invoke(job, number);
+            for(int i=0; i<number; i++) expected[i]++;
+            for(int i=0; i<16; i++) assertEquals(expected[i],counts.get(i));
+        }
+    }
+    /**
+     * An exception in a shard is rethrown after all other shards are done.
+     */
+    public static void testException() {
+        final AtomicInteger number = new AtomicInteger(0);
+        ShardPool.Job job = new ShardPool.Job(new ShardPool.Task() {
+            public void execute(int shard) {
+                number.incrementAndGet();
+                if(shard==2) throw new IllegalStateException("shard 2");
+            }
+        });
+        try {
+            shardPool.invoke(job, 6);
+            fail("exception not rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals("shard 2",e.getMessage());
+        }
+        assertEquals(6,number.get());
+        // the job can be used again
+        shardPool.invoke(job, 1);
+        assertEquals(7,number.get());
+    }
+}
@@ -0,0 +1,294 @@
+/**
+ * Copyright - See the COPYRIGHT that is included with this distribution.
+ * EPICS pvData is distributed subject to a Software License Agreement found
+ * in file LICENSE that is included with this distribution.
+ */
+package org.epics.pvioc.xml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.factory.ConvertFactory;
+import org.epics.pvdata.factory.FieldFactory;
+import org.epics.pvdata.factory.PVDataFactory;
+import org.epics.pvdata.pv.Convert;
+import org.epics.pvdata.pv.Field;
+import org.epics.pvdata.pv.FieldCreate;
+import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.PVAuxInfo;
+import org.epics.pvdata.pv.PVDataCreate;
+import org.epics.pvdata.pv.PVDouble;
+import org.epics.pvdata.pv.PVField;
+import org.epics.pvdata.pv.PVScalar;
+import org.epics.pvdata.pv.PVScalarArray;
+import org.epics.pvdata.pv.PVString;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.PVStructureArray;
+import org.epics.pvdata.pv.Requester;
+import org.epics.pvdata.pv.ScalarType;
+import org.epics.pvdata.pv.Structure;
+import org.epics.pvdata.pv.StructureArrayData;
+import org.epics.pvioc.database.PVDatabase;
+import org.epics.pvioc.database.PVDatabaseFactory;
+import org.epics.pvioc.database.PVRecord;
+
+
+/**
+ * JUnit test for PVDatabaseImageFactory.
+ * @author mrk
+ *
+ */
+public class PVDatabaseImageTest extends TestCase {
+    private static final Convert convert = ConvertFactory.getConvert();
+    private static final FieldCreate fieldCreate = FieldFactory.getFieldCreate();
+    private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
+    private static final String baseName = "imageTest.base";
+    private static int databaseNumber = 0;
+
+    /**
+     * A loaded image has the same structures, records, values and auxInfo as the xml converter creates.
+     */
+    public static void testRoundTrip() {
+        File dir = createSources();
+        String fileName = new File(dir,"imageTest.xml").getPath();
+        String imageFile = new File(dir,"imageTest.pvdb").getPath();
+        Requester requester = new RequesterForTesting("imageTest");
+        PVDatabase converted = createDatabase();
+        XMLToPVDatabaseFactory.convert(converted, fileName, requester);
+        assertNotNull(converted.findRecord("imageTestRecord"));
+        PVDatabase compiled = createDatabase();
+        assertTrue(PVDatabaseImageFactory.compile(compiled, fileName, imageFile, requester, true));
+        checkDatabase(converted,compiled);
+        PVDatabase loaded = createDatabase();
+        assertTrue(PVDatabaseImageFactory.isCurrent(loaded, imageFile));
+        assertTrue(PVDatabaseImageFactory.load(loaded, imageFile, requester));
+        checkDatabase(converted,loaded);
+        PVStructure pvStructure = loaded.findRecord("imageTestRecord").getPVRecordStructure().getPVStructure();
+        assertEquals(2.0,pvStructure.getDoubleField("gain").get(),0.0);
+        assertEquals(2.5,pvStructure.getStructureField("point").getDoubleField("x").get(),0.0);
+        assertTrue(pvStructure.getSubField("enabled").isImmutable());
+        // convert loads the current image instead of parsing the xml
+        PVDatabase fromImage = createDatabase();
+        PVDatabaseImageFactory.convert(fromImage, fileName, imageFile, requester, true);
+        checkDatabase(converted,fromImage);
+    }
+    /**
+     * isCurrent rejects an image after a source file, a ${name}, or an extended structure changes.
+     */
+    public static void testIsCurrent() {
+        File dir = createSources();
+        String fileName = new File(dir,"imageTest.xml").getPath();
+        String imageFile = new File(dir,"imageTest.pvdb").getPath();
+        Requester requester = new RequesterForTesting("imageTest");
+        PVDatabase pvDatabase = createDatabase();
+        assertFalse(PVDatabaseImageFactory.isCurrent(pvDatabase, imageFile));
+        assertTrue(PVDatabaseImageFactory.compile(pvDatabase, fileName, imageFile, requester, true));
+        assertTrue(PVDatabaseImageFactory.isCurrent(pvDatabase, imageFile));
+        // the included file is a source
+        File part = new File(dir,"imageTestPart.xml");
+        long lastModified = part.lastModified();
+        assertTrue(part.setLastModified(lastModified + 10000));
+        assertFalse(PVDatabaseImageFactory.isCurrent(pvDatabase, imageFile));
+        assertTrue(part.setLastModified(lastModified));
+        assertTrue(PVDatabaseImageFactory.isCurrent(pvDatabase, imageFile));
+        // a ${name} used in a value
+        System.setProperty("imageTestGain", "3.0");
+        assertFalse(PVDatabaseImageFactory.isCurrent(pvDatabase, imageFile));
+        System.setProperty("imageTestGain", "2.0");
+        assertTrue(PVDatabaseImageFactory.isCurrent(pvDatabase, imageFile));
+        // a structure that the file extends but does not define
+        PVDouble pvOffset = pvDatabase.findStructure(baseName).getDoubleField("offset");
+        pvOffset.put(1.0);
+        assertFalse(PVDatabaseImageFactory.isCurrent(pvDatabase, imageFile));
+        pvOffset.put(0.0);
+        assertTrue(PVDatabaseImageFactory.isCurrent(pvDatabase, imageFile));
+        // a database without the extended structure
+        assertFalse(PVDatabaseImageFactory.isCurrent(PVDatabaseFactory.create("imageTestEmpty"), imageFile));
+    }
+
+    // copy the xml files to a new directory so that they can be modified
+    private static File createSources() {
+        String javaIOC = System.getProperty("JAVAIOC", System.getenv("JAVAIOC"));
+        File from = new File(javaIOC,"test/org/epics/pvioc/xml");
+        try {
+            File dir = File.createTempFile("imageTest", "");
+            assertTrue(dir.delete());
+            assertTrue(dir.mkdir());
+            dir.deleteOnExit();
+            String[] names = {"imageTest.xml","imageTestPart.xml"};
+            for(String name : names) {
+                File file = new File(dir,name);
+                copy(new File(from,name),file);
+                file.deleteOnExit();
+            }
+            new File(dir,"imageTest.pvdb").deleteOnExit();
+            System.setProperty("imageTestDir", dir.getPath());
+            System.setProperty("imageTestGain", "2.0");
+            return dir;
+        } catch (IOException e) {
+            fail(e.getMessage());
+            return null;
+        }
+    }
+
+    private static void copy(File from,File to) throws IOException {
+        InputStream in = new FileInputStream(from);
+        try {
+            OutputStream out = new FileOutputStream(to);
+            try {
+                byte[] buffer = new byte[4096];
+                int number;
+                while((number = in.read(buffer))>0) out.write(buffer, 0, number);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    // a new database that has the structure extended by imageTestPart.xml
+    private static PVDatabase createDatabase() {
+        PVDatabase pvDatabase = PVDatabaseFactory.create("imageTest" + databaseNumber++);
+        Structure structure = fieldCreate.createStructure(
+            new String[]{"offset","units"},
+            new Field[]{fieldCreate.createScalar(ScalarType.pvDouble),fieldCreate.createScalar(ScalarType.pvString)});
+        PVStructure pvStructure = pvDataCreate.createPVStructure(structure);
+        pvStructure.getStringField("units").put("volts");
+        PVString pvDescription = (PVString)pvStructure.getPVAuxInfo().createInfo("description", ScalarType.pvString);
+        pvDescription.put("base");
+        assertTrue(pvDatabase.addStructure(pvStructure, baseName));
+        return pvDatabase;
+    }
+
+    private static void checkDatabase(PVDatabase expected,PVDatabase actual) {
+        String[] names = expected.getStructureNames();
+        String[] actualNames = actual.getStructureNames();
+        Arrays.sort(names);
+        Arrays.sort(actualNames);
+        assertTrue(Arrays.equals(names, actualNames));
+        for(String name : names) {
+            checkField(name,expected.findStructure(name),actual.findStructure(name));
+        }
+        names = expected.getRecordNames();
+        actualNames = actual.getRecordNames();
+        Arrays.sort(names);
+        Arrays.sort(actualNames);
+        assertTrue(Arrays.equals(names, actualNames));
+        for(String name : names) {
+            PVRecord pvRecord = actual.findRecord(name);
+            assertEquals(name,pvRecord.getRecordName());
+            checkField(name,
+                expected.findRecord(name).getPVRecordStructure().getPVStructure(),
+                pvRecord.getPVRecordStructure().getPVStructure());
+        }
+    }
+
+    private static void checkField(String name,PVField expected,PVField actual) {
+        assertEquals(name,expected.getField().getType(),actual.getField().getType());
+        assertEquals(name,expected.isImmutable(),actual.isImmutable());
+        assertEquals(name,getAuxInfo(expected),getAuxInfo(actual));
+        switch(expected.getField().getType()) {
+        case scalar:
+            assertEquals(name,
+                ((PVScalar)expected).getScalar().getScalarType(),
+                ((PVScalar)actual).getScalar().getScalarType());
+            assertEquals(name,convert.toString((PVScalar)expected),convert.toString((PVScalar)actual));
+            break;
+        case scalarArray: {
+            PVScalarArray expectedArray = (PVScalarArray)expected;
+            PVScalarArray actualArray = (PVScalarArray)actual;
+            assertEquals(name,
+                expectedArray.getScalarArray().getElementType(),
+                actualArray.getScalarArray().getElementType());
+            assertEquals(name,expectedArray.getCapacity(),actualArray.getCapacity());
+            assertEquals(name,expectedArray.isCapacityMutable(),actualArray.isCapacityMutable());
+            int length = expectedArray.getLength();
+            assertEquals(name,length,actualArray.getLength());
+            String[] expectedValues = new String[length];
+            String[] actualValues = new String[length];
+            convert.toStringArray(expectedArray, 0, length, expectedValues, 0);
+            convert.toStringArray(actualArray, 0, length, actualValues, 0);
+            assertTrue(name,Arrays.equals(expectedValues, actualValues));
+            break;
+        }
+        case structure: {
+            PVStructure expectedStructure = (PVStructure)expected;
+            PVStructure actualStructure = (PVStructure)actual;
+            assertTrue(name,Arrays.equals(
+                expectedStructure.getStructure().getFieldNames(),
+                actualStructure.getStructure().getFieldNames()));
+            PVField[] expectedFields = expectedStructure.getPVFields();
+            PVField[] actualFields = actualStructure.getPVFields();
+            for(int i=0; i<expectedFields.length; i++) {
+                checkField(name + "." + expectedFields[i].getFieldName(),expectedFields[i],actualFields[i]);
+            }
+            break;
+        }
+        case structureArray: {
+            PVStructureArray expectedArray = (PVStructureArray)expected;
+            PVStructureArray actualArray = (PVStructureArray)actual;
+            int length = expectedArray.getLength();
+            assertEquals(name,length,actualArray.getLength());
+            StructureArrayData expectedData = new StructureArrayData();
+            StructureArrayData actualData = new StructureArrayData();
+            expectedArray.get(0, length, expectedData);
+            actualArray.get(0, length, actualData);
+            for(int i=0; i<length; i++) {
+                PVStructure expectedElement = expectedData.data[expectedData.offset + i];
+                PVStructure actualElement = actualData.data[actualData.offset + i];
+                if(expectedElement==null) {
+                    assertNull(name,actualElement);
+                } else {
+                    checkField(name + "[" + i + "]",expectedElement,actualElement);
+                }
+            }
+            break;
+        }
+        default:
+            fail(name + " unexpected type " + expected.getField().getType());
+        }
+    }
+
+    // the auxInfo as name to "scalarType value"
+    private static Map<String,String> getAuxInfo(PVField pvField) {
+        Map<String,String> auxInfo = new TreeMap<String,String>();
+        PVAuxInfo pvAuxInfo = pvField.getPVAuxInfo();
+        Map<String,PVScalar> infos = (pvAuxInfo==null) ? null : pvAuxInfo.getInfos();
+        if(infos==null) return auxInfo;
+        for(String key : infos.keySet()) {
+            PVScalar pvScalar = infos.get(key);
+            auxInfo.put(key, pvScalar.getScalar().getScalarType() + " " + convert.toString(pvScalar));
+        }
+        return auxInfo;
+    }
+
+    private static class RequesterForTesting implements Requester {
+        private String requesterName = null;
+
+        RequesterForTesting(String requesterName) {
+            this.requesterName = requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.Requester#getRequesterName()
+         */
+        public String getRequesterName() {
+            return requesterName;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.Requester#message(java.lang.String, org.epics.pvdata.pv.MessageType)
+         */
+        public void message(String message, MessageType messageType) {
+            System.out.println(message);
+        }
+    }
+}